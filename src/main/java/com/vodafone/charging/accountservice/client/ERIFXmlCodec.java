@@ -0,0 +1,271 @@
+package com.vodafone.charging.accountservice.client;
+
+import com.vodafone.charging.accountservice.domain.ContextData;
+import com.vodafone.charging.accountservice.dto.xml.Response;
+import lombok.NonNull;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Writes IF validate requests and reads their responses without JAXB.  The request is written from a template
+ * split into its byte segments once, with each field escaped into place, producing the same document the
+ * generated dto.xml classes marshal to, down to the SOAP-ENV and ns2 prefixes the IF expects.  The response is read
+ * with a StAX cursor taking only the fields of the Response that EnrichedAccountInfo and Account use, skipping any
+ * other element, so an IF adding elements to it does not break reading.
+ */
+public final class ERIFXmlCodec {
+
+    private static final String VALIDATE_TEMPLATE =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>" +
+            "<SOAP-ENV:Envelope xmlns:SOAP-ENV=\"http://www.w3.org/2001/12/soap-envelope\"" +
+            " xmlns:ns2=\"http://www.vizzavi.net/chargingandpayments/message/1.0\">" +
+            "<SOAP-ENV:Body><ns2:messagegroup><ns2:request>" +
+            "<ns2:msgcontrol><ns2:country>{country}</ns2:country></ns2:msgcontrol>" +
+            "<ns2:validate>" +
+            "<ns2:accountId type=\"{accountIdType}\">{accountIdValue}</ns2:accountId>" +
+            "{serviceId}{partnerId}{packageType}{vendorId}{clientId}" +
+            "<ns2:kycCheck>{kycCheck}</ns2:kycCheck>" +
+            "</ns2:validate>" +
+            "</ns2:request></ns2:messagegroup></SOAP-ENV:Body></SOAP-ENV:Envelope>";
+
+    private static final List<Object> VALIDATE_SEGMENTS = compile(VALIDATE_TEMPLATE);
+
+    private static final XMLInputFactory INPUT_FACTORY = newInputFactory();
+
+    private static final byte[] AMP = "&amp;".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] LT = "&lt;".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] GT = "&gt;".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] QUOT = "&quot;".getBytes(StandardCharsets.US_ASCII);
+
+    private ERIFXmlCodec() {
+    }
+
+    /**
+     * The fields of a validate request.  Those with an element are optional and written with it only when they have
+     * a value, as JAXB leaves out null elements; the others sit inside the template's own markup.
+     */
+    private enum ValidateField {
+        country(contextData -> contextData.getLocale().getCountry()),
+        accountIdType(contextData -> contextData.getChargingId().getType()),
+        accountIdValue(contextData -> contextData.getChargingId().getValue()),
+        serviceId("ns2:serviceId", ContextData::getServiceId),
+        partnerId("ns2:partnerId", ContextData::getPartnerId),
+        packageType("ns2:packageType",
+                contextData -> Objects.isNull(contextData.getPackageType()) ? null : contextData.getPackageType().name()),
+        vendorId("ns2:vendorId", ContextData::getVendorId),
+        clientId("ns2:clientId", ContextData::getClientId),
+        kycCheck(contextData -> String.valueOf(contextData.isKycCheck()));
+
+        private final byte[] open;
+        private final byte[] close;
+        private final Function<ContextData, String> value;
+
+        ValidateField(Function<ContextData, String> value) {
+            this.open = null;
+            this.close = null;
+            this.value = value;
+        }
+
+        ValidateField(String element, Function<ContextData, String> value) {
+            this.open = ('<' + element + '>').getBytes(StandardCharsets.UTF_8);
+            this.close = ("</" + element + '>').getBytes(StandardCharsets.UTF_8);
+            this.value = value;
+        }
+
+        private void write(ContextData contextData, OutputStream out) throws IOException {
+            final String text = value.apply(contextData);
+            if (Objects.isNull(open)) {
+                writeEscaped(Objects.isNull(text) ? "" : text, out);
+            } else if (Objects.nonNull(text)) {
+                out.write(open);
+                writeEscaped(text, out);
+                out.write(close);
+            }
+        }
+    }
+
+    /**
+     * Writes the validate request for the context data as UTF-8.
+     */
+    public static void writeValidateRequest(@NonNull ContextData contextData, @NonNull OutputStream out)
+            throws IOException {
+        for (Object segment : VALIDATE_SEGMENTS) {
+            if (segment instanceof byte[]) {
+                out.write((byte[]) segment);
+            } else {
+                ((ValidateField) segment).write(contextData, out);
+            }
+        }
+    }
+
+    /**
+     * Reads the Response in the Body of the envelope, or null if the Body has none, as with a SOAP fault.
+     */
+    public static Response readResponse(@NonNull InputStream in) throws XMLStreamException {
+        final XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(in);
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT && "Response".equals(reader.getLocalName())) {
+                    return readResponseElement(reader);
+                }
+            }
+            return null;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static Response readResponseElement(XMLStreamReader reader) throws XMLStreamException {
+        final Response response = new Response();
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            switch (reader.getLocalName()) {
+                case "status":
+                    response.setStatus(reader.getElementText());
+                    break;
+                case "ban":
+                    response.setBan(reader.getElementText());
+                    break;
+                case "errId":
+                    response.setErrId(reader.getElementText());
+                    break;
+                case "errDescription":
+                    response.setErrDescription(reader.getElementText());
+                    break;
+                case "userGroups":
+                    response.setUserGroups(readUserGroups(reader));
+                    break;
+                case "billingCycleDay":
+                    response.setBillingCycleDay(parseInt(reader.getElementText()));
+                    break;
+                case "spId":
+                    response.setSpId(reader.getElementText());
+                    break;
+                case "isPrepay":
+                    response.setIsPrepay(reader.getElementText());
+                    break;
+                case "childSpId":
+                    response.setChildSpId(reader.getElementText());
+                    break;
+                case "spType":
+                    response.setSpType(reader.getElementText());
+                    break;
+                default:
+                    skipElement(reader);
+            }
+        }
+        return response;
+    }
+
+    private static Response.UserGroups readUserGroups(XMLStreamReader reader) throws XMLStreamException {
+        final Response.UserGroups userGroups = new Response.UserGroups();
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            if ("item".equals(reader.getLocalName())) {
+                userGroups.getItem().add(reader.getElementText());
+            } else {
+                skipElement(reader);
+            }
+        }
+        return userGroups;
+    }
+
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    //JAXB reads an int it cannot parse as 0
+    private static int parseInt(String text) {
+        try {
+            return Integer.parseInt(text.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static void writeEscaped(String text, OutputStream out) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            switch (c) {
+                case '&':
+                    out.write(AMP);
+                    break;
+                case '<':
+                    out.write(LT);
+                    break;
+                case '>':
+                    out.write(GT);
+                    break;
+                case '"':
+                    out.write(QUOT);
+                    break;
+                default:
+                    if (c < 0x80) {
+                        out.write(c);
+                    } else if (c < 0x800) {
+                        out.write(0xc0 | (c >> 6));
+                        out.write(0x80 | (c & 0x3f));
+                    } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                            && Character.isLowSurrogate(text.charAt(i + 1))) {
+                        final int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                        out.write(0xf0 | (codePoint >> 18));
+                        out.write(0x80 | ((codePoint >> 12) & 0x3f));
+                        out.write(0x80 | ((codePoint >> 6) & 0x3f));
+                        out.write(0x80 | (codePoint & 0x3f));
+                    } else if (Character.isSurrogate(c)) {
+                        out.write('?');
+                    } else {
+                        out.write(0xe0 | (c >> 12));
+                        out.write(0x80 | ((c >> 6) & 0x3f));
+                        out.write(0x80 | (c & 0x3f));
+                    }
+            }
+        }
+    }
+
+    /**
+     * Splits the template at each {field} into its literal bytes and the ValidateField to write there.
+     */
+    private static List<Object> compile(String template) {
+        final List<Object> segments = new ArrayList<>();
+        int from = 0;
+        int open;
+        while ((open = template.indexOf('{', from)) >= 0) {
+            final int close = template.indexOf('}', open);
+            if (open > from) {
+                segments.add(template.substring(from, open).getBytes(StandardCharsets.UTF_8));
+            }
+            segments.add(ValidateField.valueOf(template.substring(open + 1, close)));
+            from = close + 1;
+        }
+        if (from < template.length()) {
+            segments.add(template.substring(from).getBytes(StandardCharsets.UTF_8));
+        }
+        return segments;
+    }
+
+    private static XMLInputFactory newInputFactory() {
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        return factory;
+    }
+}
@@ -1,10 +1,18 @@
 package com.vodafone.charging.accountservice.client;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.collect.Lists;
 import com.vodafone.charging.accountservice.domain.PaymentContext;
+import com.vodafone.charging.accountservice.domain.enums.SpendLimitType;
+import com.vodafone.charging.accountservice.dto.SpendAggregate;
+import com.vodafone.charging.accountservice.dto.er.ERAggregateWindow;
 import com.vodafone.charging.accountservice.dto.er.ERTransaction;
 import com.vodafone.charging.accountservice.dto.er.ERTransactionCriteria;
+import com.vodafone.charging.accountservice.dto.er.ERTransactionTotal;
+import com.vodafone.charging.accountservice.dto.er.ERTransactionType;
 import com.vodafone.charging.accountservice.exception.ApplicationConfigurationException;
+import com.vodafone.charging.accountservice.service.CallCoalescer;
 import com.vodafone.charging.accountservice.service.ExternalServiceCallSupplier;
 import com.vodafone.charging.properties.PropertiesAccessor;
 import lombok.NonNull;
@@ -13,12 +21,27 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResponseExtractor;
 import org.springframework.web.client.RestTemplate;
 
+import javax.annotation.Nullable;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 
 import static java.util.Optional.ofNullable;
 
@@ -38,8 +61,87 @@ public class ERService {
     @Autowired
     private ExternalServiceCallSupplier externalServiceCallSupplier;
 
+    @Autowired
+    private CallCoalescer callCoalescer;
+
+    @Autowired
+    private OpcoHttpTransport opcoHttpTransport;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private OpcoRequestHedger opcoRequestHedger;
+
+    //opcos whose adapter does not answer aggregate queries, until when they are not asked again
+    private final Map<String, Long> totalsUnsupportedUntil = new ConcurrentHashMap<>();
+
+    /**
+     * Concurrent searches for the same criteria share one call to the ER adapter, which is hedged where enabled
+     * for the opco, see OpcoRequestHedger.
+     */
     public List<ERTransaction> getTransactions(@NonNull final PaymentContext paymentContext,
                                                @NonNull final ERTransactionCriteria criteria) {
+        return callCoalescer.call("er.transactions.search", criteriaKey(paymentContext, criteria),
+                () -> searchTransactions(paymentContext, criteria));
+    }
+
+    /**
+     * Fetches the transactions for the criteria a page of pageSize at a time, newest first, handing each page to the
+     * consumer as it arrives until the consumer returns false or there are no more.  Each page is asked for with the
+     * criteria's toDate moved back to the oldest transaction of the last page, so the ER adapter must return the newest
+     * requiredResultSize transactions up to and including toDate.  Those of the last page at that time are dropped from
+     * the next, and if a whole page is at one time the next is made large enough to get past it.
+     * Transactions without a time are dropped.  Returns false if the consumer stopped the fetch before the last page.
+     */
+    public boolean pageTransactions(@NonNull final PaymentContext paymentContext,
+                                    @NonNull final ERTransactionCriteria criteria, final int pageSize,
+                                    @NonNull final Predicate<List<ERTransaction>> pageConsumer) {
+        final List<ERTransaction> boundary = new ArrayList<>();
+        LocalDateTime toDate = criteria.getToDate();
+        int requiredResultSize = Math.max(pageSize, 1);
+        int pages = 0;
+
+        while (true) {
+            final List<ERTransaction> fetched = getTransactions(paymentContext,
+                    criteria.toBuilder().toDate(toDate).requiredResultSize(requiredResultSize).build());
+            pages++;
+            //transactions without a time cannot be placed in a window, nor paged past
+            final List<ERTransaction> page = new ArrayList<>(fetched.size());
+            for (ERTransaction transaction : fetched) {
+                if (Objects.nonNull(transaction) && Objects.nonNull(transaction.getDateTime())) {
+                    page.add(transaction);
+                }
+            }
+            if (page.isEmpty()) {
+                log.debug("ER transactions paged in {} pages", pages);
+                return true;
+            }
+            page.sort(Comparator.comparing(ERTransaction::getDateTime).reversed());
+
+            final LocalDateTime oldest = page.get(page.size() - 1).getDateTime();
+            final List<ERTransaction> fresh = new ArrayList<>(page);
+            for (ERTransaction seen : boundary) {
+                fresh.remove(seen);
+            }
+            boundary.clear();
+            page.stream().filter(transaction -> transaction.getDateTime().isEqual(oldest)).forEach(boundary::add);
+
+            final boolean more = pageConsumer.test(fresh);
+            if (fetched.size() < requiredResultSize) {
+                log.debug("ER transactions paged in {} pages", pages);
+                return true;
+            }
+            if (!more) {
+                log.debug("ER transactions paging stopped after {} pages", pages);
+                return false;
+            }
+            toDate = oldest;
+            requiredResultSize = boundary.size() + Math.max(pageSize, 1);
+        }
+    }
+
+    private List<ERTransaction> searchTransactions(PaymentContext paymentContext, ERTransactionCriteria criteria) {
 
         final String transactionsSearchPath =
                 propertiesAccessor.getProperty("er.adapter.path.transactions.search", "/transactions/filter");
@@ -56,9 +158,11 @@ public class ERService {
 
         ResponseEntity<List<ERTransaction>> responseEntity;
 
-        responseEntity = externalServiceCallSupplier.call(() ->
-                restTemplate.exchange(uri, HttpMethod.POST, requestEntity, reference))
-                .get();
+        final String country = paymentContext.getLocale().getCountry();
+        responseEntity = opcoRequestHedger.call(OpcoHttpTransport.ER_ADAPTER, country,
+                externalServiceCallSupplier.call(OpcoHttpTransport.ER_ADAPTER, country, () ->
+                        opcoHttpTransport.call(OpcoHttpTransport.ER_ADAPTER, country, () ->
+                                restTemplate.exchange(uri, HttpMethod.POST, requestEntity, reference))));
 
         final HttpStatus status = responseEntity.getStatusCode();
         log.info("HttpStatus: {}", status.value());
@@ -66,6 +170,182 @@ public class ERService {
         return ofNullable(responseEntity.getBody()).orElse(Lists.newArrayList());
     }
 
+    /**
+     * Folds the transactions for the criteria into the accumulator as the response is parsed instead of building
+     * a list of them, see {@link ERTransactionStreamReader}.  Searches are not shared as they are for
+     * getTransactions, since reading may stop early once the breach check shows a limit is certainly breached.
+     * Returns false if it did, in which case the accumulator only holds full totals for the windows that decided it.
+     */
+    public boolean aggregateTransactions(@NonNull final PaymentContext paymentContext,
+                                         @NonNull final ERTransactionCriteria criteria,
+                                         @NonNull final SpendAggregate.Accumulator accumulator,
+                                         @Nullable final SpendAggregate.BreachCheck breachCheck) {
+
+        final String transactionsSearchPath =
+                propertiesAccessor.getProperty("er.adapter.path.transactions.search", "/transactions/filter");
+
+        final URI uri = getUri(paymentContext.getLocale(), transactionsSearchPath);
+        final String country = paymentContext.getLocale().getCountry();
+        final boolean newestFirst = Boolean.parseBoolean(
+                propertiesAccessor.getPropertyForOpco("er.adapter.transactions.newest.first", country, "false"));
+
+        final RequestCallback requestCallback = request -> {
+            request.getHeaders().setAccept(Collections.singletonList(MediaType.APPLICATION_JSON_UTF8));
+            request.getHeaders().setContentType(MediaType.APPLICATION_JSON_UTF8);
+            objectMapper.writeValue(request.getBody(), criteria);
+        };
+        final ResponseExtractor<Boolean> responseExtractor = response -> {
+            try (JsonParser parser = objectMapper.getFactory().createParser(response.getBody())) {
+                return ERTransactionStreamReader.read(parser, accumulator, breachCheck, newestFirst);
+            }
+        };
+
+        final Boolean complete = externalServiceCallSupplier.call(OpcoHttpTransport.ER_ADAPTER, country, () ->
+                opcoHttpTransport.call(OpcoHttpTransport.ER_ADAPTER, country, () ->
+                        restTemplate.execute(uri, HttpMethod.POST, requestCallback, responseExtractor)))
+                .get();
+
+        log.info("ER transactions streamed complete={}", complete);
+        return !Boolean.FALSE.equals(complete);
+    }
+
+    /**
+     * Totals the transactions for the criteria into the accumulator's windows, which the criteria's aggregate windows
+     * must match.  The ER adapter is asked for the totals of each transaction type in each window, so only a few
+     * numbers cross the network.  Where the adapter does not support that the transactions are fetched and
+     * totalled here instead, and the opco's adapter is not asked for totals again for a while.
+     */
+    public void aggregateTransactionTotals(@NonNull final PaymentContext paymentContext,
+                                           @NonNull final ERTransactionCriteria criteria,
+                                           @NonNull final SpendAggregate.Accumulator accumulator) {
+        final String country = paymentContext.getLocale().getCountry();
+        if (isTotalsSupported(country) && Objects.nonNull(criteria.getAggregateWindows())) {
+            final List<ERTransactionTotal> totals = searchTransactionTotals(paymentContext, criteria);
+            if (Objects.nonNull(totals)) {
+                addTotals(criteria.getAggregateWindows(), totals, accumulator);
+                return;
+            }
+            final int retrySeconds = propertiesAccessor.getPropertyAsInt("er.adapter.transactions.totals.retry.seconds", 600);
+            totalsUnsupportedUntil.put(country, System.nanoTime() + TimeUnit.SECONDS.toNanos(retrySeconds));
+            log.warn("ER adapter for {} does not support aggregate queries, totalling transactions locally for {}s",
+                    country, retrySeconds);
+        }
+        accumulator.addAll(getTransactions(paymentContext, criteria.toBuilder().aggregateWindows(null).build()));
+    }
+
+    private boolean isTotalsSupported(String country) {
+        final Long until = totalsUnsupportedUntil.get(country);
+        if (Objects.isNull(until)) {
+            return true;
+        }
+        if (System.nanoTime() - until >= 0) {
+            totalsUnsupportedUntil.remove(country, until);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * The totals for the criteria's aggregate windows, or null if the adapter does not support aggregate queries.
+     */
+    private List<ERTransactionTotal> searchTransactionTotals(PaymentContext paymentContext, ERTransactionCriteria criteria) {
+
+        final String transactionsTotalsPath =
+                propertiesAccessor.getProperty("er.adapter.path.transactions.totals", "/transactions/totals");
+
+        final URI uri = getUri(paymentContext.getLocale(), transactionsTotalsPath);
+        final ParameterizedTypeReference<List<ERTransactionTotal>> reference =
+                new ParameterizedTypeReference<List<ERTransactionTotal>>() {
+                };
+
+        final RequestEntity<ERTransactionCriteria> requestEntity = RequestEntity.post(uri)
+                .accept(MediaType.APPLICATION_JSON_UTF8)
+                .contentType(MediaType.APPLICATION_JSON_UTF8)
+                .body(criteria);
+
+        final String country = paymentContext.getLocale().getCountry();
+        final ResponseEntity<List<ERTransactionTotal>> responseEntity =
+                externalServiceCallSupplier.call(OpcoHttpTransport.ER_ADAPTER, country, () ->
+                opcoHttpTransport.call(OpcoHttpTransport.ER_ADAPTER, country, () -> {
+                    try {
+                        return restTemplate.exchange(uri, HttpMethod.POST, requestEntity, reference);
+                    } catch (HttpStatusCodeException e) {
+                        if (isUnsupported(e.getStatusCode())) {
+                            log.info("ER adapter aggregate query not supported HttpStatus: {}", e.getStatusCode().value());
+                            return null;
+                        }
+                        throw e;
+                    }
+                }))
+                .get();
+
+        if (Objects.isNull(responseEntity)) {
+            return null;
+        }
+        log.info("HttpStatus: {}", responseEntity.getStatusCode().value());
+        return ofNullable(responseEntity.getBody()).orElse(Lists.newArrayList());
+    }
+
+    private static boolean isUnsupported(HttpStatus status) {
+        return status == HttpStatus.NOT_FOUND || status == HttpStatus.METHOD_NOT_ALLOWED
+                || status == HttpStatus.NOT_IMPLEMENTED;
+    }
+
+    /**
+     * Refunds are netted off the payments of every other type, as they are when transactions are totalled here.
+     */
+    private static void addTotals(List<ERAggregateWindow> windows, List<ERTransactionTotal> totals,
+                                  SpendAggregate.Accumulator accumulator) {
+        final Map<SpendLimitType, long[]> windowTotals = new EnumMap<>(SpendLimitType.class);
+        for (ERTransactionTotal total : totals) {
+            final SpendLimitType type = windowType(total.getWindow());
+            if (Objects.isNull(type) || Objects.isNull(total.getAmount())) {
+                continue;
+            }
+            final long[] paymentsAndRefunds = windowTotals.computeIfAbsent(type, key -> new long[2]);
+            paymentsAndRefunds[ERTransactionType.REFUND.name().equalsIgnoreCase(total.getType()) ? 1 : 0]
+                    += total.getAmount().getMinorUnits();
+        }
+
+        for (ERAggregateWindow window : windows) {
+            final SpendLimitType type = windowType(window.getName());
+            if (Objects.isNull(type)) {
+                continue;
+            }
+            final long[] paymentsAndRefunds = windowTotals.getOrDefault(type, new long[2]);
+            if (type.isPartnerScoped()) {
+                if (Objects.nonNull(window.getPartnerId())) {
+                    accumulator.addPartnerWindowTotals(type, window.getPartnerId(),
+                            paymentsAndRefunds[0], paymentsAndRefunds[1]);
+                }
+            } else {
+                accumulator.addWindowTotals(type, window.getFromDate(), paymentsAndRefunds[0], paymentsAndRefunds[1]);
+            }
+        }
+    }
+
+    private static SpendLimitType windowType(String name) {
+        try {
+            return Objects.isNull(name) ? null : SpendLimitType.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            log.warn("Ignoring totals for unknown aggregate window {}", name);
+            return null;
+        }
+    }
+
+    /**
+     * The opco and every criterion except toDate, which is the time of the request.  Transactions made while a
+     * search is in flight are missed by a caller sharing it just as they would be by the caller who made it.
+     * A page's toDate is where it starts, so is included for paged searches.
+     */
+    private static String criteriaKey(PaymentContext paymentContext, ERTransactionCriteria criteria) {
+        return ofNullable(paymentContext.getLocale()).map(Locale::getCountry).orElse(null) + ":"
+                + criteria.getChargingId() + ":"
+                + ofNullable(criteria.getTransactionTypes()).map(TreeSet::new).orElse(null) + ":"
+                + criteria.isMonetaryOnly() + ":" + criteria.getFromDate() + ":" + criteria.getRequiredResultSize()
+                + (Objects.isNull(criteria.getRequiredResultSize()) ? "" : ":" + criteria.getToDate());
+    }
+
     public URI getUri(@NonNull final Locale locale, @NonNull final String transactionsSearchPath) {
 
         final String url = propertiesAccessor.getPropertyForOpco("er.adapter.endpoint.url",
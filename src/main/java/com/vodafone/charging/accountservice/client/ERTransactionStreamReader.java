@@ -0,0 +1,337 @@
+package com.vodafone.charging.accountservice.client;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.common.math.LongMath;
+import com.vodafone.charging.accountservice.domain.Money;
+import com.vodafone.charging.accountservice.domain.enums.SpendLimitType;
+import com.vodafone.charging.accountservice.dto.SpendAggregate;
+import com.vodafone.charging.accountservice.dto.er.ERTransactionType;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Folds an ER transactions search response into a SpendAggregate.Accumulator token by token as it is parsed,
+ * so no ERTransaction, BigDecimal or LocalDateTime formatter state is built for it, and partner ids only when
+ * partner windows are totalled.  Amounts and date times in their usual plain forms are read straight from the
+ * parser's buffer; anything else falls back to the parsing the Money and JavaTimeModule deserializers do.
+ */
+@Slf4j
+public final class ERTransactionStreamReader {
+
+    private static final long MINOR_UNITS_PER_UNIT = LongMath.pow(10L, Money.SCALE);
+    private static final char[] REFUND = ERTransactionType.REFUND.name().toCharArray();
+    private static final long NOT_PLAIN = Long.MIN_VALUE;
+
+    private ERTransactionStreamReader() {
+    }
+
+    /**
+     * Reads the array of transactions into the accumulator, returning false if reading stopped early.
+     * Only when ER returns transactions newest first is a window known to be complete, once a transaction before
+     * its start is read.  Reading then stops as soon as a complete window is breached and every window evaluated
+     * before it is complete too, as the payment is certain to be denied for the same reason, and only those windows
+     * are totalled in full.  Should the transactions turn out not to be newest first the whole response is read.
+     */
+    public static boolean read(@NonNull JsonParser parser, @NonNull SpendAggregate.Accumulator accumulator,
+                               @Nullable SpendAggregate.BreachCheck breachCheck, boolean newestFirst) throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == null || token == JsonToken.VALUE_NULL) {
+            return true;
+        }
+        if (token != JsonToken.START_ARRAY) {
+            throw new JsonParseException(parser, "Expected an array of ER transactions but found " + token);
+        }
+
+        final boolean readPartners = accumulator.hasPartnerWindows();
+        final EarlyStop earlyStop = newestFirst && breachCheck != null ? new EarlyStop(accumulator, breachCheck) : null;
+        while ((token = parser.nextToken()) == JsonToken.START_OBJECT) {
+            LocalDateTime dateTime = null;
+            boolean refund = false;
+            long amount = 0L;
+            String partnerId = null;
+
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String field = parser.getCurrentName();
+                final JsonToken value = parser.nextToken();
+                if (value == JsonToken.VALUE_NULL) {
+                    continue;
+                }
+                switch (field) {
+                    case "amount":
+                        amount = readMinorUnits(parser, value);
+                        break;
+                    case "dateTime":
+                        dateTime = readDateTime(parser, value);
+                        break;
+                    case "type":
+                        refund = isRefund(parser, value);
+                        break;
+                    case "partnerId":
+                        partnerId = readPartners && value.isScalarValue() ? parser.getText() : null;
+                        parser.skipChildren();
+                        break;
+                    default:
+                        parser.skipChildren();
+                }
+            }
+
+            if (dateTime == null) {
+                log.warn("Skipping ER transaction without a dateTime");
+                continue;
+            }
+            if (earlyStop != null && earlyStop.isDecided(dateTime)) {
+                return false;
+            }
+            accumulator.add(dateTime, refund, amount, partnerId);
+        }
+
+        if (token != JsonToken.END_ARRAY) {
+            throw new JsonParseException(parser, "Expected an ER transaction but found " + token);
+        }
+        return true;
+    }
+
+    private static long readMinorUnits(JsonParser parser, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_NUMBER_INT && parser.getNumberType() != JsonParser.NumberType.BIG_INTEGER) {
+            return Math.multiplyExact(parser.getLongValue(), MINOR_UNITS_PER_UNIT);
+        }
+        if (value != JsonToken.VALUE_NUMBER_INT && value != JsonToken.VALUE_NUMBER_FLOAT && value != JsonToken.VALUE_STRING) {
+            throw new JsonParseException(parser, "Expected a monetary amount but found " + value);
+        }
+
+        final long minorUnits = parseMinorUnits(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+        if (minorUnits != NOT_PLAIN) {
+            return minorUnits;
+        }
+        try {
+            return Money.toMinorUnits(new BigDecimal(parser.getText().trim()));
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw new JsonParseException(parser, "Not a valid monetary amount: " + parser.getText(), e);
+        }
+    }
+
+    /**
+     * Minor units of a plain decimal, rounded half up as Money does, or NOT_PLAIN for anything else,
+     * e.g. an exponent or more digits than are safe to accumulate in a long.
+     */
+    static long parseMinorUnits(char[] chars, int offset, int length) {
+        int i = offset;
+        int end = offset + length;
+        while (i < end && chars[i] <= ' ') {
+            i++;
+        }
+        while (end > i && chars[end - 1] <= ' ') {
+            end--;
+        }
+
+        boolean negative = false;
+        if (i < end && (chars[i] == '-' || chars[i] == '+')) {
+            negative = chars[i] == '-';
+            i++;
+        }
+
+        long units = 0L;
+        int digits = 0;
+        int fractionDigits = -1;
+        int roundingDigit = 0;
+        for (; i < end; i++) {
+            final char c = chars[i];
+            if (c == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+                continue;
+            }
+            if (c < '0' || c > '9') {
+                return NOT_PLAIN;
+            }
+            if (fractionDigits >= Money.SCALE) {
+                if (fractionDigits == Money.SCALE) {
+                    roundingDigit = c - '0';
+                    fractionDigits++;
+                }
+                continue;
+            }
+            if (++digits > 16) {
+                return NOT_PLAIN;
+            }
+            units = units * 10 + (c - '0');
+            if (fractionDigits >= 0) {
+                fractionDigits++;
+            }
+        }
+        if (digits == 0) {
+            return NOT_PLAIN;
+        }
+
+        for (int scale = Math.max(fractionDigits, 0); scale < Money.SCALE; scale++) {
+            units *= 10;
+        }
+        if (roundingDigit >= 5) {
+            units++;
+        }
+        return negative ? -units : units;
+    }
+
+    private static LocalDateTime readDateTime(JsonParser parser, JsonToken value) throws IOException {
+        try {
+            if (value == JsonToken.VALUE_STRING) {
+                final LocalDateTime dateTime =
+                        parseDateTime(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+                return dateTime != null ? dateTime : LocalDateTime.parse(parser.getText().trim());
+            }
+            if (value == JsonToken.START_ARRAY) {
+                return readDateTimeArray(parser);
+            }
+        } catch (DateTimeException e) {
+            throw new JsonParseException(parser, "Not a valid date time: " + parser.getText(), e);
+        }
+        throw new JsonParseException(parser, "Expected a date time but found " + value);
+    }
+
+    /**
+     * yyyy-MM-ddTHH:mm with optional seconds and fraction of a second, the form ER writes, or null for anything else.
+     */
+    static LocalDateTime parseDateTime(char[] chars, int offset, int length) {
+        if (length < 16 || chars[offset + 4] != '-' || chars[offset + 7] != '-'
+                || chars[offset + 10] != 'T' || chars[offset + 13] != ':') {
+            return null;
+        }
+        final int year = digits(chars, offset, 4);
+        final int month = digits(chars, offset + 5, 2);
+        final int day = digits(chars, offset + 8, 2);
+        final int hour = digits(chars, offset + 11, 2);
+        final int minute = digits(chars, offset + 14, 2);
+
+        int second = 0;
+        int nano = 0;
+        if (length > 16) {
+            if (length < 19 || chars[offset + 16] != ':') {
+                return null;
+            }
+            second = digits(chars, offset + 17, 2);
+            if (length > 19) {
+                final int fractionLength = length - 20;
+                if (chars[offset + 19] != '.' || fractionLength < 1 || fractionLength > 9) {
+                    return null;
+                }
+                nano = digits(chars, offset + 20, fractionLength);
+                if (nano < 0) {
+                    return null;
+                }
+                for (int scale = fractionLength; scale < 9; scale++) {
+                    nano *= 10;
+                }
+            }
+        }
+        if ((year | month | day | hour | minute | second) < 0) {
+            return null;
+        }
+        return LocalDateTime.of(year, month, day, hour, minute, second, nano);
+    }
+
+    private static int digits(char[] chars, int offset, int count) {
+        int value = 0;
+        for (int i = offset; i < offset + count; i++) {
+            if (chars[i] < '0' || chars[i] > '9') {
+                return -1;
+            }
+            value = value * 10 + (chars[i] - '0');
+        }
+        return value;
+    }
+
+    /**
+     * [year, month, day, hour, minute(, second(, nano))] as written with dates as timestamps.
+     */
+    private static LocalDateTime readDateTimeArray(JsonParser parser) throws IOException {
+        final int[] fields = new int[7];
+        int count = 0;
+        while (parser.nextToken() == JsonToken.VALUE_NUMBER_INT) {
+            if (count == fields.length) {
+                throw new JsonParseException(parser, "Too many date time fields");
+            }
+            fields[count++] = parser.getIntValue();
+        }
+        if (parser.getCurrentToken() != JsonToken.END_ARRAY || count < 5) {
+            throw new JsonParseException(parser, "Expected an array of at least 5 date time fields");
+        }
+        return LocalDateTime.of(fields[0], fields[1], fields[2], fields[3], fields[4], fields[5], fields[6]);
+    }
+
+    private static boolean isRefund(JsonParser parser, JsonToken value) throws IOException {
+        if (value != JsonToken.VALUE_STRING) {
+            parser.skipChildren();
+            return false;
+        }
+        if (parser.getTextLength() != REFUND.length) {
+            return false;
+        }
+        final char[] chars = parser.getTextCharacters();
+        final int offset = parser.getTextOffset();
+        for (int i = 0; i < REFUND.length; i++) {
+            if (Character.toUpperCase(chars[offset + i]) != REFUND[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tracks which windows are complete in a newest first response, in the order SpendLimitService evaluates them.
+     */
+    private static final class EarlyStop {
+
+        private final SpendAggregate.Accumulator accumulator;
+        private final SpendAggregate.BreachCheck breachCheck;
+        private final List<SpendLimitType> windows = new ArrayList<>();
+        private int complete;
+        private LocalDateTime previous;
+        private boolean newestFirst = true;
+
+        private EarlyStop(SpendAggregate.Accumulator accumulator, SpendAggregate.BreachCheck breachCheck) {
+            this.accumulator = accumulator;
+            this.breachCheck = breachCheck;
+            for (SpendLimitType type : SpendLimitType.values()) {
+                if (accumulator.hasWindow(type)) {
+                    windows.add(type);
+                }
+            }
+        }
+
+        /**
+         * True if, before the transaction at this time is added, a breach is already certain.
+         */
+        private boolean isDecided(LocalDateTime dateTime) {
+            if (!newestFirst) {
+                return false;
+            }
+            if (previous != null && dateTime.isAfter(previous)) {
+                log.warn("ER transactions are not newest first, reading the whole response");
+                newestFirst = false;
+                return false;
+            }
+            previous = dateTime;
+
+            final int wasComplete = complete;
+            while (complete < windows.size() && accumulator.isBeforeWindow(windows.get(complete), dateTime)) {
+                complete++;
+            }
+            for (int i = wasComplete; i < complete; i++) {
+                if (breachCheck.isBreached(windows.get(i), accumulator)) {
+                    log.debug("ER transactions read stopped at {} as the {} limit is breached", dateTime, windows.get(i));
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
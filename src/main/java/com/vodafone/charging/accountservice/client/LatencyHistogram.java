@@ -0,0 +1,90 @@
+package com.vodafone.charging.accountservice.client;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recent latencies of calls to one target and opco, counted in buckets a quarter wider than the last from one
+ * millisecond up to a minute, so a percentile is known to within a quarter of its value.  Counts are kept for the
+ * current and previous window and percentiles read over both, so they follow a change in latency within two windows.
+ */
+final class LatencyHistogram {
+
+    private static final long[] BOUNDS_MILLIS = bounds();
+
+    private final long windowNanos;
+    private final int minimumSamples;
+
+    private long[] current = new long[BOUNDS_MILLIS.length];
+    private long[] previous = new long[BOUNDS_MILLIS.length];
+    private long windowStart = System.nanoTime();
+
+    LatencyHistogram(int windowSeconds, int minimumSamples) {
+        this.windowNanos = TimeUnit.SECONDS.toNanos(Math.max(windowSeconds, 1));
+        this.minimumSamples = Math.max(minimumSamples, 1);
+    }
+
+    synchronized void record(long millis) {
+        roll();
+        current[bucket(millis)]++;
+    }
+
+    /**
+     * The upper bound of the bucket holding the percentile, or -1 if there are too few samples to tell.
+     */
+    synchronized long getPercentileMillis(double percentile) {
+        roll();
+        long total = 0;
+        for (int i = 0; i < BOUNDS_MILLIS.length; i++) {
+            total += current[i] + previous[i];
+        }
+        if (total < minimumSamples) {
+            return -1L;
+        }
+        final long rank = Math.max((long) Math.ceil(total * percentile / 100d), 1L);
+        long seen = 0;
+        for (int i = 0; i < BOUNDS_MILLIS.length; i++) {
+            seen += current[i] + previous[i];
+            if (seen >= rank) {
+                return BOUNDS_MILLIS[i];
+            }
+        }
+        return BOUNDS_MILLIS[BOUNDS_MILLIS.length - 1];
+    }
+
+    private void roll() {
+        final long elapsed = System.nanoTime() - windowStart;
+        if (elapsed < windowNanos) {
+            return;
+        }
+        final long[] emptied = previous;
+        Arrays.fill(emptied, 0L);
+        if (elapsed < 2 * windowNanos) {
+            previous = current;
+            current = emptied;
+        } else {
+            Arrays.fill(current, 0L);
+        }
+        windowStart += elapsed - elapsed % windowNanos;
+    }
+
+    private static int bucket(long millis) {
+        final int index = Arrays.binarySearch(BOUNDS_MILLIS, Math.max(millis, 1L));
+        return index >= 0 ? index : Math.min(-index - 1, BOUNDS_MILLIS.length - 1);
+    }
+
+    private static long[] bounds() {
+        final long max = TimeUnit.MINUTES.toMillis(1);
+        final long[] bounds = new long[64];
+        int count = 0;
+        double bound = 1d;
+        while (count == 0 || bounds[count - 1] < max) {
+            final long rounded = (long) Math.ceil(bound);
+            if (count == 0 || rounded > bounds[count - 1]) {
+                bounds[count++] = rounded;
+            }
+            bound *= 1.25d;
+        }
+        return Arrays.copyOf(bounds, count);
+    }
+}
@@ -0,0 +1,325 @@
+package com.vodafone.charging.accountservice.client;
+
+import com.vodafone.charging.accountservice.exception.ExternalServiceException;
+import com.vodafone.charging.accountservice.exception.RequestDeadlineExceededException;
+import com.vodafone.charging.properties.PropertiesAccessor;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A bulkhead and circuit breaker for each dependency and opco, so that one opco's slow or failing ER adapter or IF
+ * cannot hold every request thread.  Calls beyond the bulkhead's limit, and calls while the circuit is open, fail fast
+ * with an ExternalServiceException.  The circuit opens when the failure rate over a rolling window passes a threshold,
+ * and after a while lets a few probe calls through half open, closing again only if they all succeed.
+ * Client errors are the caller's fault, and calls cut short by the RequestDeadline the caller's choice, so neither
+ * counts as a failure.  Settings are read per opco when a dependency is first called,
+ * e.g. er.adapter.breaker.failure.rate.percent.gb, and the state of each is logged as it changes and exposed over JMX.
+ */
+@Component
+@ManagedResource(objectName = "com.vodafone.charging.accountservice:name=OpcoCircuitBreakers")
+@Slf4j
+public class OpcoCircuitBreakers {
+
+    private final PropertiesAccessor propertiesAccessor;
+    private final Map<String, Breaker> breakers = new ConcurrentHashMap<>();
+
+    @Autowired
+    public OpcoCircuitBreakers(PropertiesAccessor propertiesAccessor) {
+        this.propertiesAccessor = propertiesAccessor;
+    }
+
+    public <T> T call(@NonNull final String dependency, @NonNull final String country, @NonNull final Supplier<T> call) {
+        final Breaker breaker = getBreaker(dependency, country);
+        breaker.acquire();
+        boolean success = false;
+        try {
+            final T result = call.get();
+            success = true;
+            return result;
+        } catch (RuntimeException e) {
+            success = !isFailure(e);
+            throw e;
+        } finally {
+            breaker.release(success);
+        }
+    }
+
+    /**
+     * As {@link #call(String, String, Supplier)} for a call returning a future, holding its place in the bulkhead
+     * until the future completes.  Fast failures complete the returned future exceptionally.
+     */
+    public <T> CompletableFuture<T> callAsync(@NonNull final String dependency, @NonNull final String country,
+                                              @NonNull final Supplier<CompletableFuture<T>> call) {
+        final Breaker breaker = getBreaker(dependency, country);
+        try {
+            breaker.acquire();
+        } catch (ExternalServiceException e) {
+            final CompletableFuture<T> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(e);
+            return rejected;
+        }
+
+        final CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            breaker.release(!isFailure(e));
+            throw e;
+        }
+        return future.whenComplete((result, ex) -> breaker.release(Objects.isNull(ex) || !isFailure(ex)));
+    }
+
+    /**
+     * The state of each dependency and opco called so far, keyed e.g. er.adapter.gb.
+     */
+    @ManagedAttribute(description = "Circuit state, failure rate and bulkhead use of each dependency and opco")
+    public Map<String, String> getStates() {
+        final Map<String, String> states = new TreeMap<>();
+        breakers.forEach((key, breaker) -> states.put(key, breaker.toString()));
+        return states;
+    }
+
+    public State getState(@NonNull final String dependency, @NonNull final String country) {
+        final Breaker breaker = breakers.get(key(dependency, country));
+        return Objects.isNull(breaker) ? State.CLOSED : breaker.getState();
+    }
+
+    /**
+     * Calls rejected by the bulkhead or an open circuit since startup.
+     */
+    public long getRejectedCalls(@NonNull final String dependency, @NonNull final String country) {
+        final Breaker breaker = breakers.get(key(dependency, country));
+        return Objects.isNull(breaker) ? 0L : breaker.rejected.sum();
+    }
+
+    private static boolean isFailure(Throwable ex) {
+        final Throwable cause = (ex instanceof CompletionException || ex instanceof ExecutionException)
+                && Objects.nonNull(ex.getCause()) ? ex.getCause() : ex;
+        if (cause instanceof RequestDeadlineExceededException) {
+            return false;
+        }
+        final Throwable translated = cause instanceof ExternalServiceException && Objects.nonNull(cause.getCause())
+                ? cause.getCause() : cause;
+        return !(translated instanceof HttpClientErrorException);
+    }
+
+    private static String key(String dependency, String country) {
+        return dependency + "." + country;
+    }
+
+    private Breaker getBreaker(String dependency, String country) {
+        return breakers.computeIfAbsent(key(dependency, country), key -> createBreaker(key, dependency, country));
+    }
+
+    private Breaker createBreaker(String key, String dependency, String country) {
+        final Breaker breaker = new Breaker(key,
+                getSetting(dependency, country, "max.concurrent", 20),
+                getSetting(dependency, country, "bulkhead.wait.millis", 0),
+                getSetting(dependency, country, "failure.rate.percent", 50),
+                getSetting(dependency, country, "minimum.calls", 20),
+                getSetting(dependency, country, "window.seconds", 10),
+                getSetting(dependency, country, "open.seconds", 30),
+                getSetting(dependency, country, "half.open.probes", 3));
+        log.info("Created circuit breaker {}", breaker);
+        return breaker;
+    }
+
+    /**
+     * Reads e.g. erif.breaker.open.seconds for the opco.
+     */
+    private int getSetting(String dependency, String country, String setting, int defaultValue) {
+        final String value = propertiesAccessor.getPropertyForOpco(dependency + ".breaker." + setting, country,
+                String.valueOf(defaultValue));
+        if (Objects.isNull(value)) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            log.warn("Invalid value {} for {}.breaker.{} for opco {}, using {}", value, dependency, setting, country, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * Outcomes are counted in one second buckets over the window, reset as the window moves past them.
+     */
+    private static final class Breaker {
+
+        private final String key;
+        private final Semaphore bulkhead;
+        private final int maxConcurrent;
+        private final long bulkheadWaitMillis;
+        private final int failureRatePercent;
+        private final int minimumCalls;
+        private final long openNanos;
+        private final int halfOpenProbes;
+
+        private final long[] bucketSeconds;
+        private final int[] bucketCalls;
+        private final int[] bucketFailures;
+        private final LongAdder rejected = new LongAdder();
+
+        private State state = State.CLOSED;
+        private long openedAt;
+        private int probesStarted;
+        private int probesSucceeded;
+
+        private Breaker(String key, int maxConcurrent, int bulkheadWaitMillis, int failureRatePercent,
+                        int minimumCalls, int windowSeconds, int openSeconds, int halfOpenProbes) {
+            this.key = key;
+            this.maxConcurrent = Math.max(maxConcurrent, 1);
+            this.bulkhead = new Semaphore(this.maxConcurrent);
+            this.bulkheadWaitMillis = Math.max(bulkheadWaitMillis, 0);
+            this.failureRatePercent = failureRatePercent;
+            this.minimumCalls = Math.max(minimumCalls, 1);
+            this.openNanos = TimeUnit.SECONDS.toNanos(Math.max(openSeconds, 1));
+            this.halfOpenProbes = Math.max(halfOpenProbes, 1);
+            this.bucketSeconds = new long[Math.max(windowSeconds, 1)];
+            this.bucketCalls = new int[bucketSeconds.length];
+            this.bucketFailures = new int[bucketSeconds.length];
+        }
+
+        private void acquire() {
+            admit();
+            boolean acquired;
+            try {
+                acquired = bulkhead.tryAcquire(bulkheadWaitMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                acquired = false;
+            }
+            if (!acquired) {
+                cancelProbe();
+                rejected.increment();
+                throw new ExternalServiceException("Too many concurrent calls to " + key
+                        + ", limit is " + maxConcurrent);
+            }
+        }
+
+        private synchronized void admit() {
+            if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+                transition(State.HALF_OPEN, "probing");
+                probesStarted = 0;
+                probesSucceeded = 0;
+            }
+            if (state == State.OPEN || (state == State.HALF_OPEN && probesStarted >= halfOpenProbes)) {
+                rejected.increment();
+                throw new ExternalServiceException("Circuit open for " + key);
+            }
+            if (state == State.HALF_OPEN) {
+                probesStarted++;
+            }
+        }
+
+        private synchronized void cancelProbe() {
+            if (state == State.HALF_OPEN && probesStarted > 0) {
+                probesStarted--;
+            }
+        }
+
+        private void release(boolean success) {
+            bulkhead.release();
+            record(success);
+        }
+
+        private synchronized void record(boolean success) {
+            if (state == State.HALF_OPEN) {
+                if (!success) {
+                    open("a probe failed");
+                } else if (++probesSucceeded >= halfOpenProbes) {
+                    clearWindow();
+                    transition(State.CLOSED, probesSucceeded + " probes succeeded");
+                }
+                return;
+            }
+            if (state == State.OPEN) {
+                return;
+            }
+
+            final long second = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+            final int bucket = (int) Math.floorMod(second, (long) bucketSeconds.length);
+            if (bucketSeconds[bucket] != second) {
+                bucketSeconds[bucket] = second;
+                bucketCalls[bucket] = 0;
+                bucketFailures[bucket] = 0;
+            }
+            bucketCalls[bucket]++;
+            if (!success) {
+                bucketFailures[bucket]++;
+            }
+
+            int calls = 0;
+            int failures = 0;
+            for (int i = 0; i < bucketSeconds.length; i++) {
+                if (second - bucketSeconds[i] < bucketSeconds.length) {
+                    calls += bucketCalls[i];
+                    failures += bucketFailures[i];
+                }
+            }
+            if (!success && calls >= minimumCalls && failures * 100L >= (long) failureRatePercent * calls) {
+                open(failures + " of " + calls + " calls failed");
+            }
+        }
+
+        private void open(String reason) {
+            openedAt = System.nanoTime();
+            transition(State.OPEN, reason);
+        }
+
+        private void clearWindow() {
+            for (int i = 0; i < bucketSeconds.length; i++) {
+                bucketCalls[i] = 0;
+                bucketFailures[i] = 0;
+            }
+        }
+
+        private void transition(State next, String reason) {
+            log.warn("Circuit {} {} -> {}: {}", key, state, next, reason);
+            state = next;
+        }
+
+        private synchronized State getState() {
+            return state;
+        }
+
+        @Override
+        public synchronized String toString() {
+            int calls = 0;
+            int failures = 0;
+            final long second = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+            for (int i = 0; i < bucketSeconds.length; i++) {
+                if (second - bucketSeconds[i] < bucketSeconds.length) {
+                    calls += bucketCalls[i];
+                    failures += bucketFailures[i];
+                }
+            }
+            return key + "{state=" + state +
+                    ", failures=" + failures + "/" + calls +
+                    ", inFlight=" + (maxConcurrent - bulkhead.availablePermits()) + "/" + maxConcurrent +
+                    ", rejected=" + rejected.sum() +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,455 @@
+package com.vodafone.charging.accountservice.client;
+
+import com.vodafone.charging.accountservice.exception.RequestDeadlineExceededException;
+import com.vodafone.charging.properties.PropertiesAccessor;
+import com.vodafone.charging.ulf.RequestDeadline;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.AsyncClientHttpRequest;
+import org.springframework.http.client.AsyncClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsAsyncClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Pooled HTTP connections for the RestTemplate, with a separate pool for each target and opco so that one slow
+ * opco cannot take the connections of the others.  A call made through {@link #call(String, String, Supplier)}
+ * uses the pool of its target and opco, and any other request made through the RestTemplate uses a default pool.
+ * The AsyncRestTemplate has pools of its own kept the same way, used by {@link #callAsync(String, String, Supplier)}.
+ * Pool size and timeouts are read per opco when a pool is first used, e.g. erif.http.max.connections.gb.
+ * Async pools read e.g. erif.http.async.max.connections.gb, falling back to the settings of the blocking pool.
+ * The latency of each call is recorded per target and opco, and where read.timeout.adaptive.percent is set the read
+ * timeout follows it, at that percentage of the p99 latency but no less than read.timeout.min.millis and no more
+ * than read.timeout.millis.
+ * Calls made for a request with a RequestDeadline are not made once it has passed, and are sent with their timeouts
+ * cut to what is left of it.  A call that times out because of this fails with a RequestDeadlineExceededException,
+ * and is not recorded as the latency of the target.
+ */
+@Component
+@ManagedResource(objectName = "com.vodafone.charging.accountservice:name=OpcoHttpTransport")
+@Slf4j
+public class OpcoHttpTransport implements DisposableBean {
+
+    public static final String ERIF = "erif";
+    public static final String ER_ADAPTER = "er.adapter";
+
+    private static final String DEFAULT_POOL = "default";
+
+    private final PropertiesAccessor propertiesAccessor;
+    private final Map<String, Pool> pools = new ConcurrentHashMap<>();
+    private final Map<String, AsyncPool> asyncPools = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+    private final ThreadLocal<String> currentPool = new ThreadLocal<>();
+    private final ClientHttpRequestFactory requestFactory = new RoutingRequestFactory();
+    private final AsyncClientHttpRequestFactory asyncRequestFactory = new RoutingAsyncRequestFactory();
+
+    @Autowired
+    public OpcoHttpTransport(PropertiesAccessor propertiesAccessor) {
+        this.propertiesAccessor = propertiesAccessor;
+    }
+
+    /**
+     * Makes the call with requests sent through the pool for the target and opco, recording its latency if it
+     * succeeds or times out.
+     */
+    public <T> T call(@NonNull final String target, @NonNull final String country, @NonNull final Supplier<T> call) {
+        final RequestDeadline deadline = RequestDeadline.current();
+        deadline.check("calling " + target + " for opco " + country);
+        final String previous = currentPool.get();
+        final String key = poolKey(target, country);
+        currentPool.set(key);
+        final long start = System.nanoTime();
+        try {
+            final T result = call.get();
+            recordLatency(key, start);
+            return result;
+        } catch (RuntimeException e) {
+            if (isTimeout(e) && deadline.isExpired()) {
+                throw new RequestDeadlineExceededException("Request deadline passed calling " + target
+                        + " for opco " + country, e);
+            }
+            if (isTimeout(e)) {
+                recordLatency(key, start);
+            }
+            throw e;
+        } finally {
+            if (Objects.isNull(previous)) {
+                currentPool.remove();
+            } else {
+                currentPool.set(previous);
+            }
+        }
+    }
+
+    /**
+     * As {@link #call(String, String, Supplier)} for a call made through the AsyncRestTemplate, whose request is
+     * created as the call is made and so is sent through the async pool for the target and opco.  Its latency is
+     * recorded when the future it returns completes.
+     */
+    public <T> CompletableFuture<T> callAsync(@NonNull final String target, @NonNull final String country,
+                                              @NonNull final Supplier<CompletableFuture<T>> call) {
+        final RequestDeadline deadline = RequestDeadline.current();
+        deadline.check("calling " + target + " for opco " + country);
+        final String previous = currentPool.get();
+        final String key = poolKey(target, country);
+        currentPool.set(key);
+        final long start = System.nanoTime();
+        final CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } finally {
+            if (Objects.isNull(previous)) {
+                currentPool.remove();
+            } else {
+                currentPool.set(previous);
+            }
+        }
+        return future.whenComplete((result, e) -> {
+            if (Objects.isNull(e) || (isTimeout(e) && !deadline.isExpired())) {
+                recordLatency(key, start);
+            }
+        });
+    }
+
+    /**
+     * The latency of calls to the target and opco at the percentile, or -1 if too few calls have been made to tell.
+     */
+    public long getLatencyMillis(@NonNull final String target, @NonNull final String country, double percentile) {
+        return getLatencies(poolKey(target, country)).getPercentileMillis(percentile);
+    }
+
+    /**
+     * The read timeout requests to the target and opco are sent with now.
+     */
+    public int getReadTimeoutMillis(@NonNull final String target, @NonNull final String country) {
+        return getPool(poolKey(target, country)).getReadTimeoutMillis();
+    }
+
+    /**
+     * The request factory for the RestTemplate, which sends each request through the pool of the current call.
+     */
+    public ClientHttpRequestFactory getRequestFactory() {
+        return requestFactory;
+    }
+
+    /**
+     * The request factory for the AsyncRestTemplate, which sends each request through the async pool of the current call.
+     */
+    public AsyncClientHttpRequestFactory getAsyncRequestFactory() {
+        return asyncRequestFactory;
+    }
+
+    /**
+     * Leased, pending, available and maximum connections of each pool in use, keyed by target and opco, and
+     * prefixed with async for the pools of the AsyncRestTemplate.  A pool with pending requests is saturated.
+     */
+    public Map<String, PoolStats> getPoolStats() {
+        final Map<String, PoolStats> stats = new TreeMap<>();
+        pools.forEach((key, pool) -> stats.put(key, pool.connectionManager.getTotalStats()));
+        asyncPools.forEach((key, pool) -> stats.put("async." + key, pool.connectionManager.getTotalStats()));
+        return stats;
+    }
+
+    /**
+     * The pool stats of {@link #getPoolStats()}, with each pool using all its connections marked saturated.
+     */
+    @ManagedAttribute(description = "Leased, pending, available and maximum connections of each http connection pool")
+    public Map<String, String> getPoolUsage() {
+        final Map<String, String> usage = new TreeMap<>();
+        getPoolStats().forEach((key, stats) -> usage.put(key, String.format("leased=%d pending=%d available=%d max=%d%s",
+                stats.getLeased(), stats.getPending(), stats.getAvailable(), stats.getMax(),
+                isSaturated(stats) ? " saturated" : "")));
+        return usage;
+    }
+
+    private static boolean isSaturated(PoolStats stats) {
+        return stats.getLeased() >= stats.getMax();
+    }
+
+    @Override
+    public void destroy() throws IOException {
+        for (Pool pool : pools.values()) {
+            pool.httpClient.close();
+        }
+        pools.clear();
+        for (AsyncPool pool : asyncPools.values()) {
+            pool.httpClient.close();
+        }
+        asyncPools.clear();
+    }
+
+    private static String poolKey(String target, String country) {
+        return target + "." + country;
+    }
+
+    private LatencyHistogram getLatencies(String key) {
+        return latencies.computeIfAbsent(key, this::createLatencies);
+    }
+
+    private LatencyHistogram createLatencies(String key) {
+        final int split = key.lastIndexOf('.');
+        final String target = key.substring(0, split);
+        final String country = key.substring(split + 1);
+        return new LatencyHistogram(getSetting(target, country, "latency.window.seconds", 60),
+                getSetting(target, country, "latency.minimum.samples", 100));
+    }
+
+    private void recordLatency(String key, long start) {
+        getLatencies(key).record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    /**
+     * Whether the failure was caused by a socket timing out.
+     */
+    public static boolean isTimeout(Throwable e) {
+        for (Throwable cause = e; Objects.nonNull(cause); cause = cause.getCause()) {
+            if (cause instanceof SocketTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Pool getPool(String key) {
+        return pools.computeIfAbsent(key, this::createPool);
+    }
+
+    private Pool createPool(String key) {
+        final int split = key.lastIndexOf('.');
+        final boolean isDefault = DEFAULT_POOL.equals(key);
+        final String target = isDefault ? DEFAULT_POOL : key.substring(0, split);
+        final String country = isDefault ? null : key.substring(split + 1);
+
+        final int maxConnections = getSetting(target, country, "max.connections", 20);
+        final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+
+        final RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(getSetting(target, country, "connect.timeout.millis", 2000))
+                .setSocketTimeout(getSetting(target, country, "read.timeout.millis", 5000))
+                .setConnectionRequestTimeout(getSetting(target, country, "pool.wait.millis", 1000))
+                .build();
+
+        final int adaptivePercent = isDefault ? 0 : getSetting(target, country, "read.timeout.adaptive.percent", 0);
+        final int minReadTimeout = isDefault ? 0 : getSetting(target, country, "read.timeout.min.millis", 250);
+
+        final CloseableHttpClient httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .evictExpiredConnections()
+                .evictIdleConnections((long) getSetting(target, country, "idle.evict.seconds", 30), TimeUnit.SECONDS)
+                .build();
+
+        log.info("Created http connection pool {} with maxConnections={} adaptiveReadTimeoutPercent={} {}",
+                key, maxConnections, adaptivePercent, requestConfig);
+        return new Pool(connectionManager, httpClient, requestConfig, adaptivePercent <= 0 ? null
+                : () -> adaptiveReadTimeout(key, requestConfig.getSocketTimeout(), minReadTimeout, adaptivePercent));
+    }
+
+    private AsyncPool getAsyncPool(String key) {
+        return asyncPools.computeIfAbsent(key, this::createAsyncPool);
+    }
+
+    /**
+     * As createPool, sized by default as the blocking pool is, except for the default pool which is large enough
+     * for the async pipeline.
+     */
+    private AsyncPool createAsyncPool(String key) {
+        final int split = key.lastIndexOf('.');
+        final boolean isDefault = DEFAULT_POOL.equals(key);
+        final String target = isDefault ? DEFAULT_POOL : key.substring(0, split);
+        final String country = isDefault ? null : key.substring(split + 1);
+
+        final int maxConnections = getAsyncSetting(target, country, "max.connections", isDefault ? 2000 : 20);
+        final PoolingNHttpClientConnectionManager connectionManager;
+        try {
+            connectionManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor());
+        } catch (IOReactorException e) {
+            throw new UncheckedIOException("Could not create async http connection pool " + key, e);
+        }
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+
+        final RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(getAsyncSetting(target, country, "connect.timeout.millis", 2000))
+                .setSocketTimeout(getAsyncSetting(target, country, "read.timeout.millis", 5000))
+                .setConnectionRequestTimeout(getAsyncSetting(target, country, "pool.wait.millis", 1000))
+                .build();
+
+        final int adaptivePercent = isDefault ? 0 : getSetting(target, country, "read.timeout.adaptive.percent", 0);
+        final int minReadTimeout = isDefault ? 0 : getSetting(target, country, "read.timeout.min.millis", 250);
+
+        final CloseableHttpAsyncClient httpClient = HttpAsyncClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .build();
+
+        log.info("Created async http connection pool {} with maxConnections={} adaptiveReadTimeoutPercent={} {}",
+                key, maxConnections, adaptivePercent, requestConfig);
+        return new AsyncPool(connectionManager, httpClient, requestConfig, adaptivePercent <= 0 ? null
+                : () -> adaptiveReadTimeout(key, requestConfig.getSocketTimeout(), minReadTimeout, adaptivePercent));
+    }
+
+    private int adaptiveReadTimeout(String key, int maxReadTimeout, int minReadTimeout, int adaptivePercent) {
+        final long p99 = getLatencies(key).getPercentileMillis(99d);
+        if (p99 < 0) {
+            return maxReadTimeout;
+        }
+        return (int) Math.max(Math.min(p99 * adaptivePercent / 100, maxReadTimeout), minReadTimeout);
+    }
+
+    /**
+     * Reads e.g. er.adapter.http.read.timeout.millis for the opco, or http.read.timeout.millis for the default pool.
+     */
+    private int getSetting(String target, String country, String setting, int defaultValue) {
+        if (Objects.isNull(country)) {
+            return propertiesAccessor.getPropertyAsInt("http." + setting, defaultValue);
+        }
+        final String value = propertiesAccessor.getPropertyForOpco(target + ".http." + setting, country,
+                String.valueOf(defaultValue));
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NullPointerException | NumberFormatException e) {
+            log.warn("Invalid value {} for {}.http.{} for opco {}, using {}", value, target, setting, country, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Reads e.g. erif.http.async.read.timeout.millis for the opco, else the setting of its blocking pool,
+     * or http.async.read.timeout.millis for the default pool.
+     */
+    private int getAsyncSetting(String target, String country, String setting, int defaultValue) {
+        return getSetting(target, country, "async." + setting,
+                Objects.isNull(country) ? defaultValue : getSetting(target, country, setting, defaultValue));
+    }
+
+    /**
+     * The context to send a request with, where its read timeout is adaptive or it is made for a request with a
+     * RequestDeadline, else null for the request config of the client.
+     */
+    private static HttpContext createHttpContext(RequestConfig requestConfig, Supplier<Integer> readTimeout) {
+        final RequestDeadline deadline = RequestDeadline.current();
+        if (Objects.isNull(readTimeout) && !deadline.isBounded()) {
+            return null;
+        }
+        final HttpClientContext context = HttpClientContext.create();
+        context.setRequestConfig(RequestConfig.copy(requestConfig)
+                .setConnectTimeout(deadline.cap(requestConfig.getConnectTimeout()))
+                .setSocketTimeout(deadline.cap(Objects.isNull(readTimeout)
+                        ? requestConfig.getSocketTimeout() : readTimeout.get()))
+                .setConnectionRequestTimeout(deadline.cap(requestConfig.getConnectionRequestTimeout()))
+                .build());
+        return context;
+    }
+
+    private static final class Pool {
+
+        private final PoolingHttpClientConnectionManager connectionManager;
+        private final CloseableHttpClient httpClient;
+        private final RequestConfig requestConfig;
+        private final Supplier<Integer> readTimeout;
+        private final HttpComponentsClientHttpRequestFactory requestFactory;
+
+        /**
+         * Requests are sent with the read timeout given by readTimeout, if any, else that of the requestConfig.
+         */
+        private Pool(PoolingHttpClientConnectionManager connectionManager, CloseableHttpClient httpClient,
+                     RequestConfig requestConfig, Supplier<Integer> readTimeout) {
+            this.connectionManager = connectionManager;
+            this.httpClient = httpClient;
+            this.requestConfig = requestConfig;
+            this.readTimeout = readTimeout;
+            this.requestFactory = new HttpComponentsClientHttpRequestFactory(httpClient) {
+                @Override
+                protected HttpContext createHttpContext(HttpMethod httpMethod, URI uri) {
+                    return OpcoHttpTransport.createHttpContext(requestConfig, readTimeout);
+                }
+            };
+        }
+
+        private int getReadTimeoutMillis() {
+            return Objects.isNull(readTimeout) ? requestConfig.getSocketTimeout() : readTimeout.get();
+        }
+
+        private boolean isSaturated() {
+            return OpcoHttpTransport.isSaturated(connectionManager.getTotalStats());
+        }
+    }
+
+    private static final class AsyncPool {
+
+        private final PoolingNHttpClientConnectionManager connectionManager;
+        private final CloseableHttpAsyncClient httpClient;
+        private final HttpComponentsAsyncClientHttpRequestFactory requestFactory;
+
+        /**
+         * Requests are sent as by Pool, the client being started by the request factory when first used.
+         */
+        private AsyncPool(PoolingNHttpClientConnectionManager connectionManager, CloseableHttpAsyncClient httpClient,
+                          RequestConfig requestConfig, Supplier<Integer> readTimeout) {
+            this.connectionManager = connectionManager;
+            this.httpClient = httpClient;
+            this.requestFactory = new HttpComponentsAsyncClientHttpRequestFactory(httpClient) {
+                @Override
+                protected HttpContext createHttpContext(HttpMethod httpMethod, URI uri) {
+                    return OpcoHttpTransport.createHttpContext(requestConfig, readTimeout);
+                }
+            };
+        }
+    }
+
+    private final class RoutingRequestFactory implements ClientHttpRequestFactory {
+
+        @Override
+        public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) throws IOException {
+            final String key = Objects.isNull(currentPool.get()) ? DEFAULT_POOL : currentPool.get();
+            final Pool pool = getPool(key);
+            if (pool.isSaturated()) {
+                log.warn("Http connection pool {} is saturated: {}", key, pool.connectionManager.getTotalStats());
+            }
+            return pool.requestFactory.createRequest(uri, httpMethod);
+        }
+    }
+
+    private final class RoutingAsyncRequestFactory implements AsyncClientHttpRequestFactory {
+
+        @Override
+        public AsyncClientHttpRequest createAsyncRequest(URI uri, HttpMethod httpMethod) throws IOException {
+            final String key = Objects.isNull(currentPool.get()) ? DEFAULT_POOL : currentPool.get();
+            return getAsyncPool(key).requestFactory.createAsyncRequest(uri, httpMethod);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.vodafone.charging.accountservice.client;
+
+import com.vodafone.charging.accountservice.exception.ExternalServiceException;
+import com.vodafone.charging.properties.PropertiesAccessor;
+import com.vodafone.charging.ulf.RequestDeadline;
+import com.vodafone.charging.ulf.UlfContext;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Hedges idempotent calls to a dependency for opcos where it is enabled, e.g. erif.hedge.enabled.gb: when the call has
+ * taken longer than the recent p95 latency of the dependency for the opco, as tracked by OpcoHttpTransport, the same
+ * call is made again and whichever completes first is used.  The slower call is left to complete or time out.
+ * Hedges are limited by a budget growing by hedge.budget.percent of a hedge with each call, up to ten saved, so a
+ * slow dependency gets little more than that percentage of calls in extra load.  Until enough calls have been made
+ * to know the latency, calls are not hedged, nor are they once the RequestDeadline of the call has passed.
+ */
+@Component
+@ManagedResource(objectName = "com.vodafone.charging.accountservice:name=OpcoRequestHedger")
+@Slf4j
+public class OpcoRequestHedger {
+
+    //hedges that can be saved up from quiet periods, in hundredths of a hedge
+    private static final long MAX_BUDGET = 1000L;
+
+    private final PropertiesAccessor propertiesAccessor;
+    private final OpcoHttpTransport opcoHttpTransport;
+    private final Executor executor;
+    private final Map<String, Hedges> hedges = new ConcurrentHashMap<>();
+
+    @Autowired
+    public OpcoRequestHedger(PropertiesAccessor propertiesAccessor, OpcoHttpTransport opcoHttpTransport,
+                             @Qualifier("hedgedCallExecutor") Executor executor) {
+        this.propertiesAccessor = propertiesAccessor;
+        this.opcoHttpTransport = opcoHttpTransport;
+        this.executor = executor;
+    }
+
+    public <T> T call(@NonNull final String dependency, @NonNull final String country, @NonNull final Supplier<T> call) {
+        if (!Boolean.parseBoolean(propertiesAccessor.getPropertyForOpco(dependency + ".hedge.enabled", country, "false"))) {
+            return call.get();
+        }
+        final Hedges opcoHedges = hedges.computeIfAbsent(dependency + "." + country,
+                key -> new Hedges(getSetting(dependency, country, "budget.percent", 5)));
+        opcoHedges.calls.increment();
+        opcoHedges.deposit();
+
+        final long delayMillis = opcoHttpTransport.getLatencyMillis(dependency, country,
+                getSetting(dependency, country, "percentile", 95));
+        if (delayMillis < 0) {
+            return call.get();
+        }
+
+        final HedgedCall<T> hedgedCall = new HedgedCall<>(UlfContext.propagate(call), opcoHedges);
+        if (!hedgedCall.start(false)) {
+            return call.get();
+        }
+        try {
+            return hedgedCall.result.get(delayMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            if (!hedgedCall.result.isDone() && !RequestDeadline.current().isExpired() && opcoHedges.withdraw()) {
+                opcoHedges.hedged.increment();
+                hedgedCall.start(true);
+            }
+            return await(hedgedCall.result);
+        } catch (InterruptedException | ExecutionException e) {
+            return rethrow(e);
+        }
+    }
+
+    /**
+     * Calls, hedged calls and calls won by the hedge for each dependency and opco, keyed e.g. erif.gb.
+     */
+    @ManagedAttribute(description = "Calls, hedges and hedges won for each dependency and opco")
+    public Map<String, String> getStats() {
+        final Map<String, String> stats = new TreeMap<>();
+        hedges.forEach((key, opcoHedges) -> stats.put(key, opcoHedges.toString()));
+        return stats;
+    }
+
+    public long getHedgedCalls(@NonNull final String dependency, @NonNull final String country) {
+        final Hedges opcoHedges = hedges.get(dependency + "." + country);
+        return Objects.isNull(opcoHedges) ? 0L : opcoHedges.hedged.sum();
+    }
+
+    private static <T> T await(CompletableFuture<T> result) {
+        try {
+            return result.get();
+        } catch (InterruptedException | ExecutionException e) {
+            return rethrow(e);
+        }
+    }
+
+    private static <T> T rethrow(Exception e) {
+        if (e instanceof InterruptedException) {
+            Thread.currentThread().interrupt();
+            throw new ExternalServiceException("Interrupted waiting for external service", e);
+        }
+        final Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        throw new ExternalServiceException("Unexpected Exception", cause);
+    }
+
+    /**
+     * Reads e.g. erif.hedge.budget.percent for the opco.
+     */
+    private int getSetting(String dependency, String country, String setting, int defaultValue) {
+        final String value = propertiesAccessor.getPropertyForOpco(dependency + ".hedge." + setting, country,
+                String.valueOf(defaultValue));
+        if (Objects.isNull(value)) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            log.warn("Invalid value {} for {}.hedge.{} for opco {}, using {}", value, dependency, setting, country, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * The first attempt to succeed completes the result.  If every attempt fails it completes with the first failure.
+     */
+    private final class HedgedCall<T> {
+
+        private final Supplier<T> call;
+        private final Hedges opcoHedges;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        private HedgedCall(Supplier<T> call, Hedges opcoHedges) {
+            this.call = call;
+            this.opcoHedges = opcoHedges;
+        }
+
+        private boolean start(boolean hedge) {
+            outstanding.incrementAndGet();
+            try {
+                executor.execute(() -> attempt(hedge));
+                return true;
+            } catch (RejectedExecutionException e) {
+                log.warn("No thread free to make hedged call: {}", e.getMessage());
+                failed(e);
+                return false;
+            }
+        }
+
+        private void attempt(boolean hedge) {
+            try {
+                if (result.complete(call.get()) && hedge) {
+                    opcoHedges.won.increment();
+                }
+            } catch (RuntimeException | Error e) {
+                failed(e);
+            }
+        }
+
+        private void failed(Throwable e) {
+            failure.compareAndSet(null, e);
+            if (outstanding.decrementAndGet() == 0) {
+                result.completeExceptionally(failure.get());
+            }
+        }
+    }
+
+    /**
+     * Each call adds budget.percent hundredths of a hedge to the budget, up to MAX_BUDGET, and each hedge takes one.
+     */
+    private static final class Hedges {
+
+        private final long deposit;
+        private final AtomicLong budget = new AtomicLong(MAX_BUDGET);
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder hedged = new LongAdder();
+        private final LongAdder won = new LongAdder();
+
+        private Hedges(int budgetPercent) {
+            this.deposit = Math.max(budgetPercent, 0);
+        }
+
+        private void deposit() {
+            budget.getAndUpdate(current -> Math.min(current + deposit, MAX_BUDGET));
+        }
+
+        private boolean withdraw() {
+            long current;
+            do {
+                current = budget.get();
+                if (current < 100L) {
+                    return false;
+                }
+            } while (!budget.compareAndSet(current, current - 100L));
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "{calls=" + calls.sum() + ", hedged=" + hedged.sum() + ", won=" + won.sum() + '}';
+        }
+    }
+}
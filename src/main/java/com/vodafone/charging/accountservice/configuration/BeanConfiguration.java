@@ -9,22 +9,33 @@ import com.fasterxml.jackson.databind.util.ISO8601DateFormat;
 import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.fasterxml.jackson.module.paramnames.ParameterNamesModule;
+import com.vodafone.charging.accountservice.client.OpcoHttpTransport;
+import com.vodafone.charging.accountservice.domain.Money;
 import com.vodafone.charging.accountservice.service.ERDateCalculator;
+import com.vodafone.charging.properties.PropertiesAccessor;
+import com.vodafone.charging.ulf.ERIFAsyncClientHttpRequestInterceptor;
 import com.vodafone.charging.ulf.ERIFClientHttpRequestInterceptor;
 import com.vodafone.charging.ulf.LoggingFilter;
+import com.vodafone.charging.ulf.RequestDeadlineFilter;
 import com.vodafone.charging.ulf.UlfLogger;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.convert.ReadingConverter;
+import org.springframework.data.convert.WritingConverter;
+import org.springframework.data.mongodb.core.convert.CustomConversions;
 import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.client.AsyncRestTemplate;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
 
 import javax.servlet.Filter;
-import java.math.BigDecimal;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.TimeZone;
@@ -35,8 +46,6 @@ import java.util.TimeZone;
 @Configuration
 public class BeanConfiguration extends WebMvcConfigurerAdapter {
 
-    private static final int DECIMAL_SCALE = 2;
-
     @Bean
     @Primary
     public ObjectMapper objectMapper() {
@@ -61,15 +70,70 @@ public class BeanConfiguration extends WebMvcConfigurerAdapter {
     }
 
     /**
-     * configures ERIFClientHttpRequestInterceptor for logging request/responses to/from ERIF
+     * configures ERIFClientHttpRequestInterceptor for logging request/responses to/from ERIF,
+     * sending requests through a connection pool per target and opco
      */
     @Bean
-    public RestTemplate restTemplate(RestTemplateBuilder restTemplateBuilder, UlfLogger ulfLogger) {
-        RestTemplate restTemplate = restTemplateBuilder.build();
+    public RestTemplate restTemplate(RestTemplateBuilder restTemplateBuilder, UlfLogger ulfLogger,
+                                     OpcoHttpTransport opcoHttpTransport) {
+        RestTemplate restTemplate = restTemplateBuilder.requestFactory(opcoHttpTransport.getRequestFactory()).build();
         restTemplate.setInterceptors(Collections.singletonList(new ERIFClientHttpRequestInterceptor(ulfLogger)));
         return restTemplate;
     }
 
+    /**
+     * non-blocking http client for the async pipeline, so a slow ERIF holds a connection but no thread.
+     * Requests go through the async pool of the opco they are made for, see OpcoHttpTransport.callAsync,
+     * and it shares the message converters and error handler of the RestTemplate
+     */
+    @Bean
+    public AsyncRestTemplate asyncRestTemplate(OpcoHttpTransport opcoHttpTransport, RestTemplate restTemplate,
+                                               UlfLogger ulfLogger) {
+        AsyncRestTemplate asyncRestTemplate =
+                new AsyncRestTemplate(opcoHttpTransport.getAsyncRequestFactory(), restTemplate);
+        asyncRestTemplate.setInterceptors(Collections.singletonList(new ERIFAsyncClientHttpRequestInterceptor(ulfLogger)));
+        return asyncRestTemplate;
+    }
+
+    /**
+     * runs the blocking steps of the async pipeline, e.g. Mongo, off the request threads
+     */
+    @Bean(name = "asyncPipelineExecutor")
+    public ThreadPoolTaskExecutor asyncPipelineExecutor(PropertiesAccessor propertiesAccessor) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(propertiesAccessor.getPropertyAsInt("async.pipeline.pool.size", 50));
+        executor.setMaxPoolSize(propertiesAccessor.getPropertyAsInt("async.pipeline.pool.size", 50));
+        executor.setQueueCapacity(propertiesAccessor.getPropertyAsInt("async.pipeline.queue.capacity", 10000));
+        executor.setThreadNamePrefix("async-pipeline-");
+        return executor;
+    }
+
+    /**
+     * validates the chargingIds of bulk enrichment jobs, each opco's share limited by BulkEnrichmentService
+     */
+    @Bean(name = "bulkEnrichmentExecutor")
+    public ThreadPoolTaskExecutor bulkEnrichmentExecutor(PropertiesAccessor propertiesAccessor) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(propertiesAccessor.getPropertyAsInt("bulk.enrichment.pool.size", 32));
+        executor.setMaxPoolSize(propertiesAccessor.getPropertyAsInt("bulk.enrichment.pool.size", 32));
+        executor.setQueueCapacity(propertiesAccessor.getPropertyAsInt("bulk.enrichment.queue.capacity", 10000));
+        executor.setThreadNamePrefix("bulk-enrichment-");
+        return executor;
+    }
+
+    /**
+     * makes hedged calls to ER and ERIF, with no queue so that calls are made unhedged when no thread is free
+     */
+    @Bean(name = "hedgedCallExecutor")
+    public ThreadPoolTaskExecutor hedgedCallExecutor(PropertiesAccessor propertiesAccessor) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(propertiesAccessor.getPropertyAsInt("hedged.call.core.pool.size", 20));
+        executor.setMaxPoolSize(propertiesAccessor.getPropertyAsInt("hedged.call.max.pool.size", 200));
+        executor.setQueueCapacity(0);
+        executor.setThreadNamePrefix("hedged-call-");
+        return executor;
+    }
+
 
     @Override
     public void configureMessageConverters(List<HttpMessageConverter<?>> messageConverters) {
@@ -78,9 +142,16 @@ public class BeanConfiguration extends WebMvcConfigurerAdapter {
     }
 
     @Bean
-    public BigDecimal transactionAmount() {
-        BigDecimal decimal = BigDecimal.ZERO;
-        return decimal.setScale(DECIMAL_SCALE, BigDecimal.ROUND_HALF_UP);
+    public Money transactionAmount() {
+        return Money.ZERO;
+    }
+
+    /**
+     * Money is stored in Mongo as a decimal number, as the Double spend limits were, so existing documents still read.
+     */
+    @Bean
+    public CustomConversions customConversions() {
+        return new CustomConversions(Arrays.asList(MoneyToDoubleConverter.INSTANCE, DoubleToMoneyConverter.INSTANCE));
     }
 
     @Bean
@@ -93,6 +164,19 @@ public class BeanConfiguration extends WebMvcConfigurerAdapter {
         return registration;
     }
 
+    /**
+     * every endpoint is filtered, so each request gets its RequestDeadline
+     */
+    @Bean
+    public FilterRegistrationBean requestDeadlineFilterRegistration(PropertiesAccessor propertiesAccessor){
+        FilterRegistrationBean registration = new FilterRegistrationBean();
+        registration.setFilter(new RequestDeadlineFilter(propertiesAccessor));
+        registration.addUrlPatterns("/accounts", "/accounts/*");
+        registration.setName("requestDeadlineFilter");
+        registration.setOrder(2);
+        return registration;
+    }
+
     @Bean
     public TimeZone timeZone() {
         return TimeZone.getTimeZone("CET");
@@ -113,5 +197,25 @@ public class BeanConfiguration extends WebMvcConfigurerAdapter {
         return new LoggingFilter(ulfLogger);
     }
 
+    @WritingConverter
+    enum MoneyToDoubleConverter implements Converter<Money, Double> {
+        INSTANCE;
+
+        @Override
+        public Double convert(Money source) {
+            return source.doubleValue();
+        }
+    }
+
+    @ReadingConverter
+    enum DoubleToMoneyConverter implements Converter<Double, Money> {
+        INSTANCE;
+
+        @Override
+        public Money convert(Double source) {
+            return Money.of(source);
+        }
+    }
+
 
 }
@@ -7,6 +7,8 @@ import com.vodafone.charging.accountservice.exception.ApplicationLogicException;
 import com.vodafone.charging.accountservice.exception.MethodArgumentValidationException;
 import com.vodafone.charging.accountservice.service.ServiceCallSupplier;
 import com.vodafone.charging.accountservice.service.AccountService;
+import com.vodafone.charging.accountservice.service.BulkEnrichmentService;
+import com.vodafone.charging.accountservice.service.SpendHeadroomService;
 import com.vodafone.charging.accountservice.service.SpendLimitService;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
@@ -19,16 +21,22 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 import javax.ws.rs.HttpMethod;
+import java.io.IOException;
 import java.net.URI;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static org.apache.logging.log4j.util.Strings.isNotEmpty;
 import static org.springframework.http.MediaType.APPLICATION_JSON_UTF8_VALUE;
 import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+import static org.springframework.web.bind.annotation.RequestMethod.DELETE;
 import static org.springframework.web.bind.annotation.RequestMethod.GET;
 import static org.springframework.web.bind.annotation.RequestMethod.POST;
 
@@ -41,17 +49,25 @@ import static org.springframework.web.bind.annotation.RequestMethod.POST;
 @Slf4j
 public class AccountServiceController {
 
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
     private AccountService accountService;
     private SpendLimitService spendLimitService;
+    private SpendHeadroomService spendHeadroomService;
     private ServiceCallSupplier serviceCallSupplier;
+    private BulkEnrichmentService bulkEnrichmentService;
 
     @Autowired
     public AccountServiceController(AccountService accountService,
                                     SpendLimitService spendLimitService,
-                                    ServiceCallSupplier serviceCallSupplier) {
+                                    SpendHeadroomService spendHeadroomService,
+                                    ServiceCallSupplier serviceCallSupplier,
+                                    BulkEnrichmentService bulkEnrichmentService) {
         this.accountService = accountService;
         this.spendLimitService = spendLimitService;
+        this.spendHeadroomService = spendHeadroomService;
         this.serviceCallSupplier = serviceCallSupplier;
+        this.bulkEnrichmentService = bulkEnrichmentService;
     }
 
     @ApiResponses({@ApiResponse(code = 500, message = "Internal Server Error", response = AccountServiceError.class),
@@ -72,6 +88,44 @@ public class AccountServiceController {
         return ResponseEntity.ok(accountInfo);
     }
 
+    @ApiResponses({@ApiResponse(code = 500, message = "Internal Server Error", response = AccountServiceError.class),
+            @ApiResponse(code = 400, message = "Bad Request", response = AccountServiceError.class)
+    })
+    @ApiOperation(value = "Obtain enriched charging account information asynchronously",
+            notes = "As enrichAccountData, but no request thread is held while the IF is called or the Account saved.  ",
+            response = EnrichedAccountInfo.class, consumes = MediaType.APPLICATION_JSON_UTF8_VALUE, produces = MediaType.APPLICATION_JSON_UTF8_VALUE,
+            httpMethod = javax.ws.rs.HttpMethod.POST, nickname = "enrichAccountDataAsync")
+
+    @RequestMapping(path = "/async", method = POST, consumes = APPLICATION_JSON_UTF8_VALUE,
+            produces = {APPLICATION_JSON_UTF8_VALUE, APPLICATION_JSON_VALUE})
+    public CompletableFuture<ResponseEntity<EnrichedAccountInfo>> enrichAccountDataAsync(@RequestHeader HttpHeaders headers,
+                                                                                         @Valid @RequestBody ContextData contextData) {
+        this.checkContextData(contextData);
+        return serviceCallSupplier.callAsync(() ->
+                accountService.enrichAccountDataAsync(contextData).thenApply(ResponseEntity::ok));
+    }
+
+    @ApiResponses({@ApiResponse(code = 500, message = "Internal Server Error", response = AccountServiceError.class),
+            @ApiResponse(code = 400, message = "Bad Request", response = AccountServiceError.class)
+    })
+    @ApiOperation(value = "Obtain enriched charging account information in bulk",
+            notes = "Validates each ContextData of a stream, one per line, creating or updating its Account and streaming back a line for each in the order they complete, with checkpoint lines to resume from.  " +
+                    "A job given a jobId resumes from its last checkpoint when sent again.  ",
+            response = BulkEnrichmentResult.class, responseContainer = "List", consumes = APPLICATION_NDJSON_VALUE, produces = APPLICATION_NDJSON_VALUE,
+            httpMethod = javax.ws.rs.HttpMethod.POST, nickname = "enrichAccountsData")
+
+    @RequestMapping(path = "/bulk", method = POST, consumes = APPLICATION_NDJSON_VALUE, produces = APPLICATION_NDJSON_VALUE)
+    public void enrichAccountsData(@RequestParam(required = false) String jobId,
+                                   @RequestParam(defaultValue = "0") long fromLine,
+                                   HttpServletRequest request,
+                                   HttpServletResponse response) throws IOException {
+        if (fromLine < 0) {
+            throw new MethodArgumentValidationException("fromLine cannot be negative but was " + fromLine);
+        }
+        response.setContentType(APPLICATION_NDJSON_VALUE);
+        bulkEnrichmentService.enrich(request.getInputStream(), response.getOutputStream(), jobId, fromLine);
+    }
+
     @ApiResponses({@ApiResponse(code = 500, message = "Internal Server Error", response = AccountServiceError.class),
             @ApiResponse(code = 400, message = "Bad Request", response = AccountServiceError.class)})
     @ApiOperation(value = "Get Account",
@@ -153,6 +207,22 @@ public class AccountServiceController {
                 .body(account);
     }
 
+    @ApiResponses({@ApiResponse(code = 500, message = "Internal Server Error", response = AccountServiceError.class),
+            @ApiResponse(code = 400, message = "Bad Request", response = AccountServiceError.class)
+    })
+    @ApiOperation(value = "Get the remaining spend allowance for an Account",
+            notes = "Get the spend headroom for each spend limit of an Account, read from recent spend totals without calling ER",
+            response = SpendLimitHeadroom.class, responseContainer = "List", produces = MediaType.APPLICATION_JSON_UTF8_VALUE,
+            httpMethod = HttpMethod.GET, nickname = "getSpendLimitHeadroom")
+
+    @RequestMapping(path = "/{accountId}/profile/spendlimits/headroom", method = GET,
+            produces = {APPLICATION_JSON_UTF8_VALUE, APPLICATION_JSON_VALUE})
+    public ResponseEntity<List<SpendLimitHeadroom>> getSpendLimitHeadroom(@PathVariable String accountId) {
+        final List<SpendLimitHeadroom> headroom = serviceCallSupplier.call(() ->
+                spendHeadroomService.getHeadroom(accountId)).get();
+
+        return ResponseEntity.ok(headroom);
+    }
 
     @ApiResponses({@ApiResponse(code = 500, message = "Internal Server Error", response = AccountServiceError.class),
             @ApiResponse(code = 400, message = "Bad Request", response = AccountServiceError.class),
@@ -174,6 +244,73 @@ public class AccountServiceController {
         return ResponseEntity.ok(paymentApproval);
     }
 
+    @ApiResponses({@ApiResponse(code = 500, message = "Internal Server Error", response = AccountServiceError.class),
+            @ApiResponse(code = 400, message = "Bad Request", response = AccountServiceError.class),
+            @ApiResponse(code = 502, message = "Bad Gateway", response = AccountServiceError.class)
+    })
+    @ApiOperation(value = "Obtain approval for a particular payment asynchronously",
+            notes = "As approvePayment, but the approval runs off the request thread. It is not non-blocking: "
+                    + "the approval still blocks a thread of the async pipeline pool while ER and Mongo are called, "
+                    + "so this only frees the request thread",
+            response = PaymentApproval.class, produces = MediaType.APPLICATION_JSON_UTF8_VALUE,
+            httpMethod = HttpMethod.POST, nickname = "approvePaymentAsync")
+
+    @RequestMapping(path = "/{accountId}/profile/transactions/payments/async", method = POST,
+            consumes = APPLICATION_JSON_UTF8_VALUE,
+            produces = {APPLICATION_JSON_UTF8_VALUE, APPLICATION_JSON_VALUE})
+    public CompletableFuture<ResponseEntity<PaymentApproval>> approvePaymentAsync(@PathVariable String accountId,
+                                                                                  @Valid @RequestBody PaymentContext paymentContext) {
+        return serviceCallSupplier.callAsync(() ->
+                spendLimitService.approvePaymentAsync(accountId, paymentContext).thenApply(ResponseEntity::ok));
+    }
+
+    @ApiResponses({@ApiResponse(code = 500, message = "Internal Server Error", response = AccountServiceError.class),
+            @ApiResponse(code = 400, message = "Bad Request", response = AccountServiceError.class)
+    })
+    @ApiOperation(value = "Confirm an approved payment",
+            notes = "Release the spend reserved for an approved payment once it has been charged",
+            produces = MediaType.APPLICATION_JSON_UTF8_VALUE,
+            httpMethod = HttpMethod.DELETE, nickname = "confirmPayment")
+
+    @RequestMapping(path = "/{accountId}/profile/transactions/reservations/{reservationId}", method = DELETE,
+            produces = {APPLICATION_JSON_UTF8_VALUE, APPLICATION_JSON_VALUE})
+    public ResponseEntity<Void> confirmPayment(@PathVariable String accountId, @PathVariable String reservationId) {
+        serviceCallSupplier.call(() -> spendLimitService.confirmPayment(accountId, reservationId)).get();
+
+        return ResponseEntity.noContent().build();
+    }
+
+    @ApiResponses({@ApiResponse(code = 500, message = "Internal Server Error", response = AccountServiceError.class),
+            @ApiResponse(code = 400, message = "Bad Request", response = AccountServiceError.class)
+    })
+    @ApiOperation(value = "Obtain approvals for a batch of payments",
+            notes = "Approve a list of payment transactions across one or more accounts, returning an approval for each in request order",
+            response = PaymentApproval.class, responseContainer = "List", produces = MediaType.APPLICATION_JSON_UTF8_VALUE,
+            httpMethod = HttpMethod.POST, nickname = "approvePayments")
+
+    @RequestMapping(path = "/payments/approvals", method = POST,
+            consumes = APPLICATION_JSON_UTF8_VALUE,
+            produces = {APPLICATION_JSON_UTF8_VALUE, APPLICATION_JSON_VALUE})
+    public ResponseEntity<List<PaymentApproval>> approvePayments(@Valid @RequestBody List<PaymentApprovalRequest> requests) {
+        this.checkPaymentApprovalRequests(requests);
+        final List<PaymentApproval> paymentApprovals = serviceCallSupplier.call(() ->
+                spendLimitService.approvePayments(requests)).get();
+
+        return ResponseEntity.ok(paymentApprovals);
+    }
+
+    public void checkPaymentApprovalRequests(final List<PaymentApprovalRequest> requests) {
+        try {
+            for (PaymentApprovalRequest request : requests) {
+                checkArgument(Objects.nonNull(request), "payment approval request is compulsory but was null");
+                checkArgument(isNotEmpty(request.getAccountId()), "accountId is compulsory but was empty");
+                checkArgument(Objects.nonNull(request.getPaymentContext()), "paymentContext is compulsory but was null");
+            }
+        } catch (IllegalArgumentException iae) {
+            throw new MethodArgumentValidationException(iae.getMessage(), iae);
+        }
+    }
+
     /*
     jsr303 Validation does not appear to work for the ChargingId object within contextInfo.
     Hence this is manually checked here.
@@ -75,6 +75,22 @@ public class AccountServiceControllerAdvice extends ResponseEntityExceptionHandl
 
     }
 
+    /**
+     * A deadline passed is not a failure of the external system, so is not reported as one even though it is an
+     * ExternalServiceException.
+     */
+    @ExceptionHandler(RequestDeadlineExceededException.class)
+    @ResponseBody
+    public ResponseEntity<AccountServiceError> handleRequestDeadlineExceededException(HttpServletRequest request,
+                                                                                      RequestDeadlineExceededException ex) {
+        log.warn("Handling RequestDeadlineExceededException with message: {}", ex.getMessage());
+        return new ResponseEntity<>(AccountServiceError.builder()
+                .status(REQUEST_DEADLINE_EXCEEDED_ERROR.status().value())
+                .errorId(REQUEST_DEADLINE_EXCEEDED_ERROR.errorId().value())
+                .errorDescription(REQUEST_DEADLINE_EXCEEDED_ERROR.errorDesciption())
+                .build(), HttpStatus.GATEWAY_TIMEOUT);
+    }
+
     //Catch everything not mapped yet
     @ExceptionHandler(Exception.class)
     @ResponseBody
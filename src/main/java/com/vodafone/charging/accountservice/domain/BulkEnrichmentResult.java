@@ -0,0 +1,21 @@
+package com.vodafone.charging.accountservice.domain;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * A line of the output of a bulk enrichment job: the info or error for the ContextData on a line of the input,
+ * numbered from 0, or else a checkpoint, the line to resume the job from.
+ */
+@Builder
+@Getter @ToString
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BulkEnrichmentResult {
+    private Long line;
+    private ChargingId chargingId;
+    private EnrichedAccountInfo info;
+    private String error;
+    private Long checkpoint;
+}
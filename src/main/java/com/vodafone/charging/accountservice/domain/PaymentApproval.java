@@ -9,4 +9,5 @@ import lombok.ToString;
 public class PaymentApproval {
     private boolean success;
     private String description;
+    private String reservationId;
 }
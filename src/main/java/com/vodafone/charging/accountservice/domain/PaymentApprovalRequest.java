@@ -0,0 +1,22 @@
+package com.vodafone.charging.accountservice.domain;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+/**
+ * A single item of a batch payment approval request
+ */
+@Builder
+@Getter
+@ToString
+@NoArgsConstructor
+@AllArgsConstructor
+public class PaymentApprovalRequest {
+
+    private String accountId;
+    private PaymentContext paymentContext;
+
+}
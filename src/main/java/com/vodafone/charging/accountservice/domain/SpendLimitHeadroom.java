@@ -0,0 +1,24 @@
+package com.vodafone.charging.accountservice.domain;
+
+import com.vodafone.charging.accountservice.domain.enums.SpendLimitType;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * How much more an Account can spend under one of its spend limits.
+ * For a transaction limit the remaining amount is the largest single payment allowed.
+ * Spent and remaining are null for a duration limit when no recent enough spend total is held,
+ * in which case only a payment approval can say whether the limit would be breached.
+ * Partner limits apply to the spend with each partner separately, so are always reported without them.
+ */
+@Builder
+@Getter
+@ToString
+public class SpendLimitHeadroom {
+    private SpendLimitType spendLimitType;
+    private Money limit;
+    private boolean defaultLimit;
+    private Money spent;
+    private Money remaining;
+}
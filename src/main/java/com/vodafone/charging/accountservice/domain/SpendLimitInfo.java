@@ -22,10 +22,10 @@ import static com.google.common.collect.Lists.newArrayList;
 public class SpendLimitInfo {
 
     protected SpendLimitType spendLimitType;
-    protected Double limit;
+    protected Money limit;
     protected boolean active;
 
-    public SpendLimitInfo(SpendLimitType spendLimitType, Double limit, boolean active) {
+    public SpendLimitInfo(SpendLimitType spendLimitType, Money limit, boolean active) {
         this.spendLimitType = spendLimitType;
         this.limit = limit;
         this.active = active;
@@ -0,0 +1,32 @@
+package com.vodafone.charging.accountservice.domain;
+
+import com.vodafone.charging.accountservice.domain.model.Account;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+
+import java.util.function.Function;
+
+/**
+ * An Account validated with the IF and not yet saved, with the response it was validated by, so that the
+ * EnrichedAccountInfo can be given the id the Account is saved with.
+ */
+@Getter
+@ToString(exclude = "info")
+public class ValidatedAccount {
+
+    private final ContextData contextData;
+    private final Account account;
+    private final Function<String, EnrichedAccountInfo> info;
+
+    public ValidatedAccount(@NonNull ContextData contextData, @NonNull Account account,
+                            @NonNull Function<String, EnrichedAccountInfo> info) {
+        this.contextData = contextData;
+        this.account = account;
+        this.info = info;
+    }
+
+    public EnrichedAccountInfo toEnrichedAccountInfo(String accountId) {
+        return info.apply(accountId);
+    }
+}
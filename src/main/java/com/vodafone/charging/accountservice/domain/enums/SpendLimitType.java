@@ -1,8 +1,71 @@
 package com.vodafone.charging.accountservice.domain.enums;
 
+import javax.annotation.Nullable;
+import java.time.Duration;
+
 public enum SpendLimitType {
 
-    ACCOUNT_TX,
-    ACCOUNT_DAY,
-    ACCOUNT_MONTH
+    ACCOUNT_TX(false),
+    ACCOUNT_DAY(true),
+    ACCOUNT_MONTH(true),
+    ACCOUNT_ROLLING_DAY(Duration.ofHours(24)),
+    ACCOUNT_ROLLING_30_DAYS(Duration.ofDays(30)),
+    PARTNER_DAY(ACCOUNT_DAY),
+    PARTNER_MONTH(ACCOUNT_MONTH);
+
+    private final boolean duration;
+    private final Duration rollingPeriod;
+    private final SpendLimitType accountWindowType;
+
+    SpendLimitType(boolean duration) {
+        this.duration = duration;
+        this.rollingPeriod = null;
+        this.accountWindowType = null;
+    }
+
+    SpendLimitType(Duration rollingPeriod) {
+        this.duration = true;
+        this.rollingPeriod = rollingPeriod;
+        this.accountWindowType = null;
+    }
+
+    SpendLimitType(SpendLimitType accountWindowType) {
+        this.duration = true;
+        this.rollingPeriod = null;
+        this.accountWindowType = accountWindowType;
+    }
+
+    /**
+     * Duration limits are checked against the total spend within a window calculated by ERDateCalculator,
+     * other limits only against the current transaction.
+     */
+    public boolean isDuration() {
+        return duration;
+    }
+
+    /**
+     * Rolling limits cover the period up to now, e.g. the last 24 hours, rather than a calendar day or billing cycle.
+     */
+    public boolean isRolling() {
+        return rollingPeriod != null;
+    }
+
+    @Nullable
+    public Duration getRollingPeriod() {
+        return rollingPeriod;
+    }
+
+    /**
+     * Partner limits cap the spend with the partner of the current transaction, rather than all spend on the account.
+     */
+    public boolean isPartnerScoped() {
+        return accountWindowType != null;
+    }
+
+    /**
+     * The type whose window this type is totalled over, i.e. the account type for a partner type, otherwise itself.
+     */
+    public SpendLimitType getWindowType() {
+        return accountWindowType != null ? accountWindowType : this;
+    }
 }
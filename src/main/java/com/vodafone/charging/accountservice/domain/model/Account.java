@@ -1,28 +1,40 @@
 package com.vodafone.charging.accountservice.domain.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.vodafone.charging.accountservice.domain.ChargingId;
 import com.vodafone.charging.accountservice.dto.json.ERIFResponse;
 import com.vodafone.charging.accountservice.dto.xml.Response;
 import lombok.Getter;
 import lombok.ToString;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import javax.persistence.Entity;
 import java.lang.reflect.Field;
 import java.util.*;
 
+/**
+ * There is one Account for each chargingId, which validations update in place.
+ * The validationFingerprint hashes the fields the IF returns, so that a validation returning the same values as the
+ * last can be told apart without comparing them.
+ */
 @Entity
 @Getter @ToString
 @Document(collection = "account")
 public class Account {
     @Id
     private String id;
+    @Indexed(unique = true)
     private ChargingId chargingId;
     private Date lastValidate;
     private String customerType;//TODO: add constraint PRE/POST
     private Integer billingCycleDay;
     private List<Profile> profiles;
+    @JsonIgnore
+    private String validationFingerprint;
 
     public Account(){}
 
@@ -52,6 +64,7 @@ public class Account {
                 .userGroups(usergroups)
                 .build();
         this.profiles = Arrays.asList(profile);
+        this.validationFingerprint = fingerprint(customerType, billingCycleDay, usergroups);
     }
     public Account(ChargingId chargingId, ERIFResponse response, Date lastValidate){
         this.chargingId = chargingId;
@@ -62,6 +75,29 @@ public class Account {
                 .userGroups(response.getUserGroups())
                 .build();
         this.profiles = Collections.singletonList(profile);
+        this.validationFingerprint = fingerprint(customerType, billingCycleDay, response.getUserGroups());
+    }
+
+    /**
+     * Each value is hashed with its length, so no two different sets of values can run together the same way.
+     */
+    static String fingerprint(String customerType, Integer billingCycleDay, List<String> userGroups) {
+        final Hasher hasher = Hashing.murmur3_128().newHasher();
+        putString(hasher, customerType);
+        hasher.putInt(Objects.isNull(billingCycleDay) ? -1 : billingCycleDay);
+        hasher.putInt(Objects.isNull(userGroups) ? -1 : userGroups.size());
+        if (Objects.nonNull(userGroups)) {
+            userGroups.forEach(userGroup -> putString(hasher, userGroup));
+        }
+        return hasher.hash().toString();
+    }
+
+    private static void putString(Hasher hasher, String value) {
+        if (Objects.isNull(value)) {
+            hasher.putInt(-1);
+        } else {
+            hasher.putInt(value.length()).putUnencodedChars(value);
+        }
     }
 
     public Map<String, Object> asMap() throws IllegalAccessException {
@@ -0,0 +1,25 @@
+package com.vodafone.charging.accountservice.domain.model;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+/**
+ * How far a bulk enrichment job has got through its input: every line before line has been enriched, or was not
+ * valid ContextData, and its result written, so the job can be resumed from there.
+ */
+@Builder
+@Getter
+@ToString
+@Document(collection = "bulkEnrichmentCheckpoint")
+public class BulkEnrichmentCheckpoint {
+
+    @Id
+    private String jobId;
+    private long line;
+    private Date updated;
+}
@@ -0,0 +1,33 @@
+package com.vodafone.charging.accountservice.domain.model;
+
+import com.vodafone.charging.accountservice.domain.EnrichedAccountInfo;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+/**
+ * The EnrichedAccountInfo last validated with the IF for a chargingId and opco, keyed e.g. GB:msisdn:447700900000.
+ * Mongo removes each document once its expireAt has passed, so the freshness of each opco can differ.
+ */
+@Builder
+@Getter
+@ToString
+@Document(collection = "enrichedAccountInfoCache")
+public class CachedAccountInfo {
+
+    @Id
+    private String key;
+    private EnrichedAccountInfo info;
+    private Date validated;
+    @Indexed(expireAfterSeconds = 0)
+    private Date expireAt;
+
+    public boolean isFresh() {
+        return expireAt.after(new Date());
+    }
+}
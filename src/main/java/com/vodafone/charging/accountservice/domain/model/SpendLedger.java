@@ -0,0 +1,56 @@
+package com.vodafone.charging.accountservice.domain.model;
+
+import com.vodafone.charging.accountservice.domain.Money;
+import com.vodafone.charging.accountservice.domain.enums.SpendLimitType;
+import com.vodafone.charging.accountservice.dto.SpendAggregate;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Running spend totals for an Account's current day and billing cycle.
+ * Totals are held in minor units (e.g. pence) so they can be incremented atomically in Mongo.
+ * The version goes up with every write, so a rebuild from ER does not overwrite spend recorded while it was fetched.
+ */
+@Builder
+@Getter
+@ToString
+@Document(collection = "spendLedger")
+public class SpendLedger {
+
+    @Id
+    private String accountId;
+    private LocalDateTime dayStart;
+    private long dayTotal;
+    private LocalDateTime cycleStart;
+    private long cycleTotal;
+    private LocalDateTime lastReconciled;
+    private long version;
+
+    public Money getDayTotalAmount() {
+        return Money.ofMinorUnits(dayTotal);
+    }
+
+    public Money getCycleTotalAmount() {
+        return Money.ofMinorUnits(cycleTotal);
+    }
+
+    /**
+     * The ledger only holds net totals, so these are exposed as payments with no refunds.
+     */
+    public SpendAggregate toSpendAggregate() {
+        final Map<SpendLimitType, Long> totals = new EnumMap<>(SpendLimitType.class);
+        totals.put(SpendLimitType.ACCOUNT_DAY, dayTotal);
+        totals.put(SpendLimitType.ACCOUNT_MONTH, cycleTotal);
+        final Map<SpendLimitType, LocalDateTime> starts = new EnumMap<>(SpendLimitType.class);
+        starts.put(SpendLimitType.ACCOUNT_DAY, dayStart);
+        starts.put(SpendLimitType.ACCOUNT_MONTH, cycleStart);
+        return SpendAggregate.ofNetTotals(totals, starts);
+    }
+}
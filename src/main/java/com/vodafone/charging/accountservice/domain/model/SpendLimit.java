@@ -1,5 +1,6 @@
 package com.vodafone.charging.accountservice.domain.model;
 
+import com.vodafone.charging.accountservice.domain.Money;
 import com.vodafone.charging.accountservice.domain.SpendLimitInfo;
 import com.vodafone.charging.accountservice.domain.enums.SpendLimitType;
 import lombok.Builder;
@@ -18,7 +19,7 @@ import static com.google.common.collect.Lists.newArrayList;
 public class SpendLimit {
 
     private SpendLimitType spendLimitType;
-    private Double limit;
+    private Money limit;
 
     public static List<SpendLimit> fromSpendLimitsInfo(final List<SpendLimitInfo> spendLimitsInfo) {
         return newArrayList(
@@ -0,0 +1,133 @@
+package com.vodafone.charging.accountservice.dto;
+
+import com.vodafone.charging.accountservice.domain.Money;
+import com.vodafone.charging.accountservice.domain.SpendLimitInfo;
+import com.vodafone.charging.accountservice.domain.enums.SpendLimitType;
+import com.vodafone.charging.accountservice.domain.model.Account;
+import com.vodafone.charging.accountservice.domain.model.Profile;
+import com.vodafone.charging.accountservice.domain.model.SpendLimit;
+import com.vodafone.charging.accountservice.exception.RepositoryResourceNotFoundException;
+import lombok.NonNull;
+
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * The effective limit for each SpendLimitType, resolved once from an account's SpendLimits and the catalog defaults.
+ * A limit set on the account wins over a default for the same type, and the first limit of a type is the one applied.
+ */
+public final class CompiledSpendLimits {
+
+    private final Map<SpendLimitType, Money> limits;
+    private final Set<SpendLimitType> defaultTypes;
+    private final SpendLimitPlan plan;
+
+    private CompiledSpendLimits(Map<SpendLimitType, Money> limits, Set<SpendLimitType> defaultTypes) {
+        this.limits = Collections.unmodifiableMap(limits);
+        this.defaultTypes = Collections.unmodifiableSet(defaultTypes);
+        this.plan = SpendLimitPlan.of(limits.keySet());
+    }
+
+    public static CompiledSpendLimits of(@NonNull List<SpendLimit> spendLimits, @NonNull List<SpendLimit> defaultSpendLimits) {
+        final Map<SpendLimitType, Money> limits = accountLimits(spendLimits);
+        final Set<SpendLimitType> defaultTypes = EnumSet.noneOf(SpendLimitType.class);
+        for (SpendLimit limit : defaultSpendLimits) {
+            if (Objects.nonNull(limit) && resolve(limits, limit.getSpendLimitType(), limit.getLimit())) {
+                defaultTypes.add(limit.getSpendLimitType());
+            }
+        }
+        return new CompiledSpendLimits(limits, defaultTypes);
+    }
+
+    /**
+     * As {@link #of(List, List)} but reading the defaults straight from the catalog's SpendLimitInfo.
+     */
+    public static CompiledSpendLimits ofDefaultInfo(@NonNull List<SpendLimit> spendLimits,
+                                                    @NonNull List<SpendLimitInfo> defaultSpendLimitInfo) {
+        final Map<SpendLimitType, Money> limits = accountLimits(spendLimits);
+        final Set<SpendLimitType> defaultTypes = EnumSet.noneOf(SpendLimitType.class);
+        for (SpendLimitInfo info : defaultSpendLimitInfo) {
+            if (Objects.nonNull(info) && resolve(limits, info.getSpendLimitType(), info.getLimit())) {
+                defaultTypes.add(info.getSpendLimitType());
+            }
+        }
+        return new CompiledSpendLimits(limits, defaultTypes);
+    }
+
+    /**
+     * As {@link #ofDefaultInfo(List, List)} for the SpendLimits of the account's first Profile.  Compiling is cheap
+     * enough to do from the account as just read on every approval, so limits updated anywhere apply at once.
+     */
+    public static CompiledSpendLimits ofAccount(@NonNull Account account, @NonNull List<SpendLimitInfo> defaultSpendLimitInfo) {
+        final Profile profile = account.getProfiles().stream().findFirst()
+                .orElseThrow(() -> new RepositoryResourceNotFoundException("No Profile found using account id " + account.getId()));
+
+        return ofDefaultInfo(Optional.ofNullable(profile.getSpendLimits()).orElse(Collections.emptyList()),
+                defaultSpendLimitInfo);
+    }
+
+    private static Map<SpendLimitType, Money> accountLimits(List<SpendLimit> spendLimits) {
+        final Map<SpendLimitType, Money> limits = new EnumMap<>(SpendLimitType.class);
+        for (SpendLimit limit : spendLimits) {
+            if (Objects.nonNull(limit)) {
+                resolve(limits, limit.getSpendLimitType(), limit.getLimit());
+            }
+        }
+        return limits;
+    }
+
+    private static boolean resolve(Map<SpendLimitType, Money> limits, SpendLimitType type, Money limit) {
+        if (Objects.isNull(type) || Objects.isNull(limit) || limits.containsKey(type)) {
+            return false;
+        }
+        limits.put(type, limit);
+        return true;
+    }
+
+    public boolean isEmpty() {
+        return limits.isEmpty();
+    }
+
+    public boolean hasLimit(@NonNull SpendLimitType type) {
+        return limits.containsKey(type);
+    }
+
+    @Nullable
+    public Money getLimit(@NonNull SpendLimitType type) {
+        return limits.get(type);
+    }
+
+    /**
+     * The limit applied for the type, or zero if neither a limit nor a default is set.
+     */
+    public Money getAppliedLimit(@NonNull SpendLimitType type) {
+        final Money limit = limits.get(type);
+        return Objects.isNull(limit) ? Money.ZERO : limit;
+    }
+
+    /**
+     * True if the limit for the type comes from the catalog defaults rather than the account.
+     */
+    public boolean isDefault(@NonNull SpendLimitType type) {
+        return defaultTypes.contains(type);
+    }
+
+    public SpendLimitPlan getPlan() {
+        return plan;
+    }
+
+    @Override
+    public String toString() {
+        return "CompiledSpendLimits{" +
+                "limits=" + limits +
+                ", defaultTypes=" + defaultTypes +
+                '}';
+    }
+}
@@ -0,0 +1,69 @@
+package com.vodafone.charging.accountservice.dto;
+
+import lombok.NonNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Gives each distinct partnerId a dense index, so per-partner totals can be kept in primitive arrays
+ * with one entry per partner rather than one map entry per transaction.
+ */
+public final class PartnerDictionary {
+
+    private final Map<String, Integer> indexes;
+    private final List<String> partnerIds;
+
+    public PartnerDictionary() {
+        this.indexes = new HashMap<>();
+        this.partnerIds = new ArrayList<>();
+    }
+
+    private PartnerDictionary(PartnerDictionary other) {
+        this.indexes = new HashMap<>(other.indexes);
+        this.partnerIds = new ArrayList<>(other.partnerIds);
+    }
+
+    /**
+     * The index of the partner, adding it if it has not been seen before.
+     */
+    public int intern(@NonNull String partnerId) {
+        final Integer index = indexes.get(partnerId);
+        if (index != null) {
+            return index;
+        }
+        final int added = partnerIds.size();
+        indexes.put(partnerId, added);
+        partnerIds.add(partnerId);
+        return added;
+    }
+
+    /**
+     * The index of the partner, or -1 if it has not been seen.
+     */
+    public int indexOf(@NonNull String partnerId) {
+        final Integer index = indexes.get(partnerId);
+        return index == null ? -1 : index;
+    }
+
+    public String getPartnerId(int index) {
+        return partnerIds.get(index);
+    }
+
+    public int size() {
+        return partnerIds.size();
+    }
+
+    public PartnerDictionary copy() {
+        return new PartnerDictionary(this);
+    }
+
+    @Override
+    public String toString() {
+        return "PartnerDictionary{" +
+                "partnerIds=" + partnerIds +
+                '}';
+    }
+}
@@ -0,0 +1,354 @@
+package com.vodafone.charging.accountservice.dto;
+
+import com.vodafone.charging.accountservice.domain.Money;
+import com.vodafone.charging.accountservice.domain.enums.SpendLimitType;
+import com.vodafone.charging.accountservice.dto.er.ERTransaction;
+import com.vodafone.charging.accountservice.dto.er.ERTransactionType;
+import lombok.NonNull;
+
+import javax.annotation.Nullable;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Map;
+
+import static com.vodafone.charging.accountservice.service.ERDateCalculator.END_DATE_KEY;
+import static com.vodafone.charging.accountservice.service.ERDateCalculator.START_DATE_KEY;
+
+/**
+ * Payment and refund totals, in minor units, for each duration SpendLimitType window.
+ * Built in a single pass over a transaction list by an Accumulator and evaluated for every SpendLimitType.
+ * Partner scoped windows hold a total per partner instead, indexed through a PartnerDictionary.
+ */
+public final class SpendAggregate {
+
+    private static final int TYPE_COUNT = SpendLimitType.values().length;
+    private static final boolean[] PARTNER_SCOPED = partnerScoped();
+    private static final long[] NO_PARTNERS = new long[0];
+
+    private final LocalDateTime[] windowStarts;
+    private final long[] payments;
+    private final long[] refunds;
+    private final PartnerDictionary partners;
+    private final long[][] partnerPayments;
+    private final long[][] partnerRefunds;
+
+    private SpendAggregate(LocalDateTime[] windowStarts, long[] payments, long[] refunds,
+                           PartnerDictionary partners, long[][] partnerPayments, long[][] partnerRefunds) {
+        this.windowStarts = windowStarts;
+        this.payments = payments;
+        this.refunds = refunds;
+        this.partners = partners;
+        this.partnerPayments = partnerPayments;
+        this.partnerRefunds = partnerRefunds;
+    }
+
+    public boolean hasWindow(@NonNull SpendLimitType type) {
+        return windowStarts[type.ordinal()] != null;
+    }
+
+    public LocalDateTime getWindowStart(@NonNull SpendLimitType type) {
+        return windowStarts[type.ordinal()];
+    }
+
+    public long getPayments(@NonNull SpendLimitType type) {
+        return payments[type.ordinal()];
+    }
+
+    public long getRefunds(@NonNull SpendLimitType type) {
+        return refunds[type.ordinal()];
+    }
+
+    public long getNetTotal(@NonNull SpendLimitType type) {
+        return payments[type.ordinal()] - refunds[type.ordinal()];
+    }
+
+    public Money getNetTotalAmount(@NonNull SpendLimitType type) {
+        return Money.ofMinorUnits(getNetTotal(type));
+    }
+
+    /**
+     * Net spend with the partner in a partner scoped window, zero if the partner has no transactions in it.
+     */
+    public long getPartnerNetTotal(@NonNull SpendLimitType type, @NonNull String partnerId) {
+        final int partner = partners.indexOf(partnerId);
+        final long[] windowPayments = partnerPayments[type.ordinal()];
+        if (partner < 0 || windowPayments == null || partner >= windowPayments.length) {
+            return 0L;
+        }
+        return windowPayments[partner] - partnerRefunds[type.ordinal()][partner];
+    }
+
+    public Money getPartnerNetTotalAmount(@NonNull SpendLimitType type, @NonNull String partnerId) {
+        return Money.ofMinorUnits(getPartnerNetTotal(type, partnerId));
+    }
+
+    /**
+     * A copy of this aggregate with a payment added to every account window, e.g. one approved earlier in the same batch.
+     */
+    public SpendAggregate plus(@NonNull Money payment) {
+        final long[] withPayment = payments.clone();
+        for (int i = 0; i < TYPE_COUNT; i++) {
+            if (windowStarts[i] != null && !PARTNER_SCOPED[i]) {
+                withPayment[i] += payment.getMinorUnits();
+            }
+        }
+        return new SpendAggregate(windowStarts, withPayment, refunds, partners, partnerPayments, partnerRefunds);
+    }
+
+    /**
+     * As {@link #plus(Money)} and also adding the payment to the partner's windows, if it has a partner.
+     */
+    public SpendAggregate plus(@NonNull Money payment, @Nullable String partnerId) {
+        final SpendAggregate withPayment = plus(payment);
+        return partnerId == null ? withPayment : withPayment.plusPartner(partnerId, payment);
+    }
+
+    /**
+     * A copy of this aggregate with a payment added to the partner's windows only.
+     */
+    public SpendAggregate plusPartner(@NonNull String partnerId, @NonNull Money payment) {
+        PartnerDictionary withPartner = partners;
+        int partner = partners.indexOf(partnerId);
+        if (partner < 0) {
+            withPartner = partners.copy();
+            partner = withPartner.intern(partnerId);
+        }
+
+        final long[][] withPayment = partnerPayments.clone();
+        final long[][] withRefunds = partnerRefunds.clone();
+        for (int i = 0; i < TYPE_COUNT; i++) {
+            if (partnerPayments[i] != null) {
+                withPayment[i] = Arrays.copyOf(partnerPayments[i], Math.max(partnerPayments[i].length, withPartner.size()));
+                withPayment[i][partner] += payment.getMinorUnits();
+                withRefunds[i] = Arrays.copyOf(partnerRefunds[i], withPayment[i].length);
+            }
+        }
+        return new SpendAggregate(windowStarts, payments, refunds, withPartner, withPayment, withRefunds);
+    }
+
+    /**
+     * An aggregate holding only already netted totals, e.g. read back from a SpendLedger.
+     */
+    public static SpendAggregate ofNetTotals(@NonNull Map<SpendLimitType, Long> netTotals,
+                                             @NonNull Map<SpendLimitType, LocalDateTime> windowStarts) {
+        final LocalDateTime[] starts = new LocalDateTime[TYPE_COUNT];
+        final long[] payments = new long[TYPE_COUNT];
+        netTotals.forEach((type, total) -> {
+            starts[type.ordinal()] = windowStarts.get(type);
+            payments[type.ordinal()] = total;
+        });
+        return new SpendAggregate(starts, payments, new long[TYPE_COUNT],
+                new PartnerDictionary(), new long[TYPE_COUNT][], new long[TYPE_COUNT][]);
+    }
+
+    public static Accumulator accumulator(@NonNull Map<SpendLimitType, Map<String, LocalDateTime>> windows) {
+        return new Accumulator(windows);
+    }
+
+    /**
+     * Decides whether a window's total so far, with the payment being approved, breaches its limit.
+     */
+    @FunctionalInterface
+    public interface BreachCheck {
+        boolean isBreached(SpendLimitType type, Accumulator totals);
+    }
+
+    @Override
+    public String toString() {
+        return "SpendAggregate{" +
+                "windowStarts=" + Arrays.toString(windowStarts) +
+                ", payments=" + Arrays.toString(payments) +
+                ", refunds=" + Arrays.toString(refunds) +
+                ", partners=" + partners.size() +
+                '}';
+    }
+
+    private static boolean[] partnerScoped() {
+        final boolean[] partnerScoped = new boolean[TYPE_COUNT];
+        for (SpendLimitType type : SpendLimitType.values()) {
+            partnerScoped[type.ordinal()] = type.isPartnerScoped();
+        }
+        return partnerScoped;
+    }
+
+    /**
+     * Folds transactions into every window at once.  Windows are exclusive of their start and end dates, except
+     * rolling windows which include their start as a SpendIndex range does.
+     * Partner scoped windows are totalled per partner in arrays that grow with the number of distinct partners.
+     */
+    public static final class Accumulator {
+
+        private final LocalDateTime[] starts = new LocalDateTime[TYPE_COUNT];
+        private final LocalDateTime[] ends = new LocalDateTime[TYPE_COUNT];
+        private final boolean[] inclusiveStarts = new boolean[TYPE_COUNT];
+        private final long[] payments = new long[TYPE_COUNT];
+        private final long[] refunds = new long[TYPE_COUNT];
+        private final PartnerDictionary partners = new PartnerDictionary();
+        private final long[][] partnerPayments = new long[TYPE_COUNT][];
+        private final long[][] partnerRefunds = new long[TYPE_COUNT][];
+
+        private Accumulator(Map<SpendLimitType, Map<String, LocalDateTime>> windows) {
+            windows.forEach((type, dates) -> {
+                starts[type.ordinal()] = dates.get(START_DATE_KEY);
+                ends[type.ordinal()] = dates.get(END_DATE_KEY);
+                inclusiveStarts[type.ordinal()] = type.isRolling();
+                if (type.isPartnerScoped()) {
+                    partnerPayments[type.ordinal()] = new long[8];
+                    partnerRefunds[type.ordinal()] = new long[8];
+                }
+            });
+        }
+
+        public Accumulator add(@NonNull ERTransaction transaction) {
+            return add(transaction.getDateTime(), ERTransactionType.REFUND.name().equalsIgnoreCase(transaction.getType()),
+                    transaction.getAmount().getMinorUnits(), transaction.getPartnerId());
+        }
+
+        /**
+         * Folds a transaction from its fields without one being built, e.g. as read from a streamed ER response.
+         */
+        public Accumulator add(@NonNull LocalDateTime dateTime, boolean refund, long amount, @Nullable String partnerId) {
+            int partner = -1;
+
+            for (int i = 0; i < TYPE_COUNT; i++) {
+                if (isInWindow(i, dateTime)) {
+                    if (PARTNER_SCOPED[i]) {
+                        if (partnerId == null) {
+                            continue;
+                        }
+                        if (partner < 0) {
+                            partner = partners.intern(partnerId);
+                        }
+                        ensureCapacity(i, partner);
+                        if (refund) {
+                            partnerRefunds[i][partner] += amount;
+                        } else {
+                            partnerPayments[i][partner] += amount;
+                        }
+                    } else if (refund) {
+                        refunds[i] += amount;
+                    } else {
+                        payments[i] += amount;
+                    }
+                }
+            }
+            return this;
+        }
+
+        private boolean isInWindow(int type, LocalDateTime dateTime) {
+            return starts[type] != null && ends[type] != null
+                    && (dateTime.isAfter(starts[type]) || inclusiveStarts[type] && dateTime.isEqual(starts[type]))
+                    && dateTime.isBefore(ends[type]);
+        }
+
+        private void ensureCapacity(int type, int partner) {
+            if (partner >= partnerPayments[type].length) {
+                final int capacity = Math.max(partner + 1, partnerPayments[type].length * 2);
+                partnerPayments[type] = Arrays.copyOf(partnerPayments[type], capacity);
+                partnerRefunds[type] = Arrays.copyOf(partnerRefunds[type], capacity);
+            }
+        }
+
+        public Accumulator addAll(@NonNull Iterable<ERTransaction> transactions) {
+            for (ERTransaction transaction : transactions) {
+                add(transaction);
+            }
+            return this;
+        }
+
+        /**
+         * Sets the totals of an account window worked out elsewhere, e.g. a rolling window read from a SpendIndex.
+         */
+        public Accumulator addWindowTotals(@NonNull SpendLimitType type, @NonNull LocalDateTime windowStart,
+                                           long windowPayments, long windowRefunds) {
+            starts[type.ordinal()] = windowStart;
+            ends[type.ordinal()] = null;
+            payments[type.ordinal()] = windowPayments;
+            refunds[type.ordinal()] = windowRefunds;
+            return this;
+        }
+
+        /**
+         * Sets one partner's totals in a partner scoped window worked out elsewhere, e.g. summed by the ER adapter.
+         */
+        public Accumulator addPartnerWindowTotals(@NonNull SpendLimitType type, @NonNull String partnerId,
+                                                  long windowPayments, long windowRefunds) {
+            if (partnerPayments[type.ordinal()] == null) {
+                throw new IllegalArgumentException("No partner window to total for " + type);
+            }
+            final int partner = partners.intern(partnerId);
+            ensureCapacity(type.ordinal(), partner);
+            partnerPayments[type.ordinal()][partner] = windowPayments;
+            partnerRefunds[type.ordinal()][partner] = windowRefunds;
+            return this;
+        }
+
+        public boolean hasWindow(@NonNull SpendLimitType type) {
+            return starts[type.ordinal()] != null && ends[type.ordinal()] != null;
+        }
+
+        public boolean hasPartnerWindows() {
+            for (int i = 0; i < TYPE_COUNT; i++) {
+                if (partnerPayments[i] != null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * True if the time is before the type's window, so no transaction at or before it is totalled in the window.
+         */
+        public boolean isBeforeWindow(@NonNull SpendLimitType type, @NonNull LocalDateTime dateTime) {
+            final LocalDateTime start = starts[type.ordinal()];
+            return inclusiveStarts[type.ordinal()] ? dateTime.isBefore(start) : !dateTime.isAfter(start);
+        }
+
+        /**
+         * True if, with every transaction after readBackTo and perhaps some at it folded in, the first window in
+         * evaluation order to be breached is already known, so the payment would be denied for the same reason
+         * whatever the older transactions.  A window is known once readBackTo is before it, as until then older
+         * transactions in it could be refunds that bring it back within its limit.
+         */
+        public boolean isBreachCertain(@NonNull BreachCheck breachCheck, @NonNull LocalDateTime readBackTo) {
+            for (SpendLimitType type : SpendLimitType.values()) {
+                if (!hasWindow(type)) {
+                    continue;
+                }
+                if (!isBeforeWindow(type, readBackTo)) {
+                    return false;
+                }
+                if (breachCheck.isBreached(type, this)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        public long getNetTotal(@NonNull SpendLimitType type) {
+            return payments[type.ordinal()] - refunds[type.ordinal()];
+        }
+
+        public long getPartnerNetTotal(@NonNull SpendLimitType type, @NonNull String partnerId) {
+            final int partner = partners.indexOf(partnerId);
+            final long[] windowPayments = partnerPayments[type.ordinal()];
+            if (partner < 0 || windowPayments == null || partner >= windowPayments.length) {
+                return 0L;
+            }
+            return windowPayments[partner] - partnerRefunds[type.ordinal()][partner];
+        }
+
+        public SpendAggregate build() {
+            final long[][] builtPayments = new long[TYPE_COUNT][];
+            final long[][] builtRefunds = new long[TYPE_COUNT][];
+            for (int i = 0; i < TYPE_COUNT; i++) {
+                if (partnerPayments[i] != null) {
+                    builtPayments[i] = partners.size() == 0 ? NO_PARTNERS : Arrays.copyOf(partnerPayments[i], partners.size());
+                    builtRefunds[i] = partners.size() == 0 ? NO_PARTNERS : Arrays.copyOf(partnerRefunds[i], partners.size());
+                }
+            }
+            return new SpendAggregate(starts.clone(), payments.clone(), refunds.clone(),
+                    partners.copy(), builtPayments, builtRefunds);
+        }
+    }
+}
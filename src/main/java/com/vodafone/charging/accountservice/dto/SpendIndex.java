@@ -0,0 +1,131 @@
+package com.vodafone.charging.accountservice.dto;
+
+import com.vodafone.charging.accountservice.dto.er.ERTransaction;
+import com.vodafone.charging.accountservice.dto.er.ERTransactionType;
+import lombok.NonNull;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Transactions sorted by time with running payment and refund totals, in minor units, so the spend between
+ * any two times is found with two binary searches instead of a scan.  Ranges include their start and exclude their end.
+ * Used for rolling windows, which move with every request and so cannot be kept as running totals like a SpendLedger.
+ */
+public final class SpendIndex {
+
+    private final long[] times;
+    private final long[] paymentTotals;
+    private final long[] refundTotals;
+
+    private SpendIndex(long[] times, long[] paymentTotals, long[] refundTotals) {
+        this.times = times;
+        this.paymentTotals = paymentTotals;
+        this.refundTotals = refundTotals;
+    }
+
+    /**
+     * ER usually returns transactions in time order, newest or oldest first, in which case no sort is needed.
+     */
+    public static SpendIndex of(@NonNull final List<ERTransaction> transactions) {
+        final List<ERTransaction> sorted = new ArrayList<>(transactions.size());
+        for (ERTransaction transaction : transactions) {
+            if (Objects.nonNull(transaction)) {
+                sorted.add(transaction);
+            }
+        }
+
+        final int size = sorted.size();
+        final int order = order(sorted);
+        if (order == 0) {
+            sorted.sort(Comparator.comparing(ERTransaction::getDateTime));
+        }
+
+        final long[] times = new long[size];
+        final long[] paymentTotals = new long[size + 1];
+        final long[] refundTotals = new long[size + 1];
+        for (int i = 0; i < size; i++) {
+            final ERTransaction transaction = sorted.get(order < 0 ? size - 1 - i : i);
+            final long amount = transaction.getAmount().getMinorUnits();
+            final boolean refund = ERTransactionType.REFUND.name().equalsIgnoreCase(transaction.getType());
+
+            times[i] = toKey(transaction.getDateTime());
+            paymentTotals[i + 1] = paymentTotals[i] + (refund ? 0L : amount);
+            refundTotals[i + 1] = refundTotals[i] + (refund ? amount : 0L);
+        }
+        return new SpendIndex(times, paymentTotals, refundTotals);
+    }
+
+    public int size() {
+        return times.length;
+    }
+
+    public long getPayments(@NonNull LocalDateTime start, @NonNull LocalDateTime end) {
+        return rangeTotal(paymentTotals, start, end);
+    }
+
+    public long getRefunds(@NonNull LocalDateTime start, @NonNull LocalDateTime end) {
+        return rangeTotal(refundTotals, start, end);
+    }
+
+    public long getNetTotal(@NonNull LocalDateTime start, @NonNull LocalDateTime end) {
+        return getPayments(start, end) - getRefunds(start, end);
+    }
+
+    private long rangeTotal(long[] totals, LocalDateTime start, LocalDateTime end) {
+        final int from = lowerBound(toKey(start));
+        final int to = lowerBound(toKey(end));
+        return to > from ? totals[to] - totals[from] : 0L;
+    }
+
+    /**
+     * Index of the first transaction at or after the time, or size() if there is none.
+     */
+    private int lowerBound(long key) {
+        int low = 0;
+        int high = times.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (times[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * 1 if oldest first, -1 if newest first, 0 if unordered.
+     */
+    private static int order(List<ERTransaction> transactions) {
+        boolean ascending = true;
+        boolean descending = true;
+        for (int i = 1; i < transactions.size() && (ascending || descending); i++) {
+            final int compared = transactions.get(i - 1).getDateTime().compareTo(transactions.get(i).getDateTime());
+            ascending &= compared <= 0;
+            descending &= compared >= 0;
+        }
+        return ascending ? 1 : descending ? -1 : 0;
+    }
+
+    /**
+     * Microseconds on the local time line, which keeps the ordering of LocalDateTime.
+     */
+    private static long toKey(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + dateTime.getNano() / 1_000;
+    }
+
+    @Override
+    public String toString() {
+        return "SpendIndex{" +
+                "size=" + times.length +
+                ", payments=" + paymentTotals[times.length] +
+                ", refunds=" + refundTotals[times.length] +
+                '}';
+    }
+}
@@ -0,0 +1,122 @@
+package com.vodafone.charging.accountservice.dto;
+
+import com.vodafone.charging.accountservice.domain.enums.SpendLimitType;
+import lombok.NonNull;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Works out from the limited SpendLimitTypes which duration windows an approval has to total.
+ * No spend history is needed when only transaction limits apply, and only today's when the billing cycle is not limited.
+ */
+public final class SpendLimitPlan {
+
+    private final Set<SpendLimitType> durationTypes;
+
+    private SpendLimitPlan(Set<SpendLimitType> durationTypes) {
+        this.durationTypes = Collections.unmodifiableSet(durationTypes);
+    }
+
+    /**
+     * A plan totalling the duration windows among the given limited types.
+     */
+    public static SpendLimitPlan of(@NonNull Set<SpendLimitType> limitedTypes) {
+        final Set<SpendLimitType> durationTypes = EnumSet.noneOf(SpendLimitType.class);
+        for (SpendLimitType type : limitedTypes) {
+            if (type.isDuration()) {
+                durationTypes.add(type);
+            }
+        }
+        return new SpendLimitPlan(durationTypes);
+    }
+
+    /**
+     * A plan totalling every duration window, whatever limits are set.
+     */
+    public static SpendLimitPlan allDurations() {
+        return of(EnumSet.allOf(SpendLimitType.class));
+    }
+
+    /**
+     * The duration SpendLimitTypes with a limit or default limit set, in evaluation order.
+     */
+    public Set<SpendLimitType> getDurationTypes() {
+        return durationTypes;
+    }
+
+    public boolean requiresHistory() {
+        return !durationTypes.isEmpty();
+    }
+
+    public boolean requiresBillingCycle() {
+        return durationTypes.contains(SpendLimitType.ACCOUNT_MONTH);
+    }
+
+    /**
+     * Rolling windows are not kept in the SpendLedger so always need transactions from ER.
+     */
+    public boolean requiresRollingWindows() {
+        for (SpendLimitType type : durationTypes) {
+            if (type.isRolling()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Partner totals are not kept in the SpendLedger either, so also always need transactions from ER.
+     */
+    public boolean requiresPartnerTotals() {
+        for (SpendLimitType type : durationTypes) {
+            if (type.isPartnerScoped()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * True if every window in the plan is kept in the SpendLedger.
+     */
+    public boolean isCoveredByLedger() {
+        return !requiresRollingWindows() && !requiresPartnerTotals();
+    }
+
+    /**
+     * This plan without its partner scoped windows, e.g. for a payment with no partner to total them for.
+     */
+    public SpendLimitPlan withoutPartnerScoped() {
+        if (!requiresPartnerTotals()) {
+            return this;
+        }
+        final Set<SpendLimitType> accountTypes = EnumSet.noneOf(SpendLimitType.class);
+        for (SpendLimitType type : durationTypes) {
+            if (!type.isPartnerScoped()) {
+                accountTypes.add(type);
+            }
+        }
+        return new SpendLimitPlan(accountTypes);
+    }
+
+    /**
+     * True if the aggregate has totals for every window this plan needs.
+     */
+    public boolean isCoveredBy(@NonNull SpendAggregate aggregate) {
+        for (SpendLimitType type : durationTypes) {
+            if (!aggregate.hasWindow(type)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "SpendLimitPlan{" +
+                "durationTypes=" + durationTypes +
+                '}';
+    }
+}
@@ -1,5 +1,6 @@
 package com.vodafone.charging.accountservice.dto;
 
+import com.vodafone.charging.accountservice.domain.Money;
 import com.vodafone.charging.accountservice.domain.enums.SpendLimitType;
 import lombok.Builder;
 import lombok.Getter;
@@ -11,11 +12,11 @@ public class SpendLimitResult {
     private boolean success;
     private SpendLimitType failureCauseType;
     private String failureReason;
-    private double totalTransactionsValue;
-    private double appliedLimitValue;
+    private Money totalTransactionsValue;
+    private Money appliedLimitValue;
 
 
-    public static SpendLimitResult successResponse(double appliedLimitValue, double totalTransactionsValue) {
+    public static SpendLimitResult successResponse(Money appliedLimitValue, Money totalTransactionsValue) {
         return SpendLimitResult.builder()
                 .success(true)
                 .failureReason("")
@@ -1,12 +1,13 @@
 package com.vodafone.charging.accountservice.dto.client;
 
+import com.vodafone.charging.accountservice.domain.Money;
 import lombok.Builder;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.ToString;
 import org.springframework.stereotype.Component;
 
-import java.math.BigDecimal;
+import javax.annotation.Nullable;
 
 @Component
 @Builder
@@ -15,6 +16,9 @@ import java.math.BigDecimal;
 public class TransactionInfo {
 
     @NonNull
-    private BigDecimal amount;
+    private Money amount;
+
+    @Nullable
+    private String partnerId;
 
 }
@@ -0,0 +1,26 @@
+package com.vodafone.charging.accountservice.dto.er;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+import javax.annotation.Nullable;
+import java.time.LocalDateTime;
+
+/**
+ * A window the ER adapter is asked to total transactions over in an aggregate query, named after its SpendLimitType.
+ * Windows are exclusive of their toDate, and of their fromDate unless fromInclusive.
+ */
+@Builder
+@Getter
+@ToString
+public class ERAggregateWindow {
+
+    private String name;
+    private LocalDateTime fromDate;
+    private LocalDateTime toDate;
+    private boolean fromInclusive;
+    @Nullable
+    private String partnerId;
+
+}
@@ -1,11 +1,11 @@
 package com.vodafone.charging.accountservice.dto.er;
 
+import com.vodafone.charging.accountservice.domain.Money;
 import lombok.Builder;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.ToString;
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 /**
@@ -17,7 +17,7 @@ import java.time.LocalDateTime;
 @EqualsAndHashCode
 public class ERTransaction {
 
-    private BigDecimal amount;
+    private Money amount;
     private LocalDateTime dateTime;
     private String partnerId;
     private String type;
@@ -1,5 +1,6 @@
 package com.vodafone.charging.accountservice.dto.er;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.vodafone.charging.accountservice.domain.ChargingId;
 import lombok.Builder;
 import lombok.Getter;
@@ -12,9 +13,10 @@ import java.util.List;
 import java.util.Locale;
 
 /**
- * Criteria used to search Transactions from ER Core
+ * Criteria used to search Transactions from ER Core.
+ * With aggregate windows set the ER adapter is asked for the totals of each transaction type in each window instead.
  */
-@Builder
+@Builder(toBuilder = true)
 @Getter
 @Setter
 public class ERTransactionCriteria {
@@ -30,5 +32,8 @@ public class ERTransactionCriteria {
     private LocalDateTime toDate;
     @Nullable
     private Integer requiredResultSize;
+    @Nullable
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<ERAggregateWindow> aggregateWindows;
 
 }
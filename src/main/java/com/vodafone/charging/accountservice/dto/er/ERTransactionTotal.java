@@ -0,0 +1,23 @@
+package com.vodafone.charging.accountservice.dto.er;
+
+import com.vodafone.charging.accountservice.domain.Money;
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * The total of one transaction type within an ERAggregateWindow, as returned by an aggregate query to the ER adapter
+ */
+@Builder
+@Getter
+@ToString
+@EqualsAndHashCode
+public class ERTransactionTotal {
+
+    private String window;
+    private String type;
+    private Money amount;
+    private long count;
+
+}
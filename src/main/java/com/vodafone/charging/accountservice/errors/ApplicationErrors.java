@@ -13,6 +13,7 @@ public enum ApplicationErrors {
     MESSAGE_NOT_READABLE_ERROR(ERROR, SYSTEM_ERROR, "Could not read incoming message."),
     BAD_REQUEST_ERROR(ERROR, SYSTEM_ERROR, "Incorrect request parameters were passed."),
     EXTERNAL_SERVICE_ERROR(ERROR, SYSTEM_ERROR , "Error received communicating with an external system."),
+    REQUEST_DEADLINE_EXCEEDED_ERROR(ERROR, TIMEOUT_ERROR, "The request timed out before it could be completed."),
     UNKNOWN_ERROR(ERROR, SYSTEM_ERROR, "An unknown error has occurred.");
 
     private ERCoreErrorStatus status;
@@ -6,7 +6,8 @@ package com.vodafone.charging.accountservice.errors;
 public enum ERCoreErrorId {
 
     SYSTEM_ERROR("SYSTEM_ERROR"),
-    CLIENT_ERROR("CLIENT_ERROR");
+    CLIENT_ERROR("CLIENT_ERROR"),
+    TIMEOUT_ERROR("TIMEOUT_ERROR");
 
     private String value;
 
@@ -0,0 +1,15 @@
+package com.vodafone.charging.accountservice.exception;
+
+/**
+ * Work for a request skipped or cut short because the caller has stopped waiting for it.
+ */
+public class RequestDeadlineExceededException extends ExternalServiceException {
+
+    public RequestDeadlineExceededException(final String message) {
+        super(message);
+    }
+    public RequestDeadlineExceededException(final String message, final Throwable cause) {
+        super(message, cause);
+    }
+
+}
@@ -4,7 +4,7 @@ import com.vodafone.charging.accountservice.domain.ChargingId;
 import com.vodafone.charging.accountservice.domain.model.Account;
 import org.springframework.data.mongodb.repository.MongoRepository;
 
-public interface AccountRepository extends MongoRepository<Account, String>{
+public interface AccountRepository extends MongoRepository<Account, String>, AccountRepositoryCustom {
 
     Account findByChargingId(ChargingId chargingId);
 }
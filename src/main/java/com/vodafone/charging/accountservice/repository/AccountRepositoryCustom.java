@@ -0,0 +1,30 @@
+package com.vodafone.charging.accountservice.repository;
+
+import com.vodafone.charging.accountservice.domain.model.Account;
+
+import java.util.List;
+
+/**
+ * Writes to an Account which cannot be expressed as derived queries.
+ */
+public interface AccountRepositoryCustom {
+
+    /**
+     * Sets the fields the IF validates, lastValidate, customerType, billingCycleDay and the user groups of the first
+     * Profile, on the account with the chargingId of the validated Account, leaving its spend limits and history as
+     * they are.  The validated Account is inserted if there is no account with its chargingId.
+     * Where the account already has the validationFingerprint of the validated Account, its fields are unchanged and
+     * only lastValidate is set if touchUnchanged, or else nothing is written at all.
+     *
+     * @return the account as updated, inserted or found unchanged
+     */
+    Account upsertValidation(Account validated, boolean touchUnchanged);
+
+    /**
+     * As {@link #upsertValidation(Account, boolean)} for each of the validated Accounts, but with one read of the
+     * existing accounts and one bulk write for them all.
+     *
+     * @return the id of each account as updated, inserted or found unchanged, in the order of validated
+     */
+    List<String> upsertValidations(List<Account> validated, boolean touchUnchanged);
+}
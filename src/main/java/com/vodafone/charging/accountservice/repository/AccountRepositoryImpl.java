@@ -0,0 +1,170 @@
+package com.vodafone.charging.accountservice.repository;
+
+import com.mongodb.BulkWriteError;
+import com.vodafone.charging.accountservice.domain.ChargingId;
+import com.vodafone.charging.accountservice.domain.model.Account;
+import com.vodafone.charging.accountservice.domain.model.Profile;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.FindAndModifyOptions.options;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+@Slf4j
+public class AccountRepositoryImpl implements AccountRepositoryCustom {
+
+    private final MongoOperations mongoOperations;
+
+    @Autowired
+    public AccountRepositoryImpl(MongoOperations mongoOperations) {
+        this.mongoOperations = mongoOperations;
+    }
+
+    /**
+     * A changed account is updated with one findAndModify, its fingerprint compared by the query rather than read
+     * first.  Only where that matches nothing is the unchanged account looked for, its lastValidate alone set if
+     * touchUnchanged as the bulk write does, and where there is none the validated Account inserted.
+     */
+    @Override
+    public Account upsertValidation(Account validated, boolean touchUnchanged) {
+        final Account updated = updateValidation(validated);
+        if (Objects.nonNull(updated)) {
+            return updated;
+        }
+        final Account unchanged = findUnchanged(validated, touchUnchanged);
+        if (Objects.nonNull(unchanged)) {
+            return unchanged;
+        }
+        try {
+            mongoOperations.insert(validated);
+            return validated;
+        } catch (DuplicateKeyException e) {
+            log.debug("Account for chargingId={} inserted concurrently, updating it", validated.getChargingId().getValue());
+            final Account concurrent = updateValidation(validated);
+            return Objects.nonNull(concurrent) ? concurrent : findUnchanged(validated, touchUnchanged);
+        }
+    }
+
+    /**
+     * Existing accounts are updated by id and the rest inserted, unordered.  Any write that fails, as where an account
+     * was inserted concurrently or the same chargingId is validated twice, is retried with upsertValidation.
+     */
+    @Override
+    public List<String> upsertValidations(List<Account> validated, boolean touchUnchanged) {
+        if (validated.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final Map<String, Account> existing = findExisting(validated);
+
+        final BulkOperations bulkOperations = mongoOperations.bulkOps(BulkOperations.BulkMode.UNORDERED, Account.class);
+        final List<Account> written = new ArrayList<>(validated.size());
+        final List<Account> inserted = new ArrayList<>();
+        for (Account account : validated) {
+            final Account stored = existing.get(key(account.getChargingId()));
+            if (Objects.isNull(stored)) {
+                bulkOperations.insert(account);
+                inserted.add(account);
+            } else if (!Objects.equals(stored.getValidationFingerprint(), account.getValidationFingerprint())) {
+                bulkOperations.updateOne(query(where("_id").is(stored.getId())), validationUpdate(account));
+            } else if (touchUnchanged) {
+                bulkOperations.updateOne(query(where("_id").is(stored.getId())),
+                        new Update().set("lastValidate", account.getLastValidate()));
+            } else {
+                continue;
+            }
+            written.add(account);
+        }
+
+        final Map<String, String> retriedIds = new HashMap<>();
+        if (!written.isEmpty()) {
+            try {
+                bulkOperations.execute();
+            } catch (BulkOperationException e) {
+                log.warn("{} of {} account writes failed, retrying them one by one", e.getErrors().size(), written.size());
+                for (BulkWriteError error : e.getErrors()) {
+                    final Account account = written.get(error.getIndex());
+                    retriedIds.put(key(account.getChargingId()), upsertValidation(account, touchUnchanged).getId());
+                }
+            }
+        }
+        existing.putAll(findExisting(inserted));
+
+        final List<String> ids = new ArrayList<>(validated.size());
+        for (Account account : validated) {
+            final String key = key(account.getChargingId());
+            ids.add(retriedIds.containsKey(key) ? retriedIds.get(key)
+                    : Optional.ofNullable(existing.get(key)).map(Account::getId).orElse(null));
+        }
+        return ids;
+    }
+
+    private Map<String, Account> findExisting(List<Account> accounts) {
+        if (accounts.isEmpty()) {
+            return new HashMap<>();
+        }
+        final Query existing = query(where("chargingId").in(accounts.stream()
+                .map(Account::getChargingId)
+                .collect(Collectors.toList())));
+        existing.fields().include("chargingId").include("validationFingerprint");
+
+        final Map<String, Account> accountsByKey = new HashMap<>();
+        mongoOperations.find(existing, Account.class)
+                .forEach(account -> accountsByKey.put(key(account.getChargingId()), account));
+        return accountsByKey;
+    }
+
+    private static String key(ChargingId chargingId) {
+        return chargingId.getType() + ':' + chargingId.getValue();
+    }
+
+    private Account findUnchanged(Account validated, boolean touchUnchanged) {
+        final Query unchanged = query(where("chargingId").is(validated.getChargingId())
+                .and("validationFingerprint").is(validated.getValidationFingerprint()));
+        if (!touchUnchanged) {
+            return mongoOperations.findOne(unchanged, Account.class);
+        }
+        return mongoOperations.findAndModify(
+                unchanged,
+                new Update().set("lastValidate", validated.getLastValidate()),
+                options().returnNew(true),
+                Account.class);
+    }
+
+    private Account updateValidation(Account validated) {
+        return mongoOperations.findAndModify(
+                query(where("chargingId").is(validated.getChargingId())
+                        .and("validationFingerprint").ne(validated.getValidationFingerprint())),
+                validationUpdate(validated),
+                options().returnNew(true),
+                Account.class);
+    }
+
+    private static Update validationUpdate(Account validated) {
+        return new Update()
+                .set("lastValidate", validated.getLastValidate())
+                .set("customerType", validated.getCustomerType())
+                .set("billingCycleDay", validated.getBillingCycleDay())
+                .set("profiles.0.userGroups", getUserGroups(validated))
+                .set("validationFingerprint", validated.getValidationFingerprint());
+    }
+
+    private static List<String> getUserGroups(Account validated) {
+        return validated.getProfiles().stream().findFirst().map(Profile::getUserGroups).orElse(null);
+    }
+}
@@ -0,0 +1,7 @@
+package com.vodafone.charging.accountservice.repository;
+
+import com.vodafone.charging.accountservice.domain.model.BulkEnrichmentCheckpoint;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+public interface BulkEnrichmentCheckpointRepository extends MongoRepository<BulkEnrichmentCheckpoint, String> {
+}
@@ -0,0 +1,7 @@
+package com.vodafone.charging.accountservice.repository;
+
+import com.vodafone.charging.accountservice.domain.model.CachedAccountInfo;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+public interface CachedAccountInfoRepository extends MongoRepository<CachedAccountInfo, String> {
+}
@@ -0,0 +1,27 @@
+package com.vodafone.charging.accountservice.repository;
+
+import com.vodafone.charging.accountservice.domain.model.SpendLedger;
+
+import java.time.LocalDateTime;
+
+/**
+ * Atomic updates to a SpendLedger which cannot be expressed as derived queries.
+ */
+public interface SpendLedgerRepositoryCustom {
+
+    /**
+     * Adds amount (in minor units, negative for refunds) to both running totals, but only if the
+     * ledger still covers the given day and billing cycle.
+     *
+     * @return false if no ledger matched, i.e. it is missing or a window has rolled over
+     */
+    boolean incrementTotals(String accountId, LocalDateTime dayStart, LocalDateTime cycleStart, long amount);
+
+    /**
+     * Sets the windows, totals and lastReconciled of the ledger, creating it if there is none, but only if it is
+     * still at expectedVersion, 0 where there was no ledger.
+     *
+     * @return false if the ledger has been written since expectedVersion was read
+     */
+    boolean replaceTotals(SpendLedger ledger, long expectedVersion);
+}
@@ -0,0 +1,53 @@
+package com.vodafone.charging.accountservice.repository;
+
+import com.vodafone.charging.accountservice.domain.model.SpendLedger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.LocalDateTime;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+public class SpendLedgerRepositoryImpl implements SpendLedgerRepositoryCustom {
+
+    private final MongoOperations mongoOperations;
+
+    @Autowired
+    public SpendLedgerRepositoryImpl(MongoOperations mongoOperations) {
+        this.mongoOperations = mongoOperations;
+    }
+
+    @Override
+    public boolean incrementTotals(String accountId, LocalDateTime dayStart, LocalDateTime cycleStart, long amount) {
+        return mongoOperations.updateFirst(
+                query(where("_id").is(accountId).and("dayStart").is(dayStart).and("cycleStart").is(cycleStart)),
+                new Update().inc("dayTotal", amount).inc("cycleTotal", amount).inc("version", 1L),
+                SpendLedger.class)
+                .getN() > 0;
+    }
+
+    @Override
+    public boolean replaceTotals(SpendLedger ledger, long expectedVersion) {
+        //a ledger written before versions were kept has none, which is version 0
+        final Criteria version = expectedVersion == 0L
+                ? where("version").in(0L, null) : where("version").is(expectedVersion);
+        try {
+            //where the ledger has moved on the upsert tries to insert a second with its id, which fails
+            mongoOperations.upsert(query(where("_id").is(ledger.getAccountId()).andOperator(version)),
+                    new Update().set("dayStart", ledger.getDayStart())
+                            .set("dayTotal", ledger.getDayTotal())
+                            .set("cycleStart", ledger.getCycleStart())
+                            .set("cycleTotal", ledger.getCycleTotal())
+                            .set("lastReconciled", ledger.getLastReconciled())
+                            .inc("version", 1L),
+                    SpendLedger.class);
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+}
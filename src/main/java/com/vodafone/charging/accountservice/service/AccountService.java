@@ -3,17 +3,27 @@ package com.vodafone.charging.accountservice.service;
 import com.vodafone.charging.accountservice.domain.ChargingId;
 import com.vodafone.charging.accountservice.domain.ContextData;
 import com.vodafone.charging.accountservice.domain.EnrichedAccountInfo;
+import com.vodafone.charging.accountservice.domain.ValidatedAccount;
 import com.vodafone.charging.accountservice.domain.model.Account;
 import com.vodafone.charging.accountservice.dto.json.ERIFResponse;
 import com.vodafone.charging.accountservice.dto.xml.Response;
 import com.vodafone.charging.accountservice.repository.AccountRepository;
 import com.vodafone.charging.properties.PropertiesAccessor;
+import com.vodafone.charging.ulf.RequestDeadline;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
+import java.util.Arrays;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
 
 import static com.google.common.collect.Lists.newArrayList;
 
@@ -37,39 +47,160 @@ public class AccountService {
     @Autowired
     private AccountRepository repository;
 
+    @Autowired
+    @Qualifier("asyncPipelineExecutor")
+    private Executor asyncPipelineExecutor;
+
+    @Autowired
+    private CacheService cacheService;
 
+    /**
+     * Info cached by the CacheService from a recent validation of the chargingId is returned without calling the IF.
+     * Otherwise the validated fields are upserted onto the one Account for the chargingId, unless the RequestDeadline
+     * has passed by the time the IF responds.  Where the IF returns the same fields as last time, only lastValidate is
+     * written, or nothing if account.validation.touch.unchanged is false for the opco.
+     */
     public EnrichedAccountInfo enrichAccountData(ContextData contextData) {
         log.debug("contextData={}", contextData);
+        final String country = contextData.getLocale().getCountry();
+        final Optional<EnrichedAccountInfo> cached =
+                cacheService.retrieveSummaryAccountInfo(contextData.getChargingId(), country);
+        if (cached.isPresent()) {
+            log.info("Account Data for chargingId={} found in cache", contextData.getChargingId().getValue());
+            return cached.get();
+        }
+
         EnrichedAccountInfo info;
-        Account account;
-        String protocol = propertiesAccessor.getPropertyForOpco("erif.communication.protocol"
-                , contextData.getLocale().getCountry(), "json");
+        String protocol = propertiesAccessor.getPropertyForOpco("erif.communication.protocol", country, "json");
         if ("soap".equalsIgnoreCase(protocol)) {
             log.info("doing soap");
-            Response response = erifXmlClient.validate(contextData);
-            account = new Account(contextData.getChargingId(), response, new Date());
-            account = repository.save(account);
-            info = new EnrichedAccountInfo(response, account.getId());
+            info = saveAccount(contextData, erifXmlClient.validate(contextData), RequestDeadline.current());
         }else{
             log.info("doing json");
-            ERIFResponse erifResponse = erifClient.validate(contextData);
-            account = new Account(contextData.getChargingId(), erifResponse, new Date());
-            account = repository.save(account);
-            info = new EnrichedAccountInfo(erifResponse, account.getId());
+            info = saveAccount(contextData, erifClient.validate(contextData), RequestDeadline.current());
         }
-        log.info("Account Data for chargingId={} saved", contextData.getChargingId().getValue());
+        return cacheAccountInfo(contextData, info);
+    }
+
+    /**
+     * As {@link #enrichAccountData(ContextData)}, cached info included, but the IF is called without blocking and the
+     * Account is saved and its info cached on the async pipeline executor, so no request thread waits on either.  The
+     * deadline of the request goes with it.
+     */
+    public CompletableFuture<EnrichedAccountInfo> enrichAccountDataAsync(ContextData contextData) {
+        log.debug("contextData={}", contextData);
+        final RequestDeadline deadline = RequestDeadline.current();
+        final String country = contextData.getLocale().getCountry();
+        final Optional<EnrichedAccountInfo> cached =
+                cacheService.retrieveSummaryAccountInfo(contextData.getChargingId(), country);
+        if (cached.isPresent()) {
+            log.info("Account Data for chargingId={} found in cache", contextData.getChargingId().getValue());
+            return CompletableFuture.completedFuture(cached.get());
+        }
+
+        String protocol = propertiesAccessor.getPropertyForOpco("erif.communication.protocol", country, "json");
+        if ("soap".equalsIgnoreCase(protocol)) {
+            log.info("doing soap async");
+            return erifXmlClient.validateAsync(contextData)
+                    .thenApplyAsync(response -> cacheAccountInfo(contextData,
+                            saveAccount(contextData, response, deadline)), asyncPipelineExecutor);
+        }
+        log.info("doing json async");
+        return erifClient.validateAsync(contextData)
+                .thenApplyAsync(erifResponse -> cacheAccountInfo(contextData,
+                        saveAccount(contextData, erifResponse, deadline)), asyncPipelineExecutor);
+    }
+
+    private EnrichedAccountInfo cacheAccountInfo(ContextData contextData, EnrichedAccountInfo info) {
+        cacheService.saveSummaryAccountInfo(contextData.getChargingId(), contextData.getLocale().getCountry(), info);
         return info;
     }
 
+    private EnrichedAccountInfo saveAccount(ContextData contextData, Response response, RequestDeadline deadline) {
+        deadline.check("saving the account");
+        Account account = new Account(contextData.getChargingId(), response, new Date());
+        account = repository.upsertValidation(account, isTouchUnchanged(contextData));
+        log.info("Account Data for chargingId={} saved", contextData.getChargingId().getValue());
+        return new EnrichedAccountInfo(response, account.getId());
+    }
+
+    private EnrichedAccountInfo saveAccount(ContextData contextData, ERIFResponse erifResponse, RequestDeadline deadline) {
+        deadline.check("saving the account");
+        Account account = new Account(contextData.getChargingId(), erifResponse, new Date());
+        account = repository.upsertValidation(account, isTouchUnchanged(contextData));
+        log.info("Account Data for chargingId={} saved", contextData.getChargingId().getValue());
+        return new EnrichedAccountInfo(erifResponse, account.getId());
+    }
+
+    /**
+     * Validates the chargingId with the IF without saving the Account, for
+     * {@link #saveValidatedAccounts(List)} to save with others.  Cached info is not used, as the point is to validate
+     * again.
+     */
+    public ValidatedAccount validateAccountData(ContextData contextData) {
+        log.debug("contextData={}", contextData);
+        String protocol = propertiesAccessor.getPropertyForOpco("erif.communication.protocol"
+                , contextData.getLocale().getCountry(), "json");
+        if ("soap".equalsIgnoreCase(protocol)) {
+            final Response response = erifXmlClient.validate(contextData);
+            return new ValidatedAccount(contextData, new Account(contextData.getChargingId(), response, new Date()),
+                    accountId -> new EnrichedAccountInfo(response, accountId));
+        }
+        final ERIFResponse erifResponse = erifClient.validate(contextData);
+        return new ValidatedAccount(contextData, new Account(contextData.getChargingId(), erifResponse, new Date()),
+                accountId -> new EnrichedAccountInfo(erifResponse, accountId));
+    }
+
+    /**
+     * Upserts the validated Accounts with one bulk write for each opco, and caches their info as enrichAccountData
+     * does.
+     *
+     * @return the info of each, in the order given
+     */
+    public List<EnrichedAccountInfo> saveValidatedAccounts(List<ValidatedAccount> validatedAccounts) {
+        final Map<String, List<Integer>> positionsByCountry = new LinkedHashMap<>();
+        for (int i = 0; i < validatedAccounts.size(); i++) {
+            positionsByCountry.computeIfAbsent(validatedAccounts.get(i).getContextData().getLocale().getCountry(),
+                    country -> newArrayList()).add(i);
+        }
+
+        final EnrichedAccountInfo[] infos = new EnrichedAccountInfo[validatedAccounts.size()];
+        positionsByCountry.forEach((country, positions) -> {
+            final List<String> accountIds = repository.upsertValidations(positions.stream()
+                    .map(position -> validatedAccounts.get(position).getAccount())
+                    .collect(Collectors.toList()), isTouchUnchanged(country));
+            for (int i = 0; i < positions.size(); i++) {
+                final ValidatedAccount validated = validatedAccounts.get(positions.get(i));
+                final EnrichedAccountInfo info = validated.toEnrichedAccountInfo(accountIds.get(i));
+                cacheService.saveSummaryAccountInfo(validated.getContextData().getChargingId(), country, info);
+                infos[positions.get(i)] = info;
+            }
+            log.info("{} validated accounts for opco {} saved", positions.size(), country);
+        });
+        return Arrays.asList(infos);
+    }
+
+    private boolean isTouchUnchanged(ContextData contextData) {
+        return isTouchUnchanged(contextData.getLocale().getCountry());
+    }
+
+    private boolean isTouchUnchanged(String country) {
+        return !"false".equalsIgnoreCase(propertiesAccessor.getPropertyForOpco("account.validation.touch.unchanged",
+                country, "true"));
+    }
+
     public Account getAccount(final ChargingId chargingId) {
+        RequestDeadline.current().check("finding the account");
         return repository.findByChargingId(chargingId);
     }
 
     public Account getAccount(final String accountId) {
+        RequestDeadline.current().check("finding the account");
         return repository.findOne(accountId);
     }
 
     public List<String> getUserGroups(final String accountId) {
+        RequestDeadline.current().check("finding the account");
         Account account = repository.findOne(accountId);
         return newArrayList(account.getProfiles().get(0).getUserGroups());
     }
@@ -0,0 +1,328 @@
+package com.vodafone.charging.accountservice.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vodafone.charging.accountservice.domain.BulkEnrichmentResult;
+import com.vodafone.charging.accountservice.domain.ContextData;
+import com.vodafone.charging.accountservice.domain.EnrichedAccountInfo;
+import com.vodafone.charging.accountservice.domain.ValidatedAccount;
+import com.vodafone.charging.accountservice.domain.model.BulkEnrichmentCheckpoint;
+import com.vodafone.charging.accountservice.repository.BulkEnrichmentCheckpointRepository;
+import com.vodafone.charging.properties.PropertiesAccessor;
+import com.vodafone.charging.ulf.UlfContext;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Nullable;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Enriches a stream of ContextData, one JSON object per line, writing a BulkEnrichmentResult line for each as it is
+ * done, for re-validating chargingIds in bulk e.g. when a partner is onboarded or an opco migrated.
+ * <p>
+ * Validations run on the bulkEnrichmentExecutor, no more at once for each opco than bulk.enrichment.concurrency for
+ * it, e.g. bulk.enrichment.concurrency.gb, so the IF of each opco is only given the load it can take.  The same
+ * limits are shared by every job running.  Reading stops while an opco is at its limit, so only so many lines are
+ * held at once.  Validated accounts are saved bulk.enrichment.batch.size at a time, with one bulk write for each
+ * opco in the batch, at least every bulk.enrichment.flush.millis while results are coming in.
+ * <p>
+ * Results are written in the order they complete.  After each batch a checkpoint line gives the line before which
+ * every line has been enriched, or could not be read at all, and for a job with an id it is saved too, so the job can
+ * be resumed by sending the same input again with the same job id, or with fromLine set to the last checkpoint
+ * written.  A line whose validation or save failed holds the checkpoint back, so that resuming tries it again.
+ */
+@Service
+@Slf4j
+public class BulkEnrichmentService {
+
+    private final AccountService accountService;
+    private final BulkEnrichmentCheckpointRepository checkpointRepository;
+    private final PropertiesAccessor propertiesAccessor;
+    private final ObjectMapper objectMapper;
+    private final Executor bulkEnrichmentExecutor;
+    private final ConcurrentMap<String, Semaphore> opcoPermits = new ConcurrentHashMap<>();
+
+    @Autowired
+    public BulkEnrichmentService(AccountService accountService,
+                                 BulkEnrichmentCheckpointRepository checkpointRepository,
+                                 PropertiesAccessor propertiesAccessor,
+                                 ObjectMapper objectMapper,
+                                 @Qualifier("bulkEnrichmentExecutor") Executor bulkEnrichmentExecutor) {
+        this.accountService = accountService;
+        this.checkpointRepository = checkpointRepository;
+        this.propertiesAccessor = propertiesAccessor;
+        this.objectMapper = objectMapper;
+        this.bulkEnrichmentExecutor = bulkEnrichmentExecutor;
+    }
+
+    /**
+     * Enriches each line of in from fromLine, or from the saved checkpoint of the job if further on, writing the
+     * results to out.  Returns once every line read has its result written.
+     */
+    public void enrich(@NonNull InputStream in, @NonNull OutputStream out, @Nullable String jobId, long fromLine)
+            throws IOException {
+        final long resumeFrom = Math.max(fromLine, getCheckpoint(jobId));
+        log.info("Bulk enrichment job {} starting from line {}", jobId, resumeFrom);
+
+        final Job job = new Job(out, jobId);
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        try {
+            String text;
+            while ((text = reader.readLine()) != null) {
+                final long line = job.nextLine++;
+                if (line >= resumeFrom && StringUtils.isNotBlank(text)) {
+                    submit(job, line, text);
+                }
+                job.drain();
+            }
+            job.finish();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Bulk enrichment job " + jobId + " interrupted at line " + job.nextLine);
+        }
+        log.info("Bulk enrichment job {} finished after {} lines", jobId, job.nextLine);
+    }
+
+    private void submit(Job job, long line, String text) throws InterruptedException, IOException {
+        final ContextData contextData;
+        try {
+            contextData = readContextData(text);
+        } catch (IOException | IllegalArgumentException e) {
+            job.add(Outcome.failed(line, null, "Invalid ContextData: " + e.getMessage()));
+            return;
+        }
+
+        final Semaphore permits = getPermits(contextData.getLocale().getCountry());
+        while (!permits.tryAcquire(100L, TimeUnit.MILLISECONDS)) {
+            job.drain();
+        }
+        final Supplier<Outcome> validation = UlfContext.propagate(() -> validate(line, contextData));
+        job.pending.add(line);
+        job.inFlight++;
+        try {
+            bulkEnrichmentExecutor.execute(() -> {
+                Outcome outcome = null;
+                try {
+                    outcome = validation.get();
+                } finally {
+                    //the job waits for an outcome of every line submitted, whatever is thrown
+                    job.completed.add(Objects.nonNull(outcome) ? outcome
+                            : Outcome.failed(line, contextData, "Validation failed"));
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            job.completed.add(Outcome.failed(line, contextData, "Validation rejected: " + e.getMessage()));
+        }
+    }
+
+    private ContextData readContextData(String text) throws IOException {
+        final ContextData contextData = objectMapper.readValue(text, ContextData.class);
+        if (Objects.isNull(contextData.getLocale()) || StringUtils.isEmpty(contextData.getLocale().getCountry())) {
+            throw new IllegalArgumentException("locale with a country is compulsory");
+        }
+        if (Objects.isNull(contextData.getChargingId()) || StringUtils.isEmpty(contextData.getChargingId().getType())
+                || StringUtils.isEmpty(contextData.getChargingId().getValue())) {
+            throw new IllegalArgumentException("chargingId.type and chargingId.value are compulsory");
+        }
+        return contextData;
+    }
+
+    private Outcome validate(long line, ContextData contextData) {
+        try {
+            return new Outcome(line, contextData, accountService.validateAccountData(contextData), null);
+        } catch (RuntimeException e) {
+            log.warn("Bulk validation of line {} for chargingId={} failed: {}", line,
+                    contextData.getChargingId().getValue(), e.getMessage());
+            return Outcome.failed(line, contextData, e.getMessage());
+        }
+    }
+
+    private Semaphore getPermits(String country) {
+        return opcoPermits.computeIfAbsent(country, opco -> new Semaphore(Math.max(1, getConcurrency(opco))));
+    }
+
+    private int getConcurrency(String country) {
+        final String value = propertiesAccessor.getPropertyForOpco("bulk.enrichment.concurrency", country, "4");
+        try {
+            return Objects.isNull(value) ? 4 : Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            log.warn("Invalid value {} for bulk.enrichment.concurrency for opco {}, using 4", value, country);
+            return 4;
+        }
+    }
+
+    private long getCheckpoint(String jobId) {
+        if (Objects.isNull(jobId)) {
+            return 0L;
+        }
+        final BulkEnrichmentCheckpoint checkpoint = checkpointRepository.findOne(jobId);
+        return Objects.isNull(checkpoint) ? 0L : checkpoint.getLine();
+    }
+
+    /**
+     * The result of validating a line, before the account is saved.
+     */
+    private static final class Outcome {
+        private final long line;
+        private final ContextData contextData;
+        private final ValidatedAccount validated;
+        private final String error;
+
+        private Outcome(long line, ContextData contextData, ValidatedAccount validated, String error) {
+            this.line = line;
+            this.contextData = contextData;
+            this.validated = validated;
+            this.error = error;
+        }
+
+        private static Outcome failed(long line, ContextData contextData, String error) {
+            return new Outcome(line, contextData, null, error);
+        }
+    }
+
+    /**
+     * The state of a running job, all but the completed queue only used by the thread reading its input.
+     */
+    private final class Job {
+        private final OutputStream out;
+        private final String jobId;
+        private final int batchSize = Math.max(1, propertiesAccessor.getPropertyAsInt("bulk.enrichment.batch.size", 500));
+        private final long flushMillis = propertiesAccessor.getPropertyAsInt("bulk.enrichment.flush.millis", 1000);
+        private final BlockingQueue<Outcome> completed = new LinkedBlockingQueue<>();
+        private final TreeSet<Long> pending = new TreeSet<>();
+        private final List<Outcome> batch = new ArrayList<>();
+        private long nextLine;
+        private int inFlight;
+        private long lastFlush = System.currentTimeMillis();
+
+        private Job(OutputStream out, String jobId) {
+            this.out = out;
+            this.jobId = jobId;
+        }
+
+        private void add(Outcome outcome) throws IOException {
+            pending.add(outcome.line);
+            batch.add(outcome);
+            flushIfDue();
+        }
+
+        private void drain() throws IOException {
+            Outcome outcome;
+            while ((outcome = completed.poll()) != null) {
+                inFlight--;
+                batch.add(outcome);
+                flushIfDue();
+            }
+            flushIfDue();
+        }
+
+        private void finish() throws IOException, InterruptedException {
+            while (inFlight > 0) {
+                final Outcome outcome = completed.poll(100L, TimeUnit.MILLISECONDS);
+                if (Objects.nonNull(outcome)) {
+                    inFlight--;
+                    batch.add(outcome);
+                }
+                flushIfDue();
+            }
+            flush();
+        }
+
+        private void flushIfDue() throws IOException {
+            if (batch.size() >= batchSize
+                    || (!batch.isEmpty() && System.currentTimeMillis() - lastFlush >= flushMillis)) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            final List<Outcome> validated = batch.stream()
+                    .filter(outcome -> Objects.nonNull(outcome.validated))
+                    .collect(Collectors.toList());
+            List<EnrichedAccountInfo> infos = null;
+            String saveError = null;
+            if (!validated.isEmpty()) {
+                try {
+                    infos = accountService.saveValidatedAccounts(validated.stream()
+                            .map(outcome -> outcome.validated)
+                            .collect(Collectors.toList()));
+                } catch (RuntimeException e) {
+                    log.error("Saving {} validated accounts of bulk enrichment job {} failed: {}",
+                            validated.size(), jobId, e.getMessage());
+                    saveError = "Failed to save account: " + e.getMessage();
+                }
+            }
+
+            int saved = 0;
+            for (Outcome outcome : batch) {
+                final BulkEnrichmentResult.BulkEnrichmentResultBuilder result = BulkEnrichmentResult.builder()
+                        .line(outcome.line)
+                        .chargingId(Objects.isNull(outcome.contextData) ? null : outcome.contextData.getChargingId());
+                //a line which could not be read will fail the same way again, so only it is passed over
+                boolean done = Objects.isNull(outcome.contextData);
+                if (Objects.isNull(outcome.validated)) {
+                    result.error(outcome.error);
+                } else if (Objects.nonNull(infos)) {
+                    result.info(infos.get(saved++));
+                    done = true;
+                } else {
+                    result.error(saveError);
+                }
+                write(result.build());
+                if (done) {
+                    pending.remove(outcome.line);
+                }
+            }
+            batch.clear();
+
+            final long checkpoint = pending.isEmpty() ? nextLine : pending.first();
+            write(BulkEnrichmentResult.builder().checkpoint(checkpoint).build());
+            out.flush();
+            saveCheckpoint(checkpoint);
+            lastFlush = System.currentTimeMillis();
+        }
+
+        private void write(BulkEnrichmentResult result) throws IOException {
+            out.write(objectMapper.writeValueAsBytes(result));
+            out.write('\n');
+        }
+
+        private void saveCheckpoint(long checkpoint) {
+            if (Objects.isNull(jobId)) {
+                return;
+            }
+            try {
+                checkpointRepository.save(BulkEnrichmentCheckpoint.builder()
+                        .jobId(jobId).line(checkpoint).updated(new Date()).build());
+            } catch (RuntimeException e) {
+                log.warn("Failed to save checkpoint {} of bulk enrichment job {}: {}", checkpoint, jobId, e.getMessage());
+            }
+        }
+    }
+}
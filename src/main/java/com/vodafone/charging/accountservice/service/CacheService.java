@@ -1,21 +1,119 @@
 package com.vodafone.charging.accountservice.service;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.vodafone.charging.accountservice.domain.ChargingId;
 import com.vodafone.charging.accountservice.domain.EnrichedAccountInfo;
+import com.vodafone.charging.accountservice.domain.enums.ResponseStatus;
+import com.vodafone.charging.accountservice.domain.model.CachedAccountInfo;
+import com.vodafone.charging.accountservice.repository.CachedAccountInfoRepository;
+import com.vodafone.charging.properties.PropertiesAccessor;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.Date;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
 /**
- * A service to store Account information.  The only class to call the Repository itself
+ * Caches the EnrichedAccountInfo of accepted IF validations for each chargingId and opco, so that a chargingId
+ * validated moments earlier is not validated again.  Entries are held in a bounded in-process tier, least recently
+ * used dropped first, in front of a Mongo collection with a TTL index shared by every instance.
+ * Freshness is read per opco, e.g. account.info.cache.ttl.seconds.gb, and an opco with none set, the default,
+ * is not cached.  Mongo failures are logged and treated as a miss, so the cache never fails a validation.
  */
-
 @Service
+@Slf4j
 public class CacheService {
 
-    public void saveSummaryAccountInfo(EnrichedAccountInfo enrichedAccountInfo) {
-        throw new UnsupportedOperationException();
+    private final PropertiesAccessor propertiesAccessor;
+    private final CachedAccountInfoRepository repository;
+    private final Cache<String, CachedAccountInfo> cache;
+
+    @Autowired
+    public CacheService(PropertiesAccessor propertiesAccessor, CachedAccountInfoRepository repository) {
+        this.propertiesAccessor = propertiesAccessor;
+        this.repository = repository;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(propertiesAccessor.getPropertyAsInt("account.info.cache.max.size", 100000))
+                .build();
     }
 
-    public void retrieveSummaryAccountInfo() {
-        throw new UnsupportedOperationException();
+    /**
+     * Caches the info if it is of an accepted validation and caching is enabled for the opco.
+     */
+    public void saveSummaryAccountInfo(@NonNull final ChargingId chargingId, @NonNull final String country,
+                                       @NonNull final EnrichedAccountInfo enrichedAccountInfo) {
+        final long ttlSeconds = getTtlSeconds(country);
+        if (ttlSeconds <= 0 || !ResponseStatus.isAccepted(enrichedAccountInfo.getValidationStatus())) {
+            return;
+        }
+
+        final Date validated = new Date();
+        final CachedAccountInfo cached = CachedAccountInfo.builder()
+                .key(key(chargingId, country))
+                .info(enrichedAccountInfo)
+                .validated(validated)
+                .expireAt(new Date(validated.getTime() + TimeUnit.SECONDS.toMillis(ttlSeconds)))
+                .build();
+        cache.put(cached.getKey(), cached);
+        try {
+            repository.save(cached);
+        } catch (RuntimeException e) {
+            log.warn("Failed to cache account info for {}: {}", cached.getKey(), e.getMessage());
+        }
     }
 
+    /**
+     * The info cached for the chargingId and opco, if still fresh, from the in-process tier or else Mongo.
+     */
+    public Optional<EnrichedAccountInfo> retrieveSummaryAccountInfo(@NonNull final ChargingId chargingId,
+                                                                    @NonNull final String country) {
+        if (getTtlSeconds(country) <= 0) {
+            return Optional.empty();
+        }
+
+        final String key = key(chargingId, country);
+        final CachedAccountInfo local = cache.getIfPresent(key);
+        if (Objects.nonNull(local)) {
+            if (local.isFresh()) {
+                return Optional.of(local.getInfo());
+            }
+            cache.invalidate(key);
+        }
+
+        final CachedAccountInfo stored;
+        try {
+            stored = repository.findOne(key);
+        } catch (RuntimeException e) {
+            log.warn("Failed to read cached account info for {}: {}", key, e.getMessage());
+            return Optional.empty();
+        }
+        //the TTL monitor only runs every minute, so expired documents may still be found
+        if (Objects.isNull(stored) || !stored.isFresh()) {
+            return Optional.empty();
+        }
+        cache.put(key, stored);
+        return Optional.of(stored.getInfo());
+    }
+
+    private static String key(ChargingId chargingId, String country) {
+        return country + ':' + chargingId.getType() + ':' + chargingId.getValue();
+    }
+
+    private long getTtlSeconds(String country) {
+        final String value = propertiesAccessor.getPropertyForOpco("account.info.cache.ttl.seconds", country, "0");
+        if (Objects.isNull(value)) {
+            return 0L;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            log.warn("Invalid value {} for account.info.cache.ttl.seconds for opco {}, not caching", value, country);
+            return 0L;
+        }
+    }
 }
@@ -0,0 +1,172 @@
+package com.vodafone.charging.accountservice.service;
+
+import com.vodafone.charging.accountservice.exception.ExternalServiceException;
+import com.vodafone.charging.accountservice.exception.RequestDeadlineExceededException;
+import com.vodafone.charging.ulf.RequestDeadline;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Lets concurrent identical calls to an external service share one call in flight.  The first caller for a key makes
+ * the call on its own thread and every caller arriving before it completes gets the same result, or the same exception.
+ * Nothing is kept once the call completes, so a later caller always makes a fresh call.
+ * Counts of calls and coalesced calls are kept per endpoint and the coalescing ratio logged every thousand calls.
+ */
+@Service
+@Slf4j
+public class CallCoalescer {
+
+    private static final long LOG_EVERY_CALLS = 1000;
+    /**
+     * Returned by await where the shared call failed on the deadline of the caller that made it, which is no reason to
+     * fail any other caller.
+     */
+    private static final Object CALL_AGAIN = new Object();
+
+    private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+
+    /**
+     * The result of the call, made only if no call with the same endpoint and key is already in flight.  A caller
+     * sharing a call waits no longer than its own RequestDeadline, and makes the call itself if the one it shared failed
+     * on the deadline of the caller that made it.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T call(@NonNull final String endpoint, @NonNull final String key, @NonNull final Supplier<T> call) {
+        final String flightKey = endpoint + '|' + key;
+        final Stats endpointStats = stats.computeIfAbsent(endpoint, name -> new Stats());
+        while (true) {
+            final CompletableFuture<Object> future = new CompletableFuture<>();
+            final CompletableFuture<Object> existing = inFlight.putIfAbsent(flightKey, future);
+
+            if (Objects.nonNull(existing)) {
+                endpointStats.record(endpoint, true);
+                final Object shared = await(existing);
+                if (shared != CALL_AGAIN) {
+                    return (T) shared;
+                }
+                log.debug("Call to {} shared for {} passed the deadline of its caller, calling again", endpoint, key);
+                continue;
+            }
+
+            endpointStats.record(endpoint, false);
+            final T result;
+            try {
+                result = call.get();
+            } catch (RuntimeException | Error e) {
+                //removed before completing, so no caller woken by the failure finds the failed call still in flight
+                inFlight.remove(flightKey, future);
+                future.completeExceptionally(e);
+                throw e;
+            }
+            inFlight.remove(flightKey, future);
+            future.complete(result);
+            return result;
+        }
+    }
+
+    /**
+     * As {@link #call(String, String, Supplier)} for a call that returns a future, which callers share until it completes.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> callAsync(@NonNull final String endpoint, @NonNull final String key,
+                                              @NonNull final Supplier<CompletableFuture<T>> call) {
+        final String flightKey = endpoint + '|' + key;
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+        final CompletableFuture<Object> existing = inFlight.putIfAbsent(flightKey, future);
+        final Stats endpointStats = stats.computeIfAbsent(endpoint, name -> new Stats());
+
+        if (Objects.nonNull(existing)) {
+            endpointStats.record(endpoint, true);
+            return (CompletableFuture<T>) (CompletableFuture<?>) existing;
+        }
+
+        endpointStats.record(endpoint, false);
+        try {
+            call.get().whenComplete((result, ex) -> {
+                inFlight.remove(flightKey, future);
+                if (Objects.isNull(ex)) {
+                    future.complete(result);
+                } else {
+                    future.completeExceptionally(ex instanceof CompletionException && Objects.nonNull(ex.getCause())
+                            ? ex.getCause() : ex);
+                }
+            });
+        } catch (RuntimeException | Error e) {
+            inFlight.remove(flightKey, future);
+            future.completeExceptionally(e);
+        }
+        return (CompletableFuture<T>) (CompletableFuture<?>) future;
+    }
+
+    public long getCalls(@NonNull final String endpoint) {
+        final Stats endpointStats = stats.get(endpoint);
+        return Objects.isNull(endpointStats) ? 0L : endpointStats.calls.sum();
+    }
+
+    public long getCoalescedCalls(@NonNull final String endpoint) {
+        final Stats endpointStats = stats.get(endpoint);
+        return Objects.isNull(endpointStats) ? 0L : endpointStats.coalesced.sum();
+    }
+
+    /**
+     * The fraction of calls to the endpoint that shared a call already in flight.
+     */
+    public double getCoalescingRatio(@NonNull final String endpoint) {
+        final long calls = getCalls(endpoint);
+        return calls == 0 ? 0.0 : (double) getCoalescedCalls(endpoint) / calls;
+    }
+
+    private static Object await(CompletableFuture<Object> future) {
+        final RequestDeadline deadline = RequestDeadline.current();
+        try {
+            return deadline.isBounded() ? future.get(deadline.getRemainingMillis(), TimeUnit.MILLISECONDS) : future.get();
+        } catch (TimeoutException e) {
+            throw new RequestDeadlineExceededException("Request deadline passed waiting for a call in flight");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ExternalServiceException("Interrupted waiting for a call in flight", e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RequestDeadlineExceededException) {
+                return CALL_AGAIN;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new ExternalServiceException("Unexpected Exception", cause);
+        }
+    }
+
+    private static final class Stats {
+
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder coalesced = new LongAdder();
+
+        private void record(String endpoint, boolean coalescedCall) {
+            calls.increment();
+            if (coalescedCall) {
+                coalesced.increment();
+            }
+            final long total = calls.sum();
+            if (total % LOG_EVERY_CALLS == 0) {
+                log.info("Calls to {}: {}, coalesced: {}", endpoint, total, coalesced.sum());
+            }
+        }
+    }
+}
@@ -61,21 +61,28 @@ public class ERDateCalculator {
 
     /**
      * Depending on the type of SpendLimit passed in this works out the start and end date required.
-     * Takes into account an optional billing cycle day for monthly spend limits only
+     * Takes into account an optional billing cycle day for monthly spend limits only.
+     * Rolling spend limits end now and start their rolling period before.
+     * Partner spend limits share the window of the account spend limit they scope.
      */
     public Map<String, LocalDateTime> calculateDurationSpendLimitDates(@NonNull final SpendLimitType spendLimitType,
                                                                        @Nullable final Integer billingCycleDay) {
 
         Map<String, LocalDateTime> dates = Maps.newHashMapWithExpectedSize(2);
+        final SpendLimitType windowType = spendLimitType.getWindowType();
 
-        if (spendLimitType.equals(SpendLimitType.ACCOUNT_DAY)) {
+        if (windowType.equals(SpendLimitType.ACCOUNT_DAY)) {
             dates.put(START_DATE_KEY, LocalDateTime.of(LocalDate.now(timeZone.toZoneId()), LocalTime.MIDNIGHT));
             dates.put(END_DATE_KEY, LocalDateTime.of(LocalDate.now(timeZone.toZoneId()), LocalTime.MAX));
-        } else if (spendLimitType.equals(SpendLimitType.ACCOUNT_MONTH)) {
+        } else if (windowType.equals(SpendLimitType.ACCOUNT_MONTH)) {
             int startDayOfMonth = ofNullable(billingCycleDay).orElse(1);
             dates = calculateBillingCycleDates(startDayOfMonth);
+        } else if (spendLimitType.isRolling()) {
+            final LocalDateTime now = LocalDateTime.now(timeZone.toZoneId());
+            dates.put(START_DATE_KEY, now.minus(spendLimitType.getRollingPeriod()));
+            dates.put(END_DATE_KEY, now);
         } else {
-            log.warn("Expected a ACCOUNT_DAY or ACCOUNT_MONTH spend limit type but was " + spendLimitType.name());
+            log.warn("Expected a duration spend limit type but was " + spendLimitType.name());
         }
         return dates;
     }
@@ -1,5 +1,8 @@
 package com.vodafone.charging.accountservice.service;
 
+import com.vodafone.charging.accountservice.client.OpcoCircuitBreakers;
+import com.vodafone.charging.accountservice.client.OpcoHttpTransport;
+import com.vodafone.charging.accountservice.client.OpcoRequestHedger;
 import com.vodafone.charging.accountservice.domain.*;
 import com.vodafone.charging.accountservice.domain.enums.RoutableType;
 import com.vodafone.charging.accountservice.dto.json.ERIFRequest;
@@ -7,7 +10,9 @@ import com.vodafone.charging.accountservice.dto.json.ERIFResponse;
 import com.vodafone.charging.accountservice.dto.json.MessageControl;
 import com.vodafone.charging.accountservice.dto.json.Routable;
 import com.vodafone.charging.accountservice.exception.NullRestResponseReceivedException;
+import com.vodafone.charging.accountservice.exception.RequestDeadlineExceededException;
 import com.vodafone.charging.properties.PropertiesAccessor;
+import com.vodafone.charging.ulf.RequestDeadline;
 import com.vodafone.charging.ulf.ValidateHttpHeaders;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -15,9 +20,12 @@ import org.springframework.http.HttpEntity;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.web.client.AsyncRestTemplate;
 import org.springframework.web.client.RestTemplate;
 
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 @Slf4j
@@ -29,24 +37,91 @@ public class ERIFClient {
     @Autowired
     private RestTemplate restTemplate;
 
-    public ERIFClient(RestTemplate restTemplate, PropertiesAccessor propertiesAccessor) {
+    @Autowired
+    private CallCoalescer callCoalescer;
+
+    @Autowired
+    private OpcoHttpTransport opcoHttpTransport;
+
+    @Autowired
+    private AsyncRestTemplate asyncRestTemplate;
+
+    @Autowired
+    private OpcoCircuitBreakers opcoCircuitBreakers;
+
+    @Autowired
+    private OpcoRequestHedger opcoRequestHedger;
+
+    public ERIFClient(RestTemplate restTemplate, PropertiesAccessor propertiesAccessor, CallCoalescer callCoalescer,
+                      OpcoHttpTransport opcoHttpTransport, AsyncRestTemplate asyncRestTemplate,
+                      OpcoCircuitBreakers opcoCircuitBreakers, OpcoRequestHedger opcoRequestHedger) {
         this.restTemplate = restTemplate;
         this.propertiesAccessor = propertiesAccessor;
+        this.callCoalescer = callCoalescer;
+        this.opcoHttpTransport = opcoHttpTransport;
+        this.asyncRestTemplate = asyncRestTemplate;
+        this.opcoCircuitBreakers = opcoCircuitBreakers;
+        this.opcoRequestHedger = opcoRequestHedger;
     }
 
+    /**
+     * Concurrent validations of the same ContextData share one call to the IF, which is hedged where enabled for
+     * the opco, see OpcoRequestHedger.
+     */
     public ERIFResponse validate(ContextData contextData) {
+        return callCoalescer.call("erif.validate", contextKey(contextData), () -> callValidate(contextData));
+    }
+
+    /**
+     * As {@link #validate(ContextData)} without blocking the calling thread while waiting for the IF.
+     * The IF is called through the async connection pool of the opco, and not once the RequestDeadline has passed.
+     */
+    public CompletableFuture<ERIFResponse> validateAsync(ContextData contextData) {
+        return callCoalescer.callAsync("erif.validate.async", contextKey(contextData),
+                () -> callValidateAsync(contextData));
+    }
+
+    private ERIFResponse callValidate(ContextData contextData) {
+
+        final HttpEntity<ERIFRequest> request = buildRequest(contextData);
+        final String country = contextData.getLocale().getCountry();
+        final String url = propertiesAccessor.getPropertyForOpco("erif.url", country);
 
+        final Optional<ResponseEntity<ERIFResponse>> responseOptional =
+                Optional.ofNullable(opcoRequestHedger.call(OpcoHttpTransport.ERIF, country, () ->
+                        opcoCircuitBreakers.call(OpcoHttpTransport.ERIF, country, () ->
+                                opcoHttpTransport.call(OpcoHttpTransport.ERIF, country,
+                                        () -> restTemplate.postForEntity(url, request, ERIFResponse.class)))));
+
+        return getBody(responseOptional);
+    }
+
+    private CompletableFuture<ERIFResponse> callValidateAsync(ContextData contextData) {
+
+        final String country = contextData.getLocale().getCountry();
+        final RequestDeadline deadline = RequestDeadline.current();
+        deadline.check("calling erif for opco " + country);
+
+        final HttpEntity<ERIFRequest> request = buildRequest(contextData);
+        final String url = propertiesAccessor.getPropertyForOpco("erif.url", country);
+
+        return opcoCircuitBreakers.callAsync(OpcoHttpTransport.ERIF, country,
+                () -> opcoHttpTransport.callAsync(OpcoHttpTransport.ERIF, country,
+                        () -> completable(asyncRestTemplate.postForEntity(url, request, ERIFResponse.class), deadline)))
+                .thenApply(responseEntity -> getBody(Optional.ofNullable(responseEntity)));
+    }
+
+    private HttpEntity<ERIFRequest> buildRequest(ContextData contextData) {
         final MessageControl messageControl = new MessageControl(contextData.getLocale());
         final Routable routable = new Routable(RoutableType.validate, contextData);
         final ValidateHttpHeaders headers = new ValidateHttpHeaders(contextData, MediaType.APPLICATION_JSON, MediaType.APPLICATION_JSON_UTF8);
         final HttpEntity<ERIFRequest> request = new HttpEntity<>(new ERIFRequest(messageControl, routable), headers.getHttpHeaders());
 
         log.debug(request.toString());
-        final String url = propertiesAccessor.getPropertyForOpco("erif.url", contextData.getLocale().getCountry());
-
-        final Optional<ResponseEntity<ERIFResponse>> responseOptional =
-                Optional.ofNullable(restTemplate.postForEntity(url, request, ERIFResponse.class));
+        return request;
+    }
 
+    private ERIFResponse getBody(Optional<ResponseEntity<ERIFResponse>> responseOptional) {
         final ResponseEntity<ERIFResponse> responseEntity = responseOptional
                 .orElseThrow(() -> new NullRestResponseReceivedException("Received a null response from RestClient trying to call the IF"));
 
@@ -54,6 +129,27 @@ public class ERIFClient {
         log.debug(responseEntity.toString());
 
         return responseBody;
+    }
+
+    /**
+     * Every field of the ContextData that goes into the IF request, with the opco first.
+     */
+    static String contextKey(ContextData contextData) {
+        return contextData.getLocale() + ":" + contextData.getChargingId() + ":" + contextData.getContextName() + ":"
+                + contextData.getServiceId() + ":" + contextData.getPackageType() + ":" + contextData.getPartnerId() + ":"
+                + contextData.getVendorId() + ":" + contextData.getClientId() + ":" + contextData.isKycCheck() + ":"
+                + contextData.getTarget();
+    }
 
+    /**
+     * Completes with the result of the ListenableFuture, or with the exception it failed with, as a
+     * RequestDeadlineExceededException where it timed out because the deadline passed.
+     */
+    static <T> CompletableFuture<T> completable(ListenableFuture<T> listenableFuture, RequestDeadline deadline) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        listenableFuture.addCallback(future::complete, ex -> future.completeExceptionally(
+                OpcoHttpTransport.isTimeout(ex) && deadline.isExpired()
+                        ? new RequestDeadlineExceededException("Request deadline passed calling erif", ex) : ex));
+        return future;
     }
-}
\ No newline at end of file
+}
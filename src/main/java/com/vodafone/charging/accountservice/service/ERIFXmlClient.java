@@ -1,24 +1,38 @@
 package com.vodafone.charging.accountservice.service;
 
+import com.vodafone.charging.accountservice.client.ERIFXmlCodec;
+import com.vodafone.charging.accountservice.client.OpcoCircuitBreakers;
+import com.vodafone.charging.accountservice.client.OpcoHttpTransport;
+import com.vodafone.charging.accountservice.client.OpcoRequestHedger;
 import com.vodafone.charging.accountservice.domain.ContextData;
-import com.vodafone.charging.accountservice.dto.xml.*;
+import com.vodafone.charging.accountservice.dto.xml.Response;
 import com.vodafone.charging.accountservice.exception.NullRestResponseReceivedException;
 import com.vodafone.charging.properties.PropertiesAccessor;
+import com.vodafone.charging.ulf.RequestDeadline;
 import com.vodafone.charging.ulf.ValidateHttpHeaders;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpOutputMessage;
 import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.AsyncRestTemplate;
 import org.springframework.web.client.RestTemplate;
 
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 
 /**
  * it's not SOAP standard, uses non-legal content-type and non-default namespaces so generated
- * Jaxb files have been hacked to work
+ * Jaxb files have been hacked to work.  Requests and responses are written and read by ERIFXmlCodec
+ * instead of the RestTemplate's JAXB conversion, the Response being the only one of them built.
  */
 @Service
 @Slf4j
@@ -30,64 +44,108 @@ public class ERIFXmlClient {
     @Autowired
     private RestTemplate xmlRestTemplate;
 
-    public ERIFXmlClient(RestTemplate xmlRestTemplate, PropertiesAccessor propertiesAccessor) {
+    @Autowired
+    private CallCoalescer callCoalescer;
+
+    @Autowired
+    private OpcoHttpTransport opcoHttpTransport;
+
+    @Autowired
+    private AsyncRestTemplate asyncRestTemplate;
+
+    @Autowired
+    private OpcoCircuitBreakers opcoCircuitBreakers;
+
+    @Autowired
+    private OpcoRequestHedger opcoRequestHedger;
+
+    public ERIFXmlClient(RestTemplate xmlRestTemplate, PropertiesAccessor propertiesAccessor, CallCoalescer callCoalescer,
+                         OpcoHttpTransport opcoHttpTransport, AsyncRestTemplate asyncRestTemplate,
+                         OpcoCircuitBreakers opcoCircuitBreakers, OpcoRequestHedger opcoRequestHedger) {
         this.xmlRestTemplate = xmlRestTemplate;
         this.propertiesAccessor = propertiesAccessor;
+        this.callCoalescer = callCoalescer;
+        this.opcoHttpTransport = opcoHttpTransport;
+        this.asyncRestTemplate = asyncRestTemplate;
+        this.opcoCircuitBreakers = opcoCircuitBreakers;
+        this.opcoRequestHedger = opcoRequestHedger;
     }
 
+    /**
+     * Concurrent validations of the same ContextData share one call to the IF, which is hedged where enabled for
+     * the opco, see OpcoRequestHedger.
+     */
     public Response validate(ContextData contextData) {
+        return callCoalescer.call("erif.xml.validate", ERIFClient.contextKey(contextData),
+                () -> callValidate(contextData));
+    }
 
-        Envelope requestEnvelope = buildEnvelope(contextData);
-        //generates ERIF not-quite-soap specific headers
-        final ValidateHttpHeaders headers = new ValidateHttpHeaders(contextData, MediaType.TEXT_XML);
-
-        final HttpEntity<Envelope> request = new HttpEntity<>(requestEnvelope, headers.getHttpHeaders());
-        log.debug(request.toString());
-        final String url = propertiesAccessor.getPropertyForOpco("erif.url", contextData.getLocale().getCountry());
-
-        final Optional<ResponseEntity<Envelope>> responseOptional =
-                Optional.ofNullable(xmlRestTemplate.postForEntity(url, request, Envelope.class));
+    /**
+     * As {@link #validate(ContextData)} without blocking the calling thread while waiting for the IF.
+     * The IF is called through the async connection pool of the opco, and not once the RequestDeadline has passed.
+     */
+    public CompletableFuture<Response> validateAsync(ContextData contextData) {
+        return callCoalescer.callAsync("erif.xml.validate.async", ERIFClient.contextKey(contextData),
+                () -> callValidateAsync(contextData));
+    }
 
-        final ResponseEntity<Envelope> responseEntity = responseOptional
-                .orElseThrow(() -> new NullRestResponseReceivedException("Received a null response from RestClient trying to call the IF"));
+    private Response callValidate(ContextData contextData) {
 
-        final Envelope envelope = responseEntity.getBody();
-        final Body body = envelope.getBody();
-        final Response response = body.getResponse();
+        final HttpHeaders headers = buildHeaders(contextData);
+        final String country = contextData.getLocale().getCountry();
+        final String url = propertiesAccessor.getPropertyForOpco("erif.url", country);
 
-        return response;
+        final Optional<Response> responseOptional =
+                Optional.ofNullable(opcoRequestHedger.call(OpcoHttpTransport.ERIF, country, () ->
+                        opcoCircuitBreakers.call(OpcoHttpTransport.ERIF, country, () ->
+                                opcoHttpTransport.call(OpcoHttpTransport.ERIF, country,
+                                        () -> xmlRestTemplate.execute(url, HttpMethod.POST,
+                                                request -> writeRequest(request, contextData, headers),
+                                                ERIFXmlClient::readResponse)))));
 
+        return getResponse(responseOptional);
     }
 
-    private Envelope buildEnvelope(ContextData contextData){
-        Msgcontrol msgcontrol= new Msgcontrol();
-        msgcontrol.setCountry(contextData.getLocale().getCountry());
+    private CompletableFuture<Response> callValidateAsync(ContextData contextData) {
 
-        AccountId accountId = new AccountId();
-        accountId.setType(contextData.getChargingId().getType());
-        accountId.setValue(contextData.getChargingId().getValue());
+        final String country = contextData.getLocale().getCountry();
+        final RequestDeadline deadline = RequestDeadline.current();
+        deadline.check("calling erif for opco " + country);
 
-        Validate validate = new Validate();
-        validate.setAccountId(accountId);
-        validate.setClientId(contextData.getClientId());
-        validate.setKycCheck(contextData.isKycCheck());
-        validate.setPackageType(contextData.getPackageType().name());
-        validate.setPartnerId(contextData.getPartnerId());
-        validate.setServiceId(contextData.getServiceId());
-        validate.setVendorId(contextData.getVendorId());
+        final HttpHeaders headers = buildHeaders(contextData);
+        final String url = propertiesAccessor.getPropertyForOpco("erif.url", country);
 
-        Request request = new Request();
-        request.setMsgcontrol(msgcontrol);
-        request.setValidate(validate);
+        return opcoCircuitBreakers.callAsync(OpcoHttpTransport.ERIF, country,
+                () -> opcoHttpTransport.callAsync(OpcoHttpTransport.ERIF, country,
+                        () -> ERIFClient.completable(asyncRestTemplate.execute(url, HttpMethod.POST,
+                                request -> writeRequest(request, contextData, headers), ERIFXmlClient::readResponse),
+                                deadline)))
+                .thenApply(response -> getResponse(Optional.ofNullable(response)));
+    }
 
-        Messagegroup messagegroup = new Messagegroup();
-        messagegroup.setRequest(request);
+    private HttpHeaders buildHeaders(ContextData contextData) {
+        //generates ERIF not-quite-soap specific headers
+        final HttpHeaders headers = new ValidateHttpHeaders(contextData, MediaType.TEXT_XML).getHttpHeaders();
+        log.debug("headers={}", headers);
+        return headers;
+    }
 
-        Body body = new Body();
-        body.setMessagegroup(messagegroup);
-        Envelope envelope = new Envelope();
-        envelope.setBody(body);
+    private static void writeRequest(HttpOutputMessage request, ContextData contextData, HttpHeaders headers)
+            throws IOException {
+        request.getHeaders().putAll(headers);
+        ERIFXmlCodec.writeValidateRequest(contextData, request.getBody());
+    }
 
-        return  envelope;
+    private static Response readResponse(ClientHttpResponse clientHttpResponse) throws IOException {
+        try (InputStream body = clientHttpResponse.getBody()) {
+            return ERIFXmlCodec.readResponse(body);
+        } catch (XMLStreamException e) {
+            throw new HttpMessageNotReadableException("Could not read the IF response: " + e.getMessage(), e);
+        }
+    }
+
+    private Response getResponse(Optional<Response> responseOptional) {
+        return responseOptional
+                .orElseThrow(() -> new NullRestResponseReceivedException("Received a null response from RestClient trying to call the IF"));
     }
-}
\ No newline at end of file
+}
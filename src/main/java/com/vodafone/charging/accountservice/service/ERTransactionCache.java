@@ -0,0 +1,176 @@
+package com.vodafone.charging.accountservice.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.vodafone.charging.accountservice.dto.er.ERTransaction;
+import com.vodafone.charging.accountservice.dto.er.ERTransactionCriteria;
+import com.vodafone.charging.properties.PropertiesAccessor;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static com.vodafone.charging.accountservice.service.ERDateCalculator.START_DATE_KEY;
+
+/**
+ * Keeps the ER transaction history fetched for each chargingId and opco, so a later search only asks ER for
+ * transactions since the newest one held and merges them in.  Transactions without a time are not kept, so a search
+ * gets the same transactions, in time order, whether or not its history was cached.  Entries are dropped at billing cycle rollover
+ * and refetched in full once older than the configured maximum age, which bounds how long a transaction
+ * ER records late can be missed.  The cache is bounded by the total number of transactions held.
+ */
+@Service
+@Slf4j
+public class ERTransactionCache {
+
+    private final Cache<String, Entry> cache;
+    private final ERDateCalculator erDateCalculator;
+    private final boolean enabled;
+    private final long maxAgeMillis;
+
+    @Autowired
+    public ERTransactionCache(PropertiesAccessor propertiesAccessor, ERDateCalculator erDateCalculator) {
+        final int maxTransactions = propertiesAccessor.getPropertyAsInt("er.transaction.cache.max.transactions", 1000000);
+        this.enabled = maxTransactions > 0;
+        this.maxAgeMillis = TimeUnit.SECONDS.toMillis(
+                propertiesAccessor.getPropertyAsInt("er.transaction.cache.max.age.seconds", 300));
+        this.erDateCalculator = erDateCalculator;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(Math.max(maxTransactions, 0))
+                .weigher((String key, Entry entry) -> entry.transactions.size() + 1)
+                .build();
+    }
+
+    /**
+     * Transactions matching the criteria, fetched with the loader only as far as the cache does not already hold them.
+     * Searches limited to a result size, or without both dates, are always passed straight to the loader.
+     */
+    public List<ERTransaction> getTransactions(@NonNull final ERTransactionCriteria criteria, final int billingCycleDay,
+                                               @NonNull final Function<ERTransactionCriteria, List<ERTransaction>> loader) {
+        if (!enabled || Objects.nonNull(criteria.getRequiredResultSize())
+                || Objects.isNull(criteria.getFromDate()) || Objects.isNull(criteria.getToDate())) {
+            return loader.apply(criteria);
+        }
+
+        final String key = key(criteria);
+        final LocalDateTime cycleStart = erDateCalculator.calculateBillingCycleDates(billingCycleDay).get(START_DATE_KEY);
+        final Entry entry = cache.getIfPresent(key);
+
+        if (Objects.isNull(entry) || !entry.covers(criteria.getFromDate(), cycleStart, maxAgeMillis)) {
+            final Entry loaded = new Entry(sorted(loader.apply(criteria)), criteria.getFromDate(), cycleStart,
+                    System.currentTimeMillis());
+            cache.put(key, loaded);
+            return loaded.between(criteria.getFromDate(), criteria.getToDate());
+        }
+
+        final LocalDateTime deltaFrom = entry.newestTime();
+        final List<ERTransaction> delta = loader.apply(withFromDate(criteria, deltaFrom));
+        log.debug("Fetched {} ER transactions since {} for cached history of {}", delta.size(), deltaFrom, key);
+
+        final Entry merged = entry.merge(delta, deltaFrom);
+        cache.put(key, merged);
+        return merged.between(criteria.getFromDate(), criteria.getToDate());
+    }
+
+    private static String key(ERTransactionCriteria criteria) {
+        return criteria.getLocale().getCountry() + ':' + criteria.getChargingId().getType() + ':'
+                + criteria.getChargingId().getValue() + ':' + criteria.isMonetaryOnly() + ':'
+                + String.join(",", new TreeSet<>(criteria.getTransactionTypes()));
+    }
+
+    private static ERTransactionCriteria withFromDate(ERTransactionCriteria criteria, LocalDateTime fromDate) {
+        return ERTransactionCriteria.builder()
+                .chargingId(criteria.getChargingId())
+                .locale(criteria.getLocale())
+                .transactionTypes(criteria.getTransactionTypes())
+                .monetaryOnly(criteria.isMonetaryOnly())
+                .fromDate(fromDate)
+                .toDate(criteria.getToDate())
+                .build();
+    }
+
+    private static List<ERTransaction> sorted(List<ERTransaction> transactions) {
+        final List<ERTransaction> sorted = new ArrayList<>(transactions.size());
+        for (ERTransaction transaction : transactions) {
+            if (Objects.nonNull(transaction) && Objects.nonNull(transaction.getDateTime())) {
+                sorted.add(transaction);
+            }
+        }
+        sorted.sort(Comparator.comparing(ERTransaction::getDateTime));
+        return sorted;
+    }
+
+    /**
+     * Transactions held in time order, covering everything from coveredFrom up to the last fetch.
+     */
+    private static final class Entry {
+
+        private final List<ERTransaction> transactions;
+        private final LocalDateTime coveredFrom;
+        private final LocalDateTime cycleStart;
+        private final long loadedAt;
+
+        private Entry(List<ERTransaction> transactions, LocalDateTime coveredFrom, LocalDateTime cycleStart, long loadedAt) {
+            this.transactions = transactions;
+            this.coveredFrom = coveredFrom;
+            this.cycleStart = cycleStart;
+            this.loadedAt = loadedAt;
+        }
+
+        private boolean covers(LocalDateTime fromDate, LocalDateTime currentCycleStart, long maxAgeMillis) {
+            return Objects.equals(cycleStart, currentCycleStart)
+                    && !fromDate.isBefore(coveredFrom)
+                    && loadedAt + maxAgeMillis >= System.currentTimeMillis();
+        }
+
+        private LocalDateTime newestTime() {
+            return transactions.isEmpty() ? coveredFrom : transactions.get(transactions.size() - 1).getDateTime();
+        }
+
+        /**
+         * Adds the delta, skipping transactions at the boundary time that are already held.  Identical transactions,
+         * e.g. two purchases of the same item in the same second, are each skipped once for each one held.
+         */
+        private Entry merge(List<ERTransaction> delta, LocalDateTime deltaFrom) {
+            final List<ERTransaction> atBoundary = new ArrayList<>();
+            for (int i = transactions.size() - 1; i >= 0 && transactions.get(i).getDateTime().equals(deltaFrom); i--) {
+                atBoundary.add(transactions.get(i));
+            }
+
+            final List<ERTransaction> merged = new ArrayList<>(transactions.size() + delta.size());
+            merged.addAll(transactions);
+            for (ERTransaction transaction : sorted(delta)) {
+                if (transaction.getDateTime().isBefore(deltaFrom)
+                        || (transaction.getDateTime().equals(deltaFrom) && atBoundary.remove(transaction))) {
+                    continue;
+                }
+                merged.add(transaction);
+            }
+            return new Entry(merged, coveredFrom, cycleStart, loadedAt);
+        }
+
+        /**
+         * The transactions from fromDate up to and including toDate, as the loader returns them for the same dates.
+         */
+        private List<ERTransaction> between(LocalDateTime fromDate, LocalDateTime toDate) {
+            int first = 0;
+            while (first < transactions.size() && transactions.get(first).getDateTime().isBefore(fromDate)) {
+                first++;
+            }
+            int end = transactions.size();
+            while (end > first && transactions.get(end - 1).getDateTime().isAfter(toDate)) {
+                end--;
+            }
+            return new ArrayList<>(transactions.subList(first, end));
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package com.vodafone.charging.accountservice.service;
 
+import com.vodafone.charging.accountservice.client.OpcoCircuitBreakers;
 import com.vodafone.charging.accountservice.exception.ExternalServiceException;
+import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Primary;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.HttpClientErrorException;
@@ -11,17 +14,35 @@ import org.springframework.web.client.UnknownHttpStatusCodeException;
 import java.util.function.Supplier;
 
 /**
- * Use to call External Services using Spring
+ * Use to call External Services using Spring.
+ * Calls made for a dependency and opco go through its bulkhead and circuit breaker, see OpcoCircuitBreakers.
  */
 @Primary
 @Service
 @Slf4j
 public class ExternalServiceCallSupplier {
 
+    private OpcoCircuitBreakers opcoCircuitBreakers;
+
+    @Autowired
+    public ExternalServiceCallSupplier(OpcoCircuitBreakers opcoCircuitBreakers) {
+        this.opcoCircuitBreakers = opcoCircuitBreakers;
+    }
+
+    /**
+     * As {@link #call(Supplier)} through the bulkhead and circuit breaker of the dependency and opco.  A call rejected
+     * by either fails fast with an ExternalServiceException without the supplier being called.
+     */
+    public <T> Supplier<T> call(@NonNull String dependency, @NonNull String country, Supplier<T> supplier) {
+        return () -> opcoCircuitBreakers.call(dependency, country, call(supplier));
+    }
+
     public <T> Supplier<T> call(Supplier<T> supplier) {
         return () -> {
             try {
                 return supplier.get();
+            } catch (ExternalServiceException ex) {
+                throw ex;
             } catch (HttpClientErrorException clientEx) {
                 log.error("Client Exception calling ER Adapter Service HttpStatus: {}", clientEx.getStatusText());
                 throw new ExternalServiceException("Client Exception calling ER Adapter Service ", clientEx);
@@ -7,6 +7,10 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Primary;
 import org.springframework.stereotype.Component;
 
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 import java.util.function.Supplier;
 
 @Primary
@@ -25,4 +29,33 @@ public class ServiceCallSupplier {
             }
         };
     }
+
+    /**
+     * As {@link #call(Supplier)} for a call returning a future, which fails with the same exceptions the call would throw.
+     */
+    public <T> CompletableFuture<T> callAsync(Supplier<CompletableFuture<T>> supplier) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            supplier.get().whenComplete((value, ex) -> {
+                if (Objects.isNull(ex)) {
+                    result.complete(value);
+                } else {
+                    result.completeExceptionally(translate(ex));
+                }
+            });
+        } catch (Exception e) {
+            result.completeExceptionally(translate(e));
+        }
+        return result;
+    }
+
+    private static Throwable translate(Throwable ex) {
+        final Throwable cause = (ex instanceof CompletionException || ex instanceof ExecutionException)
+                && Objects.nonNull(ex.getCause()) ? ex.getCause() : ex;
+        if (cause instanceof RepositoryResourceNotFoundException || cause instanceof ApplicationLogicException
+                || cause instanceof ExternalServiceException || cause instanceof Error) {
+            return cause;
+        }
+        return new ApplicationLogicException(cause.getMessage(), cause);
+    }
 }
@@ -0,0 +1,83 @@
+package com.vodafone.charging.accountservice.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.vodafone.charging.accountservice.domain.Money;
+import com.vodafone.charging.accountservice.dto.SpendAggregate;
+import com.vodafone.charging.properties.PropertiesAccessor;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Nullable;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the last SpendAggregate totalled from ER for each Account, with payments approved since added to it,
+ * so spend headroom can be read without calling ER.  An aggregate is only returned while it was totalled from ER
+ * within the configured staleness bound, as spend made outside this service is not seen until the next ER fetch.
+ */
+@Service
+@Slf4j
+public class SpendAggregateCache {
+
+    private final Cache<String, Entry> cache;
+    private final int maxStalenessSeconds;
+
+    @Autowired
+    public SpendAggregateCache(PropertiesAccessor propertiesAccessor) {
+        this.maxStalenessSeconds = propertiesAccessor.getPropertyAsInt("spend.headroom.max.staleness.seconds", 300);
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(propertiesAccessor.getPropertyAsInt("spend.aggregate.cache.max.size", 100000))
+                .expireAfterWrite(maxStalenessSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    public int getMaxStalenessSeconds() {
+        return maxStalenessSeconds;
+    }
+
+    /**
+     * Stores an aggregate just totalled from ER transactions.
+     */
+    public void put(@NonNull final String accountId, @NonNull final SpendAggregate aggregate) {
+        cache.put(accountId, new Entry(aggregate, System.currentTimeMillis()));
+    }
+
+    /**
+     * Adds an approved payment to the cached aggregate, if there is one.  The time it was totalled from ER is kept.
+     */
+    public void recordSpend(@NonNull final String accountId, @NonNull final Money amount) {
+        cache.asMap().computeIfPresent(accountId,
+                (id, entry) -> new Entry(entry.aggregate.plus(amount), entry.totalledAt));
+    }
+
+    /**
+     * The cached aggregate for the account, or null if there is none totalled within the staleness bound.
+     */
+    @Nullable
+    public SpendAggregate find(@NonNull final String accountId) {
+        final Entry entry = cache.getIfPresent(accountId);
+        if (Objects.isNull(entry)) {
+            return null;
+        }
+        if (entry.totalledAt + TimeUnit.SECONDS.toMillis(maxStalenessSeconds) < System.currentTimeMillis()) {
+            log.debug("Cached spend aggregate for accountId={} is stale", accountId);
+            return null;
+        }
+        return entry.aggregate;
+    }
+
+    private static final class Entry {
+
+        private final SpendAggregate aggregate;
+        private final long totalledAt;
+
+        private Entry(SpendAggregate aggregate, long totalledAt) {
+            this.aggregate = aggregate;
+            this.totalledAt = totalledAt;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.vodafone.charging.accountservice.service;
+
+import com.vodafone.charging.accountservice.domain.enums.SpendLimitType;
+import com.vodafone.charging.accountservice.dto.SpendAggregate;
+import com.vodafone.charging.accountservice.dto.SpendIndex;
+import com.vodafone.charging.accountservice.dto.er.ERTransaction;
+import lombok.NonNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import static com.vodafone.charging.accountservice.service.ERDateCalculator.END_DATE_KEY;
+import static com.vodafone.charging.accountservice.service.ERDateCalculator.START_DATE_KEY;
+
+/**
+ * Totals a transaction list for every duration SpendLimitType window.
+ */
+@Service
+public class SpendAggregator {
+
+    private ERDateCalculator erDateCalculator;
+
+    @Autowired
+    public SpendAggregator(ERDateCalculator erDateCalculator) {
+        this.erDateCalculator = erDateCalculator;
+    }
+
+    public SpendAggregate aggregate(@NonNull final List<ERTransaction> transactions, int billingCycleDay) {
+        return aggregate(transactions, calculateWindows(billingCycleDay));
+    }
+
+    /**
+     * Calendar windows are totalled in a single pass.  Rolling windows are read from a SpendIndex built once
+     * over the transactions, so each is two binary searches however many transactions there are.
+     */
+    public SpendAggregate aggregate(@NonNull final List<ERTransaction> transactions,
+                                    @NonNull final Map<SpendLimitType, Map<String, LocalDateTime>> windows) {
+        final Map<SpendLimitType, Map<String, LocalDateTime>> calendarWindows = new EnumMap<>(SpendLimitType.class);
+        final Map<SpendLimitType, Map<String, LocalDateTime>> rollingWindows = new EnumMap<>(SpendLimitType.class);
+        windows.forEach((type, dates) -> (type.isRolling() ? rollingWindows : calendarWindows).put(type, dates));
+
+        final SpendAggregate.Accumulator accumulator = SpendAggregate.accumulator(calendarWindows).addAll(transactions);
+        if (!rollingWindows.isEmpty()) {
+            final SpendIndex index = SpendIndex.of(transactions);
+            rollingWindows.forEach((type, dates) -> {
+                final LocalDateTime start = dates.get(START_DATE_KEY);
+                final LocalDateTime end = dates.get(END_DATE_KEY);
+                accumulator.addWindowTotals(type, start, index.getPayments(start, end), index.getRefunds(start, end));
+            });
+        }
+        return accumulator.build();
+    }
+
+    /**
+     * Start and end dates of every duration SpendLimitType for an account's billing cycle day.
+     */
+    public Map<SpendLimitType, Map<String, LocalDateTime>> calculateWindows(int billingCycleDay) {
+        return calculateWindows(billingCycleDay, EnumSet.allOf(SpendLimitType.class));
+    }
+
+    /**
+     * Start and end dates of the given duration SpendLimitTypes only.
+     */
+    public Map<SpendLimitType, Map<String, LocalDateTime>> calculateWindows(int billingCycleDay,
+                                                                           @NonNull Set<SpendLimitType> types) {
+        final Map<SpendLimitType, Map<String, LocalDateTime>> windows = new EnumMap<>(SpendLimitType.class);
+        for (SpendLimitType type : types) {
+            if (type.isDuration()) {
+                final Map<String, LocalDateTime> dates = erDateCalculator.calculateDurationSpendLimitDates(type, billingCycleDay);
+                if (Objects.nonNull(dates) && Objects.nonNull(dates.get(START_DATE_KEY))) {
+                    windows.put(type, dates);
+                }
+            }
+        }
+        return windows;
+    }
+
+    /**
+     * The earliest start date of the windows, i.e. how far back transactions are needed to total them all.
+     */
+    public static LocalDateTime earliestStart(@NonNull Map<SpendLimitType, Map<String, LocalDateTime>> windows) {
+        return windows.values().stream()
+                .map(dates -> dates.get(START_DATE_KEY))
+                .min(LocalDateTime::compareTo)
+                .orElseThrow(() -> new IllegalArgumentException("No windows to find a start date from"));
+    }
+}
@@ -0,0 +1,149 @@
+package com.vodafone.charging.accountservice.service;
+
+import com.vodafone.charging.accountservice.domain.Money;
+import com.vodafone.charging.accountservice.domain.SpendLimitHeadroom;
+import com.vodafone.charging.accountservice.domain.SpendLimitInfo;
+import com.vodafone.charging.accountservice.domain.enums.SpendLimitType;
+import com.vodafone.charging.accountservice.domain.model.Account;
+import com.vodafone.charging.accountservice.domain.model.SpendLedger;
+import com.vodafone.charging.accountservice.dto.CompiledSpendLimits;
+import com.vodafone.charging.accountservice.dto.SpendAggregate;
+import com.vodafone.charging.accountservice.dto.SpendLimitPlan;
+import com.vodafone.charging.accountservice.dto.client.CatalogInfo;
+import com.vodafone.charging.accountservice.exception.RepositoryResourceNotFoundException;
+import com.vodafone.charging.accountservice.repository.AccountRepository;
+import com.vodafone.charging.ulf.RequestDeadline;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static com.vodafone.charging.accountservice.service.ERDateCalculator.START_DATE_KEY;
+import static java.util.Optional.ofNullable;
+
+/**
+ * Works out how much an Account can still spend under each of its spend limits, for clients to pre-check a payment.
+ * Spend is only read from the SpendAggregateCache and the SpendLedger, never from ER, so a limit is reported
+ * without spent or remaining amounts when neither holds a total recent enough to be trusted.
+ * Limits are resolved against the configured catalog defaults.
+ */
+@Service
+@Slf4j
+public class SpendHeadroomService {
+
+    private AccountRepository repository;
+    private SpendAggregateCache spendAggregateCache;
+    private SpendLedgerService spendLedgerService;
+    private SpendAggregator spendAggregator;
+    private CatalogInfo catalogInfo;
+
+    @Autowired
+    public SpendHeadroomService(AccountRepository repository, SpendAggregateCache spendAggregateCache,
+                                SpendLedgerService spendLedgerService, SpendAggregator spendAggregator,
+                                CatalogInfo catalogInfo) {
+        this.repository = repository;
+        this.spendAggregateCache = spendAggregateCache;
+        this.spendLedgerService = spendLedgerService;
+        this.spendAggregator = spendAggregator;
+        this.catalogInfo = catalogInfo;
+    }
+
+    /**
+     * The headroom for each SpendLimitType with a limit or default limit set, in SpendLimitType order.
+     */
+    public List<SpendLimitHeadroom> getHeadroom(@NonNull final String accountId) {
+        RequestDeadline.current().check("finding the account");
+        final Account account = ofNullable(repository.findOne(accountId))
+                .orElseThrow(() -> new RepositoryResourceNotFoundException("No Account found using id " + accountId));
+
+        final CompiledSpendLimits compiledLimits = CompiledSpendLimits.ofAccount(account, getDefaultSpendLimitInfo());
+        //partner limits apply to each partner separately, so there is no one total to report them against
+        final SpendLimitPlan plan = compiledLimits.getPlan().withoutPartnerScoped();
+        final Map<SpendLimitType, Money> spent = plan.requiresHistory()
+                ? getCachedSpend(account, plan) : new EnumMap<>(SpendLimitType.class);
+
+        final List<SpendLimitHeadroom> headroom = newArrayList();
+        for (SpendLimitType type : SpendLimitType.values()) {
+            if (!compiledLimits.hasLimit(type)) {
+                continue;
+            }
+            final Money limit = compiledLimits.getLimit(type);
+            final SpendLimitHeadroom.SpendLimitHeadroomBuilder builder = SpendLimitHeadroom.builder()
+                    .spendLimitType(type)
+                    .limit(limit)
+                    .defaultLimit(compiledLimits.isDefault(type));
+
+            if (!type.isDuration()) {
+                builder.remaining(limit);
+            } else if (spent.containsKey(type)) {
+                final Money total = spent.get(type);
+                builder.spent(total).remaining(total.isGreaterThan(limit) ? Money.ZERO : limit.minus(total));
+            }
+            headroom.add(builder.build());
+        }
+        return headroom;
+    }
+
+    /**
+     * Net spend for each window in the plan that a cached aggregate or current ledger holds.
+     * The cached aggregate is preferred, as it also holds rolling windows, unless a calendar window has since rolled over.
+     */
+    private Map<SpendLimitType, Money> getCachedSpend(Account account, SpendLimitPlan plan) {
+        final Map<SpendLimitType, Money> spent = new EnumMap<>(SpendLimitType.class);
+        final int billingCycleDay = ofNullable(account.getBillingCycleDay()).orElse(1);
+        final Map<SpendLimitType, Map<String, LocalDateTime>> windows =
+                spendAggregator.calculateWindows(billingCycleDay, plan.getDurationTypes());
+
+        final SpendAggregate cached = spendAggregateCache.find(account.getId());
+        if (Objects.nonNull(cached)) {
+            for (SpendLimitType type : plan.getDurationTypes()) {
+                if (isCurrent(cached, type, windows)) {
+                    spent.put(type, cached.getNetTotalAmount(type));
+                }
+            }
+        }
+
+        if (spent.size() < plan.getDurationTypes().size()) {
+            final SpendLedger ledger = spendLedgerService.findLedger(account, spendAggregateCache.getMaxStalenessSeconds());
+            if (Objects.nonNull(ledger)) {
+                final SpendAggregate ledgerAggregate = ledger.toSpendAggregate();
+                for (SpendLimitType type : plan.getDurationTypes()) {
+                    if (!spent.containsKey(type) && ledgerAggregate.hasWindow(type)) {
+                        spent.put(type, ledgerAggregate.getNetTotalAmount(type));
+                    }
+                }
+            }
+        }
+
+        if (spent.size() < plan.getDurationTypes().size()) {
+            log.debug("No recent spend total for some of {} for accountId={}", plan, account.getId());
+        }
+        return spent;
+    }
+
+    /**
+     * Rolling windows move with time so are current for as long as the aggregate is within the staleness bound.
+     */
+    private boolean isCurrent(SpendAggregate aggregate, SpendLimitType type,
+                              Map<SpendLimitType, Map<String, LocalDateTime>> windows) {
+        if (!aggregate.hasWindow(type)) {
+            return false;
+        }
+        if (type.isRolling()) {
+            return true;
+        }
+        final Map<String, LocalDateTime> dates = windows.get(type);
+        return Objects.nonNull(dates) && aggregate.getWindowStart(type).equals(dates.get(START_DATE_KEY));
+    }
+
+    private List<SpendLimitInfo> getDefaultSpendLimitInfo() {
+        return ofNullable(catalogInfo).map(CatalogInfo::getDefaultSpendLimitInfo).orElse(newArrayList());
+    }
+}
@@ -0,0 +1,159 @@
+package com.vodafone.charging.accountservice.service;
+
+import com.vodafone.charging.accountservice.domain.Money;
+import com.vodafone.charging.accountservice.domain.enums.SpendLimitType;
+import com.vodafone.charging.accountservice.domain.model.Account;
+import com.vodafone.charging.accountservice.domain.model.SpendLedger;
+import com.vodafone.charging.accountservice.dto.SpendAggregate;
+import com.vodafone.charging.accountservice.dto.er.ERTransaction;
+import com.vodafone.charging.accountservice.repository.SpendLedgerRepository;
+import com.vodafone.charging.properties.PropertiesAccessor;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Nullable;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TimeZone;
+
+import static com.vodafone.charging.accountservice.service.ERDateCalculator.START_DATE_KEY;
+import static java.util.Optional.ofNullable;
+
+/**
+ * Maintains a persisted SpendLedger per Account so that day and billing cycle spend can be read
+ * without fetching the full billing cycle from ER. Ledgers are rebuilt from ER transactions when
+ * missing, when a window has rolled over or when the reconcile interval has passed.
+ */
+@Service
+@Slf4j
+public class SpendLedgerService {
+
+    private static final Set<SpendLimitType> LEDGER_TYPES =
+            Collections.unmodifiableSet(EnumSet.of(SpendLimitType.ACCOUNT_DAY, SpendLimitType.ACCOUNT_MONTH));
+
+    private SpendLedgerRepository repository;
+    private SpendAggregator spendAggregator;
+    private ERDateCalculator erDateCalculator;
+    private PropertiesAccessor propertiesAccessor;
+    private TimeZone timeZone;
+
+    @Autowired
+    public SpendLedgerService(SpendLedgerRepository repository, SpendAggregator spendAggregator,
+                              ERDateCalculator erDateCalculator, PropertiesAccessor propertiesAccessor, TimeZone timeZone) {
+        this.repository = repository;
+        this.spendAggregator = spendAggregator;
+        this.erDateCalculator = erDateCalculator;
+        this.propertiesAccessor = propertiesAccessor;
+        this.timeZone = timeZone;
+    }
+
+    /**
+     * Returns the ledger for the account if it covers the current day and billing cycle and has been
+     * reconciled against ER recently enough to be trusted, otherwise null.
+     */
+    @Nullable
+    public SpendLedger findCurrentLedger(@NonNull final Account account) {
+        return findLedger(account, propertiesAccessor.getPropertyAsInt("spend.ledger.reconcile.interval.seconds", 300));
+    }
+
+    /**
+     * As {@link #findCurrentLedger(Account)} but trusting a ledger reconciled within the given number of seconds.
+     */
+    @Nullable
+    public SpendLedger findLedger(@NonNull final Account account, final int maxAgeSeconds) {
+        final SpendLedger ledger = repository.findOne(account.getId());
+        if (Objects.isNull(ledger)) {
+            return null;
+        }
+
+        final int billingCycleDay = ofNullable(account.getBillingCycleDay()).orElse(1);
+        final LocalDateTime dayStart = windowStart(SpendLimitType.ACCOUNT_DAY, billingCycleDay);
+        final LocalDateTime cycleStart = windowStart(SpendLimitType.ACCOUNT_MONTH, billingCycleDay);
+        if (!dayStart.equals(ledger.getDayStart()) || !cycleStart.equals(ledger.getCycleStart())) {
+            log.debug("Spend ledger for accountId={} has rolled over", account.getId());
+            return null;
+        }
+
+        if (Objects.isNull(ledger.getLastReconciled())
+                || ledger.getLastReconciled().plusSeconds(maxAgeSeconds).isBefore(LocalDateTime.now(timeZone.toZoneId()))) {
+            log.debug("Spend ledger for accountId={} is due for reconciliation", account.getId());
+            return null;
+        }
+        return ledger;
+    }
+
+    /**
+     * Builds a ledger from ER transactions without persisting it.
+     * Refunds are subtracted, every other transaction type is added.
+     */
+    public SpendLedger fromTransactions(@NonNull final Account account, @NonNull final List<ERTransaction> transactions) {
+        return fromTransactions(account, transactions, 0L);
+    }
+
+    private SpendLedger fromTransactions(Account account, List<ERTransaction> transactions, long pending) {
+        final int billingCycleDay = ofNullable(account.getBillingCycleDay()).orElse(1);
+        final SpendAggregate aggregate = spendAggregator.aggregate(transactions,
+                spendAggregator.calculateWindows(billingCycleDay, LEDGER_TYPES));
+
+        return SpendLedger.builder()
+                .accountId(account.getId())
+                .dayStart(aggregate.getWindowStart(SpendLimitType.ACCOUNT_DAY))
+                .dayTotal(aggregate.getNetTotal(SpendLimitType.ACCOUNT_DAY) + pending)
+                .cycleStart(aggregate.getWindowStart(SpendLimitType.ACCOUNT_MONTH))
+                .cycleTotal(aggregate.getNetTotal(SpendLimitType.ACCOUNT_MONTH) + pending)
+                .lastReconciled(LocalDateTime.now(timeZone.toZoneId()))
+                .build();
+    }
+
+    /**
+     * The version of the persisted ledger, 0 if there is none, to read before the ER transactions and pending spend
+     * it is to be reconciled with.
+     */
+    public long getVersion(@NonNull final Account account) {
+        final SpendLedger ledger = Objects.isNull(account.getId()) ? null : repository.findOne(account.getId());
+        return Objects.isNull(ledger) ? 0L : ledger.getVersion();
+    }
+
+    /**
+     * Rebuilds the ledger from ER transactions plus the pending spend not yet in ER, and replaces the persisted totals
+     * with it if the ledger is still at expectedVersion, see {@link #getVersion(Account)}.  Where spend has been
+     * recorded since, the rebuilt totals would lose it, so the ledger is left as it is to be reconciled on a later read.
+     *
+     * @return the rebuilt ledger, whether or not it was persisted
+     */
+    public SpendLedger reconcile(@NonNull final Account account, @NonNull final List<ERTransaction> transactions,
+                                 @NonNull final Money pending, final long expectedVersion) {
+        final SpendLedger ledger = fromTransactions(account, transactions, pending.getMinorUnits());
+        if (repository.replaceTotals(ledger, expectedVersion)) {
+            log.info("Spend ledger reconciled for accountId={}", account.getId());
+        } else {
+            log.info("Spend ledger for accountId={} changed while reconciling, left to reconcile later", account.getId());
+        }
+        return ledger;
+    }
+
+    /**
+     * Atomically adds an approved amount to the running totals. Pass a negative amount for a refund.
+     * If the ledger has rolled over nothing is written, it will be rebuilt on the next read.
+     */
+    public void recordSpend(@NonNull final Account account, @NonNull final Money amount) {
+        final int billingCycleDay = ofNullable(account.getBillingCycleDay()).orElse(1);
+        final boolean updated = repository.incrementTotals(account.getId(),
+                windowStart(SpendLimitType.ACCOUNT_DAY, billingCycleDay),
+                windowStart(SpendLimitType.ACCOUNT_MONTH, billingCycleDay),
+                amount.getMinorUnits());
+        if (!updated) {
+            log.debug("No current spend ledger to update for accountId={}", account.getId());
+        }
+    }
+
+    private LocalDateTime windowStart(SpendLimitType type, int billingCycleDay) {
+        return erDateCalculator.calculateDurationSpendLimitDates(type, billingCycleDay).get(START_DATE_KEY);
+    }
+}
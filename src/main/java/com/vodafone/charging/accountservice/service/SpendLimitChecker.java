@@ -1,9 +1,13 @@
 package com.vodafone.charging.accountservice.service;
 
 import com.vodafone.charging.accountservice.domain.ApprovalCriteria;
+import com.vodafone.charging.accountservice.domain.Money;
 import com.vodafone.charging.accountservice.domain.PaymentContext;
+import com.vodafone.charging.accountservice.domain.SpendLimitInfo;
 import com.vodafone.charging.accountservice.domain.enums.SpendLimitType;
 import com.vodafone.charging.accountservice.domain.model.SpendLimit;
+import com.vodafone.charging.accountservice.dto.CompiledSpendLimits;
+import com.vodafone.charging.accountservice.dto.SpendAggregate;
 import com.vodafone.charging.accountservice.dto.SpendLimitResult;
 import com.vodafone.charging.accountservice.dto.client.CatalogInfo;
 import com.vodafone.charging.accountservice.dto.client.TransactionInfo;
@@ -13,16 +17,14 @@ import lombok.NonNull;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.function.Predicate;
 
 import static com.google.common.collect.Lists.newArrayList;
 import static com.vodafone.charging.accountservice.domain.enums.PaymentApprovalRule.USE_RENEWAL_TRANSACTIONS;
+import static java.util.Collections.singletonMap;
 import static java.util.Optional.ofNullable;
-import static java.util.stream.Collectors.toList;
 
 /**
  * Responsible for checking different types of Spend Limits e.g.
@@ -47,45 +49,35 @@ public class SpendLimitChecker {
                                                   @NonNull List<TransactionInfo> transactions,
                                                   @NonNull SpendLimitType spendLimitType) {
 
-        final BigDecimal totalTxAmount = transactions.stream()
-                .filter(Objects::nonNull)
-                .map(TransactionInfo::getAmount)
-                .reduce(BigDecimal::add)
-                .orElse(BigDecimal.ZERO);
+        long totalTxMinorUnits = 0L;
+        for (TransactionInfo transaction : transactions) {
+            if (Objects.nonNull(transaction)) {
+                totalTxMinorUnits += transaction.getAmount().getMinorUnits();
+            }
+        }
 
-        List<SpendLimit> defaultLimits = newArrayList();
+        return checkTransactionLimit(CompiledSpendLimits.of(spendLimits, defaultSpendLimits),
+                Money.ofMinorUnits(totalTxMinorUnits), spendLimitType);
+    }
 
-        final List<SpendLimit> limits = spendLimits.stream()
-                .filter(l -> l.getSpendLimitType().equals(spendLimitType))
-                .collect(toList());
+    /**
+     * Check a transaction amount does not breach the limit, or default limit, already resolved for the type.
+     */
+    public SpendLimitResult checkTransactionLimit(@NonNull CompiledSpendLimits compiledLimits,
+                                                  @NonNull Money transactionAmount,
+                                                  @NonNull SpendLimitType spendLimitType) {
 
-        //Check standard SpendLimit
-        if (!limits.isEmpty() && limits.get(0).getLimit() < totalTxAmount.doubleValue()) {
+        final Money limit = compiledLimits.getLimit(spendLimitType);
+        if (Objects.nonNull(limit) && transactionAmount.isGreaterThan(limit)) {
             return SpendLimitResult.builder().success(false)
                     .failureCauseType(spendLimitType)
-                    .failureReason(spendLimitType.name() + " spend limit breached")
-                    .appliedLimitValue(limits.get(0).getLimit())
-                    .totalTransactionsValue(totalTxAmount.setScale(2, RoundingMode.HALF_UP).doubleValue())
+                    .failureReason(breachReason(compiledLimits, spendLimitType))
+                    .appliedLimitValue(limit)
+                    .totalTransactionsValue(transactionAmount)
                     .build();
-        } else if (limits.isEmpty()) {
-            //Check default limit
-            defaultLimits = defaultSpendLimits.stream()
-                    .filter(l -> l.getSpendLimitType().equals(spendLimitType))
-                    .collect(toList());
-
-            if (!defaultLimits.isEmpty() && defaultLimits.get(0).getLimit() < totalTxAmount.doubleValue())
-                return SpendLimitResult.builder().success(false)
-                        .failureCauseType(spendLimitType)
-                        .failureReason(spendLimitType.name() + " default spend limit breached")
-                        .appliedLimitValue(defaultLimits.get(0).getLimit())
-                        .totalTransactionsValue(totalTxAmount.setScale(2, RoundingMode.HALF_UP).doubleValue())
-                        .build();
         }
 
-        BigDecimal totalTxValue = Objects.nonNull(totalTxAmount) ? totalTxAmount : BigDecimal.ZERO;
-        double appliedLimitValue = findAppliedLimit(limits, defaultLimits);
-
-        return SpendLimitResult.successResponse(appliedLimitValue, totalTxValue.setScale(2, RoundingMode.HALF_UP).doubleValue());
+        return SpendLimitResult.successResponse(compiledLimits.getAppliedLimit(spendLimitType), transactionAmount);
     }
 
     /**
@@ -99,84 +91,58 @@ public class SpendLimitChecker {
                                                int billingCycleDay) {
 
 
-        Optional<CatalogInfo> infoOptional = ofNullable(paymentContext.getCatalogInfo());
-
-        final List<SpendLimit> defaultSpendLimits = SpendLimit.fromSpendLimitsInfo(infoOptional
-                .orElse(CatalogInfo.builder().defaultSpendLimitInfo(newArrayList())
-                        .build())
-                .getDefaultSpendLimitInfo());
-        final BigDecimal currentTransactionAmount = paymentContext.getTransactionInfo().getAmount();
         final Map<String, LocalDateTime> startEndDates = erDateCalculator.calculateDurationSpendLimitDates(spendLimitType, billingCycleDay);
 
-        final LocalDateTime start = startEndDates.get(ERDateCalculator.START_DATE_KEY);
-        final LocalDateTime end = startEndDates.get(ERDateCalculator.END_DATE_KEY);
-
-        //Collect relevant payments
-        List<ERTransaction> payments =
-                erTransList.stream().filter(transaction -> transaction.getDateTime().isAfter(start)
-                        && transaction.getDateTime().isBefore(end)
-                        && !transaction.getType().equalsIgnoreCase(ERTransactionType.REFUND.name()))
-                        .collect(toList());
-
-        List<ERTransaction> refundTransactions =
-                erTransList.stream().filter(transaction -> transaction.getDateTime().isAfter(start)
-                        && transaction.getDateTime().isBefore(end)
-                        && transaction.getType().equalsIgnoreCase(ERTransactionType.REFUND.name()))
-                        .collect(toList());
-
-        //total payments
-        final BigDecimal totalPaymentAmount = payments.stream().map(ERTransaction::getAmount)
-                .reduce(BigDecimal::add).orElse(BigDecimal.ZERO);
+        //total payments and refunds in a single pass
+        final SpendAggregate aggregate = SpendAggregate.accumulator(singletonMap(spendLimitType, startEndDates))
+                .addAll(erTransList)
+                .build();
 
-//        final BigDecimal totalPaymentAmount = mapReducePayments(erTransList, buildPaymentsPredicate(paymentContext, start, end));
+        return checkDurationLimit(paymentContext, spendLimits, aggregate.getNetTotalAmount(spendLimitType), spendLimitType);
+    }
 
-        //total refunds
-        final BigDecimal totalRefundAmount = refundTransactions.stream().map(ERTransaction::getAmount)
-                .reduce(BigDecimal::add).orElse(BigDecimal.ZERO);
+    /**
+     * Check the current transaction plus an already calculated spend total for a duration (payments minus refunds)
+     * do not breach the limit set for that duration.
+     * If no duration limit has been set, check if a default limit has been set for that duration.
+     */
+    public SpendLimitResult checkDurationLimit(@NonNull PaymentContext paymentContext,
+                                               @NonNull List<SpendLimit> spendLimits,
+                                               @NonNull Money durationTotal,
+                                               @NonNull final SpendLimitType spendLimitType) {
 
-        //calculate
-//        BigDecimal totalValue = totalPaymentAmount.subtract(totalRefundAmount).add(currentTransactionAmount);
-        final BigDecimal transactionsIncludingCurrent = totalPaymentAmount.subtract(totalRefundAmount).add(currentTransactionAmount);
+        final List<SpendLimitInfo> defaultSpendLimitInfo = ofNullable(paymentContext.getCatalogInfo())
+                .map(CatalogInfo::getDefaultSpendLimitInfo).orElse(newArrayList());
 
-        //Add the current transaction value including all previous transactions
-//        BigDecimal transactionsIncludingCurrent = totalValue.add(currentTransactionAmount);
+        return checkDurationLimit(CompiledSpendLimits.ofDefaultInfo(spendLimits, defaultSpendLimitInfo),
+                durationTotal, paymentContext.getTransactionInfo().getAmount(), spendLimitType);
+    }
 
-        //find relevant limit to apply
-        final List<SpendLimit> limits = spendLimits.stream()
-                .filter(limit -> limit.getSpendLimitType().equals(spendLimitType))
-                .collect(toList());
+    /**
+     * Check the current transaction plus an already calculated spend total for a duration do not breach the limit,
+     * or default limit, already resolved for that duration.
+     */
+    public SpendLimitResult checkDurationLimit(@NonNull CompiledSpendLimits compiledLimits,
+                                               @NonNull Money durationTotal,
+                                               @NonNull Money currentTransactionAmount,
+                                               @NonNull final SpendLimitType spendLimitType) {
 
-        List<SpendLimit> filteredDefaultLimits = newArrayList();
+        //Add the current transaction value to all previous transactions
+        final Money transactionsIncludingCurrent = durationTotal.plus(currentTransactionAmount);
 
-        //check limit if exists otherwise check default
-        if (!limits.isEmpty()
-                && limits.get(0).getLimit() < transactionsIncludingCurrent.doubleValue()) {
+        final Money limit = compiledLimits.getLimit(spendLimitType);
+        if (Objects.nonNull(limit) && transactionsIncludingCurrent.isGreaterThan(limit)) {
             return SpendLimitResult.builder().success(false).failureCauseType(spendLimitType)
-                    .failureReason(spendLimitType.name() + " spend limit breached")
-                    .appliedLimitValue(limits.get(0).getLimit())
-                    .totalTransactionsValue(transactionsIncludingCurrent.doubleValue())
+                    .failureReason(breachReason(compiledLimits, spendLimitType))
+                    .appliedLimitValue(limit)
+                    .totalTransactionsValue(transactionsIncludingCurrent)
                     .build();
-        } else if (limits.isEmpty()) {//apply a default
-            //get default
-            filteredDefaultLimits = defaultSpendLimits.stream()
-                    .filter(l -> l.getSpendLimitType().equals(spendLimitType))
-                    .collect(toList());
-
-            if (!filteredDefaultLimits.isEmpty() && filteredDefaultLimits.get(0).getLimit() < transactionsIncludingCurrent.doubleValue()) {
-                return SpendLimitResult.builder().success(false)
-                        .failureCauseType(spendLimitType)
-                        .appliedLimitValue(filteredDefaultLimits.get(0).getLimit())
-                        .totalTransactionsValue(transactionsIncludingCurrent.doubleValue())
-                        .failureReason(spendLimitType.name() + " default spend limit breached").build();
-            }
         }
 
-        double appliedLimitValue = findAppliedLimit(limits, filteredDefaultLimits);
-
         return SpendLimitResult.builder().success(true)
                 .failureReason("")
-                .appliedLimitValue(appliedLimitValue)
-                .totalTransactionsValue(transactionsIncludingCurrent.doubleValue())
+                .appliedLimitValue(compiledLimits.getAppliedLimit(spendLimitType))
+                .totalTransactionsValue(transactionsIncludingCurrent)
                 .build();
     }
 
@@ -205,23 +171,16 @@ public class SpendLimitChecker {
         return dates.and(allPayments);
     }
 
-    public BigDecimal mapReducePayments(final List<ERTransaction> erTransList,
-                                        final Predicate<ERTransaction> predicate) {
+    public Money mapReducePayments(final List<ERTransaction> erTransList,
+                                   final Predicate<ERTransaction> predicate) {
 
-        return erTransList.stream().filter(predicate)
-                .map(ERTransaction::getAmount)
-                .reduce(BigDecimal::add).orElse(BigDecimal.ZERO);
+        return Money.ofMinorUnits(erTransList.stream().filter(predicate)
+                .mapToLong(transaction -> transaction.getAmount().getMinorUnits())
+                .sum());
     }
 
-    private double findAppliedLimit(List<SpendLimit> limits, List<SpendLimit> defaultLimits) {
-        double appliedLimitValue;
-        if (!limits.isEmpty()) {
-            appliedLimitValue = limits.get(0).getLimit();
-        } else if (!defaultLimits.isEmpty()) {
-            appliedLimitValue = defaultLimits.get(0).getLimit();
-        } else {
-            appliedLimitValue = 0.0;
-        }
-        return appliedLimitValue;
+    private String breachReason(CompiledSpendLimits compiledLimits, SpendLimitType spendLimitType) {
+        return spendLimitType.name() + (compiledLimits.isDefault(spendLimitType)
+                ? " default spend limit breached" : " spend limit breached");
     }
 }
@@ -1,28 +1,47 @@
 package com.vodafone.charging.accountservice.service;
 
 import com.vodafone.charging.accountservice.client.ERService;
+import com.vodafone.charging.accountservice.domain.Money;
 import com.vodafone.charging.accountservice.domain.PaymentApproval;
+import com.vodafone.charging.accountservice.domain.PaymentApprovalRequest;
 import com.vodafone.charging.accountservice.domain.PaymentContext;
 import com.vodafone.charging.accountservice.domain.SpendLimitInfo;
 import com.vodafone.charging.accountservice.domain.enums.SpendLimitType;
 import com.vodafone.charging.accountservice.domain.model.Account;
 import com.vodafone.charging.accountservice.domain.model.Profile;
+import com.vodafone.charging.accountservice.domain.model.SpendLedger;
 import com.vodafone.charging.accountservice.domain.model.SpendLimit;
+import com.vodafone.charging.accountservice.dto.CompiledSpendLimits;
+import com.vodafone.charging.accountservice.dto.SpendAggregate;
+import com.vodafone.charging.accountservice.dto.SpendLimitPlan;
 import com.vodafone.charging.accountservice.dto.SpendLimitResult;
 import com.vodafone.charging.accountservice.dto.client.CatalogInfo;
+import com.vodafone.charging.accountservice.dto.client.TransactionInfo;
+import com.vodafone.charging.accountservice.dto.er.ERAggregateWindow;
 import com.vodafone.charging.accountservice.dto.er.ERTransaction;
 import com.vodafone.charging.accountservice.dto.er.ERTransactionCriteria;
 import com.vodafone.charging.accountservice.exception.RepositoryResourceNotFoundException;
 import com.vodafone.charging.accountservice.repository.AccountRepository;
+import com.vodafone.charging.properties.PropertiesAccessor;
+import com.vodafone.charging.ulf.RequestDeadline;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.Nullable;
 import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
 
 import static com.google.common.collect.Lists.newArrayList;
 import static com.vodafone.charging.accountservice.domain.enums.PaymentApprovalRule.USE_RENEWAL_TRANSACTIONS;
@@ -33,33 +52,225 @@ import static java.util.Optional.ofNullable;
 @Slf4j
 public class SpendLimitService {
 
+    static final String BATCH_FAILURE_DESCRIPTION = "Payment could not be approved";
+
     private AccountRepository repository;
     private ERService erService;
     private SpendLimitChecker spendLimitChecker;
     private ERDateCalculator erDateCalculator;
+    private SpendLedgerService spendLedgerService;
+    private SpendAggregator spendAggregator;
+    private SpendAggregateCache spendAggregateCache;
+    private SpendReservationTable spendReservationTable;
+    private ERTransactionCache erTransactionCache;
+    private PropertiesAccessor propertiesAccessor;
+    private Executor asyncPipelineExecutor;
 
     @Autowired
-    public SpendLimitService(AccountRepository repository, ERService erService, SpendLimitChecker spendLimitChecker, ERDateCalculator erDateCalculator) {
+    public SpendLimitService(AccountRepository repository, ERService erService, SpendLimitChecker spendLimitChecker,
+                             ERDateCalculator erDateCalculator, SpendLedgerService spendLedgerService,
+                             SpendAggregator spendAggregator, SpendAggregateCache spendAggregateCache,
+                             SpendReservationTable spendReservationTable, ERTransactionCache erTransactionCache,
+                             PropertiesAccessor propertiesAccessor,
+                             @Qualifier("asyncPipelineExecutor") Executor asyncPipelineExecutor) {
         this.repository = repository;
         this.erService = erService;
         this.spendLimitChecker = spendLimitChecker;
         this.erDateCalculator = erDateCalculator;
+        this.spendLedgerService = spendLedgerService;
+        this.spendAggregator = spendAggregator;
+        this.spendAggregateCache = spendAggregateCache;
+        this.spendReservationTable = spendReservationTable;
+        this.erTransactionCache = erTransactionCache;
+        this.propertiesAccessor = propertiesAccessor;
+        this.asyncPipelineExecutor = asyncPipelineExecutor;
     }
 
+    /**
+     * Spend is totalled without holding the account's lock, as it may call ER or Mongo.  A payment it approves is
+     * then checked again under the lock with the amounts reserved for the account since, and only then reserved,
+     * so payments for the same account each count the amounts reserved by those before them.
+     * A payment whose RequestDeadline passed while it waited for the account is not approved.
+     */
     public PaymentApproval approvePayment(@NonNull final String accountId, @NonNull final PaymentContext paymentContext) {
+        RequestDeadline.current().check("approving a payment for accountId=" + accountId);
 
         //Get record
         final Account account = ofNullable(repository.findOne(accountId))
                 .orElseThrow(() -> new RepositoryResourceNotFoundException("No Account found using id " + accountId));
 
-        final Profile profile = account.getProfiles().stream().findFirst()
-                .orElseThrow(() -> new RepositoryResourceNotFoundException("No Profile found using account id " + accountId));
+        final CompiledSpendLimits compiledLimits =
+                CompiledSpendLimits.ofAccount(account, getDefaultSpendLimitInfo(paymentContext));
+        //read before spend is totalled, so no reservation the totals miss is made at or before it
+        final long reservedAfter = spendReservationTable.getSequence();
+        final SpendAggregate[] totalled = new SpendAggregate[1];
+        final PaymentApproval approval = checkSpendLimits(compiledLimits, paymentContext, plan -> totalled[0] =
+                getSpendAggregate(account, paymentContext, plan, breachCheck(compiledLimits, paymentContext)));
+        if (!approval.isSuccess()) {
+            return approval;
+        }
+
+        return spendReservationTable.withAccountLock(accountId, () -> {
+            RequestDeadline.current().check("approving a payment for accountId=" + accountId);
+            final PaymentApproval checked = recheckSpendLimits(compiledLimits, paymentContext, totalled[0],
+                    spendReservationTable.getPendingTotal(accountId, reservedAfter),
+                    spendReservationTable.getPendingPartnerTotals(accountId, reservedAfter), approval);
+            return checked.isSuccess() ? recordSpend(account, paymentContext.getTransactionInfo(), checked) : checked;
+        });
+    }
+
+    /**
+     * As {@link #approvePayment(String, PaymentContext)} on the async pipeline executor, freeing the request thread.
+     * This is not a non-blocking approval: ER and Mongo are still called blocking on the executor's thread, whose pool
+     * of async.pipeline.pool.size threads bounds how many approvals run at once.
+     * The RequestDeadline of the request goes with it.
+     */
+    public CompletableFuture<PaymentApproval> approvePaymentAsync(@NonNull final String accountId,
+                                                                  @NonNull final PaymentContext paymentContext) {
+        return CompletableFuture.supplyAsync(RequestDeadline.current().bind(() -> approvePayment(accountId, paymentContext)),
+                asyncPipelineExecutor);
+    }
+
+    /**
+     * Releases the reservation held for an approved payment once it has been charged.
+     * Returns false if there was no pending reservation, e.g. it had already expired.
+     */
+    public boolean confirmPayment(@NonNull final String accountId, @NonNull final String reservationId) {
+        final boolean released = spendReservationTable.release(accountId, reservationId);
+        if (!released) {
+            log.info("No pending spend reservation {} to confirm for accountId={}", reservationId, accountId);
+        }
+        return released;
+    }
+
+    /**
+     * Approves a batch of payments, returning an approval for each request in the order received.
+     * Requests are grouped by account so each Account is read once and its spend totalled at most once,
+     * with payments approved earlier in the batch counted against later ones for the same account.
+     * A failure for one account denies that account's remaining payments without failing the batch.
+     */
+    public List<PaymentApproval> approvePayments(@NonNull final List<PaymentApprovalRequest> requests) {
+        final PaymentApproval[] approvals = new PaymentApproval[requests.size()];
+
+        final Map<String, List<Integer>> positionsByAccount = new LinkedHashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            positionsByAccount.computeIfAbsent(requests.get(i).getAccountId(), id -> newArrayList()).add(i);
+        }
+
+        final Map<String, Account> accounts = new HashMap<>();
+        repository.findAll(positionsByAccount.keySet()).forEach(account -> accounts.put(account.getId(), account));
+
+        positionsByAccount.forEach((accountId, positions) -> {
+            final Account account = accounts.get(accountId);
+            if (Objects.isNull(account)) {
+                positions.forEach(position -> approvals[position] = PaymentApproval.builder().success(false)
+                        .description("No Account found using id " + accountId).build());
+                return;
+            }
+            //read before spend is totalled, as for approvePayment
+            final long reservedAfter = spendReservationTable.getSequence();
+            final Map<Integer, SpendAggregate> totalled = new LinkedHashMap<>();
+            try {
+                try {
+                    approveAccountPayments(account, requests, positions, approvals, totalled);
+                } finally {
+                    if (!totalled.isEmpty()) {
+                        spendReservationTable.withAccountLock(accountId,
+                                () -> recordAccountPayments(account, requests, totalled, reservedAfter, approvals));
+                    }
+                }
+            } catch (RuntimeException e) {
+                //the cause is logged only, as its message can carry Mongo or ER details callers should not see
+                log.error("Batch payment approval failed for accountId={} with message: {}", accountId, e.getMessage());
+                positions.stream().filter(position -> Objects.isNull(approvals[position]))
+                        .forEach(position -> approvals[position] = PaymentApproval.builder().success(false)
+                                .description(BATCH_FAILURE_DESCRIPTION).build());
+            }
+        });
+        return Arrays.asList(approvals);
+    }
+
+    /**
+     * Payments approved here are only recorded once the account's payments have all been checked, so that spend
+     * totalled part way through the batch never includes them and each is added to it exactly once, whichever
+     * transactions that spend was totalled from.  The spend each approved payment was checked against is kept in
+     * totalled, in the order approved, for recordAccountPayments.
+     */
+    private void approveAccountPayments(final Account account, final List<PaymentApprovalRequest> requests,
+                                        final List<Integer> positions, final PaymentApproval[] approvals,
+                                        final Map<Integer, SpendAggregate> totalled) {
+        //keyed by whether renewals are counted, as that changes the transactions totalled
+        final Map<Boolean, SpendAggregate> aggregates = new HashMap<>(2);
+        final List<TransactionInfo> approved = newArrayList();
+
+        for (int position : positions) {
+            final PaymentContext paymentContext = requests.get(position).getPaymentContext();
+            final boolean renewals = useRenewalTransactions(paymentContext);
+
+            final CompiledSpendLimits compiledLimits =
+                    CompiledSpendLimits.ofAccount(account, getDefaultSpendLimitInfo(paymentContext));
+
+            final SpendAggregate[] checkedAgainst = new SpendAggregate[1];
+            final PaymentApproval approval = checkSpendLimits(compiledLimits, paymentContext, plan -> {
+                final SpendAggregate aggregate = aggregates.get(renewals);
+                if (Objects.nonNull(aggregate) && plan.isCoveredBy(aggregate)) {
+                    return checkedAgainst[0] = aggregate;
+                }
+                SpendAggregate planned = getSpendAggregate(account, paymentContext, plan);
+                for (TransactionInfo earlier : approved) {
+                    planned = planned.plus(earlier.getAmount(), earlier.getPartnerId());
+                }
+                aggregates.put(renewals, planned);
+                return checkedAgainst[0] = planned;
+            });
+
+            if (approval.isSuccess()) {
+                final TransactionInfo transactionInfo = paymentContext.getTransactionInfo();
+                approved.add(transactionInfo);
+                totalled.put(position, checkedAgainst[0]);
+                aggregates.replaceAll((key, aggregate) ->
+                        aggregate.plus(transactionInfo.getAmount(), transactionInfo.getPartnerId()));
+            }
+            approvals[position] = approval;
+        }
+    }
 
-        final List<SpendLimit> spendLimits = ofNullable(profile.getSpendLimits()).orElse(newArrayList());
-        final Optional<CatalogInfo> catalogInfoOpt = ofNullable(paymentContext.getCatalogInfo());
-        List<SpendLimitInfo> defaultSpendLimits = catalogInfoOpt.map(CatalogInfo::getDefaultSpendLimitInfo).orElse(newArrayList());
+    /**
+     * Checks the batch's approved payments again under the account's lock and reserves them, as approvePayment does.
+     * The amounts reserved since spend was totalled are read once before any of the batch is reserved, as the spend
+     * each was checked against already counts the payments approved before it in the batch.
+     */
+    private void recordAccountPayments(final Account account, final List<PaymentApprovalRequest> requests,
+                                       final Map<Integer, SpendAggregate> totalled, final long reservedAfter,
+                                       final PaymentApproval[] approvals) {
+        final Money reserved = spendReservationTable.getPendingTotal(account.getId(), reservedAfter);
+        final Map<String, Money> partnerReserved =
+                spendReservationTable.getPendingPartnerTotals(account.getId(), reservedAfter);
+        totalled.forEach((position, aggregate) -> {
+            final PaymentContext paymentContext = requests.get(position).getPaymentContext();
+            final PaymentApproval checked = recheckSpendLimits(
+                    CompiledSpendLimits.ofAccount(account, getDefaultSpendLimitInfo(paymentContext)), paymentContext,
+                    aggregate, reserved, partnerReserved, approvals[position]);
+            approvals[position] = checked.isSuccess()
+                    ? recordSpend(account, paymentContext.getTransactionInfo(), checked) : checked;
+        });
+    }
 
-        return checkSpendLimits(account, spendLimits, SpendLimit.fromSpendLimitsInfo(defaultSpendLimits), paymentContext);
+    /**
+     * Checks an approved payment again against the spend it was approved on with the amounts reserved since added,
+     * so approvals for the account that were reserved while that spend was totalled are counted.  A reservation
+     * already in a ledger read after it was made is counted twice, which can only deny a payment that would just fit.
+     */
+    private PaymentApproval recheckSpendLimits(final CompiledSpendLimits compiledLimits,
+                                               final PaymentContext paymentContext,
+                                               @Nullable final SpendAggregate totalled, final Money reserved,
+                                               final Map<String, Money> partnerReserved,
+                                               final PaymentApproval approval) {
+        if (Objects.isNull(totalled) || reserved.getMinorUnits() == 0L) {
+            return approval;
+        }
+        final SpendAggregate withReserved = withPending(totalled, reserved, partnerReserved);
+        return checkSpendLimits(compiledLimits, paymentContext, plan -> withReserved);
     }
 
     public Account updateSpendLimits(final String accountId, final List<SpendLimitInfo> spendLimitInfos) {
@@ -79,74 +290,362 @@ public class SpendLimitService {
                                             @NonNull final List<SpendLimit> spendLimits,
                                             @NonNull final List<SpendLimit> defaultSpendLimits,
                                             @NonNull final PaymentContext paymentContext) {
+        final CompiledSpendLimits compiledLimits = CompiledSpendLimits.of(spendLimits, defaultSpendLimits);
+        return checkSpendLimits(compiledLimits, paymentContext,
+                plan -> getSpendAggregate(account, paymentContext, plan, breachCheck(compiledLimits, paymentContext)));
+    }
+
+    /**
+     * Transaction limits need no spend history so are checked first.  Spend is then only totalled, and ER only
+     * called, for the duration windows that have a limit or default limit set.  Partner limits are checked against
+     * the spend with the payment's partner, so are skipped for a payment without one.
+     */
+    private PaymentApproval checkSpendLimits(final CompiledSpendLimits compiledLimits,
+                                             final PaymentContext paymentContext,
+                                             final Function<SpendLimitPlan, SpendAggregate> aggregateLoader) {
         //No need to continue if no spend limits configured
-        if (spendLimits.isEmpty() && defaultSpendLimits.isEmpty()) {
-            return createResponse(newArrayList(SpendLimitResult.builder().success(true).build()));
+        if (compiledLimits.isEmpty()) {
+            return approved();
         }
 
-        int billingCycleDay = ofNullable(account.getBillingCycleDay()).orElse(1);
-        final List<ERTransaction> erTransactions = getTransactions(account, paymentContext);
-
-        final List<SpendLimitResult> results = newArrayList();
-
+        final Money amount = paymentContext.getTransactionInfo().getAmount();
         for (SpendLimitType type : SpendLimitType.values()) {
-            SpendLimitResult result = null;
-            if (type.equals(SpendLimitType.ACCOUNT_TX)) {
-                result = spendLimitChecker.checkTransactionLimit(spendLimits, defaultSpendLimits,
-                        newArrayList(paymentContext.getTransactionInfo()), SpendLimitType.ACCOUNT_TX);
-            } else if (type.equals(SpendLimitType.ACCOUNT_DAY)) {
-                result = spendLimitChecker.checkDurationLimit(paymentContext, spendLimits,
-                        erTransactions, SpendLimitType.ACCOUNT_DAY, billingCycleDay);
-            } else if (type.equals(SpendLimitType.ACCOUNT_MONTH)) {
-                result = spendLimitChecker.checkDurationLimit(paymentContext, spendLimits,
-                        erTransactions, SpendLimitType.ACCOUNT_MONTH, billingCycleDay);
+            if (!type.isDuration() && compiledLimits.hasLimit(type)) {
+                final SpendLimitResult result = spendLimitChecker.checkTransactionLimit(compiledLimits, amount, type);
+                if (Objects.nonNull(result) && !result.isSuccess()) {
+                    return denied(result);
+                }
             }
+        }
 
+        final String partnerId = paymentContext.getTransactionInfo().getPartnerId();
+        final SpendLimitPlan plan = Objects.isNull(partnerId)
+                ? compiledLimits.getPlan().withoutPartnerScoped() : compiledLimits.getPlan();
+        if (!plan.requiresHistory()) {
+            return approved();
+        }
+
+        final SpendAggregate aggregate = aggregateLoader.apply(plan);
+
+        for (SpendLimitType type : plan.getDurationTypes()) {
+            final Money durationTotal = type.isPartnerScoped()
+                    ? aggregate.getPartnerNetTotalAmount(type, partnerId) : aggregate.getNetTotalAmount(type);
+            final SpendLimitResult result = spendLimitChecker.checkDurationLimit(compiledLimits,
+                    durationTotal, amount, type);
             if (Objects.nonNull(result) && !result.isSuccess()) {
-                results.add(result);
-                break;
+                return denied(result);
+            }
+        }
+        return approved();
+    }
+
+    /**
+     * Whether a window's total so far is breached as checkSpendLimits would find it, so that a streamed ER read can
+     * stop once the payment is certain to be denied.  Pending reservations are only added to the totals after,
+     * so cannot undo a breach.
+     */
+    private SpendAggregate.BreachCheck breachCheck(CompiledSpendLimits compiledLimits, PaymentContext paymentContext) {
+        final long amount = paymentContext.getTransactionInfo().getAmount().getMinorUnits();
+        final String partnerId = paymentContext.getTransactionInfo().getPartnerId();
+        return (type, totals) -> {
+            final Money limit = compiledLimits.getLimit(type);
+            if (Objects.isNull(limit) || (type.isPartnerScoped() && Objects.isNull(partnerId))) {
+                return false;
+            }
+            final long total = type.isPartnerScoped() ? totals.getPartnerNetTotal(type, partnerId) : totals.getNetTotal(type);
+            return total + amount > limit.getMinorUnits();
+        };
+    }
+
+    /**
+     * Totals spend for the windows in the plan.  A current ledger is used whenever it can be, as it needs no ER call,
+     * but it holds no rolling or partner windows.  Otherwise only as far back as the earliest window in the plan is fetched
+     * from ER, and the ledger is only rebuilt when that covers the billing cycle.
+     * The persisted ledger only tracks the default transaction types, so requests that count renewals
+     * are otherwise totalled from ER directly.  Failing that the ledger is rebuilt from ER.
+     * Aggregates of the default transaction types totalled from ER are kept in the SpendAggregateCache for headroom reads.
+     * Totals from ER include the account's pending reservations, as ER may not show those payments yet.
+     * Where enabled for the opco the windows are instead totalled by the ER adapter, or as the ER response is paged
+     * or streamed.
+     */
+    public SpendAggregate getSpendAggregate(@NonNull Account account, @NonNull PaymentContext paymentContext,
+                                            @NonNull SpendLimitPlan plan) {
+        return getSpendAggregate(account, paymentContext, plan, null);
+    }
+
+    private SpendAggregate getSpendAggregate(Account account, PaymentContext paymentContext, SpendLimitPlan plan,
+                                             @Nullable SpendAggregate.BreachCheck breachCheck) {
+        final boolean renewals = useRenewalTransactions(paymentContext);
+        if (!renewals && plan.isCoveredByLedger()) {
+            final SpendLedger ledger = spendLedgerService.findCurrentLedger(account);
+            if (Objects.nonNull(ledger)) {
+                return ledger.toSpendAggregate();
+            }
+        }
+
+        final int billingCycleDay = ofNullable(account.getBillingCycleDay()).orElse(1);
+        //read before the pending spend and ER transactions the ledger is rebuilt from, see SpendLedgerService.reconcile
+        final long ledgerVersion = !renewals && plan.requiresBillingCycle()
+                && (plan.isCoveredByLedger() || fetchesTransactions(paymentContext))
+                ? spendLedgerService.getVersion(account) : 0L;
+        final Money pending = getPendingTotal(account);
+        if (!plan.requiresBillingCycle() || !plan.isCoveredByLedger()) {
+            final Map<SpendLimitType, Map<String, LocalDateTime>> windows =
+                    spendAggregator.calculateWindows(billingCycleDay, plan.getDurationTypes());
+            if (isEnabledForOpco("er.adapter.transactions.totals.enabled", paymentContext)) {
+                return totalSpendAggregate(account, paymentContext, plan, windows, pending);
+            }
+            final int pageSize = getPageSize(paymentContext);
+            if (pageSize > 0) {
+                return pageSpendAggregate(account, paymentContext, plan, windows, pending, breachCheck, pageSize);
+            }
+            if (isEnabledForOpco("er.adapter.transactions.streaming.enabled", paymentContext)) {
+                return streamSpendAggregate(account, paymentContext, plan, windows, pending, breachCheck);
+            }
+            log.debug("Fetching ER transactions for {} only for accountId={}", plan, account.getId());
+            final List<ERTransaction> transactions =
+                    getTransactions(account, paymentContext, SpendAggregator.earliestStart(windows));
+            final SpendAggregate aggregate = withPending(spendAggregator.aggregate(transactions, windows), pending,
+                    plan.requiresPartnerTotals() ? getPendingPartnerTotals(account) : Collections.emptyMap());
+            if (!renewals) {
+                if (plan.requiresBillingCycle()) {
+                    reconcile(account, transactions, pending, ledgerVersion);
+                }
+                cacheAggregate(account, aggregate);
+            }
+            return aggregate;
+        }
+
+        if (renewals) {
+            return withPending(spendAggregator.aggregate(getTransactions(account, paymentContext), billingCycleDay), pending);
+        }
+        final SpendAggregate aggregate =
+                reconcile(account, getTransactions(account, paymentContext), pending, ledgerVersion);
+        cacheAggregate(account, aggregate);
+        return aggregate;
+    }
+
+    /**
+     * Totals the windows as the ER response is streamed, so the transactions are neither built nor cached and the
+     * ledger is not rebuilt from them.  An aggregate from a read stopped early at a breach is not kept for headroom reads.
+     */
+    private SpendAggregate streamSpendAggregate(Account account, PaymentContext paymentContext, SpendLimitPlan plan,
+                                                Map<SpendLimitType, Map<String, LocalDateTime>> windows,
+                                                Money pending, @Nullable SpendAggregate.BreachCheck breachCheck) {
+        log.debug("Streaming ER transactions for {} only for accountId={}", plan, account.getId());
+        final SpendAggregate.Accumulator accumulator = SpendAggregate.accumulator(windows);
+        final boolean complete = erService.aggregateTransactions(paymentContext,
+                buildCriteria(paymentContext, SpendAggregator.earliestStart(windows)), accumulator, breachCheck);
+
+        final SpendAggregate aggregate = withPending(accumulator.build(), pending,
+                plan.requiresPartnerTotals() ? getPendingPartnerTotals(account) : Collections.emptyMap());
+        if (complete && !useRenewalTransactions(paymentContext)) {
+            cacheAggregate(account, aggregate);
+        }
+        return aggregate;
+    }
+
+    /**
+     * Totals the windows as pages of transactions arrive from ER newest first, fetching no more pages once the payment
+     * is certain to be denied, see SpendAggregate.Accumulator.isBreachCertain, so denials for accounts with a long
+     * history often need only the first.  As when streamed the transactions are not cached and the ledger is not
+     * rebuilt from them, and an aggregate from a fetch stopped early is not kept for headroom reads.
+     */
+    private SpendAggregate pageSpendAggregate(Account account, PaymentContext paymentContext, SpendLimitPlan plan,
+                                              Map<SpendLimitType, Map<String, LocalDateTime>> windows, Money pending,
+                                              @Nullable SpendAggregate.BreachCheck breachCheck, int pageSize) {
+        log.debug("Paging ER transactions for {} only for accountId={}", plan, account.getId());
+        final ERTransactionCriteria criteria = buildCriteria(paymentContext, SpendAggregator.earliestStart(windows));
+
+        final SpendAggregate.Accumulator accumulator = SpendAggregate.accumulator(windows);
+        final boolean complete = erService.pageTransactions(paymentContext, criteria, pageSize, page -> {
+            accumulator.addAll(page);
+            return Objects.isNull(breachCheck) || page.isEmpty()
+                    || !accumulator.isBreachCertain(breachCheck, page.get(page.size() - 1).getDateTime());
+        });
+
+        final SpendAggregate aggregate = withPending(accumulator.build(), pending,
+                plan.requiresPartnerTotals() ? getPendingPartnerTotals(account) : Collections.emptyMap());
+        if (complete && !useRenewalTransactions(paymentContext)) {
+            cacheAggregate(account, aggregate);
+        }
+        return aggregate;
+    }
+
+    /**
+     * Totals the windows from the sums the ER adapter returns for them, see ERService.aggregateTransactionTotals.
+     * The ledger is not rebuilt from them, and partner windows are only summed for the payment's partner so an
+     * aggregate with them is not kept for headroom reads.
+     */
+    private SpendAggregate totalSpendAggregate(Account account, PaymentContext paymentContext, SpendLimitPlan plan,
+                                               Map<SpendLimitType, Map<String, LocalDateTime>> windows, Money pending) {
+        log.debug("Totalling ER transactions for {} only for accountId={}", plan, account.getId());
+        final ERTransactionCriteria criteria = buildCriteria(paymentContext, SpendAggregator.earliestStart(windows));
+        criteria.setAggregateWindows(aggregateWindows(windows, paymentContext.getTransactionInfo().getPartnerId()));
+
+        final SpendAggregate.Accumulator accumulator = SpendAggregate.accumulator(windows);
+        erService.aggregateTransactionTotals(paymentContext, criteria, accumulator);
+
+        final SpendAggregate aggregate = withPending(accumulator.build(), pending,
+                plan.requiresPartnerTotals() ? getPendingPartnerTotals(account) : Collections.emptyMap());
+        if (!plan.requiresPartnerTotals() && !useRenewalTransactions(paymentContext)) {
+            cacheAggregate(account, aggregate);
+        }
+        return aggregate;
+    }
+
+    private static List<ERAggregateWindow> aggregateWindows(Map<SpendLimitType, Map<String, LocalDateTime>> windows,
+                                                            String partnerId) {
+        final List<ERAggregateWindow> aggregateWindows = newArrayList();
+        windows.forEach((type, dates) -> {
+            if (!type.isPartnerScoped() || Objects.nonNull(partnerId)) {
+                aggregateWindows.add(ERAggregateWindow.builder().name(type.name())
+                        .fromDate(dates.get(ERDateCalculator.START_DATE_KEY))
+                        .toDate(dates.get(ERDateCalculator.END_DATE_KEY))
+                        .fromInclusive(type.isRolling())
+                        .partnerId(type.isPartnerScoped() ? partnerId : null)
+                        .build());
+            }
+        });
+        return aggregateWindows;
+    }
+
+    /**
+     * Transactions per page where the opco's ER adapter returns the newest requiredResultSize transactions, or 0
+     * to fetch them all at once.
+     */
+    private int getPageSize(PaymentContext paymentContext) {
+        final String pageSize = propertiesAccessor.getPropertyForOpco("er.adapter.transactions.page.size",
+                paymentContext.getLocale().getCountry(), "0");
+        try {
+            return Objects.isNull(pageSize) ? 0 : Integer.parseInt(pageSize.trim());
+        } catch (NumberFormatException e) {
+            log.warn("Invalid er.adapter.transactions.page.size {}, fetching transactions unpaged", pageSize);
+            return 0;
+        }
+    }
+
+    private boolean isEnabledForOpco(String property, PaymentContext paymentContext) {
+        return Boolean.parseBoolean(propertiesAccessor.getPropertyForOpco(property,
+                paymentContext.getLocale().getCountry(), "false"));
+    }
+
+    /**
+     * Whether the windows are totalled from the full list of ER transactions, rather than by the ER adapter or as
+     * the response is paged or streamed, so the ledger can be rebuilt from them.
+     */
+    private boolean fetchesTransactions(PaymentContext paymentContext) {
+        return !isEnabledForOpco("er.adapter.transactions.totals.enabled", paymentContext)
+                && getPageSize(paymentContext) == 0
+                && !isEnabledForOpco("er.adapter.transactions.streaming.enabled", paymentContext);
+    }
+
+    /**
+     * Rebuilds the ledger from ER with the pending reservations added back, as they were recorded in it before.
+     */
+    private SpendAggregate reconcile(Account account, List<ERTransaction> transactions, Money pending,
+                                     long ledgerVersion) {
+        return spendLedgerService.reconcile(account, transactions, pending, ledgerVersion).toSpendAggregate();
+    }
+
+    private SpendAggregate withPending(SpendAggregate aggregate, Money pending) {
+        return Objects.isNull(aggregate) || pending.getMinorUnits() == 0L ? aggregate : aggregate.plus(pending);
+    }
+
+    private SpendAggregate withPending(SpendAggregate aggregate, Money pending, Map<String, Money> partnerPending) {
+        SpendAggregate withPartners = withPending(aggregate, pending);
+        if (Objects.nonNull(withPartners)) {
+            for (Map.Entry<String, Money> partner : partnerPending.entrySet()) {
+                withPartners = withPartners.plusPartner(partner.getKey(), partner.getValue());
             }
         }
-        return createResponse(results);
+        return withPartners;
+    }
+
+    private Money getPendingTotal(Account account) {
+        return Objects.isNull(account.getId()) ? Money.ZERO : spendReservationTable.getPendingTotal(account.getId());
+    }
+
+    private Map<String, Money> getPendingPartnerTotals(Account account) {
+        return Objects.isNull(account.getId())
+                ? Collections.emptyMap() : spendReservationTable.getPendingPartnerTotals(account.getId());
+    }
+
+    /**
+     * Records an approved payment in the ledger and cached aggregate and reserves it until it shows in ER.
+     */
+    private PaymentApproval recordSpend(Account account, TransactionInfo transactionInfo, PaymentApproval approval) {
+        final Money amount = transactionInfo.getAmount();
+        if (Objects.isNull(account.getId())) {
+            spendLedgerService.recordSpend(account, amount);
+            return approval;
+        }
+        //reserved before it is recorded in the ledger, so a reconcile that reads the ledger version before it
+        //also counts the reservation, or else finds the version moved on
+        final String reservationId = spendReservationTable.reserve(account.getId(), amount, transactionInfo.getPartnerId());
+        spendLedgerService.recordSpend(account, amount);
+        spendAggregateCache.recordSpend(account.getId(), amount);
+        return PaymentApproval.builder().success(approval.isSuccess())
+                .description(approval.getDescription())
+                .reservationId(reservationId)
+                .build();
     }
 
+    private void cacheAggregate(Account account, SpendAggregate aggregate) {
+        if (Objects.nonNull(account.getId()) && Objects.nonNull(aggregate)) {
+            spendAggregateCache.put(account.getId(), aggregate);
+        }
+    }
+
+    /**
+     * Transactions from the start of the account's billing cycle until now.
+     */
     public List<ERTransaction> getTransactions(@NonNull Account account, @NonNull PaymentContext paymentContext) {
+        return getTransactions(account, paymentContext, erDateCalculator.calculateAccountBillingCycleDate(account));
+    }
 
+    public List<ERTransaction> getTransactions(@NonNull Account account, @NonNull PaymentContext paymentContext,
+                                               @NonNull LocalDateTime fromDate) {
+        final int billingCycleDay = ofNullable(account.getBillingCycleDay()).orElse(1);
+        return erTransactionCache.getTransactions(buildCriteria(paymentContext, fromDate), billingCycleDay,
+                cachedCriteria -> erService.getTransactions(paymentContext, cachedCriteria));
+    }
+
+    private ERTransactionCriteria buildCriteria(PaymentContext paymentContext, LocalDateTime fromDate) {
         final List<String> transactionTypes = newArrayList(PURCHASE.name(), USAGE.name(), REFUND.name());
 
-        if (Objects.nonNull(paymentContext.getApprovalCriteria()) &&
-                Objects.nonNull(paymentContext.getApprovalCriteria().getPaymentApprovalRules())) {
-            paymentContext.getApprovalCriteria().getPaymentApprovalRules()
-                    .stream().filter(rule -> rule.equals(USE_RENEWAL_TRANSACTIONS))
-                    .findFirst()
-                    .ifPresent(approvalRule -> transactionTypes.add(RENEWAL.name()));
+        if (useRenewalTransactions(paymentContext)) {
+            transactionTypes.add(RENEWAL.name());
         }
 
-        final ERTransactionCriteria criteria = ERTransactionCriteria.builder().monetaryOnly(true)
+        return ERTransactionCriteria.builder().monetaryOnly(true)
                 .locale(paymentContext.getLocale())
                 .chargingId(paymentContext.getChargingId())
                 .transactionTypes(transactionTypes)
-                .fromDate(erDateCalculator.calculateAccountBillingCycleDate(account))
+                .fromDate(fromDate)
                 .toDate(LocalDateTime.now())
                 .build();
-
-        return erService.getTransactions(paymentContext, criteria);
     }
 
-    private PaymentApproval createResponse(List<SpendLimitResult> results) {
-        final Optional<SpendLimitResult> failure = results.stream().filter(result -> !result.isSuccess()).findFirst();
+    private List<SpendLimitInfo> getDefaultSpendLimitInfo(PaymentContext paymentContext) {
+        return ofNullable(paymentContext.getCatalogInfo())
+                .map(CatalogInfo::getDefaultSpendLimitInfo).orElse(newArrayList());
+    }
 
-        PaymentApproval approval;
+    private boolean useRenewalTransactions(PaymentContext paymentContext) {
+        return Objects.nonNull(paymentContext.getApprovalCriteria()) &&
+                Objects.nonNull(paymentContext.getApprovalCriteria().getPaymentApprovalRules()) &&
+                paymentContext.getApprovalCriteria().getPaymentApprovalRules().contains(USE_RENEWAL_TRANSACTIONS);
+    }
 
-        if (failure.isPresent()) {
-            approval = PaymentApproval.builder().success(failure.get().isSuccess())
-                    .description(failure.get().getFailureReason()).build();
-        } else {
-            approval = PaymentApproval.builder().success(true)
-                    .description("Approved").build();
-        }
-        return approval;
+    private PaymentApproval approved() {
+        return PaymentApproval.builder().success(true)
+                .description("Approved").build();
+    }
 
+    private PaymentApproval denied(SpendLimitResult failure) {
+        return PaymentApproval.builder().success(false)
+                .description(failure.getFailureReason()).build();
     }
 
 }
@@ -0,0 +1,205 @@
+package com.vodafone.charging.accountservice.service;
+
+import com.google.common.util.concurrent.Striped;
+import com.vodafone.charging.accountservice.domain.Money;
+import com.vodafone.charging.properties.PropertiesAccessor;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Supplier;
+
+/**
+ * Holds the amounts of approved payments that ER may not show yet, and serialises reserving them per Account.
+ * Reserving for an account runs under one of a fixed set of striped locks, so approvals for the same account
+ * queue while approvals for different accounts almost never contend.  The lock is only held to check spend
+ * already totalled against the reservations made since and to reserve, never across an ER or Mongo call.
+ * Each reservation is numbered in the order made, so the reservations made after a point can be told apart.
+ * A reservation is released when the payment is confirmed or, failing that, when it expires.
+ */
+@Service
+@Slf4j
+public class SpendReservationTable {
+
+    private static final int SWEEP_INTERVAL = 1024;
+
+    private final Striped<Lock> locks;
+    private final ConcurrentMap<String, Map<String, Reservation>> reservations = new ConcurrentHashMap<>();
+    private final AtomicLong reserveCount = new AtomicLong();
+    private final long ttlMillis;
+
+    @Autowired
+    public SpendReservationTable(PropertiesAccessor propertiesAccessor) {
+        this.locks = Striped.lock(propertiesAccessor.getPropertyAsInt("spend.reservation.lock.stripes", 256));
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(propertiesAccessor.getPropertyAsInt("spend.reservation.ttl.seconds", 120));
+    }
+
+    /**
+     * Runs the evaluation while holding the lock for the account.  It should not block on anything but the lock.
+     */
+    public <T> T withAccountLock(@NonNull final String accountId, @NonNull final Supplier<T> evaluation) {
+        final Lock lock = locks.get(accountId);
+        lock.lock();
+        try {
+            return evaluation.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void withAccountLock(@NonNull final String accountId, @NonNull final Runnable evaluation) {
+        withAccountLock(accountId, () -> {
+            evaluation.run();
+            return null;
+        });
+    }
+
+    public String reserve(@NonNull final String accountId, @NonNull final Money amount) {
+        return reserve(accountId, amount, null);
+    }
+
+    /**
+     * Holds an approved amount against the account, and its partner if it has one, returning the id to confirm it with.
+     */
+    public String reserve(@NonNull final String accountId, @NonNull final Money amount, @Nullable final String partnerId) {
+        final String reservationId = UUID.randomUUID().toString();
+        final long[] sequence = new long[1];
+        final long now = System.currentTimeMillis();
+        reservations.compute(accountId, (id, pending) -> {
+            final Map<String, Reservation> updated = Objects.isNull(pending) ? new LinkedHashMap<>() : pending;
+            purgeExpired(updated, now);
+            //numbered while the account's reservations are held, so a read that sees the number also sees the reservation
+            sequence[0] = reserveCount.incrementAndGet();
+            updated.put(reservationId, new Reservation(amount.getMinorUnits(), partnerId, now + ttlMillis, sequence[0]));
+            return updated;
+        });
+
+        if (sequence[0] % SWEEP_INTERVAL == 0) {
+            sweep(now);
+        }
+        return reservationId;
+    }
+
+    /**
+     * Releases a reservation once its payment is confirmed.  Returns false if it was unknown or had already expired.
+     */
+    public boolean release(@NonNull final String accountId, @NonNull final String reservationId) {
+        final boolean[] released = new boolean[1];
+        final long now = System.currentTimeMillis();
+        reservations.computeIfPresent(accountId, (id, pending) -> {
+            final Reservation reservation = pending.remove(reservationId);
+            released[0] = Objects.nonNull(reservation) && reservation.expiresAt >= now;
+            purgeExpired(pending, now);
+            return pending.isEmpty() ? null : pending;
+        });
+        return released[0];
+    }
+
+    /**
+     * The number of the latest reservation made for any account.  Read before spend is totalled, the reservations
+     * made after it are those the totals may be missing.
+     */
+    public long getSequence() {
+        return reserveCount.get();
+    }
+
+    /**
+     * The total of the account's unexpired reservations.
+     */
+    public Money getPendingTotal(@NonNull final String accountId) {
+        return getPendingTotal(accountId, 0L);
+    }
+
+    /**
+     * The total of the account's unexpired reservations made after the given {@link #getSequence()}.
+     */
+    public Money getPendingTotal(@NonNull final String accountId, final long reservedAfter) {
+        final long[] total = new long[1];
+        final long now = System.currentTimeMillis();
+        reservations.computeIfPresent(accountId, (id, pending) -> {
+            purgeExpired(pending, now);
+            for (Reservation reservation : pending.values()) {
+                if (reservation.sequence > reservedAfter) {
+                    total[0] += reservation.minorUnits;
+                }
+            }
+            return pending.isEmpty() ? null : pending;
+        });
+        return Money.ofMinorUnits(total[0]);
+    }
+
+    /**
+     * The total of the account's unexpired reservations for each partner.  Reservations without a partner are left out.
+     */
+    public Map<String, Money> getPendingPartnerTotals(@NonNull final String accountId) {
+        return getPendingPartnerTotals(accountId, 0L);
+    }
+
+    /**
+     * As {@link #getPendingPartnerTotals(String)} for the reservations made after the given {@link #getSequence()}.
+     */
+    public Map<String, Money> getPendingPartnerTotals(@NonNull final String accountId, final long reservedAfter) {
+        final Map<String, Money> totals = new HashMap<>();
+        final long now = System.currentTimeMillis();
+        reservations.computeIfPresent(accountId, (id, pending) -> {
+            purgeExpired(pending, now);
+            for (Reservation reservation : pending.values()) {
+                if (Objects.nonNull(reservation.partnerId) && reservation.sequence > reservedAfter) {
+                    totals.merge(reservation.partnerId, Money.ofMinorUnits(reservation.minorUnits), Money::plus);
+                }
+            }
+            return pending.isEmpty() ? null : pending;
+        });
+        return totals;
+    }
+
+    /**
+     * Drops expired reservations of accounts that have not been approved for since, so the table does not grow.
+     */
+    private void sweep(long now) {
+        for (String accountId : reservations.keySet()) {
+            reservations.computeIfPresent(accountId, (id, pending) -> {
+                purgeExpired(pending, now);
+                return pending.isEmpty() ? null : pending;
+            });
+        }
+        log.debug("Spend reservations swept, {} accounts with pending reservations", reservations.size());
+    }
+
+    private static void purgeExpired(Map<String, Reservation> pending, long now) {
+        final Iterator<Reservation> iterator = pending.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().expiresAt < now) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static final class Reservation {
+
+        private final long minorUnits;
+        private final String partnerId;
+        private final long expiresAt;
+        private final long sequence;
+
+        private Reservation(long minorUnits, String partnerId, long expiresAt, long sequence) {
+            this.minorUnits = minorUnits;
+            this.partnerId = partnerId;
+            this.expiresAt = expiresAt;
+            this.sequence = sequence;
+        }
+    }
+}
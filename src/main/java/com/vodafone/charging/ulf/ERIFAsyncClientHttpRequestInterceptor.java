@@ -0,0 +1,44 @@
+package com.vodafone.charging.ulf;
+
+import com.vodafone.application.logging.ULFKeys;
+import com.vodafone.application.util.ULFThreadLocal;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.AsyncClientHttpRequestExecution;
+import org.springframework.http.client.AsyncClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.util.concurrent.ListenableFutureAdapter;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * intercept requests and responses to/from ERIF made through the AsyncRestTemplate.
+ * The ULF ids are read on the calling thread, as the response arrives on an I/O thread.
+ */
+@Slf4j
+public class ERIFAsyncClientHttpRequestInterceptor implements AsyncClientHttpRequestInterceptor {
+
+    private UlfLogger ulfLogger;
+
+    public ERIFAsyncClientHttpRequestInterceptor(UlfLogger ulfLogger) {
+        this.ulfLogger = ulfLogger;
+    }
+
+    @Override
+    public ListenableFuture<ClientHttpResponse> intercept(HttpRequest httpRequest, byte[] bytes,
+                                                          AsyncClientHttpRequestExecution execution) throws IOException {
+        final String transactionId = ULFThreadLocal.getValue(ULFKeys.TRANSACTION_ID);
+        final String useCaseId = ULFThreadLocal.getValue(ULFKeys.USECASE_ID);
+
+        ulfLogger.logHttpRequestOut(httpRequest, bytes, useCaseId, transactionId);
+
+        return new ListenableFutureAdapter<ClientHttpResponse, ClientHttpResponse>(execution.executeAsync(httpRequest, bytes)) {
+            @Override
+            protected ClientHttpResponse adapt(ClientHttpResponse response) throws ExecutionException {
+                return ulfLogger.logHttpResponseIn(httpRequest, response, useCaseId, transactionId);
+            }
+        };
+    }
+}
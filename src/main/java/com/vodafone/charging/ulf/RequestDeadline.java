@@ -0,0 +1,106 @@
+package com.vodafone.charging.ulf;
+
+import com.vodafone.charging.accountservice.exception.RequestDeadlineExceededException;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * The time by which the caller of the current request stops waiting for it, set by the RequestDeadlineFilter.
+ * Outbound calls and repository calls made for the request check it, so that work nobody is waiting for is skipped,
+ * and cap their timeouts to what is left of it.  Requests without a deadline get {@link #NONE}, which never expires.
+ */
+public final class RequestDeadline {
+
+    public static final RequestDeadline NONE = new RequestDeadline(0L, false);
+
+    private static final ThreadLocal<RequestDeadline> CURRENT = new ThreadLocal<>();
+
+    private final long deadlineNanos;
+    private final boolean bounded;
+
+    private RequestDeadline(long deadlineNanos, boolean bounded) {
+        this.deadlineNanos = deadlineNanos;
+        this.bounded = bounded;
+    }
+
+    /**
+     * Sets a deadline timeoutMillis from now for the current thread.
+     */
+    public static RequestDeadline start(long timeoutMillis) {
+        final RequestDeadline deadline = new RequestDeadline(
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis), true);
+        CURRENT.set(deadline);
+        return deadline;
+    }
+
+    /**
+     * The deadline of the request the current thread is working on, or NONE.
+     */
+    public static RequestDeadline current() {
+        final RequestDeadline deadline = CURRENT.get();
+        return Objects.isNull(deadline) ? NONE : deadline;
+    }
+
+    public static void clear() {
+        CURRENT.remove();
+    }
+
+    /**
+     * The supplier run with this as the deadline of the running thread, restoring its own after.
+     */
+    public <T> Supplier<T> bind(Supplier<T> supplier) {
+        return () -> {
+            final RequestDeadline previous = CURRENT.get();
+            CURRENT.set(this);
+            try {
+                return supplier.get();
+            } finally {
+                if (Objects.isNull(previous)) {
+                    CURRENT.remove();
+                } else {
+                    CURRENT.set(previous);
+                }
+            }
+        };
+    }
+
+    public boolean isBounded() {
+        return bounded;
+    }
+
+    /**
+     * Milliseconds left until the deadline, 0 once it has passed, or Long.MAX_VALUE for NONE.
+     */
+    public long getRemainingMillis() {
+        if (!bounded) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()), 0L);
+    }
+
+    public boolean isExpired() {
+        return bounded && deadlineNanos - System.nanoTime() <= 0L;
+    }
+
+    /**
+     * The timeout, where 0 or less is none, cut to the time left.  Never 0, which http clients take as no timeout.
+     */
+    public int cap(int timeoutMillis) {
+        if (!bounded) {
+            return timeoutMillis;
+        }
+        final long remaining = Math.max(getRemainingMillis(), 1L);
+        return (int) (timeoutMillis <= 0 ? Math.min(remaining, Integer.MAX_VALUE) : Math.min(remaining, timeoutMillis));
+    }
+
+    /**
+     * Throws a RequestDeadlineExceededException if the deadline has passed, rather than doing the work described.
+     */
+    public void check(String work) {
+        if (isExpired()) {
+            throw new RequestDeadlineExceededException("Request deadline passed before " + work);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.vodafone.charging.ulf;
+
+import com.vodafone.charging.properties.PropertiesAccessor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang.StringUtils;
+import org.springframework.util.AntPathMatcher;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+
+/**
+ * Gives each request a RequestDeadline from the x-vf-request-timeout-ms header, or else the default for its
+ * endpoint, the first of request.timeout.endpoints, e.g. /accounts=3000,/accounts/payments/**=1500, whose pattern
+ * matches, or else request.timeout.millis.  A timeout of 0, the default, sets no deadline.
+ * Streamed endpoints, /accounts/bulk, get no deadline as they can run for as long as the stream does.
+ */
+@Slf4j
+public class RequestDeadlineFilter implements Filter {
+
+    public static final String REQUEST_TIMEOUT_HEADER = "x-vf-request-timeout-ms";
+
+    private static final AntPathMatcher PATH_MATCHER = new AntPathMatcher();
+
+    private static final String STREAMED_PATH = "/accounts/bulk";
+
+    private final PropertiesAccessor propertiesAccessor;
+
+    public RequestDeadlineFilter(PropertiesAccessor propertiesAccessor) {
+        this.propertiesAccessor = propertiesAccessor;
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+        // nothing to initialize
+    }
+
+    @Override
+    public void doFilter(ServletRequest servletRequest, ServletResponse servletResponse, FilterChain chain)
+            throws IOException, ServletException {
+        final HttpServletRequest request = (HttpServletRequest) servletRequest;
+        final String path = request.getRequestURI().substring(request.getContextPath().length());
+        try {
+            final long timeoutMillis = STREAMED_PATH.equals(path) ? 0L : getTimeoutMillis(request, path);
+            if (timeoutMillis > 0) {
+                RequestDeadline.start(timeoutMillis);
+            }
+            chain.doFilter(servletRequest, servletResponse);
+        } finally {
+            RequestDeadline.clear();
+        }
+    }
+
+    /**
+     * The timeout the caller asked for, or else the default for the endpoint.
+     */
+    private long getTimeoutMillis(HttpServletRequest request, String path) {
+        final String header = request.getHeader(REQUEST_TIMEOUT_HEADER);
+        if (StringUtils.isNotEmpty(header)) {
+            try {
+                return Long.parseLong(header.trim());
+            } catch (NumberFormatException e) {
+                log.warn("Ignoring invalid {} header {}", REQUEST_TIMEOUT_HEADER, header);
+            }
+        }
+
+        final String endpoints = propertiesAccessor.getProperty("request.timeout.endpoints", "");
+        for (String endpoint : StringUtils.split(StringUtils.defaultString(endpoints), ',')) {
+            final String[] patternAndTimeout = StringUtils.split(endpoint, '=');
+            if (patternAndTimeout.length == 2 && PATH_MATCHER.match(patternAndTimeout[0].trim(), path)) {
+                try {
+                    return Long.parseLong(patternAndTimeout[1].trim());
+                } catch (NumberFormatException e) {
+                    log.warn("Ignoring invalid request.timeout.endpoints entry {}", endpoint);
+                }
+            }
+        }
+        return propertiesAccessor.getPropertyAsInt("request.timeout.millis", 0);
+    }
+
+    @Override
+    public void destroy() {
+        //nothing to do
+    }
+}
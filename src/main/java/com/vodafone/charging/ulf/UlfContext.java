@@ -0,0 +1,47 @@
+package com.vodafone.charging.ulf;
+
+import com.vodafone.application.logging.ULFKeys;
+import com.vodafone.application.util.ULFThreadLocal;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Carries the ULF values and RequestDeadline set by the LoggingFilter and RequestDeadlineFilter onto another thread,
+ * so that calls made there are logged against the request they were made for and keep to its deadline.
+ */
+public final class UlfContext {
+
+    private static final String[] KEYS = {
+            ULFKeys.TRANSACTION_ID, ULFKeys.USECASE_ID, ULFKeys.SERVER_NAME, ULFKeys.COUNTRY_CODE, ULFKeys.SERVICE,
+            ULFKeys.CHARGING_ID, ULFKeys.MSISDN, ULFKeys.CALLER_ID, ULFKeys.PARTNER, ULFKeys.CHANNEL,
+            UlfConstants.REQUEST_CLASS, UlfConstants.REQUEST_TIMESTAMP, UlfConstants.ULF_SOURCE};
+
+    private UlfContext() {
+    }
+
+    /**
+     * The supplier run with the ULF values and deadline of the current thread, which are cleaned from the running
+     * thread after.
+     */
+    public static <T> Supplier<T> propagate(Supplier<T> supplier) {
+        final Map<String, String> values = new HashMap<>();
+        for (String key : KEYS) {
+            final String value = ULFThreadLocal.getValue(key);
+            if (Objects.nonNull(value)) {
+                values.put(key, value);
+            }
+        }
+        final Supplier<T> withDeadline = RequestDeadline.current().bind(supplier);
+        return () -> {
+            values.forEach(ULFThreadLocal::setValue);
+            try {
+                return withDeadline.get();
+            } finally {
+                ULFThreadLocal.clean();
+            }
+        };
+    }
+}
@@ -255,6 +255,11 @@ public class UlfLogger {
                 .setValue(UlfConstants.ULF_REFERER, request.getHeader(com.google.common.net.HttpHeaders.REFERER))
                 .setValue(UlfConstants.ULF_SOURCE, ULFThreadLocal.getValue(UlfConstants.ULF_SOURCE));
 
+        //a streamed response is not cached, so has been written already and has no payload to log
+        if (wrapper == null) {
+            log(builder.build());
+            return;
+        }
         try {
             if (isEnabledLogWithPayload()) {
                 byte[] buf = wrapper.getContentAsByteArray();
@@ -0,0 +1,109 @@
+package com.vodafone.charging.accountservice.client;
+
+import com.vodafone.charging.accountservice.domain.ContextData;
+import com.vodafone.charging.accountservice.domain.enums.ResponseType;
+import com.vodafone.charging.accountservice.dto.xml.*;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.xml.Jaxb2RootElementHttpMessageConverter;
+import org.springframework.mock.http.MockHttpInputMessage;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static com.vodafone.charging.data.builder.ContextDataDataBuilder.aContextData;
+import static com.vodafone.charging.data.builder.IFResponseDataBuilder.anXmlResponse;
+import static com.vodafone.charging.mock.IFSoapResponseDataBuilder.aAccountValidationSoapResponse;
+
+/**
+ * Compares ERIFXmlCodec with the RestTemplate's JAXB conversion it replaced, building the Envelope for each request
+ * as ERIFXmlClient did.  Run from main, it is not a test.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ERIFXmlCodecBenchmark {
+
+    private final Jaxb2RootElementHttpMessageConverter converter = new Jaxb2RootElementHttpMessageConverter();
+    private final ContextData contextData = aContextData();
+    private final byte[] response =
+            aAccountValidationSoapResponse(anXmlResponse(), ResponseType.OK).getBytes(StandardCharsets.UTF_8);
+
+    @Benchmark
+    public byte[] writeRequestWithJaxb() throws IOException {
+        final MockHttpOutputMessage message = new MockHttpOutputMessage();
+        converter.write(buildEnvelope(contextData), MediaType.TEXT_XML, message);
+        return message.getBodyAsBytes();
+    }
+
+    @Benchmark
+    public byte[] writeRequestWithCodec() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+        ERIFXmlCodec.writeValidateRequest(contextData, out);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public Response readResponseWithJaxb() throws IOException {
+        return ((Envelope) converter.read(Envelope.class, new MockHttpInputMessage(response))).getBody().getResponse();
+    }
+
+    @Benchmark
+    public Response readResponseWithCodec() throws XMLStreamException {
+        return ERIFXmlCodec.readResponse(new ByteArrayInputStream(response));
+    }
+
+    private static Envelope buildEnvelope(ContextData contextData) {
+        Msgcontrol msgcontrol = new Msgcontrol();
+        msgcontrol.setCountry(contextData.getLocale().getCountry());
+
+        AccountId accountId = new AccountId();
+        accountId.setType(contextData.getChargingId().getType());
+        accountId.setValue(contextData.getChargingId().getValue());
+
+        Validate validate = new Validate();
+        validate.setAccountId(accountId);
+        validate.setClientId(contextData.getClientId());
+        validate.setKycCheck(contextData.isKycCheck());
+        validate.setPackageType(contextData.getPackageType().name());
+        validate.setPartnerId(contextData.getPartnerId());
+        validate.setServiceId(contextData.getServiceId());
+        validate.setVendorId(contextData.getVendorId());
+
+        Request request = new Request();
+        request.setMsgcontrol(msgcontrol);
+        request.setValidate(validate);
+
+        Messagegroup messagegroup = new Messagegroup();
+        messagegroup.setRequest(request);
+
+        Body body = new Body();
+        body.setMessagegroup(messagegroup);
+        Envelope envelope = new Envelope();
+        envelope.setBody(body);
+        return envelope;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ERIFXmlCodecBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,103 @@
+package com.vodafone.charging.accountservice.client;
+
+import com.vodafone.charging.accountservice.domain.ContextData;
+import com.vodafone.charging.accountservice.domain.EnrichedAccountInfo;
+import com.vodafone.charging.accountservice.domain.enums.ResponseType;
+import com.vodafone.charging.accountservice.dto.xml.Envelope;
+import com.vodafone.charging.accountservice.dto.xml.Response;
+import com.vodafone.charging.accountservice.dto.xml.Validate;
+import org.junit.Test;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import static com.vodafone.charging.data.builder.ChargingIdDataBuilder.aChargingId;
+import static com.vodafone.charging.data.builder.IFResponseDataBuilder.anXmlResponse;
+import static com.vodafone.charging.mock.IFSoapResponseDataBuilder.aAccountValidationSoapResponse;
+import static com.vodafone.charging.mock.IFSoapResponseDataBuilder.aRemainingBalanceSoapResponse;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ERIFXmlCodecTest {
+
+    @Test
+    public void shouldWriteRequestReadByJaxbWithEscapedValues() throws Exception {
+        final ContextData contextData = new ContextData.Builder("contextName", Locale.UK, aChargingId())
+                .clientId("client & <id>")
+                .serviceId("s\"Alt\" \u00e9\u20ac\ud83d\ude00")
+                .kycCheck(true)
+                .build();
+
+        final Validate validate = unmarshal(write(contextData)).getBody().getMessagegroup().getRequest().getValidate();
+
+        assertThat(validate.getAccountId().getValue()).isEqualTo(contextData.getChargingId().getValue());
+        assertThat(validate.getClientId()).isEqualTo("client & <id>");
+        assertThat(validate.getServiceId()).isEqualTo("s\"Alt\" \u00e9\u20ac\ud83d\ude00");
+        assertThat(validate.isKycCheck()).isTrue();
+        assertThat(validate.getPartnerId()).isNull();
+        assertThat(validate.getPackageType()).isNull();
+    }
+
+    @Test
+    public void shouldWriteRequestWithPrefixesTheIFExpects() throws Exception {
+        final ContextData contextData = new ContextData.Builder("contextName", Locale.UK, aChargingId()).build();
+
+        assertThat(new String(write(contextData), StandardCharsets.UTF_8))
+                .startsWith("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?><SOAP-ENV:Envelope")
+                .contains("<SOAP-ENV:Body><ns2:messagegroup><ns2:request><ns2:msgcontrol><ns2:country>GB</ns2:country>")
+                .doesNotContain("ns2:partnerId");
+    }
+
+    @Test
+    public void shouldReadResponseAsJaxbDid() throws Exception {
+        final Response expected = anXmlResponse();
+
+        final Response response = read(aAccountValidationSoapResponse(expected, ResponseType.OK));
+
+        assertThat(new EnrichedAccountInfo(response, null))
+                .isEqualToComparingFieldByField(new EnrichedAccountInfo(expected, null));
+    }
+
+    @Test
+    public void shouldSkipElementsNotRead() throws Exception {
+        final Response response = read(aRemainingBalanceSoapResponse(ResponseType.OK, 1.5, "errDesc"));
+
+        assertThat(response.getErrDescription()).isEqualTo("errDesc");
+        assertThat(response.getBillingCycleDay()).isEqualTo(0);
+        assertThat(response.getUserGroups()).isNull();
+    }
+
+    @Test
+    public void shouldReadNullWhereBodyHasNoResponse() throws Exception {
+        final String fault = "<SOAP-ENV:Envelope xmlns:SOAP-ENV=\"http://www.w3.org/2001/12/soap-envelope\">" +
+                "<SOAP-ENV:Body><SOAP-ENV:Fault><faultstring>error</faultstring></SOAP-ENV:Fault></SOAP-ENV:Body>" +
+                "</SOAP-ENV:Envelope>";
+
+        assertThat(read(fault)).isNull();
+    }
+
+    @Test
+    public void shouldNotReadMalformedResponse() {
+        assertThatThrownBy(() -> read("<SOAP-ENV:Envelope><Response><v:status>ACCEPTED"))
+                .isInstanceOf(XMLStreamException.class);
+    }
+
+    private static byte[] write(ContextData contextData) throws Exception {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ERIFXmlCodec.writeValidateRequest(contextData, out);
+        return out.toByteArray();
+    }
+
+    private static Envelope unmarshal(byte[] xml) throws Exception {
+        return (Envelope) JAXBContext.newInstance(Envelope.class).createUnmarshaller()
+                .unmarshal(new ByteArrayInputStream(xml));
+    }
+
+    private static Response read(String xml) throws XMLStreamException {
+        return ERIFXmlCodec.readResponse(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,220 @@
+package com.vodafone.charging.accountservice.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.google.common.collect.ImmutableMap;
+import com.vodafone.charging.accountservice.domain.enums.SpendLimitType;
+import com.vodafone.charging.accountservice.dto.SpendAggregate;
+import com.vodafone.charging.accountservice.dto.er.ERAggregateWindow;
+import com.vodafone.charging.accountservice.dto.er.ERTransaction;
+import com.vodafone.charging.accountservice.dto.er.ERTransactionCriteria;
+import com.vodafone.charging.accountservice.service.CallCoalescer;
+import com.vodafone.charging.accountservice.service.ExternalServiceCallSupplier;
+import com.vodafone.charging.properties.PropertiesAccessor;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.web.client.RestTemplate;
+
+import java.math.BigDecimal;
+import java.net.URI;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static com.vodafone.charging.accountservice.dto.er.ERTransactionType.PURCHASE;
+import static com.vodafone.charging.accountservice.dto.er.ERTransactionType.REFUND;
+import static com.vodafone.charging.accountservice.dto.er.ERTransactionType.USAGE;
+import static com.vodafone.charging.accountservice.service.ERDateCalculator.END_DATE_KEY;
+import static com.vodafone.charging.accountservice.service.ERDateCalculator.START_DATE_KEY;
+import static com.vodafone.charging.data.ERTransactionDataBuilder.anErTransaction;
+import static com.vodafone.charging.data.builder.ChargingIdDataBuilder.aChargingId;
+import static com.vodafone.charging.data.builder.PaymentContextDataBuilder.aPaymentContext;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ERServiceAggregateTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.now();
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper().registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    @Mock
+    private PropertiesAccessor propertiesAccessor;
+
+    @Spy
+    private RestTemplate restTemplate =
+            new RestTemplate(Collections.singletonList(new MappingJackson2HttpMessageConverter(OBJECT_MAPPER)));
+
+    @Spy
+    private ExternalServiceCallSupplier externalServiceCallSupplier =
+            new ExternalServiceCallSupplier(new OpcoCircuitBreakers(mock(PropertiesAccessor.class)));
+
+    @Spy
+    private CallCoalescer callCoalescer = new CallCoalescer();
+
+    @Spy
+    private OpcoHttpTransport opcoHttpTransport = new OpcoHttpTransport(mock(PropertiesAccessor.class));
+
+    @Spy
+    private OpcoRequestHedger opcoRequestHedger =
+            new OpcoRequestHedger(mock(PropertiesAccessor.class), mock(OpcoHttpTransport.class), Runnable::run);
+
+    @InjectMocks
+    private ERService erService;
+
+    private final List<ERTransaction> transactions = newArrayList(
+            anErTransaction(new BigDecimal("4.00"), NOW.minusHours(1), PURCHASE, "partner-a"),
+            anErTransaction(new BigDecimal("1.50"), NOW.minusHours(2), USAGE, "partner-b"),
+            anErTransaction(new BigDecimal("0.75"), NOW.minusHours(3), REFUND, "partner-a"),
+            anErTransaction(new BigDecimal("9.00"), NOW.minusDays(5), PURCHASE, "partner-a"));
+
+    @Before
+    public void init() {
+        given(propertiesAccessor.getProperty(anyString(), anyString()))
+                .willAnswer(invocation -> invocation.getArguments()[1]);
+        given(propertiesAccessor.getPropertyForOpco(anyString(), anyString(), anyString()))
+                .willAnswer(invocation -> invocation.getArguments()[2]);
+        given(propertiesAccessor.getPropertyAsInt(anyString(), anyInt()))
+                .willAnswer(invocation -> invocation.getArguments()[1]);
+    }
+
+    @Test
+    public void shouldTotalWindowsFromAdapterTotals() {
+        final LocalERAdapter adapter = LocalERAdapter.bindTo(restTemplate, OBJECT_MAPPER, transactions, true);
+        final Map<SpendLimitType, Map<String, LocalDateTime>> windows = windows();
+        final SpendAggregate.Accumulator accumulator = SpendAggregate.accumulator(windows);
+
+        erService.aggregateTransactionTotals(aPaymentContext(), aCriteria(windows, "partner-a"), accumulator);
+
+        assertTotals(accumulator.build());
+        assertThat(adapter.getRequestedPaths()).containsExactly("/transactions/totals");
+    }
+
+    @Test
+    public void shouldFallBackToLocalTotalsAndStopAskingWhenAdapterDoesNotSupportThem() {
+        final LocalERAdapter adapter = LocalERAdapter.bindTo(restTemplate, OBJECT_MAPPER, transactions, false);
+        final Map<SpendLimitType, Map<String, LocalDateTime>> windows = windows();
+        final SpendAggregate.Accumulator first = SpendAggregate.accumulator(windows);
+        final SpendAggregate.Accumulator second = SpendAggregate.accumulator(windows);
+
+        erService.aggregateTransactionTotals(aPaymentContext(), aCriteria(windows, "partner-a"), first);
+        erService.aggregateTransactionTotals(aPaymentContext(), aCriteria(windows, "partner-a"), second);
+
+        assertTotals(first.build());
+        assertTotals(second.build());
+        assertThat(adapter.getRequestedPaths())
+                .containsExactly("/transactions/totals", "/transactions/filter", "/transactions/filter");
+    }
+
+    @Test
+    public void shouldPageTransactionsNewestFirstPastTransactionsAtSameTime() {
+        transactions.add(anErTransaction(new BigDecimal("2.00"), NOW.minusHours(2), PURCHASE, "partner-c"));
+        transactions.add(anErTransaction(new BigDecimal("3.00"), NOW.minusHours(2), PURCHASE, "partner-d"));
+        final LocalERAdapter adapter = LocalERAdapter.bindTo(restTemplate, OBJECT_MAPPER, transactions, false);
+        final List<List<ERTransaction>> pages = newArrayList();
+
+        final boolean complete = erService.pageTransactions(aPaymentContext(), aSearchCriteria(), 2, pages::add);
+
+        assertThat(complete).isTrue();
+        assertThat(pages).hasSize(4);
+        assertThat(pages.get(0)).containsExactly(transactions.get(0), transactions.get(1));
+        final List<ERTransaction> paged = newArrayList();
+        pages.forEach(paged::addAll);
+        assertThat(paged).containsOnlyElementsOf(transactions).hasSize(6).doesNotHaveDuplicates();
+        assertThat(adapter.getRequestedPaths()).hasSize(4);
+    }
+
+    @Test
+    public void shouldStopPagingWhenConsumerHasEnough() {
+        final LocalERAdapter adapter = LocalERAdapter.bindTo(restTemplate, OBJECT_MAPPER, transactions, false);
+        final List<List<ERTransaction>> pages = newArrayList();
+
+        final boolean complete = erService.pageTransactions(aPaymentContext(), aSearchCriteria(), 2, page -> {
+            pages.add(page);
+            return false;
+        });
+
+        assertThat(complete).isFalse();
+        assertThat(pages).containsExactly(newArrayList(transactions.get(0), transactions.get(1)));
+        assertThat(adapter.getRequestedPaths()).containsExactly("/transactions/filter");
+    }
+
+    @Test
+    public void shouldDropTransactionsWithoutTimeWhenPaging() {
+        final ERTransaction undated = anErTransaction(new BigDecimal("2.00"), null, PURCHASE, "partner-a");
+        doReturn(ResponseEntity.ok(newArrayList(undated, transactions.get(0)))).when(restTemplate)
+                .exchange(any(URI.class), eq(HttpMethod.POST), any(HttpEntity.class), any(ParameterizedTypeReference.class));
+        final List<List<ERTransaction>> pages = newArrayList();
+
+        final boolean complete = erService.pageTransactions(aPaymentContext(), aSearchCriteria(), 5, pages::add);
+
+        assertThat(complete).isTrue();
+        assertThat(pages).containsExactly(newArrayList(transactions.get(0)));
+    }
+
+    private static ERTransactionCriteria aSearchCriteria() {
+        return ERTransactionCriteria.builder().monetaryOnly(true).locale(Locale.UK)
+                .chargingId(aChargingId())
+                .transactionTypes(newArrayList(PURCHASE.name(), USAGE.name(), REFUND.name()))
+                .fromDate(NOW.minusDays(30))
+                .toDate(NOW)
+                .build();
+    }
+
+    private static void assertTotals(SpendAggregate aggregate) {
+        assertThat(aggregate.getPayments(SpendLimitType.ACCOUNT_DAY)).isEqualTo(550L);
+        assertThat(aggregate.getRefunds(SpendLimitType.ACCOUNT_DAY)).isEqualTo(75L);
+        assertThat(aggregate.getNetTotal(SpendLimitType.ACCOUNT_ROLLING_30_DAYS)).isEqualTo(1375L);
+        assertThat(aggregate.getPartnerNetTotal(SpendLimitType.PARTNER_DAY, "partner-a")).isEqualTo(325L);
+    }
+
+    private static ERTransactionCriteria aCriteria(Map<SpendLimitType, Map<String, LocalDateTime>> windows,
+                                                   String partnerId) {
+        final List<ERAggregateWindow> aggregateWindows = newArrayList();
+        windows.forEach((type, dates) -> aggregateWindows.add(ERAggregateWindow.builder().name(type.name())
+                .fromDate(dates.get(START_DATE_KEY)).toDate(dates.get(END_DATE_KEY))
+                .fromInclusive(type.isRolling())
+                .partnerId(type.isPartnerScoped() ? partnerId : null)
+                .build()));
+        return ERTransactionCriteria.builder().monetaryOnly(true).locale(Locale.UK)
+                .chargingId(aChargingId())
+                .transactionTypes(newArrayList(PURCHASE.name(), USAGE.name(), REFUND.name()))
+                .fromDate(NOW.minusDays(30))
+                .toDate(NOW.plusMinutes(1))
+                .aggregateWindows(aggregateWindows)
+                .build();
+    }
+
+    private static Map<SpendLimitType, Map<String, LocalDateTime>> windows() {
+        final Map<SpendLimitType, Map<String, LocalDateTime>> windows = new EnumMap<>(SpendLimitType.class);
+        windows.put(SpendLimitType.ACCOUNT_DAY,
+                ImmutableMap.of(START_DATE_KEY, NOW.minusHours(12), END_DATE_KEY, NOW.plusHours(12)));
+        windows.put(SpendLimitType.ACCOUNT_ROLLING_30_DAYS,
+                ImmutableMap.of(START_DATE_KEY, NOW.minusDays(30), END_DATE_KEY, NOW.plusMinutes(1)));
+        windows.put(SpendLimitType.PARTNER_DAY,
+                ImmutableMap.of(START_DATE_KEY, NOW.minusHours(12), END_DATE_KEY, NOW.plusHours(12)));
+        return windows;
+    }
+}
@@ -3,6 +3,7 @@ package com.vodafone.charging.accountservice.client;
 import com.vodafone.charging.accountservice.domain.PaymentContext;
 import com.vodafone.charging.accountservice.dto.er.ERTransaction;
 import com.vodafone.charging.accountservice.dto.er.ERTransactionCriteria;
+import com.vodafone.charging.accountservice.service.CallCoalescer;
 import com.vodafone.charging.accountservice.service.ExternalServiceCallSupplier;
 import com.vodafone.charging.data.ERTransactionDataBuilder;
 import com.vodafone.charging.properties.PropertiesAccessor;
@@ -41,6 +42,13 @@ public class ERServiceTest {
     @Mock
     private PropertiesAccessor propertiesAccessor;
 
+    @Spy
+    private CallCoalescer callCoalescer = new CallCoalescer();
+
+    @Spy
+    private OpcoRequestHedger opcoRequestHedger =
+            new OpcoRequestHedger(mock(PropertiesAccessor.class), mock(OpcoHttpTransport.class), Runnable::run);
+
     @InjectMocks
     private ERService erService;
 
@@ -60,7 +68,8 @@ public class ERServiceTest {
         given(propertiesAccessor.getProperty(eq("er.adapter.path.transactions.search"), anyString())).willReturn("/transactions/filter");
         given(propertiesAccessor.getPropertyForOpco(anyString(), eq(Locale.UK.getCountry()), anyString()))
                 .willReturn(url);
-        given(externalServiceCallSupplier.call(Matchers.<Supplier<ResponseEntity<List<ERTransaction>>>>any()))
+        given(externalServiceCallSupplier.call(eq(OpcoHttpTransport.ER_ADAPTER), eq(Locale.UK.getCountry()),
+                Matchers.<Supplier<ResponseEntity<List<ERTransaction>>>>any()))
                 .willReturn(supplier);
         given(supplier.get()).willReturn(responseEntity);
 
@@ -72,7 +81,7 @@ public class ERServiceTest {
         InOrder inOrder = Mockito.inOrder(propertiesAccessor, externalServiceCallSupplier, supplier);
         inOrder.verify(propertiesAccessor).getProperty(anyString(), anyString());
         inOrder.verify(propertiesAccessor).getPropertyForOpco(anyString(), anyString(), anyString());
-        inOrder.verify(externalServiceCallSupplier).call(any());
+        inOrder.verify(externalServiceCallSupplier).call(eq(OpcoHttpTransport.ER_ADAPTER), anyString(), any());
         inOrder.verify(supplier).get();
 
         verifyNoMoreInteractions(propertiesAccessor, externalServiceCallSupplier, supplier);
@@ -93,7 +102,8 @@ public class ERServiceTest {
         given(propertiesAccessor.getProperty(eq("er.adapter.path.transactions.search"), anyString())).willReturn("/transactions/filter");
         given(propertiesAccessor.getPropertyForOpco(anyString(), eq(Locale.UK.getCountry()), anyString()))
                 .willReturn(url);
-        given(externalServiceCallSupplier.call(Matchers.<Supplier<ResponseEntity<List<ERTransaction>>>>any()))
+        given(externalServiceCallSupplier.call(eq(OpcoHttpTransport.ER_ADAPTER), eq(Locale.UK.getCountry()),
+                Matchers.<Supplier<ResponseEntity<List<ERTransaction>>>>any()))
                 .willReturn(supplier);
         given(supplier.get()).willReturn(responseEntity);
         given(responseEntity.getStatusCode()).willReturn(HttpStatus.OK);
@@ -107,7 +117,7 @@ public class ERServiceTest {
         InOrder inOrder = Mockito.inOrder(propertiesAccessor, externalServiceCallSupplier, supplier, responseEntity);
         inOrder.verify(propertiesAccessor).getProperty(anyString(), anyString());
         inOrder.verify(propertiesAccessor).getPropertyForOpco(anyString(), anyString(), anyString());
-        inOrder.verify(externalServiceCallSupplier).call(any());
+        inOrder.verify(externalServiceCallSupplier).call(eq(OpcoHttpTransport.ER_ADAPTER), anyString(), any());
         inOrder.verify(supplier).get();
         inOrder.verify(responseEntity).getStatusCode();
         inOrder.verify(responseEntity).getBody();
@@ -130,7 +140,8 @@ public class ERServiceTest {
         given(propertiesAccessor.getProperty(eq("er.adapter.path.transactions.search"), anyString())).willReturn("/transactions/filter");
         given(propertiesAccessor.getPropertyForOpco(anyString(), eq(Locale.UK.getCountry()), anyString()))
                 .willReturn(url);
-        given(externalServiceCallSupplier.call(Matchers.<Supplier<ResponseEntity<List<ERTransaction>>>>any()))
+        given(externalServiceCallSupplier.call(eq(OpcoHttpTransport.ER_ADAPTER), eq(Locale.UK.getCountry()),
+                Matchers.<Supplier<ResponseEntity<List<ERTransaction>>>>any()))
                 .willThrow(new NullPointerException(exceptionMessage));
 
         assertThatThrownBy(() -> erService.getTransactions(paymentContext, criteria)).isInstanceOf(NullPointerException.class)
@@ -152,7 +163,8 @@ public class ERServiceTest {
                 .willReturn("/transactions/filter");
         given(propertiesAccessor.getPropertyForOpco(anyString(), eq(Locale.UK.getCountry()), anyString()))
                 .willReturn(url);
-        given(externalServiceCallSupplier.call(Matchers.<Supplier<ResponseEntity<List<ERTransaction>>>>any()))
+        given(externalServiceCallSupplier.call(eq(OpcoHttpTransport.ER_ADAPTER), eq(Locale.UK.getCountry()),
+                Matchers.<Supplier<ResponseEntity<List<ERTransaction>>>>any()))
                 .willReturn(supplier);
         given(supplier.get()).willThrow(new NullPointerException(exceptionMessage));
 
@@ -162,7 +174,7 @@ public class ERServiceTest {
         InOrder inOrder = Mockito.inOrder(propertiesAccessor, externalServiceCallSupplier, supplier);
         inOrder.verify(propertiesAccessor).getProperty(anyString(), anyString());
         inOrder.verify(propertiesAccessor).getPropertyForOpco(anyString(), anyString(), anyString());
-        inOrder.verify(externalServiceCallSupplier).call(any());
+        inOrder.verify(externalServiceCallSupplier).call(eq(OpcoHttpTransport.ER_ADAPTER), anyString(), any());
         inOrder.verify(supplier).get();
     }
 }
@@ -0,0 +1,137 @@
+package com.vodafone.charging.accountservice.client;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.google.common.collect.ImmutableMap;
+import com.vodafone.charging.accountservice.domain.enums.SpendLimitType;
+import com.vodafone.charging.accountservice.dto.SpendAggregate;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.Map;
+
+import static com.vodafone.charging.accountservice.service.ERDateCalculator.END_DATE_KEY;
+import static com.vodafone.charging.accountservice.service.ERDateCalculator.START_DATE_KEY;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ERTransactionStreamReaderTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2018, 3, 20, 12, 0);
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    @Test
+    public void shouldFoldTransactionsIntoWindowsWithoutBuildingThem() throws IOException {
+        final SpendAggregate.Accumulator accumulator = SpendAggregate.accumulator(windows());
+        final String json = "[" +
+                "{\"amount\":1.50,\"dateTime\":\"2018-03-20T11:00:00\",\"type\":\"PURCHASE\",\"partnerId\":\"p1\"}," +
+                "{\"amount\":\"0.25\",\"dateTime\":\"2018-03-20T10:30:15.123\",\"type\":\"refund\",\"partnerId\":\"p1\"}," +
+                "{\"type\":\"USAGE\",\"extra\":{\"nested\":[1,2]},\"amount\":2,\"dateTime\":\"2018-03-10T09:00\"}," +
+                "{\"amount\":1.005,\"dateTime\":[2018,3,20,9,0,0],\"type\":\"PURCHASE\",\"partnerId\":null}" +
+                "]";
+
+        final boolean complete = ERTransactionStreamReader.read(parser(json), accumulator, null, false);
+
+        assertThat(complete).isTrue();
+        final SpendAggregate aggregate = accumulator.build();
+        assertThat(aggregate.getPayments(SpendLimitType.ACCOUNT_DAY)).isEqualTo(251L);
+        assertThat(aggregate.getRefunds(SpendLimitType.ACCOUNT_DAY)).isEqualTo(25L);
+        assertThat(aggregate.getNetTotal(SpendLimitType.ACCOUNT_MONTH)).isEqualTo(426L);
+        assertThat(aggregate.getPartnerNetTotal(SpendLimitType.PARTNER_DAY, "p1")).isEqualTo(125L);
+    }
+
+    @Test
+    public void shouldStopOnceEarlierWindowsAreCompleteAndBreached() throws IOException {
+        final SpendAggregate.Accumulator accumulator = SpendAggregate.accumulator(windows());
+        final String json = "[" +
+                "{\"amount\":6.00,\"dateTime\":\"2018-03-20T11:00:00\",\"type\":\"PURCHASE\"}," +
+                "{\"amount\":5.00,\"dateTime\":\"2018-03-20T10:00:00\",\"type\":\"PURCHASE\"}," +
+                "{\"amount\":1.00,\"dateTime\":\"2018-03-19T10:00:00\",\"type\":\"REFUND\"}," +
+                "{\"amount\":1.00,\"dateTime\":\"2018-03-18T10:00:00\",\"type\":\"PURCHASE\"}" +
+                "]";
+
+        final boolean complete = ERTransactionStreamReader.read(parser(json), accumulator,
+                (type, totals) -> totals.getNetTotal(type) > 1000L, true);
+
+        assertThat(complete).isFalse();
+        assertThat(accumulator.getNetTotal(SpendLimitType.ACCOUNT_DAY)).isEqualTo(1100L);
+        assertThat(accumulator.getNetTotal(SpendLimitType.ACCOUNT_MONTH)).isEqualTo(1100L);
+    }
+
+    @Test
+    public void shouldReadWholeResponseWhenNotNewestFirst() throws IOException {
+        final SpendAggregate.Accumulator accumulator = SpendAggregate.accumulator(windows());
+        final String json = "[" +
+                "{\"amount\":6.00,\"dateTime\":\"2018-03-20T10:00:00\",\"type\":\"PURCHASE\"}," +
+                "{\"amount\":5.00,\"dateTime\":\"2018-03-20T11:00:00\",\"type\":\"PURCHASE\"}," +
+                "{\"amount\":1.00,\"dateTime\":\"2018-03-19T10:00:00\",\"type\":\"REFUND\"}" +
+                "]";
+
+        final boolean complete = ERTransactionStreamReader.read(parser(json), accumulator,
+                (type, totals) -> totals.getNetTotal(type) > 1000L, true);
+
+        assertThat(complete).isTrue();
+        assertThat(accumulator.getNetTotal(SpendLimitType.ACCOUNT_MONTH)).isEqualTo(1000L);
+    }
+
+    @Test
+    public void shouldTreatEmptyOrNullBodyAsNoTransactions() throws IOException {
+        final SpendAggregate.Accumulator accumulator = SpendAggregate.accumulator(windows());
+
+        assertThat(ERTransactionStreamReader.read(parser(""), accumulator, null, false)).isTrue();
+        assertThat(ERTransactionStreamReader.read(parser("null"), accumulator, null, false)).isTrue();
+        assertThat(accumulator.getNetTotal(SpendLimitType.ACCOUNT_MONTH)).isZero();
+    }
+
+    @Test
+    public void shouldRejectInvalidAmount() {
+        final SpendAggregate.Accumulator accumulator = SpendAggregate.accumulator(windows());
+
+        assertThatThrownBy(() -> ERTransactionStreamReader.read(
+                parser("[{\"amount\":\"abc\",\"dateTime\":\"2018-03-20T11:00:00\"}]"), accumulator, null, false))
+                .isInstanceOf(JsonParseException.class)
+                .hasMessageContaining("Not a valid monetary amount");
+    }
+
+    @Test
+    public void shouldParsePlainAmountsAsMoneyWould() {
+        assertThat(minorUnits("12.345")).isEqualTo(1235L);
+        assertThat(minorUnits("-0.005")).isEqualTo(-1L);
+        assertThat(minorUnits(" 7 ")).isEqualTo(700L);
+        assertThat(minorUnits(".5")).isEqualTo(50L);
+        assertThat(minorUnits("1e2")).isEqualTo(Long.MIN_VALUE);
+    }
+
+    @Test
+    public void shouldParseIsoDateTimes() {
+        assertThat(dateTime("2018-03-20T10:30")).isEqualTo(LocalDateTime.of(2018, 3, 20, 10, 30));
+        assertThat(dateTime("2018-03-20T10:30:15.5")).isEqualTo(LocalDateTime.of(2018, 3, 20, 10, 30, 15, 500_000_000));
+        assertThat(dateTime("2018-03-20 10:30:15")).isNull();
+    }
+
+    private static long minorUnits(String text) {
+        return ERTransactionStreamReader.parseMinorUnits(text.toCharArray(), 0, text.length());
+    }
+
+    private static LocalDateTime dateTime(String text) {
+        return ERTransactionStreamReader.parseDateTime(text.toCharArray(), 0, text.length());
+    }
+
+    private static JsonParser parser(String json) throws IOException {
+        return JSON_FACTORY.createParser(json);
+    }
+
+    private static Map<SpendLimitType, Map<String, LocalDateTime>> windows() {
+        final Map<SpendLimitType, Map<String, LocalDateTime>> windows = new EnumMap<>(SpendLimitType.class);
+        windows.put(SpendLimitType.ACCOUNT_DAY,
+                ImmutableMap.of(START_DATE_KEY, NOW.toLocalDate().atStartOfDay(), END_DATE_KEY, NOW.plusHours(12)));
+        windows.put(SpendLimitType.ACCOUNT_MONTH,
+                ImmutableMap.of(START_DATE_KEY, NOW.minusDays(15), END_DATE_KEY, NOW.plusDays(15)));
+        windows.put(SpendLimitType.PARTNER_DAY,
+                ImmutableMap.of(START_DATE_KEY, NOW.toLocalDate().atStartOfDay(), END_DATE_KEY, NOW.plusHours(12)));
+        return windows;
+    }
+}
@@ -0,0 +1,138 @@
+package com.vodafone.charging.accountservice.client;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vodafone.charging.accountservice.domain.Money;
+import com.vodafone.charging.accountservice.dto.er.ERTransaction;
+import com.vodafone.charging.accountservice.dto.er.ERTransactionTotal;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+import org.springframework.test.web.client.ExpectedCount;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.test.web.client.ResponseCreator;
+import org.springframework.test.web.client.match.MockRestRequestMatchers;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A stand-in for the ER adapter answering transaction searches, and aggregate queries if it supports them,
+ * from transactions held in memory.  Bound to a RestTemplate so ERService runs against it without an adapter.
+ * Searches include their from and to dates, and with a requiredResultSize return that many of the newest first;
+ * aggregate windows exclude their to date, and their from date unless fromInclusive.
+ */
+public class LocalERAdapter implements ResponseCreator {
+
+    private final ObjectMapper objectMapper;
+    private final List<ERTransaction> transactions;
+    private final boolean supportsTotals;
+    private final List<String> requestedPaths = new ArrayList<>();
+
+    private LocalERAdapter(ObjectMapper objectMapper, List<ERTransaction> transactions, boolean supportsTotals) {
+        this.objectMapper = objectMapper;
+        this.transactions = transactions;
+        this.supportsTotals = supportsTotals;
+    }
+
+    public static LocalERAdapter bindTo(RestTemplate restTemplate, ObjectMapper objectMapper,
+                                        List<ERTransaction> transactions, boolean supportsTotals) {
+        final LocalERAdapter adapter = new LocalERAdapter(objectMapper, transactions, supportsTotals);
+        MockRestServiceServer.bindTo(restTemplate).build()
+                .expect(ExpectedCount.manyTimes(), MockRestRequestMatchers.anything())
+                .andRespond(adapter);
+        return adapter;
+    }
+
+    public List<String> getRequestedPaths() {
+        return requestedPaths;
+    }
+
+    @Override
+    public ClientHttpResponse createResponse(ClientHttpRequest request) throws IOException {
+        final String path = request.getURI().getPath();
+        requestedPaths.add(path);
+        final JsonNode criteria = objectMapper.readTree(((MockClientHttpRequest) request).getBodyAsString());
+
+        if (path.endsWith("/transactions/filter")) {
+            return json(search(criteria));
+        }
+        if (path.endsWith("/transactions/totals") && supportsTotals) {
+            return json(totals(criteria));
+        }
+        return new MockClientHttpResponse(new byte[0], HttpStatus.NOT_FOUND);
+    }
+
+    private List<ERTransaction> search(JsonNode criteria) {
+        final LocalDateTime from = dateTime(criteria.get("fromDate"));
+        final LocalDateTime to = dateTime(criteria.get("toDate"));
+        final List<ERTransaction> found = new ArrayList<>();
+        for (ERTransaction transaction : transactions) {
+            if (hasType(criteria, transaction)
+                    && (Objects.isNull(from) || !transaction.getDateTime().isBefore(from))
+                    && (Objects.isNull(to) || !transaction.getDateTime().isAfter(to))) {
+                found.add(transaction);
+            }
+        }
+        if (criteria.hasNonNull("requiredResultSize")) {
+            found.sort(Comparator.comparing(ERTransaction::getDateTime).reversed());
+            return new ArrayList<>(found.subList(0, Math.min(found.size(), criteria.get("requiredResultSize").asInt())));
+        }
+        return found;
+    }
+
+    private List<ERTransactionTotal> totals(JsonNode criteria) {
+        final List<ERTransactionTotal> totals = new ArrayList<>();
+        for (JsonNode window : criteria.get("aggregateWindows")) {
+            final LocalDateTime from = dateTime(window.get("fromDate"));
+            final LocalDateTime to = dateTime(window.get("toDate"));
+            final boolean fromInclusive = window.get("fromInclusive").asBoolean();
+            final String partnerId = window.hasNonNull("partnerId") ? window.get("partnerId").asText() : null;
+
+            final Map<String, Money> byType = new LinkedHashMap<>();
+            final Map<String, Long> countByType = new LinkedHashMap<>();
+            for (ERTransaction transaction : transactions) {
+                final LocalDateTime dateTime = transaction.getDateTime();
+                if (hasType(criteria, transaction)
+                        && (dateTime.isAfter(from) || fromInclusive && dateTime.isEqual(from))
+                        && dateTime.isBefore(to)
+                        && (Objects.isNull(partnerId) || partnerId.equals(transaction.getPartnerId()))) {
+                    byType.merge(transaction.getType(), transaction.getAmount(), Money::plus);
+                    countByType.merge(transaction.getType(), 1L, Long::sum);
+                }
+            }
+            byType.forEach((type, amount) -> totals.add(ERTransactionTotal.builder()
+                    .window(window.get("name").asText()).type(type).amount(amount).count(countByType.get(type))
+                    .build()));
+        }
+        return totals;
+    }
+
+    private static boolean hasType(JsonNode criteria, ERTransaction transaction) {
+        final Set<String> types = new HashSet<>();
+        criteria.get("transactionTypes").forEach(type -> types.add(type.asText()));
+        return types.contains(transaction.getType());
+    }
+
+    private static LocalDateTime dateTime(JsonNode node) {
+        return Objects.isNull(node) || node.isNull() ? null : LocalDateTime.parse(node.asText());
+    }
+
+    private ClientHttpResponse json(Object body) throws IOException {
+        final MockClientHttpResponse response = new MockClientHttpResponse(objectMapper.writeValueAsBytes(body), HttpStatus.OK);
+        response.getHeaders().setContentType(MediaType.APPLICATION_JSON_UTF8);
+        return response;
+    }
+}
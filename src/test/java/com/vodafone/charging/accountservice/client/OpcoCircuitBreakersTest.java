@@ -0,0 +1,129 @@
+package com.vodafone.charging.accountservice.client;
+
+import com.vodafone.charging.accountservice.exception.ExternalServiceException;
+import com.vodafone.charging.properties.PropertiesAccessor;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+
+@RunWith(MockitoJUnitRunner.class)
+public class OpcoCircuitBreakersTest {
+
+    @Mock
+    private PropertiesAccessor propertiesAccessor;
+
+    private OpcoCircuitBreakers opcoCircuitBreakers;
+
+    @Before
+    public void init() {
+        given(propertiesAccessor.getPropertyForOpco(anyString(), anyString(), anyString()))
+                .willAnswer(invocation -> invocation.getArguments()[2]);
+        given(propertiesAccessor.getPropertyForOpco(eq("erif.breaker.minimum.calls"), anyString(), anyString()))
+                .willReturn("4");
+        given(propertiesAccessor.getPropertyForOpco(eq("erif.breaker.open.seconds"), anyString(), anyString()))
+                .willReturn("1");
+        given(propertiesAccessor.getPropertyForOpco(eq("erif.breaker.half.open.probes"), anyString(), anyString()))
+                .willReturn("2");
+        opcoCircuitBreakers = new OpcoCircuitBreakers(propertiesAccessor);
+    }
+
+    @Test
+    public void shouldRejectCallsBeyondBulkheadWithoutAffectingOtherOpcos() {
+        given(propertiesAccessor.getPropertyForOpco(eq("erif.breaker.max.concurrent"), eq("GB"), anyString()))
+                .willReturn("1");
+        final CompletableFuture<String> inFlight = new CompletableFuture<>();
+        opcoCircuitBreakers.callAsync(OpcoHttpTransport.ERIF, "GB", () -> inFlight);
+
+        assertThatThrownBy(() -> opcoCircuitBreakers.call(OpcoHttpTransport.ERIF, "GB", () -> "second"))
+                .isInstanceOf(ExternalServiceException.class)
+                .hasMessageContaining("Too many concurrent calls to erif.GB");
+        assertThat(opcoCircuitBreakers.call(OpcoHttpTransport.ERIF, "DE", () -> "other opco")).isEqualTo("other opco");
+
+        inFlight.complete("first");
+        assertThat(opcoCircuitBreakers.call(OpcoHttpTransport.ERIF, "GB", () -> "third")).isEqualTo("third");
+        assertThat(opcoCircuitBreakers.getRejectedCalls(OpcoHttpTransport.ERIF, "GB")).isEqualTo(1L);
+    }
+
+    @Test
+    public void shouldOpenWhenFailureRateReachedAndFailFastWithoutCalling() {
+        final AtomicInteger calls = new AtomicInteger();
+        succeed(2);
+        fail(2, new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE));
+
+        assertThat(opcoCircuitBreakers.getState(OpcoHttpTransport.ERIF, "GB")).isEqualTo(OpcoCircuitBreakers.State.OPEN);
+        assertThatThrownBy(() -> opcoCircuitBreakers.call(OpcoHttpTransport.ERIF, "GB", calls::incrementAndGet))
+                .isInstanceOf(ExternalServiceException.class)
+                .hasMessage("Circuit open for erif.GB");
+        assertThat(calls.get()).isZero();
+        assertThat(opcoCircuitBreakers.getState(OpcoHttpTransport.ERIF, "DE")).isEqualTo(OpcoCircuitBreakers.State.CLOSED);
+    }
+
+    @Test
+    public void shouldFailAsyncCallsFastWhenOpen() {
+        fail(4, new IllegalStateException("connection reset"));
+
+        final CompletableFuture<String> future = opcoCircuitBreakers.callAsync(OpcoHttpTransport.ERIF, "GB",
+                () -> CompletableFuture.completedFuture("not called"));
+
+        assertThat(future).isCompletedExceptionally();
+        assertThat(opcoCircuitBreakers.getRejectedCalls(OpcoHttpTransport.ERIF, "GB")).isEqualTo(1L);
+    }
+
+    @Test
+    public void shouldCloseAfterHalfOpenProbesSucceed() throws InterruptedException {
+        fail(4, new HttpServerErrorException(HttpStatus.INTERNAL_SERVER_ERROR));
+        Thread.sleep(1100);
+
+        succeed(1);
+        assertThat(opcoCircuitBreakers.getState(OpcoHttpTransport.ERIF, "GB")).isEqualTo(OpcoCircuitBreakers.State.HALF_OPEN);
+        succeed(1);
+        assertThat(opcoCircuitBreakers.getState(OpcoHttpTransport.ERIF, "GB")).isEqualTo(OpcoCircuitBreakers.State.CLOSED);
+    }
+
+    @Test
+    public void shouldReopenWhenHalfOpenProbeFails() throws InterruptedException {
+        fail(4, new HttpServerErrorException(HttpStatus.INTERNAL_SERVER_ERROR));
+        Thread.sleep(1100);
+
+        fail(1, new HttpServerErrorException(HttpStatus.INTERNAL_SERVER_ERROR));
+
+        assertThat(opcoCircuitBreakers.getState(OpcoHttpTransport.ERIF, "GB")).isEqualTo(OpcoCircuitBreakers.State.OPEN);
+    }
+
+    @Test
+    public void shouldNotCountClientErrorsAsFailures() {
+        fail(4, new ExternalServiceException("Client Exception calling ER Adapter Service ",
+                new HttpClientErrorException(HttpStatus.BAD_REQUEST)));
+
+        assertThat(opcoCircuitBreakers.getState(OpcoHttpTransport.ERIF, "GB")).isEqualTo(OpcoCircuitBreakers.State.CLOSED);
+        assertThat(opcoCircuitBreakers.getStates()).containsKey("erif.GB");
+    }
+
+    private void succeed(int times) {
+        for (int i = 0; i < times; i++) {
+            opcoCircuitBreakers.call(OpcoHttpTransport.ERIF, "GB", () -> "ok");
+        }
+    }
+
+    private void fail(int times, RuntimeException exception) {
+        for (int i = 0; i < times; i++) {
+            assertThatThrownBy(() -> opcoCircuitBreakers.call(OpcoHttpTransport.ERIF, "GB", () -> {
+                throw exception;
+            })).isSameAs(exception);
+        }
+    }
+}
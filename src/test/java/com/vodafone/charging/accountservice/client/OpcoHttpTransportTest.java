@@ -0,0 +1,211 @@
+package com.vodafone.charging.accountservice.client;
+
+import com.vodafone.charging.accountservice.exception.RequestDeadlineExceededException;
+import com.vodafone.charging.properties.PropertiesAccessor;
+import com.vodafone.charging.ulf.RequestDeadline;
+import org.apache.http.pool.PoolStats;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.AsyncClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+
+@RunWith(MockitoJUnitRunner.class)
+public class OpcoHttpTransportTest {
+
+    private static final URI ERIF_URI = URI.create("http://localhost:8458/broker/router.jsp");
+
+    @Mock
+    private PropertiesAccessor propertiesAccessor;
+
+    private OpcoHttpTransport transport;
+
+    @Before
+    public void init() {
+        given(propertiesAccessor.getPropertyForOpco(anyString(), anyString(), anyString()))
+                .willAnswer(invocation -> invocation.getArguments()[2]);
+        given(propertiesAccessor.getPropertyAsInt(anyString(), anyInt()))
+                .willAnswer(invocation -> invocation.getArguments()[1]);
+        transport = new OpcoHttpTransport(propertiesAccessor);
+    }
+
+    @After
+    public void close() throws IOException {
+        RequestDeadline.clear();
+        transport.destroy();
+    }
+
+    @Test
+    public void shouldUseSeparatePoolForEachOpcoOfSameTarget() {
+        given(propertiesAccessor.getPropertyForOpco(eq("erif.http.max.connections"), eq("DE"), anyString()))
+                .willReturn("5");
+
+        transport.call(OpcoHttpTransport.ERIF, "GB", () -> createRequest(ERIF_URI));
+        transport.call(OpcoHttpTransport.ERIF, "DE", () -> createRequest(ERIF_URI));
+
+        final Map<String, PoolStats> poolStats = transport.getPoolStats();
+        assertThat(poolStats).containsOnlyKeys("erif.GB", "erif.DE");
+        assertThat(poolStats.get("erif.GB").getMax()).isEqualTo(20);
+        assertThat(poolStats.get("erif.DE").getMax()).isEqualTo(5);
+    }
+
+    @Test
+    public void shouldUseSeparateAsyncPoolForEachOpcoSizedAsBlockingPool() {
+        given(propertiesAccessor.getPropertyForOpco(eq("erif.http.max.connections"), eq("DE"), anyString()))
+                .willReturn("5");
+
+        transport.callAsync(OpcoHttpTransport.ERIF, "GB", () -> completedFuture(createAsyncRequest(ERIF_URI)));
+        transport.callAsync(OpcoHttpTransport.ERIF, "DE", () -> completedFuture(createAsyncRequest(ERIF_URI)));
+        createAsyncRequest(ERIF_URI);
+
+        final Map<String, PoolStats> poolStats = transport.getPoolStats();
+        assertThat(poolStats).containsOnlyKeys("async.erif.GB", "async.erif.DE", "async.default");
+        assertThat(poolStats.get("async.erif.GB").getMax()).isEqualTo(20);
+        assertThat(poolStats.get("async.erif.DE").getMax()).isEqualTo(5);
+        assertThat(poolStats.get("async.default").getMax()).isEqualTo(2000);
+    }
+
+    @Test
+    public void shouldReportPoolSaturatedWhileAllItsConnectionsLeased() throws Exception {
+        given(propertiesAccessor.getPropertyForOpco(eq("erif.http.max.connections"), eq("GB"), anyString()))
+                .willReturn("1");
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (ServerSocket server = new ServerSocket(0)) {
+            final ClientHttpRequest request = transport.call(OpcoHttpTransport.ERIF, "GB",
+                    () -> createRequest(URI.create("http://localhost:" + server.getLocalPort() + "/broker/router.jsp")));
+            assertThat(transport.getPoolUsage().get("erif.GB")).isEqualTo("leased=0 pending=0 available=0 max=1");
+
+            executor.submit(request::execute);
+            final long giveUp = System.currentTimeMillis() + 5000L;
+            while (transport.getPoolStats().get("erif.GB").getLeased() < 1 && System.currentTimeMillis() < giveUp) {
+                Thread.sleep(1);
+            }
+
+            assertThat(transport.getPoolUsage().get("erif.GB")).isEqualTo("leased=1 pending=0 available=0 max=1 saturated");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldUseDefaultPoolOutsideCall() {
+        createRequest(ERIF_URI);
+
+        assertThat(transport.getPoolStats()).containsOnlyKeys("default");
+    }
+
+    @Test
+    public void shouldUseDefaultSettingWhenOpcoPropertyInvalid() {
+        given(propertiesAccessor.getPropertyForOpco(eq("er.adapter.http.max.connections"), eq("GB"), anyString()))
+                .willReturn("many");
+
+        transport.call(OpcoHttpTransport.ER_ADAPTER, "GB", () -> createRequest(URI.create("http://localhost:11801")));
+
+        assertThat(transport.getPoolStats().get("er.adapter.GB").getMax()).isEqualTo(20);
+    }
+
+    @Test
+    public void shouldTrackLatencyPercentilesOnceEnoughCallsMade() {
+        given(propertiesAccessor.getPropertyForOpco(eq("erif.http.latency.minimum.samples"), eq("GB"), anyString()))
+                .willReturn("20");
+
+        for (int i = 0; i < 19; i++) {
+            transport.call(OpcoHttpTransport.ERIF, "GB", () -> "fast");
+        }
+        assertThat(transport.getLatencyMillis(OpcoHttpTransport.ERIF, "GB", 95d)).isEqualTo(-1L);
+
+        transport.call(OpcoHttpTransport.ERIF, "GB", this::slowCall);
+
+        assertThat(transport.getLatencyMillis(OpcoHttpTransport.ERIF, "GB", 95d)).isLessThan(50L);
+        assertThat(transport.getLatencyMillis(OpcoHttpTransport.ERIF, "GB", 99d)).isBetween(50L, 80L);
+    }
+
+    @Test
+    public void shouldAdaptReadTimeoutToLatencyWhereEnabled() {
+        given(propertiesAccessor.getPropertyForOpco(eq("erif.http.latency.minimum.samples"), anyString(), anyString()))
+                .willReturn("20");
+        given(propertiesAccessor.getPropertyForOpco(eq("erif.http.read.timeout.adaptive.percent"), eq("GB"), anyString()))
+                .willReturn("300");
+        assertThat(transport.getReadTimeoutMillis(OpcoHttpTransport.ERIF, "GB")).isEqualTo(5000);
+
+        for (int i = 0; i < 20; i++) {
+            transport.call(OpcoHttpTransport.ERIF, "GB", () -> "fast");
+            transport.call(OpcoHttpTransport.ERIF, "DE", () -> "fast");
+        }
+
+        assertThat(transport.getReadTimeoutMillis(OpcoHttpTransport.ERIF, "GB")).isEqualTo(250);
+        assertThat(transport.getReadTimeoutMillis(OpcoHttpTransport.ERIF, "DE")).isEqualTo(5000);
+    }
+
+    @Test
+    public void shouldNotCallOnceRequestDeadlinePassed() {
+        RequestDeadline.start(0L);
+
+        assertThatThrownBy(() -> transport.call(OpcoHttpTransport.ERIF, "GB", () -> createRequest(ERIF_URI)))
+                .isInstanceOf(RequestDeadlineExceededException.class);
+        assertThat(transport.getPoolStats()).isEmpty();
+    }
+
+    @Test
+    public void shouldNotRecordLatencyOfCallTimedOutByRequestDeadline() {
+        given(propertiesAccessor.getPropertyForOpco(eq("erif.http.latency.minimum.samples"), eq("GB"), anyString()))
+                .willReturn("1");
+        final ResourceAccessException timeout = new ResourceAccessException("I/O error",
+                new SocketTimeoutException("Read timed out"));
+        RequestDeadline.start(10L);
+
+        assertThatThrownBy(() -> transport.call(OpcoHttpTransport.ERIF, "GB", () -> {
+            slowCall();
+            throw timeout;
+        })).isInstanceOf(RequestDeadlineExceededException.class)
+                .hasCauseExactlyInstanceOf(ResourceAccessException.class);
+        assertThat(transport.getLatencyMillis(OpcoHttpTransport.ERIF, "GB", 99d)).isEqualTo(-1L);
+    }
+
+    private String slowCall() {
+        try {
+            Thread.sleep(50);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "slow";
+    }
+
+    private AsyncClientHttpRequest createAsyncRequest(URI uri) {
+        try {
+            return transport.getAsyncRequestFactory().createAsyncRequest(uri, HttpMethod.POST);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ClientHttpRequest createRequest(URI uri) {
+        try {
+            return transport.getRequestFactory().createRequest(uri, HttpMethod.POST);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.vodafone.charging.accountservice.client;
+
+import com.vodafone.charging.accountservice.exception.ExternalServiceException;
+import com.vodafone.charging.properties.PropertiesAccessor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.anyDouble;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+@RunWith(MockitoJUnitRunner.class)
+public class OpcoRequestHedgerTest {
+
+    @Mock
+    private PropertiesAccessor propertiesAccessor;
+
+    @Mock
+    private OpcoHttpTransport opcoHttpTransport;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private OpcoRequestHedger opcoRequestHedger;
+
+    @Before
+    public void init() {
+        given(propertiesAccessor.getPropertyForOpco(anyString(), anyString(), anyString()))
+                .willAnswer(invocation -> invocation.getArguments()[2]);
+        given(propertiesAccessor.getPropertyForOpco(eq("erif.hedge.enabled"), eq("GB"), anyString()))
+                .willReturn("true");
+        given(opcoHttpTransport.getLatencyMillis(eq(OpcoHttpTransport.ERIF), eq("GB"), anyDouble()))
+                .willReturn(20L);
+        opcoRequestHedger = new OpcoRequestHedger(propertiesAccessor, opcoHttpTransport, executor);
+    }
+
+    @After
+    public void close() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldCallDirectlyWhereNotEnabled() {
+        final Thread caller = Thread.currentThread();
+
+        final boolean onCaller = opcoRequestHedger.call(OpcoHttpTransport.ERIF, "DE", () -> Thread.currentThread() == caller);
+
+        assertThat(onCaller).isTrue();
+        verifyZeroInteractions(opcoHttpTransport);
+    }
+
+    @Test
+    public void shouldNotHedgeCallFasterThanP95() {
+        final AtomicInteger attempts = new AtomicInteger();
+
+        final String result = opcoRequestHedger.call(OpcoHttpTransport.ERIF, "GB", () -> "attempt " + attempts.incrementAndGet());
+
+        assertThat(result).isEqualTo("attempt 1");
+        assertThat(opcoRequestHedger.getHedgedCalls(OpcoHttpTransport.ERIF, "GB")).isZero();
+    }
+
+    @Test
+    public void shouldUseHedgeWhenPrimaryTakesLongerThanP95() {
+        final AtomicInteger attempts = new AtomicInteger();
+
+        final String result = opcoRequestHedger.call(OpcoHttpTransport.ERIF, "GB", () -> {
+            if (attempts.incrementAndGet() == 1) {
+                awaitRelease();
+                return "primary";
+            }
+            return "hedge";
+        });
+
+        assertThat(result).isEqualTo("hedge");
+        assertThat(opcoRequestHedger.getHedgedCalls(OpcoHttpTransport.ERIF, "GB")).isEqualTo(1L);
+        assertThat(opcoRequestHedger.getStats()).containsKey("erif.GB");
+    }
+
+    @Test
+    public void shouldNotHedgeBeyondBudget() {
+        given(propertiesAccessor.getPropertyForOpco(eq("erif.hedge.budget.percent"), eq("GB"), anyString()))
+                .willReturn("0");
+        given(opcoHttpTransport.getLatencyMillis(eq(OpcoHttpTransport.ERIF), eq("GB"), anyDouble()))
+                .willReturn(1L);
+
+        for (int i = 0; i < 12; i++) {
+            opcoRequestHedger.call(OpcoHttpTransport.ERIF, "GB", this::slowCall);
+        }
+
+        assertThat(opcoRequestHedger.getHedgedCalls(OpcoHttpTransport.ERIF, "GB")).isEqualTo(10L);
+    }
+
+    @Test
+    public void shouldFailWithoutHedgingWhenPrimaryFailsFast() {
+        final ExternalServiceException exception = new ExternalServiceException("Server Exception calling ER Adapter Service ");
+
+        assertThatThrownBy(() -> opcoRequestHedger.call(OpcoHttpTransport.ERIF, "GB", () -> {
+            throw exception;
+        })).isSameAs(exception);
+        assertThat(opcoRequestHedger.getHedgedCalls(OpcoHttpTransport.ERIF, "GB")).isZero();
+    }
+
+    @Test
+    public void shouldCallDirectlyUntilLatencyKnown() {
+        given(opcoHttpTransport.getLatencyMillis(eq(OpcoHttpTransport.ERIF), eq("GB"), anyDouble()))
+                .willReturn(-1L);
+        final Thread caller = Thread.currentThread();
+
+        final boolean onCaller = opcoRequestHedger.call(OpcoHttpTransport.ERIF, "GB", () -> Thread.currentThread() == caller);
+
+        assertThat(onCaller).isTrue();
+    }
+
+    private void awaitRelease() {
+        try {
+            release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private String slowCall() {
+        try {
+            Thread.sleep(10);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "slow";
+    }
+}
@@ -108,6 +108,23 @@ public class AccountServiceControllerAdviceTest {
 
     }
 
+    @Test
+    public void shouldHandleRequestDeadlineExceededExceptionAsTimeout() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+
+        final RequestDeadlineExceededException ex =
+                new RequestDeadlineExceededException("Request deadline passed calling erif for opco GB");
+
+        final ResponseEntity<AccountServiceError> response =
+                advice.handleRequestDeadlineExceededException(request, ex);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.GATEWAY_TIMEOUT);
+        assertThat(response.getBody().getStatus()).isEqualTo(REQUEST_DEADLINE_EXCEEDED_ERROR.status().value());
+        assertThat(response.getBody().getErrorId()).isEqualTo(REQUEST_DEADLINE_EXCEEDED_ERROR.errorId().value());
+        assertThat(response.getBody().getErrorId()).isNotEqualTo(EXTERNAL_SERVICE_ERROR.errorId().value());
+        assertThat(response.getBody().getErrorDescription())
+                .isEqualTo(REQUEST_DEADLINE_EXCEEDED_ERROR.errorDesciption());
+    }
 
     @Test
     public void shouldHandleGenericException() {
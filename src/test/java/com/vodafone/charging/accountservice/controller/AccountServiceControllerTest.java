@@ -1,11 +1,14 @@
 package com.vodafone.charging.accountservice.controller;
 
 import com.vodafone.charging.accountservice.domain.*;
+import com.vodafone.charging.accountservice.domain.enums.SpendLimitType;
 import com.vodafone.charging.accountservice.domain.model.Account;
 import com.vodafone.charging.accountservice.exception.ApplicationLogicException;
 import com.vodafone.charging.accountservice.exception.MethodArgumentValidationException;
 import com.vodafone.charging.accountservice.service.ServiceCallSupplier;
 import com.vodafone.charging.accountservice.service.AccountService;
+import com.vodafone.charging.accountservice.service.BulkEnrichmentService;
+import com.vodafone.charging.accountservice.service.SpendLimitService;
 import com.vodafone.charging.data.builder.PaymentContextDataBuilder;
 import com.vodafone.charging.data.object.NullableChargingId;
 import org.junit.Before;
@@ -19,12 +22,17 @@ import org.mockito.runners.MockitoJUnitRunner;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
 
+import java.io.InputStream;
 import java.util.List;
 import java.util.Locale;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Supplier;
 
+import static com.google.common.collect.Lists.newArrayList;
 import static com.vodafone.charging.data.builder.AccountDataBuilder.anAccount;
 import static com.vodafone.charging.data.builder.ChargingIdDataBuilder.aChargingId;
 import static com.vodafone.charging.data.builder.ChargingIdDataBuilder.aNullableChargingId;
@@ -45,15 +53,30 @@ public class AccountServiceControllerTest {
     @Mock
     private AccountService accountService;
 
+    @Mock
+    private SpendLimitService spendLimitService;
+
     @Mock
     private ServiceCallSupplier serviceCallSupplier;
 
+    @Mock
+    private BulkEnrichmentService bulkEnrichmentService;
+
     @Mock
     private Supplier<Account> supplier;
 
     @Mock
     private Supplier<PaymentApproval> paymentApprovalSupplier;
 
+    @Mock
+    private Supplier<List<PaymentApproval>> paymentApprovalsSupplier;
+
+    @Mock
+    private Supplier<List<SpendLimitHeadroom>> headroomSupplier;
+
+    @Mock
+    private Supplier<Boolean> confirmationSupplier;
+
     @InjectMocks
     private AccountServiceController accountServiceController;
 
@@ -62,6 +85,29 @@ public class AccountServiceControllerTest {
         initMocks(this);
     }
 
+    @Test
+    public void shouldStreamBulkEnrichmentAsNdjson() throws Exception {
+        //given
+        final MockHttpServletRequest request = new MockHttpServletRequest("POST", "/accounts/bulk");
+        request.setContent("{}\n".getBytes());
+        final MockHttpServletResponse response = new MockHttpServletResponse();
+
+        //when
+        accountServiceController.enrichAccountsData("job", 5L, request, response);
+
+        //then
+        assertThat(response.getContentType()).isEqualTo(AccountServiceController.APPLICATION_NDJSON_VALUE);
+        verify(bulkEnrichmentService).enrich(any(InputStream.class), eq(response.getOutputStream()), eq("job"), eq(5L));
+    }
+
+    @Test
+    public void shouldNotStreamBulkEnrichmentFromNegativeLine() {
+        assertThatThrownBy(() -> accountServiceController.enrichAccountsData(null, -1L,
+                new MockHttpServletRequest(), new MockHttpServletResponse()))
+                .isInstanceOf(MethodArgumentValidationException.class);
+        verifyZeroInteractions(bulkEnrichmentService);
+    }
+
     @Test
     public void shouldPassCorrectDataAndReturnOkWhenCorrectDataIsReceived() {
         ArgumentCaptor<Supplier> captor = ArgumentCaptor.forClass(Supplier.class);
@@ -281,6 +327,125 @@ public class AccountServiceControllerTest {
         verifyNoMoreInteractions(serviceCallSupplier, paymentApprovalSupplier);
     }
 
+    @Test
+    public void shouldCallPaymentApprovalsSupplierAndReturnApprovalForEachRequest() {
+        final List<PaymentApprovalRequest> requests = newArrayList(
+                PaymentApprovalRequest.builder().accountId(anAccount().getId())
+                        .paymentContext(PaymentContextDataBuilder.aPaymentContext()).build(),
+                PaymentApprovalRequest.builder().accountId(anAccount().getId())
+                        .paymentContext(PaymentContextDataBuilder.aPaymentContext()).build());
+        final List<PaymentApproval> paymentApprovals = newArrayList(
+                PaymentApproval.builder().success(true).description("Approved").build(),
+                PaymentApproval.builder().success(false).description("ACCOUNT_DAY spend limit breached").build());
+
+        given(serviceCallSupplier.call(Matchers.<Supplier<List<PaymentApproval>>>any())).willReturn(paymentApprovalsSupplier);
+        given(paymentApprovalsSupplier.get()).willReturn(paymentApprovals);
+
+        final ResponseEntity<List<PaymentApproval>> approvalsResponseEntity =
+                accountServiceController.approvePayments(requests);
+
+        assertThat(approvalsResponseEntity.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(approvalsResponseEntity.getBody()).containsExactlyElementsOf(paymentApprovals);
+        verify(serviceCallSupplier).call(Matchers.<Supplier<List<PaymentApproval>>>any());
+        verify(paymentApprovalsSupplier).get();
+    }
+
+    @Test
+    public void shouldCallHeadroomSupplierAndReturnHeadroomForEachLimit() {
+        final Account account = anAccount();
+        final List<SpendLimitHeadroom> headroom = newArrayList(
+                SpendLimitHeadroom.builder().spendLimitType(SpendLimitType.ACCOUNT_TX)
+                        .limit(Money.of(2.15)).remaining(Money.of(2.15)).build(),
+                SpendLimitHeadroom.builder().spendLimitType(SpendLimitType.ACCOUNT_DAY)
+                        .limit(Money.of(10.21)).spent(Money.of(4.00)).remaining(Money.of(6.21)).build());
+
+        given(serviceCallSupplier.call(Matchers.<Supplier<List<SpendLimitHeadroom>>>any())).willReturn(headroomSupplier);
+        given(headroomSupplier.get()).willReturn(headroom);
+
+        final ResponseEntity<List<SpendLimitHeadroom>> headroomResponseEntity =
+                accountServiceController.getSpendLimitHeadroom(account.getId());
+
+        assertThat(headroomResponseEntity.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(headroomResponseEntity.getBody()).containsExactlyElementsOf(headroom);
+        verify(serviceCallSupplier).call(Matchers.<Supplier<List<SpendLimitHeadroom>>>any());
+        verify(headroomSupplier).get();
+    }
+
+    @Test
+    public void shouldCompleteWithEnrichedAccountInfoFromAsyncEnrich() {
+        final EnrichedAccountInfo expectedAccountInfo = aEnrichedAccountInfo();
+        final ContextData contextData = aContextData();
+        final HttpHeaders headers = aHttpHeaders(contextData.getClientId(),
+                contextData.getLocale(),
+                contextData.getChargingId());
+
+        given(accountService.enrichAccountDataAsync(contextData))
+                .willReturn(CompletableFuture.completedFuture(expectedAccountInfo));
+        given(serviceCallSupplier.callAsync(Matchers.<Supplier<CompletableFuture<ResponseEntity<EnrichedAccountInfo>>>>any()))
+                .willAnswer(invocation -> ((Supplier<?>) invocation.getArguments()[0]).get());
+
+        final ResponseEntity<EnrichedAccountInfo> enrichedAccountInfoResponse =
+                accountServiceController.enrichAccountDataAsync(headers, contextData).join();
+
+        assertThat(enrichedAccountInfoResponse.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(expectedAccountInfo).isEqualToComparingFieldByField(enrichedAccountInfoResponse.getBody());
+        verify(accountService, never()).enrichAccountData(any(ContextData.class));
+    }
+
+    @Test
+    public void shouldCompleteWithPaymentApprovalFromAsyncApproval() {
+        final Account account = anAccount();
+        final PaymentContext paymentContext = PaymentContextDataBuilder.aPaymentContext();
+        final PaymentApproval paymentApproval = PaymentApproval.builder().success(true).build();
+
+        given(spendLimitService.approvePaymentAsync(account.getId(), paymentContext))
+                .willReturn(CompletableFuture.completedFuture(paymentApproval));
+        given(serviceCallSupplier.callAsync(Matchers.<Supplier<CompletableFuture<ResponseEntity<PaymentApproval>>>>any()))
+                .willAnswer(invocation -> ((Supplier<?>) invocation.getArguments()[0]).get());
+
+        final ResponseEntity<PaymentApproval> approvalResponseEntity =
+                accountServiceController.approvePaymentAsync(account.getId(), paymentContext).join();
+
+        assertThat(approvalResponseEntity.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(approvalResponseEntity.getBody()).isEqualToComparingFieldByField(paymentApproval);
+    }
+
+    @Test
+    public void shouldThrowMethodArgumentValidationExceptionBeforeAsyncEnrich() {
+        final ContextData contextData = new ContextData.Builder("validate", Locale.UK,
+                aNullableChargingId("msisdn", "")).build();
+
+        assertThatThrownBy(() -> accountServiceController.enrichAccountDataAsync(new HttpHeaders(), contextData))
+                .isInstanceOf(MethodArgumentValidationException.class);
+        verifyZeroInteractions(accountService, serviceCallSupplier);
+    }
+
+    @Test
+    public void shouldCallConfirmationSupplierAndReturnNoContent() {
+        final Account account = anAccount();
+
+        given(serviceCallSupplier.call(Matchers.<Supplier<Boolean>>any())).willReturn(confirmationSupplier);
+        given(confirmationSupplier.get()).willReturn(true);
+
+        final ResponseEntity<Void> confirmationResponseEntity =
+                accountServiceController.confirmPayment(account.getId(), "reservation-1");
+
+        assertThat(confirmationResponseEntity.getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+        verify(serviceCallSupplier).call(Matchers.<Supplier<Boolean>>any());
+        verify(confirmationSupplier).get();
+    }
+
+    @Test
+    public void shouldThrowMethodArgumentValidationExceptionWhenBatchRequestHasNoAccountId() {
+        final List<PaymentApprovalRequest> requests = newArrayList(PaymentApprovalRequest.builder()
+                .paymentContext(PaymentContextDataBuilder.aPaymentContext()).build());
+
+        assertThatThrownBy(() -> accountServiceController.approvePayments(requests))
+                .isInstanceOf(MethodArgumentValidationException.class)
+                .hasMessage("accountId is compulsory but was empty");
+        verifyZeroInteractions(serviceCallSupplier);
+    }
+
     @Test
     public void shouldPropagateWhenExceptionThrownCallingForPaymentApproval() {
         final Account account = anAccount();
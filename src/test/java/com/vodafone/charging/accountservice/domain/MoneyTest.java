@@ -0,0 +1,54 @@
+package com.vodafone.charging.accountservice.domain;
+
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vodafone.charging.accountservice.domain.enums.SpendLimitType;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class MoneyTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void shouldRoundHalfUpToMinorUnits() {
+        assertThat(Money.of(new BigDecimal("2.505")).getMinorUnits()).isEqualTo(251L);
+        assertThat(Money.of(new BigDecimal("2.504")).getMinorUnits()).isEqualTo(250L);
+        assertThat(Money.of(10.21).getMinorUnits()).isEqualTo(1021L);
+    }
+
+    @Test
+    public void shouldAddWithoutFloatingPointError() {
+        Money total = Money.ZERO;
+        for (int i = 0; i < 10; i++) {
+            total = total.plus(Money.of(0.1));
+        }
+        assertThat(total).isEqualTo(Money.of(1.0));
+        assertThat(total.isGreaterThan(Money.of(1.0))).isFalse();
+        assertThat(total.toBigDecimal()).isEqualTo(new BigDecimal("1.00"));
+    }
+
+    @Test
+    public void shouldWriteAsDecimalNumber() throws Exception {
+        final SpendLimitInfo info = new SpendLimitInfo(SpendLimitType.ACCOUNT_DAY, Money.of(10.5), true);
+
+        assertThat(objectMapper.writeValueAsString(info)).contains("\"limit\":10.50");
+    }
+
+    @Test
+    public void shouldReadDecimalNumberOrString() throws Exception {
+        assertThat(objectMapper.readValue("2.15", Money.class)).isEqualTo(Money.ofMinorUnits(215L));
+        assertThat(objectMapper.readValue("2", Money.class)).isEqualTo(Money.ofMinorUnits(200L));
+        assertThat(objectMapper.readValue("\"2.15\"", Money.class)).isEqualTo(Money.ofMinorUnits(215L));
+    }
+
+    @Test
+    public void shouldRejectNonNumericString() {
+        assertThatThrownBy(() -> objectMapper.readValue("\"abc\"", Money.class))
+                .isInstanceOf(JsonMappingException.class);
+    }
+}
@@ -1,11 +1,40 @@
 package com.vodafone.charging.accountservice.domain.model;
 
+import com.vodafone.charging.accountservice.domain.ChargingId;
 import org.junit.Test;
 
+import java.util.Date;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static com.vodafone.charging.data.builder.ChargingIdDataBuilder.aChargingId;
+import static com.vodafone.charging.data.builder.IFResponseDataBuilder.aERIFResponse;
+import static org.assertj.core.api.Assertions.assertThat;
+
 public class AccountTest {
 
     //TODO add tests for builders not constructors
     @Test
     public void shouldBuildAccountObject() {
     }
+
+    @Test
+    public void shouldFingerprintValidatedFieldsOnly() {
+        final ChargingId chargingId = aChargingId();
+
+        final Account account = new Account(chargingId, aERIFResponse(), new Date());
+        final Account revalidated = new Account(chargingId, aERIFResponse(), new Date(System.currentTimeMillis() + 1000L));
+
+        assertThat(account.getValidationFingerprint()).isNotNull().isEqualTo(revalidated.getValidationFingerprint());
+    }
+
+    @Test
+    public void shouldNotFingerprintDifferentValuesTheSame() {
+        assertThat(Account.fingerprint("PRE", 9, newArrayList("ab", "c")))
+                .isNotEqualTo(Account.fingerprint("PRE", 9, newArrayList("a", "bc")))
+                .isNotEqualTo(Account.fingerprint("POST", 9, newArrayList("ab", "c")))
+                .isNotEqualTo(Account.fingerprint("PRE", 10, newArrayList("ab", "c")))
+                .isNotEqualTo(Account.fingerprint("PRE", 9, null));
+        assertThat(Account.fingerprint(null, null, newArrayList()))
+                .isNotEqualTo(Account.fingerprint(null, null, null));
+    }
 }
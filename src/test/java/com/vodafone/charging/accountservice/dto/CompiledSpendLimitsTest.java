@@ -0,0 +1,63 @@
+package com.vodafone.charging.accountservice.dto;
+
+import com.vodafone.charging.accountservice.domain.Money;
+import com.vodafone.charging.accountservice.domain.SpendLimitInfo;
+import com.vodafone.charging.accountservice.domain.enums.SpendLimitType;
+import com.vodafone.charging.accountservice.domain.model.Account;
+import com.vodafone.charging.accountservice.exception.RepositoryResourceNotFoundException;
+import org.junit.Test;
+
+import java.util.List;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static com.vodafone.charging.data.builder.AccountDataBuilder.anAccount;
+import static com.vodafone.charging.data.builder.AccountDataBuilder.anAccountWithEmptyProfile;
+import static com.vodafone.charging.data.builder.ProfileDataBuilder.aProfile;
+import static com.vodafone.charging.data.builder.ProfileDataBuilder.aProfileWithoutSpendLimits;
+import static com.vodafone.charging.data.builder.SpendLimitDataBuilder.aSpendLimit;
+import static com.vodafone.charging.data.builder.SpendLimitDataBuilder.aSpendLimitInfo;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CompiledSpendLimitsTest {
+
+    @Test
+    public void shouldResolveAccountLimitsOverDefaults() {
+        final Account account = anAccount(aProfile(newArrayList(aSpendLimit(2.15, SpendLimitType.ACCOUNT_TX),
+                aSpendLimit(10.21, SpendLimitType.ACCOUNT_DAY))));
+
+        final CompiledSpendLimits compiledLimits = CompiledSpendLimits.ofAccount(account, aDefaultSpendLimitInfoList());
+
+        assertThat(compiledLimits.getLimit(SpendLimitType.ACCOUNT_TX)).isEqualTo(Money.of(2.15));
+        assertThat(compiledLimits.isDefault(SpendLimitType.ACCOUNT_TX)).isFalse();
+        assertThat(compiledLimits.getLimit(SpendLimitType.ACCOUNT_DAY)).isEqualTo(Money.of(10.21));
+        assertThat(compiledLimits.getLimit(SpendLimitType.ACCOUNT_MONTH)).isEqualTo(Money.of(52.69));
+        assertThat(compiledLimits.isDefault(SpendLimitType.ACCOUNT_MONTH)).isTrue();
+        assertThat(compiledLimits.getPlan().getDurationTypes())
+                .containsExactly(SpendLimitType.ACCOUNT_DAY, SpendLimitType.ACCOUNT_MONTH);
+    }
+
+    @Test
+    public void shouldUseDefaultsForAccountWithoutSpendLimits() {
+        final CompiledSpendLimits compiledLimits =
+                CompiledSpendLimits.ofAccount(anAccount(aProfileWithoutSpendLimits()), aDefaultSpendLimitInfoList());
+
+        assertThat(compiledLimits.getLimit(SpendLimitType.ACCOUNT_TX)).isEqualTo(Money.of(4.15));
+        assertThat(compiledLimits.isDefault(SpendLimitType.ACCOUNT_TX)).isTrue();
+    }
+
+    @Test
+    public void shouldThrowRepositoryExceptionWhenNoProfile() {
+        final Account account = anAccountWithEmptyProfile();
+
+        assertThatThrownBy(() -> CompiledSpendLimits.ofAccount(account, aDefaultSpendLimitInfoList()))
+                .isInstanceOf(RepositoryResourceNotFoundException.class)
+                .hasMessageContaining("No Profile found");
+    }
+
+    private List<SpendLimitInfo> aDefaultSpendLimitInfoList() {
+        return newArrayList(aSpendLimitInfo(4.15, SpendLimitType.ACCOUNT_TX),
+                aSpendLimitInfo(11.21, SpendLimitType.ACCOUNT_DAY),
+                aSpendLimitInfo(52.69, SpendLimitType.ACCOUNT_MONTH));
+    }
+}
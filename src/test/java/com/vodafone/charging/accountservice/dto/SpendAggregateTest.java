@@ -0,0 +1,58 @@
+package com.vodafone.charging.accountservice.dto;
+
+import com.google.common.collect.ImmutableMap;
+import com.vodafone.charging.accountservice.domain.enums.SpendLimitType;
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.Map;
+
+import static com.vodafone.charging.accountservice.service.ERDateCalculator.END_DATE_KEY;
+import static com.vodafone.charging.accountservice.service.ERDateCalculator.START_DATE_KEY;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SpendAggregateTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2018, 3, 20, 12, 0);
+
+    private static final SpendAggregate.BreachCheck OVER_TEN = (type, totals) -> totals.getNetTotal(type) > 1000L;
+
+    @Test
+    public void shouldOnlyBeCertainOfBreachOnceWindowAndThoseBeforeItAreComplete() {
+        final SpendAggregate.Accumulator accumulator = SpendAggregate.accumulator(windows())
+                .add(NOW.minusDays(3), false, 1100L, null);
+
+        //the month window is breached so far, but older transactions could still be refunds
+        assertThat(accumulator.isBreachCertain(OVER_TEN, NOW.minusDays(3))).isFalse();
+        assertThat(accumulator.isBreachCertain(OVER_TEN, NOW.minusDays(20))).isTrue();
+    }
+
+    @Test
+    public void shouldBeCertainOfFirstWindowBreachOnceComplete() {
+        final SpendAggregate.Accumulator accumulator = SpendAggregate.accumulator(windows())
+                .add(NOW.minusHours(1), false, 1100L, null);
+
+        //the day window is checked first, so decides the denial once complete
+        assertThat(accumulator.isBreachCertain(OVER_TEN, NOW.minusHours(1))).isFalse();
+        assertThat(accumulator.isBreachCertain(OVER_TEN, NOW.minusDays(1))).isTrue();
+    }
+
+    @Test
+    public void shouldNotBeCertainOfBreachWhenCompleteWindowsAreWithinLimits() {
+        final SpendAggregate.Accumulator accumulator = SpendAggregate.accumulator(windows())
+                .add(NOW.minusHours(1), false, 500L, null)
+                .add(NOW.minusHours(2), true, 100L, null);
+
+        assertThat(accumulator.isBreachCertain(OVER_TEN, NOW.minusDays(20))).isFalse();
+    }
+
+    private static Map<SpendLimitType, Map<String, LocalDateTime>> windows() {
+        final Map<SpendLimitType, Map<String, LocalDateTime>> windows = new EnumMap<>(SpendLimitType.class);
+        windows.put(SpendLimitType.ACCOUNT_DAY,
+                ImmutableMap.of(START_DATE_KEY, NOW.toLocalDate().atStartOfDay(), END_DATE_KEY, NOW.plusHours(12)));
+        windows.put(SpendLimitType.ACCOUNT_MONTH,
+                ImmutableMap.of(START_DATE_KEY, NOW.minusDays(15), END_DATE_KEY, NOW.plusDays(15)));
+        return windows;
+    }
+}
@@ -0,0 +1,61 @@
+package com.vodafone.charging.accountservice.dto;
+
+import com.vodafone.charging.accountservice.dto.er.ERTransaction;
+import com.vodafone.charging.accountservice.dto.er.ERTransactionType;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static com.vodafone.charging.data.ERTransactionDataBuilder.anErTransaction;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SpendIndexTest {
+
+    private final LocalDateTime now = LocalDateTime.now();
+
+    @Test
+    public void shouldTotalRangeIncludingStartAndExcludingEnd() {
+        final SpendIndex index = SpendIndex.of(newArrayList(
+                anErTransaction(new BigDecimal("1.00"), now.minusHours(30), ERTransactionType.PURCHASE),
+                anErTransaction(new BigDecimal("2.00"), now.minusHours(24), ERTransactionType.PURCHASE),
+                anErTransaction(new BigDecimal("0.50"), now.minusHours(2), ERTransactionType.REFUND),
+                anErTransaction(new BigDecimal("4.00"), now, ERTransactionType.USAGE)));
+
+        assertThat(index.size()).isEqualTo(4);
+        assertThat(index.getPayments(now.minusHours(24), now)).isEqualTo(200L);
+        assertThat(index.getRefunds(now.minusHours(24), now)).isEqualTo(50L);
+        assertThat(index.getNetTotal(now.minusHours(24), now)).isEqualTo(150L);
+        assertThat(index.getNetTotal(now.minusDays(2), now.plusSeconds(1))).isEqualTo(650L);
+    }
+
+    @Test
+    public void shouldGiveSameTotalsWhateverTheTransactionOrder() {
+        final List<ERTransaction> transactions = newArrayList();
+        for (int i = 0; i < 100; i++) {
+            transactions.add(anErTransaction(new BigDecimal("0.10"), now.minusMinutes(i * 30), ERTransactionType.PURCHASE));
+        }
+        final SpendIndex newestFirst = SpendIndex.of(transactions);
+        Collections.reverse(transactions);
+        final SpendIndex oldestFirst = SpendIndex.of(transactions);
+        Collections.shuffle(transactions);
+        final SpendIndex unordered = SpendIndex.of(transactions);
+
+        //transactions every 30 minutes from now back, so 48 in the last 24 hours excluding now
+        assertThat(newestFirst.getPayments(now.minusHours(24), now)).isEqualTo(480L);
+        assertThat(oldestFirst.getPayments(now.minusHours(24), now)).isEqualTo(480L);
+        assertThat(unordered.getPayments(now.minusHours(24), now)).isEqualTo(480L);
+    }
+
+    @Test
+    public void shouldReturnZeroForEmptyOrReversedRange() {
+        assertThat(SpendIndex.of(newArrayList()).getNetTotal(now.minusDays(1), now)).isZero();
+
+        final SpendIndex index = SpendIndex.of(newArrayList(
+                anErTransaction(new BigDecimal("1.00"), now.minusHours(1), ERTransactionType.PURCHASE)));
+        assertThat(index.getNetTotal(now, now.minusDays(1))).isZero();
+    }
+}
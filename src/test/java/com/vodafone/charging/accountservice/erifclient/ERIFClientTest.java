@@ -1,5 +1,8 @@
 package com.vodafone.charging.accountservice.erifclient;
 
+import com.vodafone.charging.accountservice.client.OpcoCircuitBreakers;
+import com.vodafone.charging.accountservice.client.OpcoHttpTransport;
+import com.vodafone.charging.accountservice.client.OpcoRequestHedger;
 import com.vodafone.charging.accountservice.domain.*;
 import com.vodafone.charging.accountservice.domain.enums.RoutableType;
 import com.vodafone.charging.accountservice.dto.json.ERIFRequest;
@@ -7,6 +10,7 @@ import com.vodafone.charging.accountservice.dto.json.ERIFResponse;
 import com.vodafone.charging.accountservice.dto.json.MessageControl;
 import com.vodafone.charging.accountservice.dto.json.Routable;
 import com.vodafone.charging.accountservice.exception.NullRestResponseReceivedException;
+import com.vodafone.charging.accountservice.service.CallCoalescer;
 import com.vodafone.charging.accountservice.service.ERIFClient;
 import com.vodafone.charging.properties.PropertiesAccessor;
 import com.vodafone.charging.validator.HttpHeaderValidator;
@@ -29,6 +33,7 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.MockitoAnnotations.initMocks;
 
@@ -41,6 +46,19 @@ public class ERIFClientTest {
     @Mock
     private RestTemplate restTemplate;
 
+    @Spy
+    private CallCoalescer callCoalescer = new CallCoalescer();
+
+    @Spy
+    private OpcoHttpTransport opcoHttpTransport = new OpcoHttpTransport(mock(PropertiesAccessor.class));
+
+    @Spy
+    private OpcoCircuitBreakers opcoCircuitBreakers = new OpcoCircuitBreakers(mock(PropertiesAccessor.class));
+
+    @Spy
+    private OpcoRequestHedger opcoRequestHedger =
+            new OpcoRequestHedger(mock(PropertiesAccessor.class), mock(OpcoHttpTransport.class), Runnable::run);
+
     @InjectMocks
     private ERIFClient erifClient;
 
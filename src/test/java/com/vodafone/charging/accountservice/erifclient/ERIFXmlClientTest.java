@@ -1,12 +1,17 @@
 package com.vodafone.charging.accountservice.erifclient;
 
+import com.vodafone.charging.accountservice.client.OpcoCircuitBreakers;
+import com.vodafone.charging.accountservice.client.OpcoHttpTransport;
+import com.vodafone.charging.accountservice.client.OpcoRequestHedger;
 import com.vodafone.charging.accountservice.domain.ContextData;
 import com.vodafone.charging.accountservice.domain.EnrichedAccountInfo;
+import com.vodafone.charging.accountservice.domain.enums.ResponseType;
 import com.vodafone.charging.accountservice.dto.xml.Envelope;
 import com.vodafone.charging.accountservice.dto.xml.Msgcontrol;
 import com.vodafone.charging.accountservice.dto.xml.Response;
 import com.vodafone.charging.accountservice.dto.xml.Validate;
 import com.vodafone.charging.accountservice.exception.NullRestResponseReceivedException;
+import com.vodafone.charging.accountservice.service.CallCoalescer;
 import com.vodafone.charging.accountservice.service.ERIFXmlClient;
 import com.vodafone.charging.properties.PropertiesAccessor;
 import com.vodafone.charging.validator.HttpHeaderValidator;
@@ -16,19 +21,29 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.*;
 import org.mockito.runners.MockitoJUnitRunner;
-import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResponseExtractor;
 import org.springframework.web.client.RestTemplate;
 
+import javax.xml.bind.JAXBContext;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
 import static com.vodafone.charging.data.builder.ContextDataDataBuilder.aContextData;
 import static com.vodafone.charging.data.builder.EnrichedAccountInfoDataBuilder.aEnrichedAccountInfo;
-import static com.vodafone.charging.data.builder.IFResponseDataBuilder.anEnvelope;
+import static com.vodafone.charging.data.builder.IFResponseDataBuilder.anXmlResponse;
+import static com.vodafone.charging.mock.IFSoapResponseDataBuilder.aAccountValidationSoapResponse;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Matchers.*;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.MockitoAnnotations.initMocks;
 
@@ -41,12 +56,22 @@ public class ERIFXmlClientTest {
     @Mock
     private RestTemplate xmlRestTemplate;
 
+    @Spy
+    private CallCoalescer callCoalescer = new CallCoalescer();
+
+    @Spy
+    private OpcoHttpTransport opcoHttpTransport = new OpcoHttpTransport(mock(PropertiesAccessor.class));
+
+    @Spy
+    private OpcoCircuitBreakers opcoCircuitBreakers = new OpcoCircuitBreakers(mock(PropertiesAccessor.class));
+
+    @Spy
+    private OpcoRequestHedger opcoRequestHedger =
+            new OpcoRequestHedger(mock(PropertiesAccessor.class), mock(OpcoHttpTransport.class), Runnable::run);
+
     @InjectMocks
     private ERIFXmlClient erifXmlClient;
 
-    @Captor
-    private ArgumentCaptor<HttpEntity<Envelope>> httpEntityCaptor;
-
     @Captor
     private ArgumentCaptor<String> urlCaptor;
 
@@ -55,19 +80,25 @@ public class ERIFXmlClientTest {
         initMocks(this);
     }
 
-    @Test public void shouldValidateAccountAndReturnOKWithXml() {
+    @Test public void shouldValidateAccountAndReturnOKWithXml() throws Exception {
         //given
-        final Envelope requestEnvelope = anEnvelope();
+        final Response ifResponse = anXmlResponse();
 
         //set expectedInfo to be what we're setting in the mock
-        EnrichedAccountInfo expectedInfo = aEnrichedAccountInfo(requestEnvelope.getBody().getResponse());
+        EnrichedAccountInfo expectedInfo = aEnrichedAccountInfo(ifResponse);
         final ContextData contextData = aContextData();
         final String url = "http://www.vodafone.com:8080";
-        ResponseEntity<Envelope> responseEntity = new ResponseEntity<>(requestEnvelope, HttpStatus.OK);
+        final MockClientHttpRequest clientHttpRequest = new MockClientHttpRequest();
+        final MockClientHttpResponse clientHttpResponse = new MockClientHttpResponse(
+                aAccountValidationSoapResponse(ifResponse, ResponseType.OK).getBytes(StandardCharsets.UTF_8), HttpStatus.OK);
 
         given(propertiesAccessor.getPropertyForOpco(eq("erif.url"), anyString())).willReturn(url);
-        given(xmlRestTemplate.postForEntity(eq(url), any(HttpEntity.class), Matchers.<Class<Envelope>>any()))
-                .willReturn(responseEntity);
+        given(xmlRestTemplate.execute(eq(url), eq(HttpMethod.POST), any(RequestCallback.class),
+                Matchers.<ResponseExtractor<Response>>any()))
+                .willAnswer(invocation -> {
+                    ((RequestCallback) invocation.getArguments()[2]).doWithRequest(clientHttpRequest);
+                    return ((ResponseExtractor<?>) invocation.getArguments()[3]).extractData(clientHttpResponse);
+                });
 
         //when
         final Response response =  erifXmlClient.validate(contextData);
@@ -79,13 +110,16 @@ public class ERIFXmlClientTest {
 
         InOrder inOrder = Mockito.inOrder(propertiesAccessor, xmlRestTemplate);
         inOrder.verify(propertiesAccessor).getPropertyForOpco(anyString(), anyString());
-        inOrder.verify(xmlRestTemplate).postForEntity(urlCaptor.capture(), httpEntityCaptor.capture(), Matchers.<Class<Response>>any());
+        inOrder.verify(xmlRestTemplate).execute(urlCaptor.capture(), eq(HttpMethod.POST), any(RequestCallback.class),
+                Matchers.<ResponseExtractor<Response>>any());
         verifyNoMoreInteractions(xmlRestTemplate, propertiesAccessor);
 
-        final HttpEntity<Envelope> request = httpEntityCaptor.getValue();
-        final Msgcontrol msgcontrol = request.getBody().getBody().getMessagegroup().getRequest().getMsgcontrol();
-        final Validate validate = request.getBody().getBody().getMessagegroup().getRequest().getValidate();
-        final HttpHeaders headers = request.getHeaders();
+        //the request written must be read by JAXB as the Envelope it used to marshal
+        final Envelope requestEnvelope = (Envelope) JAXBContext.newInstance(Envelope.class).createUnmarshaller()
+                .unmarshal(new ByteArrayInputStream(clientHttpRequest.getBodyAsBytes()));
+        final Msgcontrol msgcontrol = requestEnvelope.getBody().getMessagegroup().getRequest().getMsgcontrol();
+        final Validate validate = requestEnvelope.getBody().getMessagegroup().getRequest().getValidate();
+        final HttpHeaders headers = clientHttpRequest.getHeaders();
 
         assertThat(urlCaptor.getValue()).isEqualTo(url);
 
@@ -93,6 +127,7 @@ public class ERIFXmlClientTest {
         assertThat(validate.isKycCheck()).isEqualTo(contextData.isKycCheck());
         assertThat(validate.getClientId()).isEqualTo(contextData.getClientId());
         assertThat(validate.getAccountId().getType()).isEqualTo(contextData.getChargingId().getType());
+        assertThat(validate.getAccountId().getValue()).isEqualTo(contextData.getChargingId().getValue());
         assertThat(validate.getPackageType()).isEqualTo(contextData.getPackageType().name());
         assertThat(validate.getPartnerId()).isEqualTo(contextData.getPartnerId());
         assertThat(validate.getServiceId()).isEqualTo(contextData.getServiceId());
@@ -101,6 +136,19 @@ public class ERIFXmlClientTest {
         HttpHeaderValidator.validateHttpHeadersXml(headers, contextData);
     }
 
+    @Test
+    public void shouldFailWhenResponseIsNotXml() {
+        ContextData contextData = aContextData();
+        given(xmlRestTemplate.execute(anyString(), any(HttpMethod.class), any(RequestCallback.class),
+                Matchers.<ResponseExtractor<Response>>any()))
+                .willAnswer(invocation -> ((ResponseExtractor<?>) invocation.getArguments()[3]).extractData(
+                        new MockClientHttpResponse("<html>Bad Gateway".getBytes(StandardCharsets.UTF_8), HttpStatus.OK)));
+
+        assertThatThrownBy(() -> erifXmlClient.validate(contextData))
+                .isInstanceOf(HttpMessageNotReadableException.class)
+                .hasMessageStartingWith("Could not read the IF response");
+    }
+
     @Test
     public void shouldPropagateExceptionFromPropertiesAccessor() {
         String message = "this is a test exception";
@@ -116,7 +164,8 @@ public class ERIFXmlClientTest {
     public void shouldPropagateExceptionFromRestTemplate() {
         String message = "this is a test exception";
         ContextData contextData = aContextData();
-        given(xmlRestTemplate.postForEntity(anyString(), any(HttpEntity.class), Matchers.<Class<Response>>any()))
+        given(xmlRestTemplate.execute(anyString(), any(HttpMethod.class), any(RequestCallback.class),
+                Matchers.<ResponseExtractor<Response>>any()))
                 .willThrow(new RuntimeException(message));
         assertThatThrownBy(() -> erifXmlClient.validate(contextData))
                 .isInstanceOf(RuntimeException.class).hasMessage(message);
@@ -127,7 +176,8 @@ public class ERIFXmlClientTest {
         String message = "Received a null response from RestClient trying to call the IF";
         ContextData contextData = aContextData();
 
-        given(xmlRestTemplate.postForEntity(anyString(), any(HttpEntity.class), Matchers.<Class<Response>>any()))
+        given(xmlRestTemplate.execute(anyString(), any(HttpMethod.class), any(RequestCallback.class),
+                Matchers.<ResponseExtractor<Response>>any()))
                 .willReturn(null);
 
         assertThatThrownBy(() -> erifXmlClient.validate(contextData))
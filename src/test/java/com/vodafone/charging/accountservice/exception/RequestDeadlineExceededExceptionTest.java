@@ -0,0 +1,26 @@
+package com.vodafone.charging.accountservice.exception;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RequestDeadlineExceededExceptionTest {
+
+    @Test
+    public void shouldCreateNewInstanceCorrectly() {
+
+        final String message = "This is a test exception";
+        final RuntimeException cause = new RuntimeException("This is a cause");
+
+        assertThat(new RequestDeadlineExceededException(message))
+                .isInstanceOf(ExternalServiceException.class)
+                .hasMessage(message)
+                .hasNoCause();
+        assertThat(new RequestDeadlineExceededException(message, cause))
+                .isInstanceOf(ExternalServiceException.class)
+                .hasMessage(message)
+                .hasCauseExactlyInstanceOf(cause.getClass());
+
+    }
+
+}
@@ -3,11 +3,14 @@ package com.vodafone.charging.accountservice.service;
 import com.vodafone.charging.accountservice.domain.ChargingId;
 import com.vodafone.charging.accountservice.domain.ContextData;
 import com.vodafone.charging.accountservice.domain.EnrichedAccountInfo;
+import com.vodafone.charging.accountservice.domain.ValidatedAccount;
 import com.vodafone.charging.accountservice.domain.model.Account;
 import com.vodafone.charging.accountservice.dto.json.ERIFResponse;
 import com.vodafone.charging.accountservice.dto.xml.Response;
+import com.vodafone.charging.accountservice.exception.RequestDeadlineExceededException;
 import com.vodafone.charging.accountservice.repository.AccountRepository;
 import com.vodafone.charging.properties.PropertiesAccessor;
+import com.vodafone.charging.ulf.RequestDeadline;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -16,18 +19,31 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
 
 import static com.vodafone.charging.data.builder.AccountDataBuilder.anAccount;
 import static com.vodafone.charging.data.builder.AccountDataBuilder.anAccountWithEmptyId;
+import static com.vodafone.charging.data.builder.ChargingIdDataBuilder.aChargingId;
 import static com.vodafone.charging.data.builder.ContextDataDataBuilder.aContextData;
+import static com.vodafone.charging.data.builder.EnrichedAccountInfoDataBuilder.aEnrichedAccountInfo;
 import static com.vodafone.charging.data.builder.IFResponseDataBuilder.aERIFResponse;
 import static com.vodafone.charging.data.builder.IFResponseDataBuilder.anXmlResponse;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
@@ -47,12 +63,16 @@ public class AccountServiceTest {
     @Mock
     private ERIFXmlClient erifXmlClient;
 
+    @Mock
+    private CacheService cacheService;
+
     @InjectMocks
     private AccountService accountService;
 
     @Before
     public void init() {
         initMocks(this);
+        given(cacheService.retrieveSummaryAccountInfo(any(ChargingId.class), anyString())).willReturn(Optional.empty());
     }
 
     @Test
@@ -63,7 +83,7 @@ public class AccountServiceTest {
         final ContextData contextData = aContextData();
         given(erifClient.validate(contextData)).willReturn(erifResponse);
         given(propertiesAccessor.getProperty(eq("gb.erif.communication.protocol"))).willReturn("json");
-        given(repository.save(any(Account.class))).willReturn(anAccountWithEmptyId());
+        given(repository.upsertValidation(any(Account.class), anyBoolean())).willReturn(anAccountWithEmptyId());
 
         //when
         final EnrichedAccountInfo info = accountService.enrichAccountData(contextData);
@@ -71,8 +91,154 @@ public class AccountServiceTest {
         //then
         assertThat(expectedInfo).isEqualToComparingFieldByField(info);
         verify(erifClient).validate(any(ContextData.class));
-        verify(repository, Mockito.times(1)).save(any(Account.class));
+        verify(repository, Mockito.times(1)).upsertValidation(any(Account.class), anyBoolean());
+    }
+    @Test
+    public void shouldCallERIFClientAsyncAndSaveAccountOnPipelineExecutor() {
+        //given
+        final ERIFResponse erifResponse = aERIFResponse();
+        final EnrichedAccountInfo expectedInfo = new EnrichedAccountInfo(erifResponse, null);
+        final ContextData contextData = aContextData();
+        final Executor executor = mock(Executor.class);
+        doAnswer(invocation -> {
+            ((Runnable) invocation.getArguments()[0]).run();
+            return null;
+        }).when(executor).execute(any(Runnable.class));
+        ReflectionTestUtils.setField(accountService, "asyncPipelineExecutor", executor);
+        given(erifClient.validateAsync(contextData)).willReturn(CompletableFuture.completedFuture(erifResponse));
+        given(repository.upsertValidation(any(Account.class), anyBoolean())).willReturn(anAccountWithEmptyId());
+
+        //when
+        final EnrichedAccountInfo info = accountService.enrichAccountDataAsync(contextData).join();
+
+        //then
+        assertThat(expectedInfo).isEqualToComparingFieldByField(info);
+        verify(executor).execute(any(Runnable.class));
+        verify(repository, Mockito.times(1)).upsertValidation(any(Account.class), anyBoolean());
+        verify(erifClient, never()).validate(any(ContextData.class));
+    }
+
+    @Test
+    public void shouldReturnCachedAccountInfoWithoutCallingERIF() {
+        final ContextData contextData = aContextData();
+        final EnrichedAccountInfo cached = aEnrichedAccountInfo();
+        given(cacheService.retrieveSummaryAccountInfo(contextData.getChargingId(), contextData.getLocale().getCountry()))
+                .willReturn(Optional.of(cached));
+
+        assertThat(accountService.enrichAccountData(contextData)).isSameAs(cached);
+
+        verifyZeroInteractions(erifClient, erifXmlClient, repository);
+    }
+
+    @Test
+    public void shouldReturnCachedAccountInfoAsyncWithoutCallingERIF() {
+        final ContextData contextData = aContextData();
+        final EnrichedAccountInfo cached = aEnrichedAccountInfo();
+        given(cacheService.retrieveSummaryAccountInfo(contextData.getChargingId(), contextData.getLocale().getCountry()))
+                .willReturn(Optional.of(cached));
+
+        final CompletableFuture<EnrichedAccountInfo> info = accountService.enrichAccountDataAsync(contextData);
+
+        assertThat(info.isDone()).isTrue();
+        assertThat(info.join()).isSameAs(cached);
+        verifyZeroInteractions(erifClient, erifXmlClient, repository);
+    }
+
+    @Test
+    public void shouldCacheAccountInfoOnceValidatedAsync() {
+        final ContextData contextData = aContextData();
+        ReflectionTestUtils.setField(accountService, "asyncPipelineExecutor", (Executor) Runnable::run);
+        given(erifClient.validateAsync(contextData)).willReturn(CompletableFuture.completedFuture(aERIFResponse()));
+        given(repository.upsertValidation(any(Account.class), anyBoolean())).willReturn(anAccountWithEmptyId());
+
+        final EnrichedAccountInfo info = accountService.enrichAccountDataAsync(contextData).join();
+
+        verify(cacheService).saveSummaryAccountInfo(contextData.getChargingId(), contextData.getLocale().getCountry(), info);
+    }
+
+    @Test
+    public void shouldCacheAccountInfoOnceValidated() {
+        final ContextData contextData = aContextData();
+        given(erifClient.validate(contextData)).willReturn(aERIFResponse());
+        given(repository.upsertValidation(any(Account.class), anyBoolean())).willReturn(anAccountWithEmptyId());
+
+        final EnrichedAccountInfo info = accountService.enrichAccountData(contextData);
+
+        verify(cacheService).saveSummaryAccountInfo(contextData.getChargingId(), contextData.getLocale().getCountry(), info);
+    }
+
+    @Test
+    public void shouldTouchUnchangedAccountUnlessDisabledForOpco() {
+        final ContextData contextData = aContextData();
+        given(erifClient.validate(contextData)).willReturn(aERIFResponse());
+        given(repository.upsertValidation(any(Account.class), anyBoolean())).willReturn(anAccountWithEmptyId());
+
+        accountService.enrichAccountData(contextData);
+        given(propertiesAccessor.getPropertyForOpco(eq("account.validation.touch.unchanged"), anyString(), anyString()))
+                .willReturn("false");
+        accountService.enrichAccountData(contextData);
+
+        verify(repository).upsertValidation(any(Account.class), eq(true));
+        verify(repository).upsertValidation(any(Account.class), eq(false));
+    }
+
+    @Test
+    public void shouldSaveValidatedAccountsWithOneWriteForEachOpcoInOrderGiven() {
+        //given
+        final List<ValidatedAccount> validated = Arrays.asList(aValidatedAccount(Locale.UK),
+                aValidatedAccount(Locale.GERMANY), aValidatedAccount(Locale.UK));
+        given(repository.upsertValidations(anyListOf(Account.class), anyBoolean())).willAnswer(invocation ->
+                ((List<Account>) invocation.getArgumentAt(0, List.class)).stream()
+                        .map(account -> "id-" + account.getChargingId().getValue())
+                        .collect(Collectors.toList()));
+
+        //when
+        final List<EnrichedAccountInfo> infos = accountService.saveValidatedAccounts(validated);
+
+        //then
+        assertThat(infos).extracting(EnrichedAccountInfo::getAccountId).containsExactly(
+                validated.stream().map(v -> "id-" + v.getAccount().getChargingId().getValue()).toArray());
+        final ArgumentCaptor<List> accounts = ArgumentCaptor.forClass(List.class);
+        verify(repository, times(2)).upsertValidations(accounts.capture(), eq(true));
+        assertThat(accounts.getAllValues().get(0)).containsExactly(validated.get(0).getAccount(), validated.get(2).getAccount());
+        assertThat(accounts.getAllValues().get(1)).containsExactly(validated.get(1).getAccount());
+        verify(cacheService).saveSummaryAccountInfo(validated.get(1).getContextData().getChargingId(), "DE", infos.get(1));
     }
+
+    @Test
+    public void shouldNotSaveAccountOnceRequestDeadlinePassed() {
+        final ContextData contextData = aContextData();
+        given(erifClient.validate(contextData)).willAnswer(invocation -> {
+            RequestDeadline.start(0L);
+            return aERIFResponse();
+        });
+
+        try {
+            assertThatThrownBy(() -> accountService.enrichAccountData(contextData))
+                    .isInstanceOf(RequestDeadlineExceededException.class);
+        } finally {
+            RequestDeadline.clear();
+        }
+
+        verifyZeroInteractions(repository);
+    }
+
+    @Test
+    public void shouldNotSaveAccountWhenERIFClientAsyncFails() {
+        final ContextData contextData = aContextData();
+        final String message = "This is a test exception message";
+        final CompletableFuture<ERIFResponse> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new RuntimeException(message));
+        ReflectionTestUtils.setField(accountService, "asyncPipelineExecutor", mock(Executor.class));
+        given(erifClient.validateAsync(contextData)).willReturn(failed);
+
+        assertThatThrownBy(() -> accountService.enrichAccountDataAsync(contextData).join())
+                .isInstanceOf(CompletionException.class)
+                .hasMessageContaining(message);
+
+        verifyZeroInteractions(repository);
+    }
+
     @Test
     public void shouldCallERIFXmlClientWithoutChangingContextData() throws Exception {
         //given
@@ -81,7 +247,7 @@ public class AccountServiceTest {
         final ContextData contextData = aContextData();
         given(erifXmlClient.validate(contextData)).willReturn(response);
         given(propertiesAccessor.getPropertyForOpco(eq("erif.communication.protocol"), anyString(), anyString())).willReturn("soap");
-        given(repository.save(any(Account.class))).willReturn(anAccountWithEmptyId());
+        given(repository.upsertValidation(any(Account.class), anyBoolean())).willReturn(anAccountWithEmptyId());
 
         //when
         final EnrichedAccountInfo info = accountService.enrichAccountData(contextData);
@@ -89,7 +255,7 @@ public class AccountServiceTest {
         //then
         assertThat(expectedInfo).isEqualToComparingFieldByField(info);
         verify(erifXmlClient).validate(any(ContextData.class));
-        verify(repository, Mockito.times(1)).save(any(Account.class));
+        verify(repository, Mockito.times(1)).upsertValidation(any(Account.class), anyBoolean());
     }
 
     @Test
@@ -193,4 +359,10 @@ public class AccountServiceTest {
 
     }
 
+    private static ValidatedAccount aValidatedAccount(Locale locale) {
+        final ContextData contextData = new ContextData.Builder("contextName", locale, aChargingId()).build();
+        final ERIFResponse response = aERIFResponse();
+        return new ValidatedAccount(contextData, new Account(contextData.getChargingId(), response, new Date()),
+                accountId -> new EnrichedAccountInfo(response, accountId));
+    }
 }
@@ -0,0 +1,233 @@
+package com.vodafone.charging.accountservice.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vodafone.charging.accountservice.domain.ContextData;
+import com.vodafone.charging.accountservice.domain.EnrichedAccountInfo;
+import com.vodafone.charging.accountservice.domain.ValidatedAccount;
+import com.vodafone.charging.accountservice.domain.model.Account;
+import com.vodafone.charging.accountservice.domain.model.BulkEnrichmentCheckpoint;
+import com.vodafone.charging.accountservice.dto.json.ERIFResponse;
+import com.vodafone.charging.accountservice.repository.BulkEnrichmentCheckpointRepository;
+import com.vodafone.charging.properties.PropertiesAccessor;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.vodafone.charging.data.builder.ChargingIdDataBuilder.aChargingId;
+import static com.vodafone.charging.data.builder.ContextDataDataBuilder.aContextData;
+import static com.vodafone.charging.data.builder.IFResponseDataBuilder.aERIFResponse;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BulkEnrichmentServiceTest {
+
+    @Mock
+    private AccountService accountService;
+
+    @Mock
+    private BulkEnrichmentCheckpointRepository checkpointRepository;
+
+    @Mock
+    private PropertiesAccessor propertiesAccessor;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private BulkEnrichmentService bulkEnrichmentService;
+
+    @Before
+    public void init() {
+        given(propertiesAccessor.getPropertyAsInt(eq("bulk.enrichment.batch.size"), anyInt())).willReturn(500);
+        given(propertiesAccessor.getPropertyAsInt(eq("bulk.enrichment.flush.millis"), anyInt())).willReturn(60000);
+        given(accountService.validateAccountData(any(ContextData.class)))
+                .willAnswer(invocation -> aValidatedAccount(invocation.getArgumentAt(0, ContextData.class)));
+        given(accountService.saveValidatedAccounts(anyListOf(ValidatedAccount.class)))
+                .willAnswer(invocation -> {
+                    final List<ValidatedAccount> validated = invocation.getArgumentAt(0, List.class);
+                    return IntStream.range(0, validated.size())
+                            .mapToObj(i -> validated.get(i).toEnrichedAccountInfo("accountId" + i))
+                            .collect(Collectors.toList());
+                });
+        bulkEnrichmentService = new BulkEnrichmentService(accountService, checkpointRepository, propertiesAccessor,
+                objectMapper, Runnable::run);
+    }
+
+    @Test
+    public void shouldWriteResultForEachLineThenCheckpoint() throws Exception {
+        //given
+        final ContextData first = aContextData(aChargingId());
+        final ContextData second = aContextData(aChargingId());
+        final String input = json(first) + "\n\n" + json(second) + "\n";
+
+        //when
+        final List<JsonNode> output = enrich(input, null, 0);
+
+        //then
+        assertThat(output).hasSize(3);
+        assertThat(output.get(0).get("line").asLong()).isEqualTo(0);
+        assertThat(output.get(0).get("chargingId").get("value").asText()).isEqualTo(first.getChargingId().getValue());
+        assertThat(output.get(0).get("info").get("accountId").asText()).isEqualTo("accountId0");
+        assertThat(output.get(1).get("line").asLong()).isEqualTo(2);
+        assertThat(output.get(1).get("info").get("accountId").asText()).isEqualTo("accountId1");
+        assertThat(output.get(1).has("error")).isFalse();
+        assertThat(output.get(2).get("checkpoint").asLong()).isEqualTo(3);
+        verify(accountService, times(2)).validateAccountData(any(ContextData.class));
+        verify(accountService).saveValidatedAccounts(anyListOf(ValidatedAccount.class));
+        verify(checkpointRepository, never()).save(any(BulkEnrichmentCheckpoint.class));
+    }
+
+    @Test
+    public void shouldWriteErrorForInvalidLinesWithoutValidating() throws Exception {
+        //when
+        final List<JsonNode> output = enrich("not json\n{\"locale\":\"en_GB\"}\n", null, 0);
+
+        //then
+        assertThat(output).hasSize(3);
+        assertThat(output.get(0).get("error").asText()).startsWith("Invalid ContextData: ");
+        assertThat(output.get(1).get("error").asText())
+                .isEqualTo("Invalid ContextData: chargingId.type and chargingId.value are compulsory");
+        assertThat(output.get(2).get("checkpoint").asLong()).isEqualTo(2);
+        verify(accountService, never()).validateAccountData(any(ContextData.class));
+        verify(accountService, never()).saveValidatedAccounts(anyListOf(ValidatedAccount.class));
+    }
+
+    @Test
+    public void shouldResumeJobFromSavedCheckpoint() throws Exception {
+        //given
+        final ContextData second = aContextData(aChargingId());
+        given(checkpointRepository.findOne("job")).willReturn(BulkEnrichmentCheckpoint.builder()
+                .jobId("job").line(1L).updated(new Date()).build());
+        final ArgumentCaptor<BulkEnrichmentCheckpoint> checkpoint = ArgumentCaptor.forClass(BulkEnrichmentCheckpoint.class);
+
+        //when
+        final List<JsonNode> output = enrich(json(aContextData()) + "\n" + json(second) + "\n", "job", 0);
+
+        //then
+        assertThat(output).hasSize(2);
+        assertThat(output.get(0).get("line").asLong()).isEqualTo(1);
+        assertThat(output.get(0).get("chargingId").get("value").asText()).isEqualTo(second.getChargingId().getValue());
+        verify(accountService).validateAccountData(any(ContextData.class));
+        verify(checkpointRepository).save(checkpoint.capture());
+        assertThat(checkpoint.getValue().getJobId()).isEqualTo("job");
+        assertThat(checkpoint.getValue().getLine()).isEqualTo(2L);
+    }
+
+    @Test
+    public void shouldWriteErrorForEachLineNotValidatedOrSaved() throws Exception {
+        //given
+        final ContextData failing = aContextData(aChargingId());
+        given(accountService.validateAccountData(any(ContextData.class))).willAnswer(invocation -> {
+            final ContextData contextData = invocation.getArgumentAt(0, ContextData.class);
+            if (contextData.getChargingId().getValue().equals(failing.getChargingId().getValue())) {
+                throw new RuntimeException("IF down");
+            }
+            return aValidatedAccount(contextData);
+        });
+        given(accountService.saveValidatedAccounts(anyListOf(ValidatedAccount.class)))
+                .willThrow(new RuntimeException("Mongo down"));
+
+        //when
+        final List<JsonNode> output = enrich(json(aContextData()) + "\n" + json(failing) + "\n", "job", 0);
+
+        //then
+        assertThat(output).hasSize(3);
+        assertThat(output.get(0).get("error").asText()).isEqualTo("Failed to save account: Mongo down");
+        assertThat(output.get(1).get("error").asText()).isEqualTo("IF down");
+        assertThat(output.get(2).get("checkpoint").asLong()).isEqualTo(0);
+        final ArgumentCaptor<BulkEnrichmentCheckpoint> checkpoint = ArgumentCaptor.forClass(BulkEnrichmentCheckpoint.class);
+        verify(checkpointRepository).save(checkpoint.capture());
+        assertThat(checkpoint.getValue().getLine()).isEqualTo(0L);
+    }
+
+    @Test
+    public void shouldValidateNoMoreLinesAtOnceForEachOpcoThanItsConcurrency() throws Exception {
+        //given
+        given(propertiesAccessor.getPropertyForOpco(eq("bulk.enrichment.concurrency"), eq("GB"), anyString()))
+                .willReturn("2");
+        given(propertiesAccessor.getPropertyForOpco(eq("bulk.enrichment.concurrency"), eq("DE"), anyString()))
+                .willReturn("1");
+        final Map<String, AtomicInteger> running = new ConcurrentHashMap<>();
+        final Map<String, AtomicInteger> mostRunning = new ConcurrentHashMap<>();
+        given(accountService.validateAccountData(any(ContextData.class))).willAnswer(invocation -> {
+            final ContextData contextData = invocation.getArgumentAt(0, ContextData.class);
+            final String country = contextData.getLocale().getCountry();
+            final int now = running.computeIfAbsent(country, opco -> new AtomicInteger()).incrementAndGet();
+            mostRunning.computeIfAbsent(country, opco -> new AtomicInteger()).accumulateAndGet(now, Math::max);
+            Thread.sleep(20L);
+            running.get(country).decrementAndGet();
+            return aValidatedAccount(contextData);
+        });
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        bulkEnrichmentService = new BulkEnrichmentService(accountService, checkpointRepository, propertiesAccessor,
+                objectMapper, executor);
+        final StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            input.append(json(aContextData())).append('\n')
+                    .append(json(aContextData("contextName", Locale.GERMANY, aChargingId()))).append('\n');
+        }
+
+        //when
+        final List<JsonNode> output;
+        try {
+            output = enrich(input.toString(), null, 0);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        //then
+        assertThat(output.stream().filter(result -> result.has("info")).count()).isEqualTo(20);
+        assertThat(output.get(output.size() - 1).get("checkpoint").asLong()).isEqualTo(20);
+        assertThat(mostRunning.get("GB").get()).isBetween(1, 2);
+        assertThat(mostRunning.get("DE").get()).isEqualTo(1);
+    }
+
+    private List<JsonNode> enrich(String input, String jobId, long fromLine) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bulkEnrichmentService.enrich(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)), out,
+                jobId, fromLine);
+
+        final List<JsonNode> lines = new ArrayList<>();
+        for (String line : new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n")) {
+            lines.add(objectMapper.readTree(line));
+        }
+        return lines;
+    }
+
+    private String json(ContextData contextData) throws IOException {
+        return objectMapper.writeValueAsString(contextData);
+    }
+
+    private static ValidatedAccount aValidatedAccount(ContextData contextData) {
+        final ERIFResponse response = aERIFResponse();
+        return new ValidatedAccount(contextData, new Account(contextData.getChargingId(), response, new Date()),
+                accountId -> new EnrichedAccountInfo(response, accountId));
+    }
+}
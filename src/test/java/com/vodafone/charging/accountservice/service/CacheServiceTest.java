@@ -1,31 +1,121 @@
 package com.vodafone.charging.accountservice.service;
 
+import com.vodafone.charging.accountservice.domain.ChargingId;
+import com.vodafone.charging.accountservice.domain.EnrichedAccountInfo;
+import com.vodafone.charging.accountservice.domain.model.CachedAccountInfo;
+import com.vodafone.charging.accountservice.repository.CachedAccountInfoRepository;
+import com.vodafone.charging.properties.PropertiesAccessor;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
-import org.mockito.InjectMocks;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.dao.DataAccessResourceFailureException;
 
-import static com.vodafone.charging.data.builder.EnrichedAccountInfoDataBuilder.aEnrichedAccountInfo;
-import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import java.util.Date;
+
+import static com.vodafone.charging.data.builder.ChargingIdDataBuilder.aChargingId;
+import static com.vodafone.charging.data.builder.EnrichedAccountInfoDataBuilder.aEnrichedAccountInfoWhen500Response;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 
 @RunWith(MockitoJUnitRunner.class)
 public class CacheServiceTest {
 
-    @InjectMocks
+    @Mock
+    private PropertiesAccessor propertiesAccessor;
+
+    @Mock
+    private CachedAccountInfoRepository repository;
+
     private CacheService cacheService;
 
+    private final ChargingId chargingId = aChargingId();
+
+    @Before
+    public void init() {
+        given(propertiesAccessor.getPropertyAsInt(anyString(), anyInt()))
+                .willAnswer(invocation -> invocation.getArguments()[1]);
+        given(propertiesAccessor.getPropertyForOpco(anyString(), anyString(), anyString()))
+                .willAnswer(invocation -> invocation.getArguments()[2]);
+        given(propertiesAccessor.getPropertyForOpco(eq("account.info.cache.ttl.seconds"), eq("GB"), anyString()))
+                .willReturn("300");
+        cacheService = new CacheService(propertiesAccessor, repository);
+    }
+
+    @Test
+    public void shouldRetrieveCachedAccountInfoWithoutReadingMongo() {
+        final EnrichedAccountInfo info = anAcceptedEnrichedAccountInfo();
+
+        cacheService.saveSummaryAccountInfo(chargingId, "GB", info);
+
+        assertThat(cacheService.retrieveSummaryAccountInfo(chargingId, "GB").orElse(null)).isSameAs(info);
+        verify(repository, never()).findOne(anyString());
+    }
+
+    @Test
+    public void shouldSaveCachedAccountInfoToMongoToExpireAfterOpcoTtl() {
+        final ArgumentCaptor<CachedAccountInfo> captor = ArgumentCaptor.forClass(CachedAccountInfo.class);
+
+        cacheService.saveSummaryAccountInfo(chargingId, "GB", anAcceptedEnrichedAccountInfo());
+
+        verify(repository).save(captor.capture());
+        assertThat(captor.getValue().getKey()).isEqualTo("GB:" + chargingId.getType() + ":" + chargingId.getValue());
+        assertThat(captor.getValue().getExpireAt().getTime() - captor.getValue().getValidated().getTime())
+                .isEqualTo(300000L);
+    }
+
     @Test
-    public void shouldRetrieveCachedAccountInfo() {
-        assertThatThrownBy(() -> cacheService.retrieveSummaryAccountInfo())
-                .isInstanceOf(UnsupportedOperationException.class);
+    public void shouldRetrieveFreshAccountInfoFromMongoWhenNotHeldLocally() {
+        final EnrichedAccountInfo info = anAcceptedEnrichedAccountInfo();
+        given(repository.findOne("GB:" + chargingId.getType() + ":" + chargingId.getValue()))
+                .willReturn(aCachedAccountInfo(info, 60000L));
+
+        assertThat(cacheService.retrieveSummaryAccountInfo(chargingId, "GB").orElse(null)).isSameAs(info);
+    }
+
+    @Test
+    public void shouldNotRetrieveExpiredAccountInfoFromMongo() {
+        given(repository.findOne(anyString())).willReturn(aCachedAccountInfo(anAcceptedEnrichedAccountInfo(), -1000L));
+
+        assertThat(cacheService.retrieveSummaryAccountInfo(chargingId, "GB").isPresent()).isFalse();
     }
+
     @Test
-    public void shouldSaveCachedAccountInfo() {
-        assertThatThrownBy(() -> cacheService.saveSummaryAccountInfo(aEnrichedAccountInfo()))
-                .isInstanceOf(UnsupportedOperationException.class);
+    public void shouldNotCacheWhereOpcoHasNoTtlOrValidationNotAccepted() {
+        cacheService.saveSummaryAccountInfo(chargingId, "DE", anAcceptedEnrichedAccountInfo());
+        cacheService.saveSummaryAccountInfo(chargingId, "GB", aEnrichedAccountInfoWhen500Response());
+
+        assertThat(cacheService.retrieveSummaryAccountInfo(chargingId, "DE").isPresent()).isFalse();
+        verify(repository, never()).save(any(CachedAccountInfo.class));
     }
 
+    @Test
+    public void shouldTreatMongoFailureAsMiss() {
+        given(repository.findOne(anyString())).willThrow(new DataAccessResourceFailureException("Timed out"));
+        given(repository.save(any(CachedAccountInfo.class))).willThrow(new DataAccessResourceFailureException("Timed out"));
 
+        cacheService.saveSummaryAccountInfo(chargingId, "GB", anAcceptedEnrichedAccountInfo());
 
+        assertThat(cacheService.retrieveSummaryAccountInfo(aChargingId(), "GB").isPresent()).isFalse();
+    }
 
+    private static EnrichedAccountInfo anAcceptedEnrichedAccountInfo() {
+        return new EnrichedAccountInfo.Builder("ACCEPTED").ban("ban").accountId("accountId").build();
+    }
+
+    private static CachedAccountInfo aCachedAccountInfo(EnrichedAccountInfo info, long expiresInMillis) {
+        return CachedAccountInfo.builder()
+                .info(info)
+                .validated(new Date())
+                .expireAt(new Date(System.currentTimeMillis() + expiresInMillis))
+                .build();
+    }
 }
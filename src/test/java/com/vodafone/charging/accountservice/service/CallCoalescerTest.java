@@ -0,0 +1,179 @@
+package com.vodafone.charging.accountservice.service;
+
+import com.vodafone.charging.accountservice.exception.RequestDeadlineExceededException;
+import com.vodafone.charging.ulf.RequestDeadline;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CallCoalescerTest {
+
+    private static final String ENDPOINT = "er.transactions.search";
+
+    private final CallCoalescer coalescer = new CallCoalescer();
+
+    @Test
+    public void shouldShareOneCallBetweenConcurrentCallersWithSameKey() throws Exception {
+        final AtomicInteger made = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        final List<Future<String>> results = newArrayList();
+        for (int i = 0; i < 4; i++) {
+            results.add(executor.submit(() -> coalescer.call(ENDPOINT, "GB:msisdn:1", () -> {
+                made.incrementAndGet();
+                await(release);
+                return "transactions";
+            })));
+        }
+        while (coalescer.getCoalescedCalls(ENDPOINT) < 3) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+
+        for (Future<String> result : results) {
+            assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo("transactions");
+        }
+        executor.shutdown();
+
+        assertThat(made.get()).isEqualTo(1);
+        assertThat(coalescer.getCalls(ENDPOINT)).isEqualTo(4);
+        assertThat(coalescer.getCoalescingRatio(ENDPOINT)).isEqualTo(0.75);
+    }
+
+    @Test
+    public void shouldMakeSeparateCallsForDifferentKeysAndLaterCallers() {
+        final AtomicInteger made = new AtomicInteger();
+
+        coalescer.call(ENDPOINT, "GB:msisdn:1", made::incrementAndGet);
+        coalescer.call(ENDPOINT, "GB:msisdn:1", made::incrementAndGet);
+        coalescer.call(ENDPOINT, "DE:msisdn:1", made::incrementAndGet);
+
+        assertThat(made.get()).isEqualTo(3);
+        assertThat(coalescer.getCoalescedCalls(ENDPOINT)).isZero();
+    }
+
+    @Test
+    public void shouldGiveEveryCallerTheSameException() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        final Callable<Object> failingCall = () -> coalescer.call(ENDPOINT, "GB:msisdn:1", () -> {
+            await(release);
+            throw new IllegalStateException("ER unavailable");
+        });
+        final Future<Object> first = executor.submit(failingCall);
+        final Future<Object> second = executor.submit(failingCall);
+        while (coalescer.getCoalescedCalls(ENDPOINT) < 1) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+        executor.shutdown();
+
+        for (Future<Object> result : newArrayList(first, second)) {
+            assertThatThrownBy(() -> result.get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class)
+                    .hasCauseInstanceOf(IllegalStateException.class);
+        }
+    }
+
+    @Test
+    public void shouldStopWaitingForSharedCallAtOwnDeadline() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        final Future<String> leader = executor.submit(() -> coalescer.call(ENDPOINT, "GB:msisdn:1", () -> {
+            await(release);
+            return "transactions";
+        }));
+        while (coalescer.getCalls(ENDPOINT) < 1) {
+            Thread.sleep(1);
+        }
+
+        RequestDeadline.start(50L);
+        try {
+            assertThatThrownBy(() -> coalescer.call(ENDPOINT, "GB:msisdn:1", () -> "not called"))
+                    .isInstanceOf(RequestDeadlineExceededException.class);
+        } finally {
+            RequestDeadline.clear();
+            release.countDown();
+            executor.shutdown();
+        }
+
+        assertThat(leader.get(5, TimeUnit.SECONDS)).isEqualTo("transactions");
+        assertThat(coalescer.getCoalescedCalls(ENDPOINT)).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldCallAgainWhenSharedCallPassedDeadlineOfItsCaller() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger made = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        final Future<String> leader = executor.submit(() -> coalescer.call(ENDPOINT, "GB:msisdn:1", () -> {
+            made.incrementAndGet();
+            await(release);
+            throw new RequestDeadlineExceededException("Request deadline passed before searching transactions");
+        }));
+        while (coalescer.getCalls(ENDPOINT) < 1) {
+            Thread.sleep(1);
+        }
+        final Future<String> waiter = executor.submit(() -> coalescer.call(ENDPOINT, "GB:msisdn:1", () -> {
+            made.incrementAndGet();
+            return "transactions";
+        }));
+        while (coalescer.getCoalescedCalls(ENDPOINT) < 1) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+        executor.shutdown();
+
+        assertThat(waiter.get(5, TimeUnit.SECONDS)).isEqualTo("transactions");
+        assertThatThrownBy(() -> leader.get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(RequestDeadlineExceededException.class);
+        assertThat(made.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldShareFutureBetweenAsyncCallersUntilItCompletes() {
+        final AtomicInteger made = new AtomicInteger();
+        final CompletableFuture<String> response = new CompletableFuture<>();
+
+        final CompletableFuture<String> first = coalescer.callAsync(ENDPOINT, "GB:msisdn:1", () -> {
+            made.incrementAndGet();
+            return response;
+        });
+        final CompletableFuture<String> second = coalescer.callAsync(ENDPOINT, "GB:msisdn:1", () -> {
+            made.incrementAndGet();
+            return response;
+        });
+        response.complete("validated");
+        coalescer.callAsync(ENDPOINT, "GB:msisdn:1", () -> {
+            made.incrementAndGet();
+            return CompletableFuture.completedFuture("validated");
+        });
+
+        assertThat(first.join()).isEqualTo("validated");
+        assertThat(second).isSameAs(first);
+        assertThat(made.get()).isEqualTo(2);
+        assertThat(coalescer.getCoalescedCalls(ENDPOINT)).isEqualTo(1);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
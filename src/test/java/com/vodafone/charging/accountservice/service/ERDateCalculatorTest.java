@@ -201,6 +201,29 @@ public class ERDateCalculatorTest {
 
     }
 
+    @Test
+    public void shouldCalculateRollingSpendLimitDatesEndingNow() {
+        given(timeZone.toZoneId()).willReturn(ZoneId.of("CET"));
+        final LocalDateTime before = LocalDateTime.now(ZoneId.of("CET"));
+
+        final Map<String, LocalDateTime> dates =
+                erDateCalculator.calculateDurationSpendLimitDates(SpendLimitType.ACCOUNT_ROLLING_DAY, 1);
+
+        final LocalDateTime after = LocalDateTime.now(ZoneId.of("CET"));
+        assertThat(dates.get(END_DATE_KEY)).isAfterOrEqualTo(before).isBeforeOrEqualTo(after);
+        assertThat(dates.get(START_DATE_KEY)).isEqualTo(dates.get(END_DATE_KEY).minusHours(24));
+    }
+
+    @Test
+    public void shouldCalculatePartnerSpendLimitDatesFromAccountWindow() {
+        given(timeZone.toZoneId()).willReturn(ZoneId.of("CET"));
+
+        assertThat(erDateCalculator.calculateDurationSpendLimitDates(SpendLimitType.PARTNER_DAY, 1))
+                .isEqualTo(erDateCalculator.calculateDurationSpendLimitDates(SpendLimitType.ACCOUNT_DAY, 1));
+        assertThat(erDateCalculator.calculateDurationSpendLimitDates(SpendLimitType.PARTNER_MONTH, 10))
+                .isEqualTo(erDateCalculator.calculateDurationSpendLimitDates(SpendLimitType.ACCOUNT_MONTH, 10));
+    }
+
     @Test
     public void shouldValidateBillingCycleDay() {
         assertThat(isValidBillingCycleDay(19)).isTrue();
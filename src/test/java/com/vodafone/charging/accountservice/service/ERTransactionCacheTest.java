@@ -0,0 +1,191 @@
+package com.vodafone.charging.accountservice.service;
+
+import com.vodafone.charging.accountservice.domain.ChargingId;
+import com.vodafone.charging.accountservice.dto.er.ERTransaction;
+import com.vodafone.charging.accountservice.dto.er.ERTransactionCriteria;
+import com.vodafone.charging.accountservice.dto.er.ERTransactionType;
+import com.vodafone.charging.properties.PropertiesAccessor;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static com.vodafone.charging.accountservice.service.ERDateCalculator.START_DATE_KEY;
+import static com.vodafone.charging.data.ERTransactionDataBuilder.anErTransaction;
+import static com.vodafone.charging.data.builder.ChargingIdDataBuilder.aChargingId;
+import static java.util.Collections.singletonMap;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ERTransactionCacheTest {
+
+    private static final LocalDateTime CYCLE_START = LocalDateTime.of(2018, 3, 6, 0, 0);
+
+    @Mock
+    private PropertiesAccessor propertiesAccessor;
+
+    @Mock
+    private ERDateCalculator erDateCalculator;
+
+    private ERTransactionCache cache;
+    private ChargingId chargingId;
+    private List<ERTransactionCriteria> requested;
+
+    @Before
+    public void init() {
+        given(propertiesAccessor.getPropertyAsInt(anyString(), anyInt()))
+                .willAnswer(invocation -> invocation.getArguments()[1]);
+        given(erDateCalculator.calculateBillingCycleDates(anyInt())).willReturn(cycleStarting(CYCLE_START));
+        cache = new ERTransactionCache(propertiesAccessor, erDateCalculator);
+        chargingId = aChargingId();
+        requested = new ArrayList<>();
+    }
+
+    @Test
+    public void shouldFetchOnlyTransactionsSinceNewestCachedAndMerge() {
+        final ERTransaction first = aPurchase(CYCLE_START.plusDays(1));
+        final ERTransaction second = aPurchase(CYCLE_START.plusDays(2));
+        final ERTransaction third = aPurchase(CYCLE_START.plusDays(3));
+
+        final List<ERTransaction> initial =
+                cache.getTransactions(aCriteria(CYCLE_START, CYCLE_START.plusDays(2)), 6, loader(first, second));
+        final List<ERTransaction> later =
+                cache.getTransactions(aCriteria(CYCLE_START, CYCLE_START.plusDays(4)), 6, loader(second, third));
+
+        assertThat(initial).containsExactly(first, second);
+        assertThat(later).containsExactly(first, second, third);
+        assertThat(requested).hasSize(2);
+        assertThat(requested.get(1).getFromDate()).isEqualTo(second.getDateTime());
+        assertThat(requested.get(1).getToDate()).isEqualTo(CYCLE_START.plusDays(4));
+    }
+
+    @Test
+    public void shouldKeepIdenticalTransactionsAtMergeBoundary() {
+        final ERTransaction first = aPurchase(CYCLE_START.plusDays(1));
+        final ERTransaction second = aPurchase(CYCLE_START.plusDays(2));
+        final ERTransaction sameAsSecond = aPurchase(CYCLE_START.plusDays(2));
+        final ERTransaction thirdSameAsSecond = aPurchase(CYCLE_START.plusDays(2));
+
+        cache.getTransactions(aCriteria(CYCLE_START, CYCLE_START.plusDays(2)), 6, loader(first, second, sameAsSecond));
+        final List<ERTransaction> later = cache.getTransactions(aCriteria(CYCLE_START, CYCLE_START.plusDays(4)), 6,
+                loader(second, sameAsSecond, thirdSameAsSecond));
+
+        assertThat(second).isEqualTo(sameAsSecond);
+        assertThat(later).hasSize(4);
+    }
+
+    @Test
+    public void shouldServeLaterWindowFromCachedHistory() {
+        final ERTransaction first = aPurchase(CYCLE_START.plusDays(1));
+        final ERTransaction second = aPurchase(CYCLE_START.plusDays(2));
+        cache.getTransactions(aCriteria(CYCLE_START, CYCLE_START.plusDays(3)), 6, loader(first, second));
+
+        final List<ERTransaction> today =
+                cache.getTransactions(aCriteria(CYCLE_START.plusDays(2), CYCLE_START.plusDays(3)), 6, loader());
+
+        assertThat(today).containsExactly(second);
+        assertThat(requested.get(1).getFromDate()).isEqualTo(second.getDateTime());
+    }
+
+    @Test
+    public void shouldRefetchInFullWhenWindowStartsBeforeCachedHistory() {
+        cache.getTransactions(aCriteria(CYCLE_START, CYCLE_START.plusDays(3)), 6, loader(aPurchase(CYCLE_START.plusDays(1))));
+
+        cache.getTransactions(aCriteria(CYCLE_START.minusDays(10), CYCLE_START.plusDays(3)), 6, loader());
+
+        assertThat(requested.get(1).getFromDate()).isEqualTo(CYCLE_START.minusDays(10));
+    }
+
+    @Test
+    public void shouldDropCachedHistoryAtBillingCycleRollover() {
+        cache.getTransactions(aCriteria(CYCLE_START, CYCLE_START.plusDays(3)), 6, loader(aPurchase(CYCLE_START.plusDays(1))));
+
+        final LocalDateTime nextCycleStart = CYCLE_START.plusMonths(1);
+        given(erDateCalculator.calculateBillingCycleDates(anyInt())).willReturn(cycleStarting(nextCycleStart));
+        final List<ERTransaction> transactions =
+                cache.getTransactions(aCriteria(nextCycleStart, nextCycleStart.plusDays(1)), 6, loader());
+
+        assertThat(transactions).isEmpty();
+        assertThat(requested.get(1).getFromDate()).isEqualTo(nextCycleStart);
+    }
+
+    @Test
+    public void shouldReturnSameTransactionsWhetherCachedOrNot() {
+        final ERTransaction first = aPurchase(CYCLE_START.plusDays(1));
+        final ERTransaction undated = aPurchase(null);
+        final ERTransaction second = aPurchase(CYCLE_START.plusDays(2));
+        final ERTransaction third = aPurchase(CYCLE_START.plusDays(3));
+
+        final List<ERTransaction> loaded =
+                cache.getTransactions(aCriteria(CYCLE_START, CYCLE_START.plusDays(3)), 6, loader(second, undated, first));
+        final List<ERTransaction> cached =
+                cache.getTransactions(aCriteria(CYCLE_START, CYCLE_START.plusDays(3)), 6, loader(second, third));
+
+        assertThat(loaded).containsExactly(first, second);
+        assertThat(cached).containsExactly(first, second, third);
+    }
+
+    @Test
+    public void shouldNotReturnCachedTransactionsAfterWindowEnds() {
+        final ERTransaction first = aPurchase(CYCLE_START.plusDays(1));
+        final ERTransaction second = aPurchase(CYCLE_START.plusDays(2));
+        final ERTransaction third = aPurchase(CYCLE_START.plusDays(3));
+        cache.getTransactions(aCriteria(CYCLE_START, CYCLE_START.plusDays(4)), 6, loader(first, second, third));
+
+        final List<ERTransaction> earlier =
+                cache.getTransactions(aCriteria(CYCLE_START, CYCLE_START.plusDays(2)), 6, loader());
+
+        assertThat(earlier).containsExactly(first, second);
+    }
+
+    @Test
+    public void shouldNotCacheWhenResultSizeRequired() {
+        final ERTransactionCriteria criteria = aCriteria(CYCLE_START, CYCLE_START.plusDays(3));
+        criteria.setRequiredResultSize(1);
+
+        cache.getTransactions(criteria, 6, loader(aPurchase(CYCLE_START.plusDays(1))));
+        cache.getTransactions(criteria, 6, loader());
+
+        assertThat(requested).hasSize(2);
+        assertThat(requested.get(1).getFromDate()).isEqualTo(CYCLE_START);
+    }
+
+    private Function<ERTransactionCriteria, List<ERTransaction>> loader(ERTransaction... transactions) {
+        return criteria -> {
+            requested.add(criteria);
+            return newArrayList(transactions);
+        };
+    }
+
+    private ERTransactionCriteria aCriteria(LocalDateTime fromDate, LocalDateTime toDate) {
+        return ERTransactionCriteria.builder()
+                .chargingId(chargingId)
+                .locale(new Locale("en", "GB"))
+                .transactionTypes(newArrayList(ERTransactionType.PURCHASE.name(), ERTransactionType.REFUND.name()))
+                .monetaryOnly(true)
+                .fromDate(fromDate)
+                .toDate(toDate)
+                .build();
+    }
+
+    private static ERTransaction aPurchase(LocalDateTime dateTime) {
+        return anErTransaction(new BigDecimal("1.50"), dateTime, ERTransactionType.PURCHASE);
+    }
+
+    private static Map<String, LocalDateTime> cycleStarting(LocalDateTime start) {
+        return singletonMap(START_DATE_KEY, start);
+    }
+}
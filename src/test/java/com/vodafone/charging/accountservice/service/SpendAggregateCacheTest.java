@@ -0,0 +1,70 @@
+package com.vodafone.charging.accountservice.service;
+
+import com.google.common.collect.ImmutableMap;
+import com.vodafone.charging.accountservice.domain.Money;
+import com.vodafone.charging.accountservice.domain.enums.SpendLimitType;
+import com.vodafone.charging.accountservice.dto.SpendAggregate;
+import com.vodafone.charging.properties.PropertiesAccessor;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SpendAggregateCacheTest {
+
+    @Mock
+    private PropertiesAccessor propertiesAccessor;
+
+    @Before
+    public void init() {
+        given(propertiesAccessor.getPropertyAsInt(anyString(), anyInt()))
+                .willAnswer(invocation -> invocation.getArguments()[1]);
+    }
+
+    @Test
+    public void shouldReturnAggregateWithApprovedPaymentsAdded() {
+        final SpendAggregateCache cache = new SpendAggregateCache(propertiesAccessor);
+        cache.put("account-1", anAggregate(1050L));
+
+        cache.recordSpend("account-1", Money.of(2.15));
+
+        final SpendAggregate aggregate = cache.find("account-1");
+        assertThat(aggregate).isNotNull();
+        assertThat(aggregate.getNetTotalAmount(SpendLimitType.ACCOUNT_DAY)).isEqualTo(Money.of(12.65));
+        assertThat(cache.getMaxStalenessSeconds()).isEqualTo(300);
+    }
+
+    @Test
+    public void shouldNotCacheSpendRecordedWithoutAggregate() {
+        final SpendAggregateCache cache = new SpendAggregateCache(propertiesAccessor);
+
+        cache.recordSpend("account-1", Money.of(2.15));
+
+        assertThat(cache.find("account-1")).isNull();
+    }
+
+    @Test
+    public void shouldNotReturnAggregateOlderThanStalenessBound() {
+        given(propertiesAccessor.getPropertyAsInt(eq("spend.headroom.max.staleness.seconds"), anyInt())).willReturn(0);
+        final SpendAggregateCache cache = new SpendAggregateCache(propertiesAccessor);
+
+        cache.put("account-1", anAggregate(1050L));
+
+        assertThat(cache.find("account-1")).isNull();
+    }
+
+    private SpendAggregate anAggregate(long dayTotal) {
+        return SpendAggregate.ofNetTotals(ImmutableMap.of(SpendLimitType.ACCOUNT_DAY, dayTotal),
+                ImmutableMap.of(SpendLimitType.ACCOUNT_DAY, LocalDate.now().atStartOfDay()));
+    }
+}
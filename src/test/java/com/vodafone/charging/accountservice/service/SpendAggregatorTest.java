@@ -0,0 +1,115 @@
+package com.vodafone.charging.accountservice.service;
+
+import com.google.common.collect.ImmutableMap;
+import com.vodafone.charging.accountservice.domain.Money;
+import com.vodafone.charging.accountservice.domain.enums.SpendLimitType;
+import com.vodafone.charging.accountservice.dto.SpendAggregate;
+import com.vodafone.charging.accountservice.dto.er.ERTransaction;
+import com.vodafone.charging.accountservice.dto.er.ERTransactionType;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static com.vodafone.charging.accountservice.domain.enums.SpendLimitType.*;
+import static com.vodafone.charging.accountservice.service.ERDateCalculator.END_DATE_KEY;
+import static com.vodafone.charging.accountservice.service.ERDateCalculator.START_DATE_KEY;
+import static com.vodafone.charging.data.ERTransactionDataBuilder.anErTransaction;
+import static com.vodafone.charging.data.builder.SpendLimitDataProvider.anERTransactionListForCurrentDay;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+
+/**
+ * Tests all duration windows are filled from a single pass over the transactions
+ */
+public class SpendAggregatorTest extends SpendLimitCheckerBase {
+
+    @Test
+    public void shouldTotalPaymentsAndRefundsForEveryDurationWindow() {
+        //purchases today total 16, refunds today 6.3
+        final List<ERTransaction> transactions = anERTransactionListForCurrentDay();
+        given(erDateCalculator.calculateDurationSpendLimitDates(eq(ACCOUNT_DAY), anyInt())).willReturn(todayDates);
+        given(erDateCalculator.calculateDurationSpendLimitDates(eq(ACCOUNT_MONTH), anyInt())).willReturn(monthDates);
+
+        final SpendAggregate aggregate = new SpendAggregator(erDateCalculator).aggregate(transactions, 1);
+
+        assertThat(aggregate.hasWindow(ACCOUNT_TX)).isFalse();
+        assertThat(aggregate.hasWindow(ACCOUNT_DAY)).isTrue();
+        assertThat(aggregate.getPayments(ACCOUNT_DAY)).isEqualTo(1600);
+        assertThat(aggregate.getRefunds(ACCOUNT_DAY)).isEqualTo(630);
+        assertThat(aggregate.getNetTotalAmount(ACCOUNT_DAY)).isEqualTo(Money.of(new BigDecimal("9.70")));
+        assertThat(aggregate.getPayments(ACCOUNT_MONTH)).isGreaterThanOrEqualTo(aggregate.getPayments(ACCOUNT_DAY));
+    }
+
+    @Test
+    public void shouldIgnoreTransactionsOutsideWindows() {
+        final List<ERTransaction> transactions = newArrayList(
+                anErTransaction(new BigDecimal("3.00"), todayDates.get("startDate").minusDays(40), ERTransactionType.PURCHASE));
+        given(erDateCalculator.calculateDurationSpendLimitDates(eq(ACCOUNT_DAY), anyInt())).willReturn(todayDates);
+        given(erDateCalculator.calculateDurationSpendLimitDates(eq(ACCOUNT_MONTH), anyInt())).willReturn(monthDates);
+
+        final SpendAggregate aggregate = new SpendAggregator(erDateCalculator).aggregate(transactions, 1);
+
+        for (SpendLimitType type : SpendLimitType.values()) {
+            assertThat(aggregate.getNetTotal(type)).isZero();
+        }
+    }
+
+    @Test
+    public void shouldTotalPartnerWindowsInSamePassAsAccountWindows() {
+        final LocalDateTime now = LocalDateTime.now();
+        final List<ERTransaction> transactions = newArrayList(
+                anErTransaction(new BigDecimal("3.00"), now.minusMinutes(30), ERTransactionType.PURCHASE, "partner-a"),
+                anErTransaction(new BigDecimal("2.00"), now.minusMinutes(20), ERTransactionType.PURCHASE, "partner-b"),
+                anErTransaction(new BigDecimal("1.00"), now.minusMinutes(10), ERTransactionType.PURCHASE, "partner-a"),
+                anErTransaction(new BigDecimal("0.50"), now.minusMinutes(5), ERTransactionType.REFUND, "partner-a"),
+                anErTransaction(new BigDecimal("4.00"), now.minusMinutes(1), ERTransactionType.PURCHASE, null));
+        final Map<String, LocalDateTime> dayDates = ImmutableMap.of(START_DATE_KEY, now.minusHours(1),
+                END_DATE_KEY, now.plusHours(1));
+        final Map<SpendLimitType, Map<String, LocalDateTime>> windows = new EnumMap<>(SpendLimitType.class);
+        windows.put(ACCOUNT_DAY, dayDates);
+        windows.put(PARTNER_DAY, dayDates);
+
+        final SpendAggregate aggregate = new SpendAggregator(erDateCalculator).aggregate(transactions, windows);
+
+        assertThat(aggregate.getNetTotalAmount(ACCOUNT_DAY)).isEqualTo(Money.of(new BigDecimal("9.50")));
+        assertThat(aggregate.getNetTotal(PARTNER_DAY)).isZero();
+        assertThat(aggregate.getPartnerNetTotalAmount(PARTNER_DAY, "partner-a")).isEqualTo(Money.of(new BigDecimal("3.50")));
+        assertThat(aggregate.getPartnerNetTotalAmount(PARTNER_DAY, "partner-b")).isEqualTo(Money.of(new BigDecimal("2.00")));
+        assertThat(aggregate.getPartnerNetTotal(PARTNER_DAY, "partner-c")).isZero();
+
+        final SpendAggregate withPayment = aggregate.plus(Money.of(new BigDecimal("1.25")), "partner-c");
+        assertThat(withPayment.getNetTotalAmount(ACCOUNT_DAY)).isEqualTo(Money.of(new BigDecimal("10.75")));
+        assertThat(withPayment.getPartnerNetTotalAmount(PARTNER_DAY, "partner-c")).isEqualTo(Money.of(new BigDecimal("1.25")));
+        assertThat(withPayment.getPartnerNetTotalAmount(PARTNER_DAY, "partner-a")).isEqualTo(Money.of(new BigDecimal("3.50")));
+        assertThat(aggregate.getPartnerNetTotal(PARTNER_DAY, "partner-c")).isZero();
+    }
+
+    @Test
+    public void shouldTotalRollingWindowsFromIndexAlongsideCalendarWindows() {
+        final LocalDateTime now = LocalDateTime.now();
+        final List<ERTransaction> transactions = newArrayList(
+                anErTransaction(new BigDecimal("3.00"), now.minusHours(30), ERTransactionType.PURCHASE),
+                anErTransaction(new BigDecimal("2.00"), now.minusHours(20), ERTransactionType.PURCHASE),
+                anErTransaction(new BigDecimal("0.50"), now.minusHours(1), ERTransactionType.REFUND));
+        final Map<SpendLimitType, Map<String, LocalDateTime>> windows = new EnumMap<>(SpendLimitType.class);
+        windows.put(ACCOUNT_MONTH, monthDates);
+        windows.put(ACCOUNT_ROLLING_DAY, ImmutableMap.of(START_DATE_KEY, now.minusHours(24), END_DATE_KEY, now));
+
+        final SpendAggregate aggregate = new SpendAggregator(erDateCalculator).aggregate(transactions, windows);
+
+        assertThat(aggregate.hasWindow(ACCOUNT_ROLLING_DAY)).isTrue();
+        assertThat(aggregate.getPayments(ACCOUNT_ROLLING_DAY)).isEqualTo(200L);
+        assertThat(aggregate.getRefunds(ACCOUNT_ROLLING_DAY)).isEqualTo(50L);
+        assertThat(aggregate.getNetTotalAmount(ACCOUNT_ROLLING_DAY)).isEqualTo(Money.of(new BigDecimal("1.50")));
+        assertThat(aggregate.hasWindow(ACCOUNT_DAY)).isFalse();
+        //a payment approved later is added to rolling windows as well
+        assertThat(aggregate.plus(Money.of(1.0)).getNetTotal(ACCOUNT_ROLLING_DAY)).isEqualTo(250L);
+    }
+}
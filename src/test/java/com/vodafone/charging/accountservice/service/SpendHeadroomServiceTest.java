@@ -0,0 +1,158 @@
+package com.vodafone.charging.accountservice.service;
+
+import com.google.common.collect.ImmutableMap;
+import com.vodafone.charging.accountservice.domain.Money;
+import com.vodafone.charging.accountservice.domain.SpendLimitHeadroom;
+import com.vodafone.charging.accountservice.domain.enums.SpendLimitType;
+import com.vodafone.charging.accountservice.domain.model.Account;
+import com.vodafone.charging.accountservice.domain.model.SpendLedger;
+import com.vodafone.charging.accountservice.dto.SpendAggregate;
+import com.vodafone.charging.accountservice.dto.client.CatalogInfo;
+import com.vodafone.charging.accountservice.exception.RepositoryResourceNotFoundException;
+import com.vodafone.charging.accountservice.repository.AccountRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Matchers;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static com.vodafone.charging.accountservice.service.ERDateCalculator.END_DATE_KEY;
+import static com.vodafone.charging.accountservice.service.ERDateCalculator.START_DATE_KEY;
+import static com.vodafone.charging.data.builder.AccountDataBuilder.anAccount;
+import static com.vodafone.charging.data.builder.ProfileDataBuilder.aProfile;
+import static com.vodafone.charging.data.builder.SpendLimitDataBuilder.aSpendLimit;
+import static com.vodafone.charging.data.builder.SpendLimitDataBuilder.aSpendLimitInfo;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SpendHeadroomServiceTest {
+
+    @Mock
+    private AccountRepository accountRepository;
+
+    @Mock
+    private SpendAggregateCache spendAggregateCache;
+
+    @Mock
+    private SpendLedgerService spendLedgerService;
+
+    @Mock
+    private SpendAggregator spendAggregator;
+
+    @Mock
+    private CatalogInfo catalogInfo;
+
+    @InjectMocks
+    private SpendHeadroomService spendHeadroomService;
+
+    private final LocalDateTime startOfToday = LocalDate.now().atStartOfDay();
+    private final LocalDateTime startOfCycle = LocalDate.now().withDayOfMonth(1).atStartOfDay();
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+        final Map<SpendLimitType, Map<String, LocalDateTime>> windows = new EnumMap<>(SpendLimitType.class);
+        windows.put(SpendLimitType.ACCOUNT_DAY, ImmutableMap.of(START_DATE_KEY, startOfToday,
+                END_DATE_KEY, LocalDateTime.of(LocalDate.now(), LocalTime.MAX)));
+        windows.put(SpendLimitType.ACCOUNT_MONTH, ImmutableMap.of(START_DATE_KEY, startOfCycle,
+                END_DATE_KEY, LocalDateTime.of(LocalDate.now(), LocalTime.MAX)));
+
+        given(spendAggregator.calculateWindows(anyInt(), Matchers.<Set<SpendLimitType>>any())).willReturn(windows);
+        given(spendAggregateCache.getMaxStalenessSeconds()).willReturn(300);
+        given(catalogInfo.getDefaultSpendLimitInfo())
+                .willReturn(newArrayList(aSpendLimitInfo(60.00, SpendLimitType.ACCOUNT_MONTH)));
+    }
+
+    @Test
+    public void shouldReadHeadroomFromCachedAggregateAndLedger() {
+        final Account account = anAccount(aProfile(newArrayList(aSpendLimit(2.15, SpendLimitType.ACCOUNT_TX),
+                aSpendLimit(10.21, SpendLimitType.ACCOUNT_DAY),
+                aSpendLimit(50.00, SpendLimitType.ACCOUNT_ROLLING_30_DAYS))));
+        final Map<SpendLimitType, Long> totals = new EnumMap<>(SpendLimitType.class);
+        totals.put(SpendLimitType.ACCOUNT_DAY, 400L);
+        totals.put(SpendLimitType.ACCOUNT_ROLLING_30_DAYS, 5500L);
+        final Map<SpendLimitType, LocalDateTime> starts = new EnumMap<>(SpendLimitType.class);
+        starts.put(SpendLimitType.ACCOUNT_DAY, startOfToday);
+        starts.put(SpendLimitType.ACCOUNT_ROLLING_30_DAYS, LocalDateTime.now().minusDays(30));
+
+        given(accountRepository.findOne(account.getId())).willReturn(account);
+        given(spendAggregateCache.find(account.getId())).willReturn(SpendAggregate.ofNetTotals(totals, starts));
+        given(spendLedgerService.findLedger(account, 300)).willReturn(SpendLedger.builder()
+                .dayStart(startOfToday).dayTotal(100L).cycleStart(startOfCycle).cycleTotal(2000L).build());
+
+        final List<SpendLimitHeadroom> headroom = spendHeadroomService.getHeadroom(account.getId());
+
+        assertThat(headroom).extracting(SpendLimitHeadroom::getSpendLimitType)
+                .containsExactly(SpendLimitType.ACCOUNT_TX, SpendLimitType.ACCOUNT_DAY,
+                        SpendLimitType.ACCOUNT_MONTH, SpendLimitType.ACCOUNT_ROLLING_30_DAYS);
+        assertThat(headroom.get(0).getRemaining()).isEqualTo(Money.of(2.15));
+        assertThat(headroom.get(0).getSpent()).isNull();
+        assertThat(headroom.get(1).getSpent()).isEqualTo(Money.of(4.00));
+        assertThat(headroom.get(1).getRemaining()).isEqualTo(Money.of(6.21));
+        assertThat(headroom.get(2).getSpent()).isEqualTo(Money.of(20.00));
+        assertThat(headroom.get(2).getRemaining()).isEqualTo(Money.of(40.00));
+        assertThat(headroom.get(2).isDefaultLimit()).isTrue();
+        assertThat(headroom.get(3).getSpent()).isEqualTo(Money.of(55.00));
+        assertThat(headroom.get(3).getRemaining()).isEqualTo(Money.ZERO);
+    }
+
+    @Test
+    public void shouldNotUseCachedDayTotalOnceDayHasRolledOver() {
+        final Account account = anAccount(aProfile(newArrayList(aSpendLimit(10.21, SpendLimitType.ACCOUNT_DAY))));
+        final LocalDateTime startOfYesterday = startOfToday.minusDays(1);
+
+        given(accountRepository.findOne(account.getId())).willReturn(account);
+        given(spendAggregateCache.find(account.getId())).willReturn(SpendAggregate.ofNetTotals(
+                ImmutableMap.of(SpendLimitType.ACCOUNT_DAY, 400L),
+                ImmutableMap.of(SpendLimitType.ACCOUNT_DAY, startOfYesterday)));
+
+        final List<SpendLimitHeadroom> headroom = spendHeadroomService.getHeadroom(account.getId());
+
+        assertThat(headroom).hasSize(2);
+        assertThat(headroom.get(0).getSpendLimitType()).isEqualTo(SpendLimitType.ACCOUNT_DAY);
+        assertThat(headroom.get(0).getSpent()).isNull();
+        assertThat(headroom.get(0).getRemaining()).isNull();
+        verify(spendLedgerService).findLedger(account, 300);
+    }
+
+    @Test
+    public void shouldNotReadSpendWhenOnlyTransactionLimitsSet() {
+        final Account account = anAccount(aProfile(newArrayList(aSpendLimit(2.15, SpendLimitType.ACCOUNT_TX))));
+
+        given(catalogInfo.getDefaultSpendLimitInfo()).willReturn(newArrayList());
+        given(accountRepository.findOne(account.getId())).willReturn(account);
+
+        final List<SpendLimitHeadroom> headroom = spendHeadroomService.getHeadroom(account.getId());
+
+        assertThat(headroom).hasSize(1);
+        assertThat(headroom.get(0).getRemaining()).isEqualTo(Money.of(2.15));
+        verify(spendAggregateCache, never()).find(any(String.class));
+        verify(spendLedgerService, never()).findLedger(any(Account.class), eq(300));
+    }
+
+    @Test
+    public void shouldThrowRepositoryExceptionWhenNoAccountFound() {
+        assertThatThrownBy(() -> spendHeadroomService.getHeadroom("unknown"))
+                .isInstanceOf(RepositoryResourceNotFoundException.class)
+                .hasMessageContaining("No Account found");
+    }
+}
@@ -0,0 +1,157 @@
+package com.vodafone.charging.accountservice.service;
+
+import com.google.common.collect.Maps;
+import com.vodafone.charging.accountservice.domain.Money;
+import com.vodafone.charging.accountservice.domain.enums.SpendLimitType;
+import com.vodafone.charging.accountservice.domain.model.Account;
+import com.vodafone.charging.accountservice.domain.model.SpendLedger;
+import com.vodafone.charging.accountservice.dto.er.ERTransaction;
+import com.vodafone.charging.accountservice.repository.SpendLedgerRepository;
+import com.vodafone.charging.data.builder.SpendLimitDataProvider;
+import com.vodafone.charging.properties.PropertiesAccessor;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.temporal.TemporalAdjusters;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import static com.vodafone.charging.accountservice.service.ERDateCalculator.END_DATE_KEY;
+import static com.vodafone.charging.accountservice.service.ERDateCalculator.START_DATE_KEY;
+import static com.vodafone.charging.data.builder.AccountDataBuilder.anAccount;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SpendLedgerServiceTest {
+
+    @Mock
+    private SpendLedgerRepository repository;
+
+    @Mock
+    private ERDateCalculator erDateCalculator;
+
+    @Mock
+    private PropertiesAccessor propertiesAccessor;
+
+    @Mock
+    private TimeZone timeZone;
+
+    private SpendLedgerService spendLedgerService;
+
+    private final Map<String, LocalDateTime> todayDates = Maps.newHashMap();
+    private final Map<String, LocalDateTime> monthDates = Maps.newHashMap();
+
+    @Before
+    public void init() {
+        final LocalDate now = LocalDate.now();
+        todayDates.put(START_DATE_KEY, now.atStartOfDay());
+        todayDates.put(END_DATE_KEY, LocalDateTime.of(now, LocalTime.MAX));
+        monthDates.put(START_DATE_KEY, now.withDayOfMonth(1).atStartOfDay());
+        monthDates.put(END_DATE_KEY, LocalDateTime.of(now.with(TemporalAdjusters.lastDayOfMonth()), LocalTime.MAX));
+
+        given(timeZone.toZoneId()).willReturn(ZoneId.systemDefault());
+        given(erDateCalculator.calculateDurationSpendLimitDates(eq(SpendLimitType.ACCOUNT_DAY), anyInt())).willReturn(todayDates);
+        given(erDateCalculator.calculateDurationSpendLimitDates(eq(SpendLimitType.ACCOUNT_MONTH), anyInt())).willReturn(monthDates);
+        given(propertiesAccessor.getPropertyAsInt(anyString(), anyInt())).willReturn(300);
+
+        spendLedgerService = new SpendLedgerService(repository, new SpendAggregator(erDateCalculator),
+                erDateCalculator, propertiesAccessor, timeZone);
+    }
+
+    @Test
+    public void shouldBuildDayTotalNetOfRefunds() {
+        //purchases total 16, refunds 6.3, net payments = 9.7
+        final List<ERTransaction> transactions = SpendLimitDataProvider.anERTransactionListForCurrentDay();
+        final Account account = anAccount();
+
+        final SpendLedger ledger = spendLedgerService.fromTransactions(account, transactions);
+
+        assertThat(ledger.getAccountId()).isEqualTo(account.getId());
+        assertThat(ledger.getDayStart()).isEqualTo(todayDates.get(START_DATE_KEY));
+        assertThat(ledger.getCycleStart()).isEqualTo(monthDates.get(START_DATE_KEY));
+        assertThat(ledger.getDayTotal()).isEqualTo(970);
+        assertThat(ledger.getDayTotalAmount()).isEqualTo(Money.of(new BigDecimal("9.70")));
+        assertThat(ledger.getLastReconciled()).isNotNull();
+    }
+
+    @Test
+    public void shouldReturnCurrentLedgerWhenWindowsMatchAndRecentlyReconciled() {
+        final Account account = anAccount();
+        final SpendLedger ledger = SpendLedger.builder().accountId(account.getId())
+                .dayStart(todayDates.get(START_DATE_KEY))
+                .cycleStart(monthDates.get(START_DATE_KEY))
+                .lastReconciled(LocalDateTime.now().minusSeconds(10))
+                .build();
+        given(repository.findOne(account.getId())).willReturn(ledger);
+
+        assertThat(spendLedgerService.findCurrentLedger(account)).isSameAs(ledger);
+    }
+
+    @Test
+    public void shouldNotReturnLedgerWhenDayHasRolledOver() {
+        final Account account = anAccount();
+        final SpendLedger ledger = SpendLedger.builder().accountId(account.getId())
+                .dayStart(todayDates.get(START_DATE_KEY).minusDays(1))
+                .cycleStart(monthDates.get(START_DATE_KEY))
+                .lastReconciled(LocalDateTime.now().minusSeconds(10))
+                .build();
+        given(repository.findOne(account.getId())).willReturn(ledger);
+
+        assertThat(spendLedgerService.findCurrentLedger(account)).isNull();
+    }
+
+    @Test
+    public void shouldNotReturnLedgerWhenDueForReconciliation() {
+        final Account account = anAccount();
+        final SpendLedger ledger = SpendLedger.builder().accountId(account.getId())
+                .dayStart(todayDates.get(START_DATE_KEY))
+                .cycleStart(monthDates.get(START_DATE_KEY))
+                .lastReconciled(LocalDateTime.now().minusSeconds(301))
+                .build();
+        given(repository.findOne(account.getId())).willReturn(ledger);
+
+        assertThat(spendLedgerService.findCurrentLedger(account)).isNull();
+    }
+
+    @Test
+    public void shouldIncrementTotalsInMinorUnits() {
+        final Account account = anAccount();
+
+        spendLedgerService.recordSpend(account, Money.of(new BigDecimal("2.505")));
+
+        verify(repository).incrementTotals(account.getId(), todayDates.get(START_DATE_KEY),
+                monthDates.get(START_DATE_KEY), 251L);
+    }
+
+    @Test
+    public void shouldReconcileTotalsWithPendingOnlyAtVersionRead() {
+        final List<ERTransaction> transactions = SpendLimitDataProvider.anERTransactionListForCurrentDay();
+        final Account account = anAccount();
+        given(repository.findOne(account.getId())).willReturn(SpendLedger.builder().version(7L).build());
+        final long version = spendLedgerService.getVersion(account);
+        given(repository.replaceTotals(any(SpendLedger.class), anyLong())).willReturn(false);
+
+        final SpendLedger ledger = spendLedgerService.reconcile(account, transactions, Money.of(1.50), version);
+
+        assertThat(ledger.getDayTotal()).isEqualTo(1120L);
+        verify(repository).replaceTotals(ledger, 7L);
+        verify(repository, never()).incrementTotals(anyString(), any(LocalDateTime.class), any(LocalDateTime.class), anyLong());
+    }
+}
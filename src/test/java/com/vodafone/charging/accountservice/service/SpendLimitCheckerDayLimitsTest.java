@@ -50,7 +50,7 @@ public class SpendLimitCheckerDayLimitsTest extends SpendLimitCheckerBase {
         assertThat(result.isSuccess()).isTrue();
         assertThat(result.getFailureCauseType()).isNull();
         assertThat(result.getFailureReason()).isEmpty();
-        assertThat(result.getTotalTransactionsValue()).isEqualTo(expectedTxTotal);
+        assertThat(result.getTotalTransactionsValue().doubleValue()).isEqualTo(expectedTxTotal);
         assertThat(result.getAppliedLimitValue()).isEqualTo(spendLimits.get(1).getLimit());
     }
 
@@ -76,7 +76,7 @@ public class SpendLimitCheckerDayLimitsTest extends SpendLimitCheckerBase {
         assertThat(result.isSuccess()).isTrue();
         assertThat(result.getFailureCauseType()).isNull();
         assertThat(result.getFailureReason()).isEmpty();
-        assertThat(result.getTotalTransactionsValue()).isEqualTo(expectedTxTotal);
+        assertThat(result.getTotalTransactionsValue().doubleValue()).isEqualTo(expectedTxTotal);
         assertThat(result.getAppliedLimitValue()).isEqualTo(spendLimits.get(1).getLimit());
     }
 
@@ -103,8 +103,8 @@ public class SpendLimitCheckerDayLimitsTest extends SpendLimitCheckerBase {
         assertThat(result.getFailureCauseType()).isEqualTo(SpendLimitType.ACCOUNT_DAY);
         assertThat(result.getFailureReason()).startsWith(SpendLimitType.ACCOUNT_DAY.name());
         assertThat(result.getFailureReason()).doesNotContain("default");
-        assertThat(result.getTotalTransactionsValue()).isEqualTo(10.1);
-        assertThat(result.getAppliedLimitValue()).isEqualTo(10.0);
+        assertThat(result.getTotalTransactionsValue().doubleValue()).isEqualTo(10.1);
+        assertThat(result.getAppliedLimitValue().doubleValue()).isEqualTo(10.0);
 
     }
 
@@ -129,8 +129,8 @@ public class SpendLimitCheckerDayLimitsTest extends SpendLimitCheckerBase {
         assertThat(result.isSuccess()).isTrue();
         assertThat(result.getFailureCauseType()).isNull();
         assertThat(result.getFailureReason()).isEmpty();
-        assertThat(result.getTotalTransactionsValue()).isEqualTo(expectedTxTotal);
-        assertThat(result.getAppliedLimitValue()).isEqualTo(defaultSpendLimits.get(1).getLimit().doubleValue());
+        assertThat(result.getTotalTransactionsValue().doubleValue()).isEqualTo(expectedTxTotal);
+        assertThat(result.getAppliedLimitValue()).isEqualTo(defaultSpendLimits.get(1).getLimit());
     }
 
     @Test
@@ -155,8 +155,8 @@ public class SpendLimitCheckerDayLimitsTest extends SpendLimitCheckerBase {
         assertThat(result.getFailureCauseType()).isEqualTo(SpendLimitType.ACCOUNT_DAY);
         assertThat(result.getFailureReason()).startsWith(SpendLimitType.ACCOUNT_DAY.name());
         assertThat(result.getFailureReason()).contains("default spend limit");
-        assertThat(result.getTotalTransactionsValue()).isEqualTo(expectedTotalTx);
-        assertThat(result.getAppliedLimitValue()).isEqualTo(defaultSpendLimits.get(1).getLimit().doubleValue());
+        assertThat(result.getTotalTransactionsValue().doubleValue()).isEqualTo(expectedTotalTx);
+        assertThat(result.getAppliedLimitValue()).isEqualTo(defaultSpendLimits.get(1).getLimit());
     }
 
     @Test
@@ -179,8 +179,8 @@ public class SpendLimitCheckerDayLimitsTest extends SpendLimitCheckerBase {
         assertThat(result.isSuccess()).isTrue();
         assertThat(result.getFailureCauseType()).isNull();
         assertThat(result.getFailureReason()).isEmpty();
-        assertThat(result.getTotalTransactionsValue()).isEqualTo(expectedTxTotal);
-        assertThat(result.getAppliedLimitValue()).isEqualTo(defaultSpendLimits.get(1).getLimit().doubleValue());
+        assertThat(result.getTotalTransactionsValue().doubleValue()).isEqualTo(expectedTxTotal);
+        assertThat(result.getAppliedLimitValue()).isEqualTo(defaultSpendLimits.get(1).getLimit());
 
     }
 
@@ -208,8 +208,8 @@ public class SpendLimitCheckerDayLimitsTest extends SpendLimitCheckerBase {
         assertThat(result.isSuccess()).isTrue();
         assertThat(result.getFailureCauseType()).isNull();
         assertThat(result.getFailureReason()).isEmpty();
-        assertThat(result.getTotalTransactionsValue()).isEqualTo(expectedTxTotal);
-        assertThat(result.getAppliedLimitValue()).isEqualTo(limit.getLimit().doubleValue());
+        assertThat(result.getTotalTransactionsValue().doubleValue()).isEqualTo(expectedTxTotal);
+        assertThat(result.getAppliedLimitValue().doubleValue()).isEqualTo(limit.getLimit().doubleValue());
 
     }
 
@@ -234,8 +234,8 @@ public class SpendLimitCheckerDayLimitsTest extends SpendLimitCheckerBase {
         assertThat(result.isSuccess()).isTrue();
         assertThat(result.getFailureCauseType()).isNull();
         assertThat(result.getFailureReason()).isEmpty();
-        assertThat(result.getTotalTransactionsValue()).isEqualTo(expectedTxTotal);
-        assertThat(result.getAppliedLimitValue()).isEqualTo(0.0);
+        assertThat(result.getTotalTransactionsValue().doubleValue()).isEqualTo(expectedTxTotal);
+        assertThat(result.getAppliedLimitValue().doubleValue()).isEqualTo(0.0);
 
     }
 
@@ -260,8 +260,8 @@ public class SpendLimitCheckerDayLimitsTest extends SpendLimitCheckerBase {
         assertThat(result.isSuccess()).isTrue();
         assertThat(result.getFailureCauseType()).isNull();
         assertThat(result.getFailureReason()).isEmpty();
-        assertThat(result.getTotalTransactionsValue()).isEqualTo(expectedTxTotal);
-        assertThat(result.getAppliedLimitValue()).isEqualTo(spendLimits.get(1).getLimit().doubleValue());
+        assertThat(result.getTotalTransactionsValue().doubleValue()).isEqualTo(expectedTxTotal);
+        assertThat(result.getAppliedLimitValue()).isEqualTo(spendLimits.get(1).getLimit());
 
     }
 
@@ -284,7 +284,7 @@ public class SpendLimitCheckerDayLimitsTest extends SpendLimitCheckerBase {
         assertThat(result.isSuccess()).isTrue();
         assertThat(result.getFailureCauseType()).isNull();
         assertThat(result.getFailureReason()).isEmpty();
-        assertThat(result.getTotalTransactionsValue()).isEqualTo(expectedTxTotal);
+        assertThat(result.getTotalTransactionsValue().doubleValue()).isEqualTo(expectedTxTotal);
         assertThat(result.getAppliedLimitValue()).isEqualTo(spendLimits.get(1).getLimit());
 
     }
@@ -308,7 +308,7 @@ public class SpendLimitCheckerDayLimitsTest extends SpendLimitCheckerBase {
         assertThat(result.isSuccess()).isTrue();
         assertThat(result.getFailureCauseType()).isNull();
         assertThat(result.getFailureReason()).isEmpty();
-        assertThat(result.getTotalTransactionsValue()).isEqualTo(expectedTxTotal);
+        assertThat(result.getTotalTransactionsValue().doubleValue()).isEqualTo(expectedTxTotal);
         assertThat(result.getAppliedLimitValue()).isEqualTo(spendLimits.get(1).getLimit());
     }
 
@@ -330,8 +330,8 @@ public class SpendLimitCheckerDayLimitsTest extends SpendLimitCheckerBase {
         assertThat(result.getFailureCauseType()).isEqualTo(SpendLimitType.ACCOUNT_DAY);
         assertThat(result.getFailureReason()).startsWith(SpendLimitType.ACCOUNT_DAY.name());
         assertThat(result.getFailureReason()).doesNotContain("default");
-        assertThat(result.getTotalTransactionsValue()).isEqualTo(10.1);
-        assertThat(result.getAppliedLimitValue()).isEqualTo(10.0);
+        assertThat(result.getTotalTransactionsValue().doubleValue()).isEqualTo(10.1);
+        assertThat(result.getAppliedLimitValue().doubleValue()).isEqualTo(10.0);
     }
 
 }
@@ -12,7 +12,6 @@ import org.junit.Ignore;
 import org.junit.Test;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.time.LocalDateTime;
 import java.util.Collections;
 import java.util.List;
@@ -57,8 +56,8 @@ public class SpendLimitCheckerMonthlyLimitsTest extends SpendLimitCheckerBase {
         assertThat(result.isSuccess()).isTrue();
         assertThat(result.getFailureCauseType()).isNull();
         assertThat(result.getFailureReason()).isEmpty();
-        assertThat(result.getTotalTransactionsValue()).isEqualTo(totalTxValue);
-        assertThat(result.getAppliedLimitValue()).isEqualTo(spendLimits.get(2).getLimit().doubleValue());
+        assertThat(result.getTotalTransactionsValue().doubleValue()).isEqualTo(totalTxValue);
+        assertThat(result.getAppliedLimitValue()).isEqualTo(spendLimits.get(2).getLimit());
     }
 
     @Test
@@ -83,8 +82,8 @@ public class SpendLimitCheckerMonthlyLimitsTest extends SpendLimitCheckerBase {
         assertThat(result.isSuccess()).isTrue();
         assertThat(result.getFailureCauseType()).isNull();
         assertThat(result.getFailureReason()).isEmpty();
-        assertThat(result.getAppliedLimitValue()).isEqualTo(spendLimits.get(2).getLimit().doubleValue());
-        assertThat(result.getTotalTransactionsValue()).isEqualTo(50.0);
+        assertThat(result.getAppliedLimitValue()).isEqualTo(spendLimits.get(2).getLimit());
+        assertThat(result.getTotalTransactionsValue().doubleValue()).isEqualTo(50.0);
 
     }
 
@@ -110,8 +109,8 @@ public class SpendLimitCheckerMonthlyLimitsTest extends SpendLimitCheckerBase {
         assertThat(result.getFailureCauseType()).isEqualTo(SpendLimitType.ACCOUNT_MONTH);
         assertThat(result.getFailureReason()).startsWith(SpendLimitType.ACCOUNT_MONTH.name());
         assertThat(result.getFailureReason()).doesNotContain("default");
-        assertThat(result.getTotalTransactionsValue()).isEqualTo(totalTxValue);
-        assertThat(result.getAppliedLimitValue()).isEqualTo(spendLimits.get(2).getLimit().doubleValue());
+        assertThat(result.getTotalTransactionsValue().doubleValue()).isEqualTo(totalTxValue);
+        assertThat(result.getAppliedLimitValue()).isEqualTo(spendLimits.get(2).getLimit());
     }
 
     @Test
@@ -136,8 +135,8 @@ public class SpendLimitCheckerMonthlyLimitsTest extends SpendLimitCheckerBase {
         assertThat(result.isSuccess()).isFalse();
         assertThat(result.getFailureCauseType()).isEqualTo(SpendLimitType.ACCOUNT_MONTH);
         assertThat(result.getFailureReason()).startsWith(SpendLimitType.ACCOUNT_MONTH.name());
-        assertThat(result.getAppliedLimitValue()).isEqualTo(spendLimits.get(2).getLimit().doubleValue());
-        assertThat(result.getTotalTransactionsValue()).isEqualTo(50.1);
+        assertThat(result.getAppliedLimitValue()).isEqualTo(spendLimits.get(2).getLimit());
+        assertThat(result.getTotalTransactionsValue().doubleValue()).isEqualTo(50.1);
 
     }
 
@@ -161,8 +160,8 @@ public class SpendLimitCheckerMonthlyLimitsTest extends SpendLimitCheckerBase {
         assertThat(result.isSuccess()).isTrue();
         assertThat(result.getFailureCauseType()).isNull();
         assertThat(result.getFailureReason()).isEmpty();
-        assertThat(result.getTotalTransactionsValue()).isEqualTo(totalTxValue);
-        assertThat(result.getAppliedLimitValue()).isEqualTo(spendLimits.get(2).getLimit().doubleValue());
+        assertThat(result.getTotalTransactionsValue().doubleValue()).isEqualTo(totalTxValue);
+        assertThat(result.getAppliedLimitValue()).isEqualTo(spendLimits.get(2).getLimit());
     }
 
     @Test
@@ -187,8 +186,8 @@ public class SpendLimitCheckerMonthlyLimitsTest extends SpendLimitCheckerBase {
         assertThat(result.isSuccess()).isTrue();
         assertThat(result.getFailureCauseType()).isNull();
         assertThat(result.getFailureReason()).isEmpty();
-        assertThat(result.getAppliedLimitValue()).isEqualTo(spendLimits.get(2).getLimit().doubleValue());
-        assertThat(result.getTotalTransactionsValue()).isEqualTo(49.9);
+        assertThat(result.getAppliedLimitValue()).isEqualTo(spendLimits.get(2).getLimit());
+        assertThat(result.getTotalTransactionsValue().doubleValue()).isEqualTo(49.9);
 
     }
 
@@ -212,8 +211,8 @@ public class SpendLimitCheckerMonthlyLimitsTest extends SpendLimitCheckerBase {
         assertThat(result.isSuccess()).isFalse();
         assertThat(result.getFailureCauseType()).isEqualTo(SpendLimitType.ACCOUNT_MONTH);
         assertThat(result.getFailureReason()).startsWith(SpendLimitType.ACCOUNT_MONTH.name());
-        assertThat(result.getAppliedLimitValue()).isEqualTo(defaultSpendLimits.get(2).getLimit().doubleValue());
-        assertThat(result.getTotalTransactionsValue()).isEqualTo(totalTxValue);
+        assertThat(result.getAppliedLimitValue()).isEqualTo(defaultSpendLimits.get(2).getLimit());
+        assertThat(result.getTotalTransactionsValue().doubleValue()).isEqualTo(totalTxValue);
     }
 
     @Test
@@ -239,7 +238,7 @@ public class SpendLimitCheckerMonthlyLimitsTest extends SpendLimitCheckerBase {
         assertThat(result.getFailureCauseType()).isEqualTo(SpendLimitType.ACCOUNT_MONTH);
         assertThat(result.getFailureReason()).startsWith(SpendLimitType.ACCOUNT_MONTH.name());
         assertThat(result.getAppliedLimitValue()).isEqualTo(defaultSpendLimits.get(2).getLimit());
-        assertThat(result.getTotalTransactionsValue()).isEqualTo(expectedTxValue);
+        assertThat(result.getTotalTransactionsValue().doubleValue()).isEqualTo(expectedTxValue);
     }
 
     @Test
@@ -262,8 +261,8 @@ public class SpendLimitCheckerMonthlyLimitsTest extends SpendLimitCheckerBase {
         assertThat(result.isSuccess()).isTrue();
         assertThat(result.getFailureCauseType()).isNull();
         assertThat(result.getFailureReason()).isEmpty();
-        assertThat(result.getAppliedLimitValue()).isEqualTo(defaultSpendLimits.get(2).getLimit().doubleValue());
-        assertThat(result.getTotalTransactionsValue()).isEqualTo(totalTxValue);
+        assertThat(result.getAppliedLimitValue()).isEqualTo(defaultSpendLimits.get(2).getLimit());
+        assertThat(result.getTotalTransactionsValue().doubleValue()).isEqualTo(totalTxValue);
     }
 
     @Test
@@ -287,8 +286,8 @@ public class SpendLimitCheckerMonthlyLimitsTest extends SpendLimitCheckerBase {
         assertThat(result.isSuccess()).isTrue();
         assertThat(result.getFailureCauseType()).isNull();
         assertThat(result.getFailureReason()).isEmpty();
-        assertThat(result.getAppliedLimitValue()).isEqualTo(defaultSpendLimits.get(2).getLimit().doubleValue());
-        assertThat(result.getTotalTransactionsValue()).isEqualTo(totalTxValue);
+        assertThat(result.getAppliedLimitValue()).isEqualTo(defaultSpendLimits.get(2).getLimit());
+        assertThat(result.getTotalTransactionsValue().doubleValue()).isEqualTo(totalTxValue);
     }
 
     @Test
@@ -311,8 +310,8 @@ public class SpendLimitCheckerMonthlyLimitsTest extends SpendLimitCheckerBase {
         assertThat(result.isSuccess()).isTrue();
         assertThat(result.getFailureCauseType()).isNull();
         assertThat(result.getFailureReason()).isEmpty();
-        assertThat(result.getAppliedLimitValue()).isEqualTo(defaultSpendLimits.get(2).getLimit().doubleValue());
-        assertThat(result.getTotalTransactionsValue()).isEqualTo(totalTxValue);
+        assertThat(result.getAppliedLimitValue()).isEqualTo(defaultSpendLimits.get(2).getLimit());
+        assertThat(result.getTotalTransactionsValue().doubleValue()).isEqualTo(totalTxValue);
     }
 
     @Test
@@ -336,8 +335,8 @@ public class SpendLimitCheckerMonthlyLimitsTest extends SpendLimitCheckerBase {
         assertThat(result.isSuccess()).isTrue();
         assertThat(result.getFailureCauseType()).isNull();
         assertThat(result.getFailureReason()).isEmpty();
-        assertThat(result.getAppliedLimitValue()).isEqualTo(defaultSpendLimits.get(2).getLimit().doubleValue());
-        assertThat(result.getTotalTransactionsValue()).isEqualTo(totalTxValue);
+        assertThat(result.getAppliedLimitValue()).isEqualTo(defaultSpendLimits.get(2).getLimit());
+        assertThat(result.getTotalTransactionsValue().doubleValue()).isEqualTo(totalTxValue);
     }
 
     @Test
@@ -360,8 +359,8 @@ public class SpendLimitCheckerMonthlyLimitsTest extends SpendLimitCheckerBase {
         assertThat(result.isSuccess()).isTrue();
         assertThat(result.getFailureCauseType()).isNull();
         assertThat(result.getFailureReason()).isEmpty();
-        assertThat(result.getTotalTransactionsValue()).isEqualTo(totalTxValue);
-        assertThat(result.getAppliedLimitValue()).isEqualTo(spendLimits.get(2).getLimit().doubleValue());
+        assertThat(result.getTotalTransactionsValue().doubleValue()).isEqualTo(totalTxValue);
+        assertThat(result.getAppliedLimitValue()).isEqualTo(spendLimits.get(2).getLimit());
 
     }
 
@@ -386,8 +385,8 @@ public class SpendLimitCheckerMonthlyLimitsTest extends SpendLimitCheckerBase {
         assertThat(result.isSuccess()).isTrue();
         assertThat(result.getFailureCauseType()).isNull();
         assertThat(result.getFailureReason()).isEmpty();
-        assertThat(result.getAppliedLimitValue()).isEqualTo(spendLimits.get(2).getLimit().doubleValue());
-        assertThat(result.getTotalTransactionsValue()).isEqualTo(50.0);
+        assertThat(result.getAppliedLimitValue()).isEqualTo(spendLimits.get(2).getLimit());
+        assertThat(result.getTotalTransactionsValue().doubleValue()).isEqualTo(50.0);
 
     }
 
@@ -411,8 +410,8 @@ public class SpendLimitCheckerMonthlyLimitsTest extends SpendLimitCheckerBase {
         assertThat(result.isSuccess()).isTrue();
         assertThat(result.getFailureCauseType()).isNull();
         assertThat(result.getFailureReason()).isEmpty();
-        assertThat(result.getTotalTransactionsValue()).isEqualTo(totalTxValue);
-        assertThat(result.getAppliedLimitValue()).isEqualTo(spendLimits.get(2).getLimit().doubleValue());
+        assertThat(result.getTotalTransactionsValue().doubleValue()).isEqualTo(totalTxValue);
+        assertThat(result.getAppliedLimitValue()).isEqualTo(spendLimits.get(2).getLimit());
     }
 
     @Test
@@ -436,8 +435,8 @@ public class SpendLimitCheckerMonthlyLimitsTest extends SpendLimitCheckerBase {
         assertThat(result.isSuccess()).isTrue();
         assertThat(result.getFailureCauseType()).isNull();
         assertThat(result.getFailureReason()).isEmpty();
-        assertThat(result.getAppliedLimitValue()).isEqualTo(spendLimits.get(2).getLimit().doubleValue());
-        assertThat(result.getTotalTransactionsValue()).isEqualTo(49.9);
+        assertThat(result.getAppliedLimitValue()).isEqualTo(spendLimits.get(2).getLimit());
+        assertThat(result.getTotalTransactionsValue().doubleValue()).isEqualTo(49.9);
     }
 
     @Test
@@ -463,8 +462,8 @@ public class SpendLimitCheckerMonthlyLimitsTest extends SpendLimitCheckerBase {
         assertThat(result.getFailureCauseType()).isEqualTo(SpendLimitType.ACCOUNT_MONTH);
         assertThat(result.getFailureReason()).startsWith(SpendLimitType.ACCOUNT_MONTH.name());
         assertThat(result.getFailureReason()).doesNotContain("default");
-        assertThat(result.getTotalTransactionsValue()).isEqualTo(totalTxValue);
-        assertThat(result.getAppliedLimitValue()).isEqualTo(spendLimits.get(2).getLimit().doubleValue());
+        assertThat(result.getTotalTransactionsValue().doubleValue()).isEqualTo(totalTxValue);
+        assertThat(result.getAppliedLimitValue()).isEqualTo(spendLimits.get(2).getLimit());
 
     }
 
@@ -490,8 +489,8 @@ public class SpendLimitCheckerMonthlyLimitsTest extends SpendLimitCheckerBase {
         assertThat(result.isSuccess()).isFalse();
         assertThat(result.getFailureCauseType()).isEqualTo(SpendLimitType.ACCOUNT_MONTH);
         assertThat(result.getFailureReason()).startsWith(SpendLimitType.ACCOUNT_MONTH.name());
-        assertThat(result.getAppliedLimitValue()).isEqualTo(spendLimits.get(2).getLimit().doubleValue());
-        assertThat(result.getTotalTransactionsValue()).isEqualTo(50.1);
+        assertThat(result.getAppliedLimitValue()).isEqualTo(spendLimits.get(2).getLimit());
+        assertThat(result.getTotalTransactionsValue().doubleValue()).isEqualTo(50.1);
     }
 
     @Test
@@ -515,8 +514,8 @@ public class SpendLimitCheckerMonthlyLimitsTest extends SpendLimitCheckerBase {
         assertThat(result.isSuccess()).isTrue();
         assertThat(result.getFailureCauseType()).isNull();
         assertThat(result.getFailureReason()).isEmpty();
-        assertThat(result.getAppliedLimitValue()).isEqualTo(0.0);
-        assertThat(result.getTotalTransactionsValue()).isEqualTo(totalTxValue);
+        assertThat(result.getAppliedLimitValue().doubleValue()).isEqualTo(0.0);
+        assertThat(result.getTotalTransactionsValue().doubleValue()).isEqualTo(totalTxValue);
     }
 
 
@@ -536,8 +535,8 @@ public class SpendLimitCheckerMonthlyLimitsTest extends SpendLimitCheckerBase {
         assertThat(result.isSuccess()).isTrue();
         assertThat(result.getFailureCauseType()).isNull();
         assertThat(result.getFailureReason()).isEmpty();
-        assertThat(result.getAppliedLimitValue()).isEqualTo(spendLimits.get(2).getLimit().doubleValue());
-        assertThat(result.getTotalTransactionsValue()).isEqualTo(paymentContext.getTransactionInfo().getAmount().doubleValue());
+        assertThat(result.getAppliedLimitValue()).isEqualTo(spendLimits.get(2).getLimit());
+        assertThat(result.getTotalTransactionsValue()).isEqualTo(paymentContext.getTransactionInfo().getAmount());
     }
 
     @Test
@@ -576,10 +575,10 @@ public class SpendLimitCheckerMonthlyLimitsTest extends SpendLimitCheckerBase {
 
         assertThat(erTransactionPredicate).isNotNull();
 
-        final BigDecimal totalPayments = spendLimitChecker.mapReducePayments(transactions, erTransactionPredicate);
+        final Money totalPayments = spendLimitChecker.mapReducePayments(transactions, erTransactionPredicate);
 
         assertThat(totalPayments).isNotNull();
-        assertThat(totalPayments.setScale(2, RoundingMode.HALF_UP).doubleValue()).isEqualTo(0.20);
+        assertThat(totalPayments).isEqualTo(Money.of(0.20));
 
     }
 
@@ -602,10 +601,10 @@ public class SpendLimitCheckerMonthlyLimitsTest extends SpendLimitCheckerBase {
 
         assertThat(erTransactionPredicate).isNotNull();
 
-        final BigDecimal totalPayments = spendLimitChecker.mapReducePayments(transactions, erTransactionPredicate);
+        final Money totalPayments = spendLimitChecker.mapReducePayments(transactions, erTransactionPredicate);
 
         assertThat(totalPayments).isNotNull();
-        assertThat(totalPayments.setScale(2, RoundingMode.HALF_UP).doubleValue()).isEqualTo(0.30);
+        assertThat(totalPayments).isEqualTo(Money.of(0.30));
 
     }
 
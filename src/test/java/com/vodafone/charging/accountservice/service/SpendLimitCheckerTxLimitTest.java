@@ -2,6 +2,7 @@ package com.vodafone.charging.accountservice.service;
 
 import com.google.common.collect.ImmutableList;
 import com.vodafone.charging.accountservice.TestBeanConfiguration;
+import com.vodafone.charging.accountservice.domain.Money;
 import com.vodafone.charging.accountservice.domain.enums.SpendLimitType;
 import com.vodafone.charging.accountservice.dto.SpendLimitResult;
 import com.vodafone.charging.accountservice.dto.client.TransactionInfo;
@@ -27,7 +28,7 @@ public class SpendLimitCheckerTxLimitTest extends SpendLimitCheckerBase {
     public void shouldNotBreachWhenTxLimitDefinedAndCurrentTxIsEqualToTxLimit() {
         //given
         final List<TransactionInfo> transactionInfo =
-                newArrayList(TransactionInfo.builder().amount(BigDecimal.valueOf(2.0))
+                newArrayList(TransactionInfo.builder().amount(Money.of(BigDecimal.valueOf(2.0)))
                         .build());
 
         //when
@@ -41,7 +42,7 @@ public class SpendLimitCheckerTxLimitTest extends SpendLimitCheckerBase {
         assertThat(result.getFailureCauseType()).isNull();
         assertThat(result.getFailureReason()).isEmpty();
         assertThat(result.getAppliedLimitValue()).isEqualTo(spendLimits.get(0).getLimit());
-        assertThat(result.getTotalTransactionsValue()).isEqualTo(transactionInfo.get(0).getAmount().doubleValue());
+        assertThat(result.getTotalTransactionsValue()).isEqualTo(transactionInfo.get(0).getAmount());
 
     }
 
@@ -49,7 +50,7 @@ public class SpendLimitCheckerTxLimitTest extends SpendLimitCheckerBase {
     public void shouldBreachWhenTxLimitDefinedAndCurrentTxIsOverTxLimit() {
         //given
         final List<TransactionInfo> transactionInfo =
-                newArrayList(TransactionInfo.builder().amount(BigDecimal.valueOf(2.1))
+                newArrayList(TransactionInfo.builder().amount(Money.of(BigDecimal.valueOf(2.1)))
                         .build());
 
         //when
@@ -64,7 +65,7 @@ public class SpendLimitCheckerTxLimitTest extends SpendLimitCheckerBase {
         assertThat(result.getFailureReason()).startsWith(SpendLimitType.ACCOUNT_TX.name());
         assertThat(result.getFailureReason()).contains("spend limit breached");
         assertThat(result.getAppliedLimitValue()).isEqualTo(spendLimits.get(0).getLimit());
-        assertThat(result.getTotalTransactionsValue()).isEqualTo(transactionInfo.get(0).getAmount().doubleValue());
+        assertThat(result.getTotalTransactionsValue()).isEqualTo(transactionInfo.get(0).getAmount());
     }
 
     @Test
@@ -72,7 +73,7 @@ public class SpendLimitCheckerTxLimitTest extends SpendLimitCheckerBase {
 
         //given
         final List<TransactionInfo> transactionInfo =
-                newArrayList(TransactionInfo.builder().amount(BigDecimal.valueOf(1.9))
+                newArrayList(TransactionInfo.builder().amount(Money.of(BigDecimal.valueOf(1.9)))
                         .build());
 
         //when
@@ -86,14 +87,14 @@ public class SpendLimitCheckerTxLimitTest extends SpendLimitCheckerBase {
         assertThat(result.getFailureCauseType()).isNull();
         assertThat(result.getFailureReason()).isEmpty();
         assertThat(result.getAppliedLimitValue()).isEqualTo(spendLimits.get(0).getLimit());
-        assertThat(result.getTotalTransactionsValue()).isEqualTo(transactionInfo.get(0).getAmount().doubleValue());
+        assertThat(result.getTotalTransactionsValue()).isEqualTo(transactionInfo.get(0).getAmount());
     }
 
     @Test
     public void shouldNotBreachDefaultWhenNoTxLimitDefinedAndAccountTxEqualToTxLimit() {
         //given
         final List<TransactionInfo> transactionInfo =
-                newArrayList(TransactionInfo.builder().amount(BigDecimal.valueOf(5.0))
+                newArrayList(TransactionInfo.builder().amount(Money.of(BigDecimal.valueOf(5.0)))
                         .build());
 
         //when
@@ -107,7 +108,7 @@ public class SpendLimitCheckerTxLimitTest extends SpendLimitCheckerBase {
         assertThat(result.getFailureCauseType()).isNull();
         assertThat(result.getFailureReason()).isEmpty();
         assertThat(result.getAppliedLimitValue()).isEqualTo(defaultSpendLimits.get(0).getLimit());
-        assertThat(result.getTotalTransactionsValue()).isEqualTo(transactionInfo.get(0).getAmount().doubleValue());
+        assertThat(result.getTotalTransactionsValue()).isEqualTo(transactionInfo.get(0).getAmount());
     }
 
 
@@ -115,7 +116,7 @@ public class SpendLimitCheckerTxLimitTest extends SpendLimitCheckerBase {
     public void shouldNotBreachDefaultWhenNoTxLimitDefinedAndAccountTxUnderTxLimit() {
         //given
         final List<TransactionInfo> transactionInfo =
-                newArrayList(TransactionInfo.builder().amount(BigDecimal.valueOf(3.1))
+                newArrayList(TransactionInfo.builder().amount(Money.of(BigDecimal.valueOf(3.1)))
                         .build());
 
         //when
@@ -129,7 +130,7 @@ public class SpendLimitCheckerTxLimitTest extends SpendLimitCheckerBase {
         assertThat(result.getFailureCauseType()).isNull();
         assertThat(result.getFailureReason()).isEmpty();
         assertThat(result.getAppliedLimitValue()).isEqualTo(defaultSpendLimits.get(0).getLimit());
-        assertThat(result.getTotalTransactionsValue()).isEqualTo(transactionInfo.get(0).getAmount().doubleValue());
+        assertThat(result.getTotalTransactionsValue()).isEqualTo(transactionInfo.get(0).getAmount());
 
     }
 
@@ -137,7 +138,7 @@ public class SpendLimitCheckerTxLimitTest extends SpendLimitCheckerBase {
     public void shouldBreachDefaultWhenNoTxLimitDefinedAndTxIsOverTxLimit() {
         //given
         final List<TransactionInfo> transactionInfo =
-                newArrayList(TransactionInfo.builder().amount(BigDecimal.valueOf(5.1))
+                newArrayList(TransactionInfo.builder().amount(Money.of(BigDecimal.valueOf(5.1)))
                         .build());
 
         //when
@@ -152,7 +153,7 @@ public class SpendLimitCheckerTxLimitTest extends SpendLimitCheckerBase {
         assertThat(result.getFailureReason()).startsWith(SpendLimitType.ACCOUNT_TX.name());
         assertThat(result.getFailureReason()).contains(" default spend limit breached");
         assertThat(result.getAppliedLimitValue()).isEqualTo(defaultSpendLimits.get(0).getLimit());
-        assertThat(result.getTotalTransactionsValue()).isEqualTo(transactionInfo.get(0).getAmount().doubleValue());
+        assertThat(result.getTotalTransactionsValue()).isEqualTo(transactionInfo.get(0).getAmount());
 
     }
 
@@ -161,7 +162,7 @@ public class SpendLimitCheckerTxLimitTest extends SpendLimitCheckerBase {
 
         //given
         final List<TransactionInfo> transactionInfo =
-                newArrayList(TransactionInfo.builder().amount(BigDecimal.valueOf(2.0))
+                newArrayList(TransactionInfo.builder().amount(Money.of(BigDecimal.valueOf(2.0)))
                         .build());
 
         //when
@@ -175,7 +176,7 @@ public class SpendLimitCheckerTxLimitTest extends SpendLimitCheckerBase {
         assertThat(result.getFailureCauseType()).isNull();
         assertThat(result.getFailureReason()).isEmpty();
         assertThat(result.getAppliedLimitValue()).isEqualTo(spendLimits.get(0).getLimit());
-        assertThat(result.getTotalTransactionsValue()).isEqualTo(transactionInfo.get(0).getAmount().doubleValue());
+        assertThat(result.getTotalTransactionsValue()).isEqualTo(transactionInfo.get(0).getAmount());
 
     }
 
@@ -183,7 +184,7 @@ public class SpendLimitCheckerTxLimitTest extends SpendLimitCheckerBase {
     public void shouldNotBreachWhenSpendLimitDefinedNoDefaultLimitAndTxIsUnderTxLimit() {
         //given
         final List<TransactionInfo> transactionInfo =
-                newArrayList(TransactionInfo.builder().amount(BigDecimal.valueOf(1.9))
+                newArrayList(TransactionInfo.builder().amount(Money.of(BigDecimal.valueOf(1.9)))
                         .build());
 
         //when
@@ -197,14 +198,14 @@ public class SpendLimitCheckerTxLimitTest extends SpendLimitCheckerBase {
         assertThat(result.getFailureCauseType()).isNull();
         assertThat(result.getFailureReason()).isEmpty();
         assertThat(result.getAppliedLimitValue()).isEqualTo(spendLimits.get(0).getLimit());
-        assertThat(result.getTotalTransactionsValue()).isEqualTo(transactionInfo.get(0).getAmount().doubleValue());
+        assertThat(result.getTotalTransactionsValue()).isEqualTo(transactionInfo.get(0).getAmount());
     }
 
     @Test
     public void shouldBreachWhenSpendLimitDefinedNoDefaultLimitAndTxIsOverToTxLimit() {
         //given
         final List<TransactionInfo> transactionInfo =
-                newArrayList(TransactionInfo.builder().amount(BigDecimal.valueOf(2.1))
+                newArrayList(TransactionInfo.builder().amount(Money.of(BigDecimal.valueOf(2.1)))
                         .build());
 
         //when
@@ -218,13 +219,13 @@ public class SpendLimitCheckerTxLimitTest extends SpendLimitCheckerBase {
         assertThat(result.getFailureCauseType()).isEqualTo(SpendLimitType.ACCOUNT_TX);
         assertThat(result.getFailureReason()).isEqualTo(SpendLimitType.ACCOUNT_TX + " spend limit breached");
         assertThat(result.getAppliedLimitValue()).isEqualTo(spendLimits.get(0).getLimit());
-        assertThat(result.getTotalTransactionsValue()).isEqualTo(transactionInfo.get(0).getAmount().doubleValue());
+        assertThat(result.getTotalTransactionsValue()).isEqualTo(transactionInfo.get(0).getAmount());
     }
 
     @Test
     public void shouldNotBreachWhenUnderTxLimitButOverDefaultLimit() {
         final List<TransactionInfo> transactionInfo =
-                newArrayList(TransactionInfo.builder().amount(BigDecimal.valueOf(2.0))
+                newArrayList(TransactionInfo.builder().amount(Money.of(BigDecimal.valueOf(2.0)))
                         .build());
 
         final SpendLimitResult result =
@@ -235,7 +236,7 @@ public class SpendLimitCheckerTxLimitTest extends SpendLimitCheckerBase {
         assertThat(result.isSuccess()).isTrue();
         assertThat(result.getAppliedLimitValue()).isEqualTo(spendLimits.get(0).getLimit());
         assertThat(result.getAppliedLimitValue()).isNotEqualTo(defaultSpendLimits.get(0).getLimit());
-        assertThat(result.getTotalTransactionsValue()).isEqualTo(transactionInfo.get(0).getAmount().doubleValue());
+        assertThat(result.getTotalTransactionsValue()).isEqualTo(transactionInfo.get(0).getAmount());
     }
 
     @Test
@@ -243,7 +244,7 @@ public class SpendLimitCheckerTxLimitTest extends SpendLimitCheckerBase {
 
         //given
         final List<TransactionInfo> transactionInfo =
-                newArrayList(TransactionInfo.builder().amount(BigDecimal.valueOf(5000))
+                newArrayList(TransactionInfo.builder().amount(Money.of(BigDecimal.valueOf(5000)))
                         .build());
 
         //when
@@ -255,8 +256,8 @@ public class SpendLimitCheckerTxLimitTest extends SpendLimitCheckerBase {
         assertThat(result.isSuccess()).isTrue();
         assertThat(result.getFailureCauseType()).isNull();
         assertThat(result.getFailureReason()).isEmpty();
-        assertThat(result.getAppliedLimitValue()).isEqualTo(0.0);
-        assertThat(result.getTotalTransactionsValue()).isEqualTo(transactionInfo.get(0).getAmount().doubleValue());
+        assertThat(result.getAppliedLimitValue().doubleValue()).isEqualTo(0.0);
+        assertThat(result.getTotalTransactionsValue()).isEqualTo(transactionInfo.get(0).getAmount());
     }
 
 }
@@ -1,40 +1,57 @@
 package com.vodafone.charging.accountservice.service;
 
+import com.google.common.collect.ImmutableMap;
 import com.vodafone.charging.accountservice.client.ERService;
 import com.vodafone.charging.accountservice.domain.ApprovalCriteria;
+import com.vodafone.charging.accountservice.domain.Money;
 import com.vodafone.charging.accountservice.domain.PaymentApproval;
+import com.vodafone.charging.accountservice.domain.PaymentApprovalRequest;
 import com.vodafone.charging.accountservice.domain.PaymentContext;
 import com.vodafone.charging.accountservice.domain.SpendLimitInfo;
 import com.vodafone.charging.accountservice.domain.enums.PaymentApprovalRule;
 import com.vodafone.charging.accountservice.domain.enums.SpendLimitType;
 import com.vodafone.charging.accountservice.domain.model.Account;
 import com.vodafone.charging.accountservice.domain.model.Profile;
+import com.vodafone.charging.accountservice.domain.model.SpendLedger;
 import com.vodafone.charging.accountservice.domain.model.SpendLimit;
+import com.vodafone.charging.accountservice.dto.CompiledSpendLimits;
+import com.vodafone.charging.accountservice.dto.SpendAggregate;
 import com.vodafone.charging.accountservice.dto.SpendLimitResult;
-import com.vodafone.charging.accountservice.dto.client.TransactionInfo;
 import com.vodafone.charging.accountservice.dto.er.ERTransaction;
 import com.vodafone.charging.accountservice.dto.er.ERTransactionCriteria;
 import com.vodafone.charging.accountservice.exception.RepositoryResourceNotFoundException;
 import com.vodafone.charging.accountservice.repository.AccountRepository;
 import com.vodafone.charging.data.ERTransactionDataBuilder;
+import com.vodafone.charging.properties.PropertiesAccessor;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.*;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.dao.DataAccessResourceFailureException;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Random;
+import java.util.function.Predicate;
 
 import static com.google.common.collect.Lists.newArrayList;
 import static com.vodafone.charging.accountservice.dto.er.ERTransactionType.*;
+import static com.vodafone.charging.accountservice.service.ERDateCalculator.END_DATE_KEY;
+import static com.vodafone.charging.accountservice.service.ERDateCalculator.START_DATE_KEY;
 import static com.vodafone.charging.data.builder.AccountDataBuilder.anAccount;
 import static com.vodafone.charging.data.builder.AccountDataBuilder.anAccountWithEmptyProfile;
 import static com.vodafone.charging.data.builder.PaymentContextDataBuilder.aPaymentContext;
 import static com.vodafone.charging.data.builder.ProfileDataBuilder.aProfile;
 import static com.vodafone.charging.data.builder.ProfileDataBuilder.aProfileWithoutSpendLimits;
+import static com.vodafone.charging.data.builder.SpendLimitDataBuilder.aSpendLimit;
 import static com.vodafone.charging.data.builder.SpendLimitDataBuilder.aSpendLimitInfoList;
 import static com.vodafone.charging.data.builder.SpendLimitDataBuilder.aStandardSpendLimitList;
 import static com.vodafone.charging.data.builder.SpendLimitResultDataBuilder.aSpendLimitResult;
@@ -63,12 +80,33 @@ public class SpendLimitServiceTest {
     @Mock
     private ERDateCalculator erDateCalculator;
 
+    @Mock
+    private SpendLedgerService spendLedgerService;
+
+    @Mock
+    private SpendAggregator spendAggregator;
+
+    @Mock
+    private SpendAggregateCache spendAggregateCache;
+
+    @Mock
+    private PropertiesAccessor propertiesAccessor;
+
+    @Spy
+    private SpendReservationTable spendReservationTable = new SpendReservationTable(aDefaultPropertiesAccessor());
+
+    @Spy
+    private ERTransactionCache erTransactionCache =
+            new ERTransactionCache(mock(PropertiesAccessor.class), mock(ERDateCalculator.class));
+
     @InjectMocks
     private SpendLimitService spendLimitService;
 
     @Before
     public void init() {
         MockitoAnnotations.initMocks(this);
+        given(spendLedgerService.reconcile(any(Account.class), anyListOf(ERTransaction.class), any(Money.class), anyLong()))
+                .willReturn(SpendLedger.builder().build());
     }
 
     @Test
@@ -144,16 +182,14 @@ public class SpendLimitServiceTest {
         final SpendLimitResult monthLimitResult = aSpendLimitResult(true, reasonMessage, SpendLimitType.ACCOUNT_MONTH);
 
         given(erService.getTransactions(eq(paymentContext), any(ERTransactionCriteria.class))).willReturn(newArrayList());
-        given(spendLimitChecker.checkTransactionLimit(eq(spendLimits), eq(defaultSpendLimits),
-                anyListOf(TransactionInfo.class), eq(SpendLimitType.ACCOUNT_TX)))
+        given(spendLimitChecker.checkTransactionLimit(any(CompiledSpendLimits.class),
+                any(Money.class), eq(SpendLimitType.ACCOUNT_TX)))
                 .willReturn(txLimitResult);
-        given(spendLimitChecker.checkDurationLimit(eq(paymentContext), eq(spendLimits),
-                anyListOf(ERTransaction.class),
-                eq(SpendLimitType.ACCOUNT_DAY), anyInt()))
+        given(spendLimitChecker.checkDurationLimit(any(CompiledSpendLimits.class),
+                any(Money.class), any(Money.class), eq(SpendLimitType.ACCOUNT_DAY)))
                 .willReturn(dayLimitResult);
-        given(spendLimitChecker.checkDurationLimit(eq(paymentContext), eq(spendLimits),
-                anyListOf(ERTransaction.class),
-                eq(SpendLimitType.ACCOUNT_MONTH), anyInt()))
+        given(spendLimitChecker.checkDurationLimit(any(CompiledSpendLimits.class),
+                any(Money.class), any(Money.class), eq(SpendLimitType.ACCOUNT_MONTH)))
                 .willReturn(monthLimitResult);
 
         final PaymentApproval approval =
@@ -165,18 +201,12 @@ public class SpendLimitServiceTest {
         InOrder inOrder = inOrder(erService, spendLimitChecker);
 
         inOrder.verify(erService).getTransactions(any(PaymentContext.class), any(ERTransactionCriteria.class));
-        inOrder.verify(spendLimitChecker).checkTransactionLimit(anyListOf(SpendLimit.class),
-                anyListOf(SpendLimit.class),
-                anyListOf(TransactionInfo.class),
-                any(SpendLimitType.class));
-        inOrder.verify(spendLimitChecker).checkDurationLimit(any(PaymentContext.class), anyListOf(SpendLimit.class),
-                anyListOf(ERTransaction.class),
-                eq(SpendLimitType.ACCOUNT_DAY),
-                anyInt());
-        inOrder.verify(spendLimitChecker).checkDurationLimit(any(PaymentContext.class), anyListOf(SpendLimit.class),
-                anyListOf(ERTransaction.class),
-                eq(SpendLimitType.ACCOUNT_MONTH),
-                anyInt());
+        inOrder.verify(spendLimitChecker).checkTransactionLimit(any(CompiledSpendLimits.class),
+                any(Money.class), any(SpendLimitType.class));
+        inOrder.verify(spendLimitChecker).checkDurationLimit(any(CompiledSpendLimits.class),
+                any(Money.class), any(Money.class), eq(SpendLimitType.ACCOUNT_DAY));
+        inOrder.verify(spendLimitChecker).checkDurationLimit(any(CompiledSpendLimits.class),
+                any(Money.class), any(Money.class), eq(SpendLimitType.ACCOUNT_MONTH));
         verifyNoMoreInteractions(erService, spendLimitChecker);
     }
 
@@ -193,8 +223,8 @@ public class SpendLimitServiceTest {
 
 
         given(erService.getTransactions(eq(paymentContext), any(ERTransactionCriteria.class))).willReturn(newArrayList());
-        given(spendLimitChecker.checkTransactionLimit(eq(spendLimits), eq(defaultSpendLimits),
-                anyListOf(TransactionInfo.class), eq(SpendLimitType.ACCOUNT_TX)))
+        given(spendLimitChecker.checkTransactionLimit(any(CompiledSpendLimits.class),
+                any(Money.class), eq(SpendLimitType.ACCOUNT_TX)))
                 .willReturn(txLimitResult);
 
         final PaymentApproval approval =
@@ -203,12 +233,235 @@ public class SpendLimitServiceTest {
         assertThat(approval.isSuccess()).isFalse();
         assertThat(approval.getDescription()).contains(reasonMessage);
 
-        verify(erService).getTransactions(any(PaymentContext.class), any(ERTransactionCriteria.class));
-        verify(spendLimitChecker).checkTransactionLimit(anyListOf(SpendLimit.class),
-                anyListOf(SpendLimit.class),
-                anyListOf(TransactionInfo.class),
-                any(SpendLimitType.class));
+        verify(spendLimitChecker).checkTransactionLimit(any(CompiledSpendLimits.class),
+                any(Money.class), any(SpendLimitType.class));
         verifyNoMoreInteractions(spendLimitChecker);
+        //transaction limits are checked before any spend history is fetched
+        verifyZeroInteractions(erService, spendLedgerService);
+    }
+
+    @Test
+    public void shouldNotFetchSpendHistoryWhenOnlyTransactionLimitsSet() {
+        final Account account = anAccount();
+        final List<SpendLimit> spendLimits = newArrayList(aSpendLimit(2.15, SpendLimitType.ACCOUNT_TX));
+        final List<SpendLimit> defaultSpendLimits = newArrayList(aSpendLimit(4.15, SpendLimitType.ACCOUNT_TX));
+        final PaymentContext paymentContext = aPaymentContext();
+
+        given(spendLimitChecker.checkTransactionLimit(any(CompiledSpendLimits.class),
+                any(Money.class), eq(SpendLimitType.ACCOUNT_TX)))
+                .willReturn(aSpendLimitResult(true, "Approved", SpendLimitType.ACCOUNT_TX));
+
+        final PaymentApproval approval =
+                spendLimitService.checkSpendLimits(account, spendLimits, defaultSpendLimits, paymentContext);
+
+        assertThat(approval.isSuccess()).isTrue();
+        assertThat(approval.getDescription()).isEqualTo("Approved");
+        verify(spendLimitChecker, never()).checkDurationLimit(any(CompiledSpendLimits.class),
+                any(Money.class), any(Money.class), any(SpendLimitType.class));
+        verifyZeroInteractions(erService, spendLedgerService, spendAggregator);
+    }
+
+    @Test
+    public void shouldFetchOnlyTodaysTransactionsWhenBillingCycleNotLimited() {
+        final ArgumentCaptor<ERTransactionCriteria> criteriaCaptor = ArgumentCaptor.forClass(ERTransactionCriteria.class);
+        final Account account = anAccount();
+        final List<SpendLimit> spendLimits = newArrayList(aSpendLimit(2.15, SpendLimitType.ACCOUNT_TX),
+                aSpendLimit(10.21, SpendLimitType.ACCOUNT_DAY));
+        final List<SpendLimit> defaultSpendLimits = newArrayList();
+        final PaymentContext paymentContext = aPaymentContext();
+        final LocalDateTime startOfToday = LocalDate.now().atStartOfDay();
+        final Map<SpendLimitType, Map<String, LocalDateTime>> windows = new EnumMap<>(SpendLimitType.class);
+        windows.put(SpendLimitType.ACCOUNT_DAY, ImmutableMap.of(START_DATE_KEY, startOfToday,
+                END_DATE_KEY, LocalDateTime.of(LocalDate.now(), LocalTime.MAX)));
+        final SpendLimitResult success = aSpendLimitResult(true, "Approved", SpendLimitType.ACCOUNT_TX);
+
+        given(spendAggregator.calculateWindows(anyInt(), eq(EnumSet.of(SpendLimitType.ACCOUNT_DAY)))).willReturn(windows);
+        given(spendAggregator.aggregate(anyListOf(ERTransaction.class),
+                Matchers.<Map<SpendLimitType, Map<String, LocalDateTime>>>any()))
+                .willReturn(SpendAggregate.accumulator(windows).build());
+        given(erService.getTransactions(eq(paymentContext), any(ERTransactionCriteria.class))).willReturn(newArrayList());
+        given(spendLimitChecker.checkTransactionLimit(any(CompiledSpendLimits.class),
+                any(Money.class), any(SpendLimitType.class))).willReturn(success);
+        given(spendLimitChecker.checkDurationLimit(any(CompiledSpendLimits.class),
+                any(Money.class), any(Money.class), any(SpendLimitType.class))).willReturn(success);
+
+        final PaymentApproval approval =
+                spendLimitService.checkSpendLimits(account, spendLimits, defaultSpendLimits, paymentContext);
+
+        assertThat(approval.isSuccess()).isTrue();
+        verify(erService).getTransactions(eq(paymentContext), criteriaCaptor.capture());
+        assertThat(criteriaCaptor.getValue().getFromDate()).isEqualTo(startOfToday);
+        verify(spendLimitChecker).checkDurationLimit(any(CompiledSpendLimits.class),
+                eq(Money.ZERO), any(Money.class), eq(SpendLimitType.ACCOUNT_DAY));
+        verify(spendLimitChecker, never()).checkDurationLimit(any(CompiledSpendLimits.class),
+                any(Money.class), any(Money.class), eq(SpendLimitType.ACCOUNT_MONTH));
+        verify(spendLedgerService, never()).reconcile(any(Account.class), anyListOf(ERTransaction.class), any(Money.class), anyLong());
+        verify(erDateCalculator, never()).calculateAccountBillingCycleDate(any(Account.class));
+        verify(spendAggregateCache).put(eq(account.getId()), any(SpendAggregate.class));
+    }
+
+    @Test
+    public void shouldFetchRollingWindowFromERAndStillReconcileLedgerWhenBillingCycleLimited() {
+        final Account account = anAccount();
+        final List<SpendLimit> spendLimits = newArrayList(aSpendLimit(10.21, SpendLimitType.ACCOUNT_ROLLING_30_DAYS),
+                aSpendLimit(50.69, SpendLimitType.ACCOUNT_MONTH));
+        final PaymentContext paymentContext = aPaymentContext();
+        final List<ERTransaction> transactions = ERTransactionDataBuilder.anErTransactionList();
+        final LocalDateTime rollingStart = LocalDateTime.now().minusDays(30);
+        final Map<SpendLimitType, Map<String, LocalDateTime>> windows = new EnumMap<>(SpendLimitType.class);
+        windows.put(SpendLimitType.ACCOUNT_ROLLING_30_DAYS,
+                ImmutableMap.of(START_DATE_KEY, rollingStart, END_DATE_KEY, LocalDateTime.now()));
+        windows.put(SpendLimitType.ACCOUNT_MONTH,
+                ImmutableMap.of(START_DATE_KEY, LocalDateTime.now().minusDays(3), END_DATE_KEY, LocalDateTime.now().plusDays(25)));
+        final SpendLimitResult success = aSpendLimitResult(true, "Approved", SpendLimitType.ACCOUNT_MONTH);
+
+        given(spendAggregator.calculateWindows(anyInt(),
+                eq(EnumSet.of(SpendLimitType.ACCOUNT_MONTH, SpendLimitType.ACCOUNT_ROLLING_30_DAYS)))).willReturn(windows);
+        given(spendAggregator.aggregate(eq(transactions), eq(windows)))
+                .willReturn(SpendAggregate.accumulator(windows).build());
+        given(erService.getTransactions(eq(paymentContext), any(ERTransactionCriteria.class))).willReturn(transactions);
+        given(spendLimitChecker.checkDurationLimit(any(CompiledSpendLimits.class),
+                any(Money.class), any(Money.class), any(SpendLimitType.class))).willReturn(success);
+
+        final PaymentApproval approval =
+                spendLimitService.checkSpendLimits(account, spendLimits, newArrayList(), paymentContext);
+
+        assertThat(approval.isSuccess()).isTrue();
+        final ArgumentCaptor<ERTransactionCriteria> criteriaCaptor = ArgumentCaptor.forClass(ERTransactionCriteria.class);
+        verify(erService).getTransactions(eq(paymentContext), criteriaCaptor.capture());
+        assertThat(criteriaCaptor.getValue().getFromDate()).isEqualTo(rollingStart);
+        //the ledger holds no rolling windows so is not read, but is rebuilt as the fetch covers the billing cycle
+        verify(spendLedgerService, never()).findCurrentLedger(any(Account.class));
+        verify(spendLedgerService).reconcile(account, transactions, Money.ZERO, 0L);
+        verify(spendLimitChecker).checkDurationLimit(any(CompiledSpendLimits.class),
+                any(Money.class), any(Money.class), eq(SpendLimitType.ACCOUNT_ROLLING_30_DAYS));
+    }
+
+    @Test
+    public void shouldStreamSpendFromERWhenStreamingEnabledForOpco() {
+        final Account account = anAccount();
+        final List<SpendLimit> spendLimits = newArrayList(aSpendLimit(10.21, SpendLimitType.ACCOUNT_DAY));
+        final PaymentContext paymentContext = aPaymentContext();
+        final LocalDateTime now = LocalDateTime.now();
+        final Map<SpendLimitType, Map<String, LocalDateTime>> windows = new EnumMap<>(SpendLimitType.class);
+        windows.put(SpendLimitType.ACCOUNT_DAY, ImmutableMap.of(START_DATE_KEY, now.minusHours(1),
+                END_DATE_KEY, now.plusHours(1)));
+        final SpendLimitResult failure = aSpendLimitResult(false, "Day limit breached", SpendLimitType.ACCOUNT_DAY);
+        final ArgumentCaptor<SpendAggregate.BreachCheck> breachCheckCaptor =
+                ArgumentCaptor.forClass(SpendAggregate.BreachCheck.class);
+
+        given(propertiesAccessor.getPropertyForOpco("er.adapter.transactions.streaming.enabled",
+                Locale.UK.getCountry(), "false")).willReturn("true");
+        given(spendAggregator.calculateWindows(anyInt(), eq(EnumSet.of(SpendLimitType.ACCOUNT_DAY)))).willReturn(windows);
+        given(erService.aggregateTransactions(eq(paymentContext), any(ERTransactionCriteria.class),
+                any(SpendAggregate.Accumulator.class), any(SpendAggregate.BreachCheck.class)))
+                .willAnswer(invocation -> {
+                    ((SpendAggregate.Accumulator) invocation.getArguments()[2])
+                            .add(now.minusMinutes(5), false, 1100L, null);
+                    return false;
+                });
+        given(spendLimitChecker.checkDurationLimit(any(CompiledSpendLimits.class),
+                any(Money.class), any(Money.class), any(SpendLimitType.class))).willReturn(failure);
+
+        final PaymentApproval approval =
+                spendLimitService.checkSpendLimits(account, spendLimits, newArrayList(), paymentContext);
+
+        assertThat(approval.isSuccess()).isFalse();
+        verify(erService).aggregateTransactions(eq(paymentContext), any(ERTransactionCriteria.class),
+                any(SpendAggregate.Accumulator.class), breachCheckCaptor.capture());
+        verify(erService, never()).getTransactions(any(PaymentContext.class), any(ERTransactionCriteria.class));
+        verify(spendLimitChecker).checkDurationLimit(any(CompiledSpendLimits.class),
+                eq(Money.of(11.00)), any(Money.class), eq(SpendLimitType.ACCOUNT_DAY));
+        //a read stopped at a breach does not total every window so is not kept
+        verify(spendAggregateCache, never()).put(anyString(), any(SpendAggregate.class));
+        verify(spendLedgerService, never()).reconcile(any(Account.class), anyListOf(ERTransaction.class), any(Money.class), anyLong());
+
+        final SpendAggregate.Accumulator totals = SpendAggregate.accumulator(windows);
+        assertThat(breachCheckCaptor.getValue().isBreached(SpendLimitType.ACCOUNT_DAY, totals)).isFalse();
+        totals.add(now.minusMinutes(5), false, 1100L, null);
+        assertThat(breachCheckCaptor.getValue().isBreached(SpendLimitType.ACCOUNT_DAY, totals)).isTrue();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldStopPagingSpendFromEROnceBreachCertain() {
+        final Account account = anAccount();
+        final List<SpendLimit> spendLimits = newArrayList(aSpendLimit(10.21, SpendLimitType.ACCOUNT_DAY));
+        final PaymentContext paymentContext = aPaymentContext();
+        final LocalDateTime now = LocalDateTime.now();
+        final Map<SpendLimitType, Map<String, LocalDateTime>> windows = new EnumMap<>(SpendLimitType.class);
+        windows.put(SpendLimitType.ACCOUNT_DAY, ImmutableMap.of(START_DATE_KEY, now.minusHours(1),
+                END_DATE_KEY, now.plusHours(1)));
+        final List<ERTransaction> firstPage = newArrayList(
+                ERTransactionDataBuilder.anErTransaction(new BigDecimal("11.00"), now.minusMinutes(5), PURCHASE),
+                ERTransactionDataBuilder.anErTransaction(new BigDecimal("1.00"), now.minusHours(2), PURCHASE));
+        final SpendLimitResult failure = aSpendLimitResult(false, "Day limit breached", SpendLimitType.ACCOUNT_DAY);
+
+        given(propertiesAccessor.getPropertyForOpco("er.adapter.transactions.page.size",
+                Locale.UK.getCountry(), "0")).willReturn("2");
+        given(spendAggregator.calculateWindows(anyInt(), eq(EnumSet.of(SpendLimitType.ACCOUNT_DAY)))).willReturn(windows);
+        given(erService.pageTransactions(eq(paymentContext), any(ERTransactionCriteria.class), eq(2),
+                Matchers.<Predicate<List<ERTransaction>>>any()))
+                .willAnswer(invocation -> ((Predicate<List<ERTransaction>>) invocation.getArguments()[3]).test(firstPage));
+        given(spendLimitChecker.checkDurationLimit(any(CompiledSpendLimits.class),
+                any(Money.class), any(Money.class), any(SpendLimitType.class))).willReturn(failure);
+
+        final PaymentApproval approval =
+                spendLimitService.checkSpendLimits(account, spendLimits, newArrayList(), paymentContext);
+
+        assertThat(approval.isSuccess()).isFalse();
+        verify(erService, never()).getTransactions(any(PaymentContext.class), any(ERTransactionCriteria.class));
+        verify(spendLimitChecker).checkDurationLimit(any(CompiledSpendLimits.class),
+                eq(Money.of(11.00)), any(Money.class), eq(SpendLimitType.ACCOUNT_DAY));
+        //the consumer asked for no more pages, so the aggregate is not kept
+        verify(spendAggregateCache, never()).put(anyString(), any(SpendAggregate.class));
+    }
+
+    @Test
+    public void shouldCheckPartnerLimitAgainstSpendWithPaymentPartnerIncludingPendingReservations() {
+        final Account account = anAccount();
+        final List<SpendLimit> spendLimits = newArrayList(aSpendLimit(5.00, SpendLimitType.PARTNER_DAY));
+        final PaymentContext paymentContext = aPaymentContext(new BigDecimal("1.00"), "partner-a");
+        final LocalDateTime now = LocalDateTime.now();
+        final Map<SpendLimitType, Map<String, LocalDateTime>> windows = new EnumMap<>(SpendLimitType.class);
+        windows.put(SpendLimitType.PARTNER_DAY, ImmutableMap.of(START_DATE_KEY, now.minusHours(1),
+                END_DATE_KEY, now.plusHours(1)));
+        final List<ERTransaction> transactions = newArrayList(
+                ERTransactionDataBuilder.anErTransaction(new BigDecimal("3.00"), now.minusMinutes(10), PURCHASE, "partner-a"),
+                ERTransactionDataBuilder.anErTransaction(new BigDecimal("4.00"), now.minusMinutes(5), PURCHASE, "partner-b"));
+
+        given(spendAggregator.calculateWindows(anyInt(), eq(EnumSet.of(SpendLimitType.PARTNER_DAY)))).willReturn(windows);
+        given(spendAggregator.aggregate(anyListOf(ERTransaction.class),
+                Matchers.<Map<SpendLimitType, Map<String, LocalDateTime>>>any()))
+                .willReturn(SpendAggregate.accumulator(windows).addAll(transactions).build());
+        given(erService.getTransactions(eq(paymentContext), any(ERTransactionCriteria.class))).willReturn(transactions);
+        given(spendLimitChecker.checkDurationLimit(any(CompiledSpendLimits.class),
+                any(Money.class), any(Money.class), any(SpendLimitType.class)))
+                .willReturn(aSpendLimitResult(false, "PARTNER_DAY spend limit breached", SpendLimitType.PARTNER_DAY));
+        spendReservationTable.reserve(account.getId(), Money.of(1.50), "partner-a");
+        spendReservationTable.reserve(account.getId(), Money.of(2.00), "partner-b");
+
+        final PaymentApproval approval =
+                spendLimitService.checkSpendLimits(account, spendLimits, newArrayList(), paymentContext);
+
+        assertThat(approval.isSuccess()).isFalse();
+        assertThat(approval.getDescription()).isEqualTo("PARTNER_DAY spend limit breached");
+        verify(spendLimitChecker).checkDurationLimit(any(CompiledSpendLimits.class),
+                eq(Money.of(4.50)), eq(Money.of(1.00)), eq(SpendLimitType.PARTNER_DAY));
+        verify(spendLedgerService, never()).findCurrentLedger(any(Account.class));
+    }
+
+    @Test
+    public void shouldSkipPartnerLimitsForPaymentWithoutPartner() {
+        final Account account = anAccount();
+        final List<SpendLimit> spendLimits = newArrayList(aSpendLimit(5.00, SpendLimitType.PARTNER_DAY));
+        final PaymentContext paymentContext = aPaymentContext(new BigDecimal("1.00"), null);
+
+        final PaymentApproval approval =
+                spendLimitService.checkSpendLimits(account, spendLimits, newArrayList(), paymentContext);
+
+        assertThat(approval.isSuccess()).isTrue();
+        verifyZeroInteractions(erService, spendLedgerService, spendLimitChecker);
     }
 
     @Test
@@ -224,12 +477,11 @@ public class SpendLimitServiceTest {
         final SpendLimitResult dayLimitResult = aSpendLimitResult(false, reasonMessage, SpendLimitType.ACCOUNT_DAY);
 
         given(erService.getTransactions(eq(paymentContext), any(ERTransactionCriteria.class))).willReturn(newArrayList());
-        given(spendLimitChecker.checkTransactionLimit(eq(spendLimits), eq(defaultSpendLimits),
-                anyListOf(TransactionInfo.class), eq(SpendLimitType.ACCOUNT_TX)))
+        given(spendLimitChecker.checkTransactionLimit(any(CompiledSpendLimits.class),
+                any(Money.class), eq(SpendLimitType.ACCOUNT_TX)))
                 .willReturn(txLimitResult);
-        given(spendLimitChecker.checkDurationLimit(eq(paymentContext), eq(spendLimits),
-                anyListOf(ERTransaction.class),
-                eq(SpendLimitType.ACCOUNT_DAY), anyInt()))
+        given(spendLimitChecker.checkDurationLimit(any(CompiledSpendLimits.class),
+                any(Money.class), any(Money.class), eq(SpendLimitType.ACCOUNT_DAY)))
                 .willReturn(dayLimitResult);
 
         final PaymentApproval approval =
@@ -241,14 +493,10 @@ public class SpendLimitServiceTest {
         InOrder inOrder = inOrder(erService, spendLimitChecker);
 
         inOrder.verify(erService).getTransactions(any(PaymentContext.class), any(ERTransactionCriteria.class));
-        inOrder.verify(spendLimitChecker).checkTransactionLimit(anyListOf(SpendLimit.class),
-                anyListOf(SpendLimit.class),
-                anyListOf(TransactionInfo.class),
-                any(SpendLimitType.class));
-        inOrder.verify(spendLimitChecker).checkDurationLimit(any(PaymentContext.class), anyListOf(SpendLimit.class),
-                anyListOf(ERTransaction.class),
-                any(SpendLimitType.class),
-                anyInt());
+        inOrder.verify(spendLimitChecker).checkTransactionLimit(any(CompiledSpendLimits.class),
+                any(Money.class), any(SpendLimitType.class));
+        inOrder.verify(spendLimitChecker).checkDurationLimit(any(CompiledSpendLimits.class),
+                any(Money.class), any(Money.class), any(SpendLimitType.class));
         verifyNoMoreInteractions(spendLimitChecker);
     }
 
@@ -266,16 +514,14 @@ public class SpendLimitServiceTest {
         final SpendLimitResult monthLimitResult = aSpendLimitResult(false, reasonMessage, SpendLimitType.ACCOUNT_MONTH);
 
         given(erService.getTransactions(eq(paymentContext), any(ERTransactionCriteria.class))).willReturn(newArrayList());
-        given(spendLimitChecker.checkTransactionLimit(eq(spendLimits), eq(defaultSpendLimits),
-                anyListOf(TransactionInfo.class), eq(SpendLimitType.ACCOUNT_TX)))
+        given(spendLimitChecker.checkTransactionLimit(any(CompiledSpendLimits.class),
+                any(Money.class), eq(SpendLimitType.ACCOUNT_TX)))
                 .willReturn(txLimitResult);
-        given(spendLimitChecker.checkDurationLimit(eq(paymentContext), eq(spendLimits),
-                anyListOf(ERTransaction.class),
-                eq(SpendLimitType.ACCOUNT_DAY), anyInt()))
+        given(spendLimitChecker.checkDurationLimit(any(CompiledSpendLimits.class),
+                any(Money.class), any(Money.class), eq(SpendLimitType.ACCOUNT_DAY)))
                 .willReturn(dayLimitResult);
-        given(spendLimitChecker.checkDurationLimit(eq(paymentContext), eq(spendLimits),
-                anyListOf(ERTransaction.class),
-                eq(SpendLimitType.ACCOUNT_MONTH), anyInt()))
+        given(spendLimitChecker.checkDurationLimit(any(CompiledSpendLimits.class),
+                any(Money.class), any(Money.class), eq(SpendLimitType.ACCOUNT_MONTH)))
                 .willReturn(monthLimitResult);
 
         final PaymentApproval approval =
@@ -287,20 +533,12 @@ public class SpendLimitServiceTest {
         InOrder inOrder = inOrder(erService, spendLimitChecker);
 
         inOrder.verify(erService).getTransactions(any(PaymentContext.class), any(ERTransactionCriteria.class));
-        inOrder.verify(spendLimitChecker).checkTransactionLimit(anyListOf(SpendLimit.class),
-                anyListOf(SpendLimit.class),
-                anyListOf(TransactionInfo.class),
-                any(SpendLimitType.class));
-        inOrder.verify(spendLimitChecker).checkDurationLimit(any(PaymentContext.class),
-                anyListOf(SpendLimit.class),
-                anyListOf(ERTransaction.class),
-                eq(SpendLimitType.ACCOUNT_DAY),
-                anyInt());
-        inOrder.verify(spendLimitChecker).checkDurationLimit(any(PaymentContext.class),
-                anyListOf(SpendLimit.class),
-                anyListOf(ERTransaction.class),
-                eq(SpendLimitType.ACCOUNT_MONTH),
-                anyInt());
+        inOrder.verify(spendLimitChecker).checkTransactionLimit(any(CompiledSpendLimits.class),
+                any(Money.class), any(SpendLimitType.class));
+        inOrder.verify(spendLimitChecker).checkDurationLimit(any(CompiledSpendLimits.class),
+                any(Money.class), any(Money.class), eq(SpendLimitType.ACCOUNT_DAY));
+        inOrder.verify(spendLimitChecker).checkDurationLimit(any(CompiledSpendLimits.class),
+                any(Money.class), any(Money.class), eq(SpendLimitType.ACCOUNT_MONTH));
         verifyNoMoreInteractions(erService, spendLimitChecker);
 
     }
@@ -339,8 +577,8 @@ public class SpendLimitServiceTest {
         final SpendLimitResult dayLimitResult = aSpendLimitResult(true, message, SpendLimitType.ACCOUNT_DAY);
 
         given(erService.getTransactions(eq(paymentContext), any(ERTransactionCriteria.class))).willReturn(newArrayList());
-        given(spendLimitChecker.checkTransactionLimit(eq(spendLimits), eq(defaultSpendLimits),
-                anyListOf(TransactionInfo.class), eq(SpendLimitType.ACCOUNT_TX)))
+        given(spendLimitChecker.checkTransactionLimit(any(CompiledSpendLimits.class),
+                any(Money.class), eq(SpendLimitType.ACCOUNT_TX)))
                 .willThrow(new RuntimeException(message));
 
         assertThatThrownBy(() -> spendLimitService.checkSpendLimits(account, spendLimits, defaultSpendLimits, paymentContext))
@@ -350,12 +588,11 @@ public class SpendLimitServiceTest {
         reset(spendLimitChecker);
 
         message = "This is a test exception " + new Random().nextInt();
-        given(spendLimitChecker.checkTransactionLimit(eq(spendLimits), eq(defaultSpendLimits),
-                anyListOf(TransactionInfo.class), eq(SpendLimitType.ACCOUNT_TX)))
+        given(spendLimitChecker.checkTransactionLimit(any(CompiledSpendLimits.class),
+                any(Money.class), eq(SpendLimitType.ACCOUNT_TX)))
                 .willReturn(txLimitResult);
-        given(spendLimitChecker.checkDurationLimit(eq(paymentContext), eq(spendLimits),
-                anyListOf(ERTransaction.class),
-                eq(SpendLimitType.ACCOUNT_DAY), anyInt()))
+        given(spendLimitChecker.checkDurationLimit(any(CompiledSpendLimits.class),
+                any(Money.class), any(Money.class), eq(SpendLimitType.ACCOUNT_DAY)))
                 .willThrow(new RuntimeException(message));
 
         assertThatThrownBy(() -> spendLimitService.checkSpendLimits(account, spendLimits, defaultSpendLimits, paymentContext))
@@ -364,16 +601,14 @@ public class SpendLimitServiceTest {
 
         reset(spendLimitChecker);
         message = "This is a test exception " + new Random().nextInt();
-        given(spendLimitChecker.checkTransactionLimit(eq(spendLimits), eq(defaultSpendLimits),
-                anyListOf(TransactionInfo.class), eq(SpendLimitType.ACCOUNT_TX)))
+        given(spendLimitChecker.checkTransactionLimit(any(CompiledSpendLimits.class),
+                any(Money.class), eq(SpendLimitType.ACCOUNT_TX)))
                 .willReturn(txLimitResult);
-        given(spendLimitChecker.checkDurationLimit(eq(paymentContext), eq(spendLimits),
-                anyListOf(ERTransaction.class),
-                eq(SpendLimitType.ACCOUNT_DAY), anyInt()))
+        given(spendLimitChecker.checkDurationLimit(any(CompiledSpendLimits.class),
+                any(Money.class), any(Money.class), eq(SpendLimitType.ACCOUNT_DAY)))
                 .willReturn(dayLimitResult);
-        given(spendLimitChecker.checkDurationLimit(eq(paymentContext), eq(spendLimits),
-                anyListOf(ERTransaction.class),
-                eq(SpendLimitType.ACCOUNT_MONTH), anyInt()))
+        given(spendLimitChecker.checkDurationLimit(any(CompiledSpendLimits.class),
+                any(Money.class), any(Money.class), eq(SpendLimitType.ACCOUNT_MONTH)))
                 .willThrow(new RuntimeException(message));
 
         assertThatThrownBy(() -> spendLimitService.checkSpendLimits(account, spendLimits, defaultSpendLimits, paymentContext))
@@ -389,8 +624,8 @@ public class SpendLimitServiceTest {
         final List<SpendLimit> defaultSpendLimits = aStandardSpendLimitList();
         final PaymentContext paymentContext = aPaymentContext();
 
-        given(spendLimitChecker.checkTransactionLimit(eq(spendLimits), eq(defaultSpendLimits),
-                anyListOf(TransactionInfo.class), eq(SpendLimitType.ACCOUNT_TX)))
+        given(spendLimitChecker.checkTransactionLimit(any(CompiledSpendLimits.class),
+                any(Money.class), eq(SpendLimitType.ACCOUNT_TX)))
                 .willReturn(null);
 
         final PaymentApproval approval =
@@ -420,6 +655,262 @@ public class SpendLimitServiceTest {
 
     }
 
+    @Test
+    public void shouldUseCurrentSpendLedgerWithoutCallingER() {
+        final Account account = anAccount();
+        final List<SpendLimit> spendLimits = aStandardSpendLimitList();
+        final List<SpendLimit> defaultSpendLimits = aStandardSpendLimitList();
+        final PaymentContext paymentContext = aPaymentContext();
+        final SpendLedger ledger = SpendLedger.builder().accountId(account.getId()).dayTotal(150).cycleTotal(1200).build();
+        final SpendLimitResult success = aSpendLimitResult(true, "Approved", SpendLimitType.ACCOUNT_TX);
+
+        given(spendLedgerService.findCurrentLedger(account)).willReturn(ledger);
+        given(spendLimitChecker.checkTransactionLimit(any(CompiledSpendLimits.class),
+                any(Money.class), any(SpendLimitType.class))).willReturn(success);
+        given(spendLimitChecker.checkDurationLimit(any(CompiledSpendLimits.class),
+                any(Money.class), any(Money.class), any(SpendLimitType.class))).willReturn(success);
+
+        final PaymentApproval approval =
+                spendLimitService.checkSpendLimits(account, spendLimits, defaultSpendLimits, paymentContext);
+
+        assertThat(approval.isSuccess()).isTrue();
+        verify(spendLimitChecker).checkDurationLimit(any(CompiledSpendLimits.class),
+                eq(Money.of(new BigDecimal("1.50"))), any(Money.class), eq(SpendLimitType.ACCOUNT_DAY));
+        verify(spendLimitChecker).checkDurationLimit(any(CompiledSpendLimits.class),
+                eq(Money.of(new BigDecimal("12.00"))), any(Money.class), eq(SpendLimitType.ACCOUNT_MONTH));
+        verify(spendLedgerService, never()).reconcile(any(Account.class), anyListOf(ERTransaction.class), any(Money.class), anyLong());
+        verifyZeroInteractions(erService);
+    }
+
+    @Test
+    public void shouldRecordSpendInLedgerWhenPaymentApproved() {
+        final Account account = anAccount();
+        final PaymentContext paymentContext = aPaymentContext();
+        final SpendLimitResult success = aSpendLimitResult(true, "Approved", SpendLimitType.ACCOUNT_TX);
+
+        given(accountRepository.findOne(account.getId())).willReturn(account);
+        given(spendLimitChecker.checkTransactionLimit(any(CompiledSpendLimits.class),
+                any(Money.class), any(SpendLimitType.class))).willReturn(success);
+        given(spendLimitChecker.checkDurationLimit(any(CompiledSpendLimits.class),
+                any(Money.class), any(Money.class), any(SpendLimitType.class))).willReturn(success);
+
+        final PaymentApproval approval = spendLimitService.approvePayment(account.getId(), paymentContext);
+
+        assertThat(approval.isSuccess()).isTrue();
+        verify(spendLedgerService).recordSpend(account, paymentContext.getTransactionInfo().getAmount());
+        verify(spendAggregateCache).recordSpend(account.getId(), paymentContext.getTransactionInfo().getAmount());
+        assertThat(approval.getReservationId()).isNotEmpty();
+        assertThat(spendReservationTable.getPendingTotal(account.getId()))
+                .isEqualTo(paymentContext.getTransactionInfo().getAmount());
+    }
+
+    @Test
+    public void shouldReleaseReservationWhenPaymentConfirmed() {
+        final String accountId = String.valueOf(new Random().nextInt());
+        final String reservationId = spendReservationTable.reserve(accountId, Money.of(2.15));
+
+        assertThat(spendLimitService.confirmPayment(accountId, reservationId)).isTrue();
+        assertThat(spendLimitService.confirmPayment(accountId, reservationId)).isFalse();
+        assertThat(spendReservationTable.getPendingTotal(accountId)).isEqualTo(Money.ZERO);
+    }
+
+    @Test
+    public void shouldAddPendingReservationsToTotalsFromER() {
+        final Account account = anAccount();
+        final List<SpendLimit> spendLimits = newArrayList(aSpendLimit(10.21, SpendLimitType.ACCOUNT_DAY));
+        final PaymentContext paymentContext = aPaymentContext();
+        final Map<SpendLimitType, Map<String, LocalDateTime>> windows = new EnumMap<>(SpendLimitType.class);
+        windows.put(SpendLimitType.ACCOUNT_DAY, ImmutableMap.of(START_DATE_KEY, LocalDate.now().atStartOfDay(),
+                END_DATE_KEY, LocalDateTime.of(LocalDate.now(), LocalTime.MAX)));
+        final SpendLimitResult success = aSpendLimitResult(true, "Approved", SpendLimitType.ACCOUNT_DAY);
+
+        given(spendAggregator.calculateWindows(anyInt(), eq(EnumSet.of(SpendLimitType.ACCOUNT_DAY)))).willReturn(windows);
+        given(spendAggregator.aggregate(anyListOf(ERTransaction.class),
+                Matchers.<Map<SpendLimitType, Map<String, LocalDateTime>>>any()))
+                .willReturn(SpendAggregate.accumulator(windows).build());
+        given(erService.getTransactions(eq(paymentContext), any(ERTransactionCriteria.class))).willReturn(newArrayList());
+        given(spendLimitChecker.checkDurationLimit(any(CompiledSpendLimits.class),
+                any(Money.class), any(Money.class), any(SpendLimitType.class))).willReturn(success);
+        spendReservationTable.reserve(account.getId(), Money.of(2.00));
+        spendReservationTable.reserve(account.getId(), Money.of(1.15));
+
+        final PaymentApproval approval =
+                spendLimitService.checkSpendLimits(account, spendLimits, newArrayList(), paymentContext);
+
+        assertThat(approval.isSuccess()).isTrue();
+        verify(spendLimitChecker).checkDurationLimit(any(CompiledSpendLimits.class),
+                eq(Money.of(3.15)), any(Money.class), eq(SpendLimitType.ACCOUNT_DAY));
+    }
+
+    @Test
+    public void shouldDenyPaymentWhenReservationsMadeWhileSpendTotalledBreachLimit() {
+        final Account account = anAccount();
+        final PaymentContext paymentContext = aPaymentContext();
+        final SpendLimitResult success = aSpendLimitResult(true, "Approved", SpendLimitType.ACCOUNT_TX);
+        final LocalDateTime startOfDay = LocalDate.now().atStartOfDay();
+
+        given(accountRepository.findOne(account.getId())).willReturn(account);
+        given(spendLimitChecker.checkTransactionLimit(any(CompiledSpendLimits.class),
+                any(Money.class), any(SpendLimitType.class))).willReturn(success);
+        //another payment for the account is approved while the ledger is read
+        given(spendLedgerService.findCurrentLedger(account)).willAnswer(invocation -> {
+            spendReservationTable.reserve(account.getId(), Money.of(5.00));
+            return SpendLedger.builder().dayStart(startOfDay).dayTotal(100L)
+                    .cycleStart(startOfDay).cycleTotal(100L).build();
+        });
+        given(spendLimitChecker.checkDurationLimit(any(CompiledSpendLimits.class),
+                any(Money.class), any(Money.class), any(SpendLimitType.class))).willAnswer(invocation ->
+                invocation.getArgumentAt(1, Money.class).equals(Money.of(1.00)) ? success
+                        : aSpendLimitResult(false, "ACCOUNT_DAY spend limit breached", SpendLimitType.ACCOUNT_DAY));
+
+        final PaymentApproval approval = spendLimitService.approvePayment(account.getId(), paymentContext);
+
+        assertThat(approval.isSuccess()).isFalse();
+        assertThat(approval.getDescription()).isEqualTo("ACCOUNT_DAY spend limit breached");
+        verify(spendLimitChecker).checkDurationLimit(any(CompiledSpendLimits.class),
+                eq(Money.of(6.00)), any(Money.class), any(SpendLimitType.class));
+        verify(spendLedgerService, never()).recordSpend(any(Account.class), any(Money.class));
+        assertThat(spendReservationTable.getPendingTotal(account.getId())).isEqualTo(Money.of(5.00));
+    }
+
+    @Test
+    public void shouldNotRecordSpendInLedgerWhenPaymentDenied() {
+        final Account account = anAccount();
+        final PaymentContext paymentContext = aPaymentContext();
+
+        given(accountRepository.findOne(account.getId())).willReturn(account);
+        given(spendLimitChecker.checkTransactionLimit(any(CompiledSpendLimits.class),
+                any(Money.class), any(SpendLimitType.class)))
+                .willReturn(aSpendLimitResult(false, "breached", SpendLimitType.ACCOUNT_TX));
+
+        final PaymentApproval approval = spendLimitService.approvePayment(account.getId(), paymentContext);
+
+        assertThat(approval.isSuccess()).isFalse();
+        verify(spendLedgerService, never()).recordSpend(any(Account.class), any(Money.class));
+    }
+
+    @Test
+    public void shouldReadEachAccountOnceAndCountEarlierApprovalsInBatch() {
+        final Account account = anAccount();
+        final Account otherAccount = anAccount();
+        final PaymentContext firstPayment = aPaymentContext();
+        final PaymentContext secondPayment = aPaymentContext();
+        final PaymentContext otherPayment = aPaymentContext();
+        final List<PaymentApprovalRequest> requests = newArrayList(
+                PaymentApprovalRequest.builder().accountId(account.getId()).paymentContext(firstPayment).build(),
+                PaymentApprovalRequest.builder().accountId(otherAccount.getId()).paymentContext(otherPayment).build(),
+                PaymentApprovalRequest.builder().accountId(account.getId()).paymentContext(secondPayment).build());
+        final SpendLedger ledger = SpendLedger.builder().accountId(account.getId())
+                .dayStart(LocalDateTime.now().minusHours(1)).dayTotal(150)
+                .cycleStart(LocalDateTime.now().minusDays(1)).cycleTotal(1200).build();
+        final SpendLimitResult success = aSpendLimitResult(true, "Approved", SpendLimitType.ACCOUNT_TX);
+
+        given(accountRepository.findAll(Matchers.<Iterable<String>>any())).willReturn(newArrayList(account, otherAccount));
+        given(spendLedgerService.findCurrentLedger(any(Account.class))).willReturn(ledger);
+        given(spendLimitChecker.checkTransactionLimit(any(CompiledSpendLimits.class),
+                any(Money.class), any(SpendLimitType.class))).willReturn(success);
+        given(spendLimitChecker.checkDurationLimit(any(CompiledSpendLimits.class),
+                any(Money.class), any(Money.class), any(SpendLimitType.class))).willReturn(success);
+
+        final List<PaymentApproval> approvals = spendLimitService.approvePayments(requests);
+
+        assertThat(approvals).hasSize(3).extracting("success").containsOnly(true);
+        verify(accountRepository).findAll(Matchers.<Iterable<String>>any());
+        verify(accountRepository, never()).findOne(anyString());
+        verify(spendLedgerService).findCurrentLedger(account);
+        verify(spendLedgerService).findCurrentLedger(otherAccount);
+        //first payment for each account is checked against its ledger
+        verify(spendLimitChecker, times(2)).checkDurationLimit(any(CompiledSpendLimits.class),
+                eq(Money.of(new BigDecimal("1.50"))), any(Money.class), eq(SpendLimitType.ACCOUNT_DAY));
+        //second payment is checked against the ledger plus the first payment approved in this batch
+        verify(spendLimitChecker).checkDurationLimit(any(CompiledSpendLimits.class),
+                eq(Money.of(new BigDecimal("1.50")).plus(firstPayment.getTransactionInfo().getAmount())),
+                eq(secondPayment.getTransactionInfo().getAmount()), eq(SpendLimitType.ACCOUNT_DAY));
+        verify(spendLedgerService, times(3)).recordSpend(any(Account.class), any(Money.class));
+        verifyZeroInteractions(erService);
+    }
+
+    @Test
+    public void shouldCountEarlierBatchApprovalsInSpendTotalledWithRenewalsLater() {
+        final Account account = anAccount();
+        final PaymentContext firstPayment = aPaymentContext();
+        final PaymentContext renewalsPayment = aPaymentContext(aSpendLimitInfoList(), new BigDecimal("1.00"),
+                ApprovalCriteria.builder().paymentApprovalRules(newArrayList(PaymentApprovalRule.USE_RENEWAL_TRANSACTIONS))
+                        .build());
+        final List<PaymentApprovalRequest> requests = newArrayList(
+                PaymentApprovalRequest.builder().accountId(account.getId()).paymentContext(firstPayment).build(),
+                PaymentApprovalRequest.builder().accountId(account.getId()).paymentContext(renewalsPayment).build());
+        final SpendLedger ledger = SpendLedger.builder().accountId(account.getId())
+                .dayStart(LocalDateTime.now().minusHours(1)).dayTotal(150)
+                .cycleStart(LocalDateTime.now().minusDays(1)).cycleTotal(1200).build();
+        final SpendLimitResult success = aSpendLimitResult(true, "Approved", SpendLimitType.ACCOUNT_TX);
+
+        given(accountRepository.findAll(Matchers.<Iterable<String>>any())).willReturn(newArrayList(account));
+        given(spendLedgerService.findCurrentLedger(any(Account.class))).willReturn(ledger);
+        //the renewals spend is totalled from ER after the first payment is approved, and does not show it
+        given(erService.getTransactions(eq(renewalsPayment), any(ERTransactionCriteria.class))).willReturn(newArrayList());
+        given(spendAggregator.aggregate(anyListOf(ERTransaction.class), anyInt())).willReturn(ledger.toSpendAggregate());
+        given(spendAggregator.aggregate(anyListOf(ERTransaction.class),
+                Matchers.<Map<SpendLimitType, Map<String, LocalDateTime>>>any())).willReturn(ledger.toSpendAggregate());
+        given(spendLimitChecker.checkTransactionLimit(any(CompiledSpendLimits.class),
+                any(Money.class), any(SpendLimitType.class))).willReturn(success);
+        given(spendLimitChecker.checkDurationLimit(any(CompiledSpendLimits.class),
+                any(Money.class), any(Money.class), any(SpendLimitType.class))).willReturn(success);
+
+        final List<PaymentApproval> approvals = spendLimitService.approvePayments(requests);
+
+        assertThat(approvals).extracting("success").containsExactly(true, true);
+        assertThat(approvals).extracting("reservationId").doesNotContainNull();
+        verify(spendLimitChecker).checkDurationLimit(any(CompiledSpendLimits.class),
+                eq(Money.of(new BigDecimal("1.50")).plus(firstPayment.getTransactionInfo().getAmount())),
+                eq(renewalsPayment.getTransactionInfo().getAmount()), eq(SpendLimitType.ACCOUNT_DAY));
+        verify(spendLedgerService, times(2)).recordSpend(eq(account), any(Money.class));
+    }
+
+    @Test
+    public void shouldNotShowCauseOfBatchFailureToCaller() {
+        final Account account = anAccount();
+        final List<PaymentApprovalRequest> requests = newArrayList(
+                PaymentApprovalRequest.builder().accountId(account.getId()).paymentContext(aPaymentContext()).build());
+        final SpendLimitResult success = aSpendLimitResult(true, "Approved", SpendLimitType.ACCOUNT_TX);
+
+        given(accountRepository.findAll(Matchers.<Iterable<String>>any())).willReturn(newArrayList(account));
+        given(spendLimitChecker.checkTransactionLimit(any(CompiledSpendLimits.class),
+                any(Money.class), any(SpendLimitType.class))).willReturn(success);
+        given(spendLedgerService.findCurrentLedger(any(Account.class)))
+                .willThrow(new DataAccessResourceFailureException("Timed out after 3000 ms at mongo-1:27017"));
+
+        final List<PaymentApproval> approvals = spendLimitService.approvePayments(requests);
+
+        assertThat(approvals).hasSize(1);
+        assertThat(approvals.get(0).isSuccess()).isFalse();
+        assertThat(approvals.get(0).getDescription()).isEqualTo(SpendLimitService.BATCH_FAILURE_DESCRIPTION);
+    }
+
+    @Test
+    public void shouldDenyBatchPaymentsForUnknownAccountAndApproveOthers() {
+        final Account account = anAccount();
+        final String unknownAccountId = String.valueOf(new Random().nextInt());
+        final List<PaymentApprovalRequest> requests = newArrayList(
+                PaymentApprovalRequest.builder().accountId(unknownAccountId).paymentContext(aPaymentContext()).build(),
+                PaymentApprovalRequest.builder().accountId(account.getId()).paymentContext(aPaymentContext()).build());
+        final SpendLimitResult success = aSpendLimitResult(true, "Approved", SpendLimitType.ACCOUNT_TX);
+
+        given(accountRepository.findAll(Matchers.<Iterable<String>>any())).willReturn(newArrayList(account));
+        given(spendLimitChecker.checkTransactionLimit(any(CompiledSpendLimits.class),
+                any(Money.class), any(SpendLimitType.class))).willReturn(success);
+        given(spendLimitChecker.checkDurationLimit(any(CompiledSpendLimits.class),
+                any(Money.class), any(Money.class), any(SpendLimitType.class))).willReturn(success);
+
+        final List<PaymentApproval> approvals = spendLimitService.approvePayments(requests);
+
+        assertThat(approvals).hasSize(2);
+        assertThat(approvals.get(0).isSuccess()).isFalse();
+        assertThat(approvals.get(0).getDescription()).isEqualTo("No Account found using id " + unknownAccountId);
+        assertThat(approvals.get(1).isSuccess()).isTrue();
+        verify(spendLedgerService).recordSpend(eq(account), any(Money.class));
+    }
+
     @Test
     public void shouldCreateTransactionCriteriaCorrectlyWhenNoRenewalTransactions() {
         final ArgumentCaptor<ERTransactionCriteria> criteriaCaptor = ArgumentCaptor.forClass(ERTransactionCriteria.class);
@@ -545,10 +1036,8 @@ public class SpendLimitServiceTest {
         final SpendLimitResult spendLimitResult = aSpendLimitResult(true, "none", any(SpendLimitType.class));
 
         given(accountRepository.findOne(account.getId())).willReturn(account);
-        given(spendLimitChecker.checkTransactionLimit(anyListOf(SpendLimit.class),
-                anyListOf(SpendLimit.class),
-                anyListOf(TransactionInfo.class),
-                any(SpendLimitType.class))).willReturn(spendLimitResult);
+        given(spendLimitChecker.checkTransactionLimit(any(CompiledSpendLimits.class),
+                any(Money.class), any(SpendLimitType.class))).willReturn(spendLimitResult);
 
         final PaymentApproval approval = spendLimitService.approvePayment(account.getId(), paymentContext);
 
@@ -585,4 +1074,10 @@ public class SpendLimitServiceTest {
                 .hasMessageContaining(account.getId());
     }
 
+    private static PropertiesAccessor aDefaultPropertiesAccessor() {
+        final PropertiesAccessor propertiesAccessor = mock(PropertiesAccessor.class);
+        given(propertiesAccessor.getPropertyAsInt(anyString(), anyInt()))
+                .willAnswer(invocation -> invocation.getArguments()[1]);
+        return propertiesAccessor;
+    }
 }
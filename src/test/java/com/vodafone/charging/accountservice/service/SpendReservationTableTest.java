@@ -0,0 +1,127 @@
+package com.vodafone.charging.accountservice.service;
+
+import com.vodafone.charging.accountservice.domain.Money;
+import com.vodafone.charging.properties.PropertiesAccessor;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SpendReservationTableTest {
+
+    @Mock
+    private PropertiesAccessor propertiesAccessor;
+
+    @Before
+    public void init() {
+        given(propertiesAccessor.getPropertyAsInt(anyString(), anyInt()))
+                .willAnswer(invocation -> invocation.getArguments()[1]);
+    }
+
+    @Test
+    public void shouldTotalPendingReservationsUntilReleased() {
+        final SpendReservationTable table = new SpendReservationTable(propertiesAccessor);
+
+        final String first = table.reserve("account-1", Money.of(2.15));
+        table.reserve("account-1", Money.of(1.00));
+        table.reserve("account-2", Money.of(5.00));
+
+        assertThat(table.getPendingTotal("account-1")).isEqualTo(Money.of(3.15));
+        assertThat(table.release("account-1", first)).isTrue();
+        assertThat(table.release("account-1", first)).isFalse();
+        assertThat(table.getPendingTotal("account-1")).isEqualTo(Money.of(1.00));
+        assertThat(table.getPendingTotal("account-2")).isEqualTo(Money.of(5.00));
+    }
+
+    @Test
+    public void shouldTotalPendingReservationsPerPartner() {
+        final SpendReservationTable table = new SpendReservationTable(propertiesAccessor);
+
+        table.reserve("account-1", Money.of(2.15), "partner-a");
+        table.reserve("account-1", Money.of(1.00), "partner-a");
+        table.reserve("account-1", Money.of(3.00), "partner-b");
+        table.reserve("account-1", Money.of(5.00));
+
+        final Map<String, Money> partnerTotals = table.getPendingPartnerTotals("account-1");
+        assertThat(partnerTotals).hasSize(2);
+        assertThat(partnerTotals.get("partner-a")).isEqualTo(Money.of(3.15));
+        assertThat(partnerTotals.get("partner-b")).isEqualTo(Money.of(3.00));
+        assertThat(table.getPendingTotal("account-1")).isEqualTo(Money.of(11.15));
+    }
+
+    @Test
+    public void shouldTotalOnlyReservationsMadeAfterSequence() {
+        final SpendReservationTable table = new SpendReservationTable(propertiesAccessor);
+
+        table.reserve("account-1", Money.of(2.15), "partner-a");
+        final long reservedAfter = table.getSequence();
+        table.reserve("account-2", Money.of(5.00));
+        table.reserve("account-1", Money.of(1.00), "partner-a");
+        table.reserve("account-1", Money.of(3.00));
+
+        assertThat(table.getPendingTotal("account-1", reservedAfter)).isEqualTo(Money.of(4.00));
+        assertThat(table.getPendingPartnerTotals("account-1", reservedAfter).get("partner-a")).isEqualTo(Money.of(1.00));
+        assertThat(table.getPendingTotal("account-1")).isEqualTo(Money.of(6.15));
+    }
+
+    @Test
+    public void shouldNotCountExpiredReservations() throws InterruptedException {
+        given(propertiesAccessor.getPropertyAsInt(eq("spend.reservation.ttl.seconds"), anyInt())).willReturn(0);
+        final SpendReservationTable table = new SpendReservationTable(propertiesAccessor);
+
+        final String reservationId = table.reserve("account-1", Money.of(2.15));
+        Thread.sleep(5);
+
+        assertThat(table.getPendingTotal("account-1")).isEqualTo(Money.ZERO);
+        assertThat(table.release("account-1", reservationId)).isFalse();
+    }
+
+    @Test
+    public void shouldEvaluateOneApprovalAtATimeForAnAccount() throws Exception {
+        final SpendReservationTable table = new SpendReservationTable(propertiesAccessor);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        final List<Callable<Money>> approvals = newArrayList();
+        for (int i = 0; i < 40; i++) {
+            approvals.add(() -> table.withAccountLock("account-1", () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                final Money pending = table.getPendingTotal("account-1");
+                table.reserve("account-1", Money.of(1.00));
+                running.decrementAndGet();
+                return pending;
+            }));
+        }
+
+        final List<Money> pendingSeen = newArrayList();
+        for (Future<Money> future : executor.invokeAll(approvals)) {
+            pendingSeen.add(future.get());
+        }
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+
+        assertThat(maxRunning.get()).isEqualTo(1);
+        //each approval saw every reservation made before it
+        assertThat(pendingSeen).doesNotHaveDuplicates();
+        assertThat(table.getPendingTotal("account-1")).isEqualTo(Money.of(40.00));
+    }
+}
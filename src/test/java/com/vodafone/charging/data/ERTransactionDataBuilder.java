@@ -1,10 +1,10 @@
 package com.vodafone.charging.data;
 
+import com.vodafone.charging.accountservice.domain.Money;
 import com.vodafone.charging.accountservice.dto.er.ERTransaction;
 import com.vodafone.charging.accountservice.dto.er.ERTransactionType;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Random;
@@ -14,7 +14,7 @@ import static com.google.common.collect.Lists.newArrayList;
 public class ERTransactionDataBuilder {
 
     public static ERTransaction anErTransaction() {
-        return ERTransaction.builder().amount(BigDecimal.valueOf(new Random().nextDouble()).setScale(2, RoundingMode.HALF_UP))
+        return ERTransaction.builder().amount(Money.of(BigDecimal.valueOf(new Random().nextDouble())))
                 .dateTime(LocalDateTime.now().minusHours(1))
                 .partnerId("test-partnerId")
                 .type(ERTransactionType.PURCHASE.name())
@@ -22,9 +22,14 @@ public class ERTransactionDataBuilder {
     }
 
     public static ERTransaction anErTransaction(BigDecimal amount, LocalDateTime localDateTime, ERTransactionType type) {
-        return ERTransaction.builder().amount(amount)
+        return anErTransaction(amount, localDateTime, type, "test-partnerId");
+    }
+
+    public static ERTransaction anErTransaction(BigDecimal amount, LocalDateTime localDateTime, ERTransactionType type,
+                                                String partnerId) {
+        return ERTransaction.builder().amount(Money.of(amount))
                 .dateTime(localDateTime)
-                .partnerId("test-partnerId")
+                .partnerId(partnerId)
                 .type(type.name())
                 .build();
     }
@@ -2,6 +2,7 @@ package com.vodafone.charging.data.builder;
 
 import com.google.common.collect.Lists;
 import com.vodafone.charging.accountservice.domain.ApprovalCriteria;
+import com.vodafone.charging.accountservice.domain.Money;
 import com.vodafone.charging.accountservice.domain.PaymentContext;
 import com.vodafone.charging.accountservice.domain.SpendLimitInfo;
 import com.vodafone.charging.accountservice.domain.enums.SpendLimitType;
@@ -27,7 +28,7 @@ public class PaymentContextDataBuilder {
         return PaymentContext.builder().locale(Locale.UK)
                 .chargingId(aChargingId())
                 .transactionInfo(TransactionInfo.builder()
-                        .amount(new BigDecimal(2.0))
+                        .amount(Money.of(new BigDecimal(2.0)))
                         .build())
                 .catalogInfo(CatalogInfo.builder()
                         .defaultSpendLimitInfo(defaultSpendLimits)
@@ -44,7 +45,7 @@ public class PaymentContextDataBuilder {
         return PaymentContext.builder().locale(Locale.UK)
                 .chargingId(aChargingId())
                 .transactionInfo(TransactionInfo.builder()
-                        .amount(amount)
+                        .amount(Money.of(amount))
                         .build())
                 .catalogInfo(CatalogInfo.builder()
                         .defaultSpendLimitInfo(defaultSpendLimits)
@@ -52,11 +53,24 @@ public class PaymentContextDataBuilder {
                 .build();
     }
 
+    public static PaymentContext aPaymentContext(BigDecimal amount, String partnerId) {
+        return PaymentContext.builder().locale(Locale.UK)
+                .chargingId(aChargingId())
+                .transactionInfo(TransactionInfo.builder()
+                        .amount(Money.of(amount))
+                        .partnerId(partnerId)
+                        .build())
+                .catalogInfo(CatalogInfo.builder()
+                        .defaultSpendLimitInfo(Lists.newArrayList())
+                        .build())
+                .build();
+    }
+
     public static PaymentContext aPaymentContext(List<SpendLimitInfo> defaultSpendLimits, BigDecimal paymentAmount) {
         return PaymentContext.builder().locale(Locale.UK)
                 .chargingId(aChargingId())
                 .transactionInfo(TransactionInfo.builder()
-                        .amount(paymentAmount)
+                        .amount(Money.of(paymentAmount))
                         .build())
                 .catalogInfo(CatalogInfo.builder()
                         .defaultSpendLimitInfo(defaultSpendLimits)
@@ -68,7 +82,7 @@ public class PaymentContextDataBuilder {
         return PaymentContext.builder().locale(Locale.UK)
                 .chargingId(aChargingId())
                 .transactionInfo(TransactionInfo.builder()
-                        .amount(paymentAmount)
+                        .amount(Money.of(paymentAmount))
                         .build())
                 .catalogInfo(CatalogInfo.builder()
                         .defaultSpendLimitInfo(defaultSpendLimits)
@@ -87,7 +101,7 @@ public class PaymentContextDataBuilder {
         return PaymentContext.builder().locale(Locale.UK)
                 .chargingId(aChargingId())
                 .transactionInfo(TransactionInfo.builder()
-                        .amount(new BigDecimal(2.0))
+                        .amount(Money.of(new BigDecimal(2.0)))
                         .build())
                 .catalogInfo(CatalogInfo.builder()
                         .defaultSpendLimitInfo(defaultSpendLimits)
@@ -1,5 +1,6 @@
 package com.vodafone.charging.data.builder;
 
+import com.vodafone.charging.accountservice.domain.Money;
 import com.vodafone.charging.accountservice.domain.enums.SpendLimitType;
 import com.vodafone.charging.accountservice.dto.SpendLimitResult;
 
@@ -9,8 +10,8 @@ public class SpendLimitResultDataBuilder {
 
     public static SpendLimitResult aSpendLimitResult(boolean result, String reasonMessage, SpendLimitType type) {
         return SpendLimitResult.builder().success(result)
-                .totalTransactionsValue(new Random().nextDouble())
-                .appliedLimitValue(new Random().nextDouble())
+                .totalTransactionsValue(Money.of(new Random().nextDouble()))
+                .appliedLimitValue(Money.of(new Random().nextDouble()))
                 .failureReason(reasonMessage)
                 .failureCauseType(type)
                 .build();
@@ -3,19 +3,43 @@ package com.vodafone.charging.integrationtest;
 import com.vodafone.charging.accountservice.AccountServiceApplication;
 import com.vodafone.charging.accountservice.domain.ChargingId;
 import com.vodafone.charging.accountservice.domain.model.Account;
+import com.vodafone.charging.accountservice.domain.model.Profile;
+import com.vodafone.charging.accountservice.domain.model.SpendLedger;
+import com.vodafone.charging.accountservice.dto.json.ERIFResponse;
 import com.vodafone.charging.accountservice.repository.AccountRepository;
+import com.vodafone.charging.accountservice.repository.AccountRepositoryImpl;
+import com.vodafone.charging.accountservice.repository.SpendLedgerRepository;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Date;
 import java.util.List;
 
+import static com.google.common.collect.Lists.newArrayList;
 import static com.vodafone.charging.data.builder.AccountDataBuilder.anAccount;
 import static com.vodafone.charging.data.builder.AccountDataBuilder.anAccountWithEmptyId;
+import static com.vodafone.charging.data.builder.ChargingIdDataBuilder.aChargingId;
+import static com.vodafone.charging.data.builder.IFResponseDataBuilder.aERIFResponse;
+import static com.vodafone.charging.data.builder.MongoDataBuilder.aFixedDate;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
 
 @RunWith(SpringRunner.class)
 @SpringBootTest(classes = AccountServiceApplication.class)
@@ -24,6 +48,12 @@ public class MongoIT {
     @Autowired
     AccountRepository repository;
 
+    @Autowired
+    SpendLedgerRepository spendLedgerRepository;
+
+    @Autowired
+    MongoOperations mongoOperations;
+
     @Test
     public void shouldSaveAndFindByChargingId() throws Exception {
         repository.deleteAll();
@@ -50,4 +80,145 @@ public class MongoIT {
         assertThat(l.size()).isEqualTo(1);
     }
 
+    @Test
+    public void shouldNotReplaceLedgerTotalsRecordedSinceVersionRead() throws Exception {
+        spendLedgerRepository.deleteAll();
+        final LocalDateTime dayStart = LocalDate.now().atStartOfDay();
+        final LocalDateTime cycleStart = LocalDate.now().withDayOfMonth(1).atStartOfDay();
+        final SpendLedger rebuilt = SpendLedger.builder().accountId("account-1")
+                .dayStart(dayStart).dayTotal(100L).cycleStart(cycleStart).cycleTotal(500L)
+                .lastReconciled(LocalDateTime.now()).build();
+
+        assertThat(spendLedgerRepository.replaceTotals(rebuilt, 0L)).isTrue();
+        assertThat(spendLedgerRepository.findOne("account-1").getVersion()).isEqualTo(1L);
+
+        assertThat(spendLedgerRepository.incrementTotals("account-1", dayStart, cycleStart, 250L)).isTrue();
+        assertThat(spendLedgerRepository.replaceTotals(rebuilt, 1L)).isFalse();
+        assertThat(spendLedgerRepository.replaceTotals(rebuilt, 0L)).isFalse();
+
+        final SpendLedger ledger = spendLedgerRepository.findOne("account-1");
+        assertThat(ledger.getDayTotal()).isEqualTo(350L);
+        assertThat(ledger.getCycleTotal()).isEqualTo(750L);
+        assertThat(ledger.getVersion()).isEqualTo(2L);
+
+        assertThat(spendLedgerRepository.replaceTotals(rebuilt, 2L)).isTrue();
+        assertThat(spendLedgerRepository.findOne("account-1").getDayTotal()).isEqualTo(100L);
+    }
+
+    @Test
+    public void shouldUpdateValidatedFieldsAndKeepSpendLimitsAndHistory() throws Exception {
+        repository.deleteAll();
+        final Account existing = anAccountWithEmptyId();
+        repository.save(existing);
+        final Profile existingProfile = existing.getProfiles().get(0);
+        final Account validated = new Account(existing.getChargingId(), aERIFResponse(), new Date());
+
+        final Account updated = repository.upsertValidation(validated, false);
+
+        assertThat(updated.getId()).isEqualTo(existing.getId());
+        final Account account = repository.findByChargingId(existing.getChargingId());
+        assertThat(account.getLastValidate()).isEqualTo(validated.getLastValidate());
+        assertThat(account.getCustomerType()).isEqualTo("PRE");
+        assertThat(account.getBillingCycleDay()).isEqualTo(9);
+        assertThat(account.getValidationFingerprint()).isEqualTo(validated.getValidationFingerprint());
+        assertThat(account.getProfiles()).hasSize(1);
+        assertThat(account.getProfiles().get(0)).isEqualToComparingFieldByFieldRecursively(Profile.builder()
+                .userGroups(newArrayList("test-ug1", "test-ug2"))
+                .lastUpdatedUserGroups(existingProfile.getLastUpdatedUserGroups())
+                .transactions(existingProfile.getTransactions())
+                .lastUpdatedTransactions(existingProfile.getLastUpdatedTransactions())
+                .spendLimits(existingProfile.getSpendLimits())
+                .build());
+        assertThat(repository.findAll()).hasSize(1);
+    }
+
+    @Test
+    public void shouldInsertValidatedAccountWhenNoneHasItsChargingId() throws Exception {
+        repository.deleteAll();
+        final Account validated = new Account(aChargingId(), aERIFResponse(), new Date());
+
+        final Account inserted = repository.upsertValidation(validated, false);
+
+        assertThat(inserted.getId()).isNotNull();
+        final Account account = repository.findByChargingId(validated.getChargingId());
+        assertThat(account.getId()).isEqualTo(inserted.getId());
+        assertThat(account.getValidationFingerprint()).isEqualTo(validated.getValidationFingerprint());
+        assertThat(account.getProfiles().get(0).getUserGroups()).containsExactly("test-ug1", "test-ug2");
+    }
+
+    @Test
+    public void shouldSetOnlyLastValidateOfUnchangedAccountWhenTouched() throws Exception {
+        repository.deleteAll();
+        final ChargingId chargingId = aChargingId();
+        final Account inserted = repository.upsertValidation(new Account(chargingId, aERIFResponse(), aFixedDate()), false);
+        final Date revalidated = new Date();
+
+        final Account untouched = repository.upsertValidation(new Account(chargingId, aERIFResponse(), revalidated), false);
+
+        assertThat(untouched.getId()).isEqualTo(inserted.getId());
+        assertThat(repository.findByChargingId(chargingId).getLastValidate()).isEqualTo(aFixedDate());
+        //a field set outside validation, which a touch must leave as it is
+        mongoOperations.updateFirst(query(where("_id").is(inserted.getId())),
+                new Update().set("customerType", "POST"), Account.class);
+
+        final Account touched = repository.upsertValidation(new Account(chargingId, aERIFResponse(), revalidated), true);
+
+        assertThat(touched.getId()).isEqualTo(inserted.getId());
+        final Account account = repository.findByChargingId(chargingId);
+        assertThat(account.getLastValidate()).isEqualTo(revalidated);
+        assertThat(account.getCustomerType()).isEqualTo("POST");
+        assertThat(account.getValidationFingerprint()).isEqualTo(inserted.getValidationFingerprint());
+        assertThat(repository.findAll()).hasSize(1);
+    }
+
+    @Test
+    public void shouldUpdateAccountInsertedConcurrentlyWhenInsertIsDuplicate() throws Exception {
+        repository.deleteAll();
+        final Account existing = anAccountWithEmptyId();
+        repository.save(existing);
+        final MongoOperations racingOperations = spy(mongoOperations);
+        doReturn(null).doCallRealMethod().when(racingOperations).findAndModify(any(Query.class), any(Update.class),
+                any(FindAndModifyOptions.class), eq(Account.class));
+        final Account validated = new Account(existing.getChargingId(), aERIFResponse(), new Date());
+
+        final Account updated = new AccountRepositoryImpl(racingOperations).upsertValidation(validated, false);
+
+        assertThat(updated.getId()).isEqualTo(existing.getId());
+        assertThat(updated.getValidationFingerprint()).isEqualTo(validated.getValidationFingerprint());
+        verify(racingOperations).insert(validated);
+        verify(racingOperations, times(2)).findAndModify(any(Query.class), any(Update.class),
+                any(FindAndModifyOptions.class), eq(Account.class));
+        assertThat(repository.findAll()).hasSize(1);
+    }
+
+    @Test
+    public void shouldRetryEachFailedBulkWriteAndReturnIdsInOrder() throws Exception {
+        repository.deleteAll();
+        final ChargingId unchangedId = aChargingId();
+        final Account unchanged = repository.upsertValidation(new Account(unchangedId, aERIFResponse(), aFixedDate()), false);
+        final Account existing = anAccountWithEmptyId();
+        repository.save(existing);
+        final ChargingId newId = aChargingId();
+        final Account duplicate = new Account(newId, ERIFResponse.builder()
+                .isPrepay("POST")
+                .billingCycleDay(3)
+                .userGroups(newArrayList("other-ug"))
+                .build(), new Date());
+
+        final List<String> ids = repository.upsertValidations(newArrayList(
+                new Account(unchangedId, aERIFResponse(), new Date()),
+                new Account(existing.getChargingId(), aERIFResponse(), new Date()),
+                new Account(newId, aERIFResponse(), new Date()),
+                duplicate), false);
+
+        final Account inserted = repository.findByChargingId(newId);
+        assertThat(ids).containsExactly(unchanged.getId(), existing.getId(), inserted.getId(), inserted.getId());
+        assertThat(inserted.getValidationFingerprint()).isEqualTo(duplicate.getValidationFingerprint());
+        assertThat(inserted.getCustomerType()).isEqualTo("POST");
+        assertThat(repository.findByChargingId(unchangedId).getLastValidate()).isEqualTo(aFixedDate());
+        assertThat(repository.findByChargingId(existing.getChargingId()).getProfiles().get(0).getSpendLimits())
+                .isNotEmpty();
+        assertThat(repository.findAll()).hasSize(3);
+    }
+
 }
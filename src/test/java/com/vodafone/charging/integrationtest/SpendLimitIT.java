@@ -2,6 +2,7 @@ package com.vodafone.charging.integrationtest;
 
 import com.vodafone.charging.accountservice.AccountServiceApplication;
 import com.vodafone.charging.accountservice.domain.*;
+import com.vodafone.charging.accountservice.domain.Money;
 import com.vodafone.charging.accountservice.domain.enums.PaymentApprovalRule;
 import com.vodafone.charging.accountservice.domain.enums.SpendLimitType;
 import com.vodafone.charging.accountservice.domain.model.Account;
@@ -193,7 +194,7 @@ public class SpendLimitIT {
         final PaymentContext paymentContext = PaymentContext.builder()
                 .locale(Locale.UK)
                 .chargingId(account.getChargingId())
-                .transactionInfo(TransactionInfo.builder().amount(new BigDecimal("2.00")).build()).build();
+                .transactionInfo(TransactionInfo.builder().amount(Money.of(new BigDecimal("2.00"))).build()).build();
 
         final ERTransaction purchase = anErTransaction(new BigDecimal(2.0), LocalDateTime.now(), ERTransactionType.PURCHASE);
         final ERTransaction refund = anErTransaction(new BigDecimal(2.0), LocalDateTime.now().minusSeconds(20), ERTransactionType.REFUND);
@@ -238,7 +239,7 @@ public class SpendLimitIT {
         final PaymentContext paymentContext = PaymentContext.builder()
                 .locale(Locale.UK)
                 .chargingId(account.getChargingId())
-                .transactionInfo(TransactionInfo.builder().amount(new BigDecimal("2.16")).build()).build();
+                .transactionInfo(TransactionInfo.builder().amount(Money.of(new BigDecimal("2.16"))).build()).build();
 
         final ERTransaction purchase = anErTransaction(new BigDecimal(2.0), LocalDateTime.now(), ERTransactionType.PURCHASE);
         final ERTransaction refund = anErTransaction(new BigDecimal(2.0), LocalDateTime.now().minusSeconds(20), ERTransactionType.REFUND);
@@ -288,7 +289,7 @@ public class SpendLimitIT {
                 .catalogInfo(CatalogInfo.builder().defaultSpendLimitInfo(defaultSpendLimitInfoList).build())
                 .locale(Locale.UK)
                 .chargingId(account.getChargingId())
-                .transactionInfo(TransactionInfo.builder().amount(new BigDecimal("2.00")).build()).build();
+                .transactionInfo(TransactionInfo.builder().amount(Money.of(new BigDecimal("2.00"))).build()).build();
 
         final ERTransaction purchase1 = anErTransaction(new BigDecimal(2.5), LocalDateTime.now(), ERTransactionType.PURCHASE);
         final ERTransaction purchase2 = anErTransaction(new BigDecimal(4.5), LocalDateTime.now(), ERTransactionType.PURCHASE);
@@ -338,7 +339,7 @@ public class SpendLimitIT {
                 .catalogInfo(CatalogInfo.builder().defaultSpendLimitInfo(defaultSpendLimitInfoList).build())
                 .locale(Locale.UK)
                 .chargingId(account.getChargingId())
-                .transactionInfo(TransactionInfo.builder().amount(new BigDecimal("2.00")).build()).build();
+                .transactionInfo(TransactionInfo.builder().amount(Money.of(new BigDecimal("2.00"))).build()).build();
 
         final ERTransaction purchase1 = anErTransaction(new BigDecimal(2.5), LocalDateTime.now(), ERTransactionType.PURCHASE);
         final ERTransaction purchase2 = anErTransaction(new BigDecimal(50.5), LocalDateTime.now(), ERTransactionType.PURCHASE);
@@ -391,7 +392,7 @@ public class SpendLimitIT {
                 .catalogInfo(CatalogInfo.builder().defaultSpendLimitInfo(defaultSpendLimitInfoList).build())
                 .locale(Locale.UK)
                 .chargingId(account.getChargingId())
-                .transactionInfo(TransactionInfo.builder().amount(new BigDecimal("2.00")).build()).build();
+                .transactionInfo(TransactionInfo.builder().amount(Money.of(new BigDecimal("2.00"))).build()).build();
 
         final ERTransaction purchase1 = anErTransaction(new BigDecimal(2.5), LocalDateTime.now(), ERTransactionType.PURCHASE);
         final ERTransaction purchase2 = anErTransaction(new BigDecimal(4.5), LocalDateTime.now(), ERTransactionType.PURCHASE);
@@ -443,7 +444,7 @@ public class SpendLimitIT {
                 .catalogInfo(CatalogInfo.builder().defaultSpendLimitInfo(defaultSpendLimitInfoList).build())
                 .locale(Locale.UK)
                 .chargingId(account.getChargingId())
-                .transactionInfo(TransactionInfo.builder().amount(new BigDecimal("2.00")).build()).build();
+                .transactionInfo(TransactionInfo.builder().amount(Money.of(new BigDecimal("2.00"))).build()).build();
 
         final ResponseEntity<List<ERTransaction>> responseEntity = new ResponseEntity<>(newArrayList(), HttpStatus.OK);
 
@@ -485,7 +486,7 @@ public class SpendLimitIT {
                 .catalogInfo(CatalogInfo.builder().defaultSpendLimitInfo(newArrayList()).build())
                 .locale(Locale.UK)
                 .chargingId(account.getChargingId())
-                .transactionInfo(TransactionInfo.builder().amount(new BigDecimal("200000")).build()).build();
+                .transactionInfo(TransactionInfo.builder().amount(Money.of(new BigDecimal("200000"))).build()).build();
 
         final String json = jsonConverter.toJson(paymentContext);
 
@@ -521,7 +522,7 @@ public class SpendLimitIT {
                 .catalogInfo(CatalogInfo.builder().defaultSpendLimitInfo(defaultSpendLimitInfoList).build())
                 .locale(Locale.UK)
                 .chargingId(account.getChargingId())
-                .transactionInfo(TransactionInfo.builder().amount(new BigDecimal("200000")).build()).build();
+                .transactionInfo(TransactionInfo.builder().amount(Money.of(new BigDecimal("200000"))).build()).build();
 
         final ERTransaction purchase1 = anErTransaction(new BigDecimal(2500.9), LocalDateTime.now(), ERTransactionType.PURCHASE);
         final ERTransaction purchase2 = anErTransaction(new BigDecimal(3000.1), LocalDateTime.now(), ERTransactionType.PURCHASE);
@@ -572,7 +573,7 @@ public class SpendLimitIT {
                 .catalogInfo(CatalogInfo.builder().defaultSpendLimitInfo(defaultSpendLimitInfoList).build())
                 .locale(Locale.UK)
                 .chargingId(account.getChargingId())
-                .transactionInfo(TransactionInfo.builder().amount(new BigDecimal("2.0")).build()).build();
+                .transactionInfo(TransactionInfo.builder().amount(Money.of(new BigDecimal("2.0"))).build()).build();
 
         final ERTransaction purchase1 = anErTransaction(new BigDecimal(5.9), LocalDateTime.now(), ERTransactionType.PURCHASE);
         final ERTransaction purchase2 = anErTransaction(new BigDecimal(5.1), LocalDateTime.now(), ERTransactionType.PURCHASE);
@@ -618,7 +619,7 @@ public class SpendLimitIT {
                 .catalogInfo(CatalogInfo.builder().defaultSpendLimitInfo(defaultSpendLimitInfoList).build())
                 .locale(Locale.UK)
                 .chargingId(chargingId)
-                .transactionInfo(TransactionInfo.builder().amount(new BigDecimal("2.0")).build()).build();
+                .transactionInfo(TransactionInfo.builder().amount(Money.of(new BigDecimal("2.0"))).build()).build();
 
         final String json = jsonConverter.toJson(paymentContext);
 
@@ -657,7 +658,7 @@ public class SpendLimitIT {
                 .catalogInfo(CatalogInfo.builder().defaultSpendLimitInfo(defaultSpendLimitInfoList).build())
                 .locale(Locale.UK)
                 .chargingId(chargingId)
-                .transactionInfo(TransactionInfo.builder().amount(new BigDecimal("2.0")).build()).build();
+                .transactionInfo(TransactionInfo.builder().amount(Money.of(new BigDecimal("2.0"))).build()).build();
 
         given(restTemplate.exchange(any(URI.class),
                 eq(HttpMethod.POST),
@@ -701,7 +702,7 @@ public class SpendLimitIT {
         final PaymentContext paymentContext = PaymentContext.builder()
                 .locale(Locale.UK)
                 .chargingId(expectedAccount.getChargingId())
-                .transactionInfo(TransactionInfo.builder().amount(new BigDecimal("1.0")).build())
+                .transactionInfo(TransactionInfo.builder().amount(Money.of(new BigDecimal("1.0"))).build())
                 .approvalCriteria(approvalCriteria)
                 .build();
 
@@ -763,7 +764,7 @@ public class SpendLimitIT {
                 .catalogInfo(CatalogInfo.builder().defaultSpendLimitInfo(defaultSpendLimitInfoList).build())
                 .locale(Locale.UK)
                 .chargingId(account.getChargingId())
-                .transactionInfo(TransactionInfo.builder().amount(new BigDecimal("2.00")).build()).build();
+                .transactionInfo(TransactionInfo.builder().amount(Money.of(new BigDecimal("2.00"))).build()).build();
 
         final ERTransaction purchase1 = anErTransaction(new BigDecimal(2.5), LocalDateTime.now(), ERTransactionType.PURCHASE);
         final ERTransaction purchase2 = anErTransaction(new BigDecimal(4.5), LocalDateTime.now(), ERTransactionType.PURCHASE);
@@ -368,7 +368,8 @@ public class VfAccountServiceIT {
 
         final Account account = (Account) converter.fromJson(Account.class, response.getResponse().getContentAsString());
         assertThat(account).isNotNull();
-        assertThat(account).isEqualToIgnoringGivenFields(expectedAccount, "lastValidate", "id", "profiles", "chargingId");
+        assertThat(account).isEqualToIgnoringGivenFields(expectedAccount, "lastValidate", "id", "profiles", "chargingId",
+                "validationFingerprint");
         assertThat(account.getProfiles().get(0)).isEqualToComparingFieldByFieldRecursively(expectedAccount.getProfiles().get(0));
         assertThat(account.getChargingId()).isEqualToComparingFieldByField(account.getChargingId());
     }
@@ -0,0 +1,84 @@
+package com.vodafone.charging.ulf;
+
+import com.vodafone.charging.properties.PropertiesAccessor;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RequestDeadlineFilterTest {
+
+    @Mock
+    private PropertiesAccessor propertiesAccessor;
+    @InjectMocks
+    private RequestDeadlineFilter requestDeadlineFilter;
+    private MockHttpServletRequest request = new MockHttpServletRequest("POST",
+            "/accounts");
+    private MockHttpServletResponse response = new MockHttpServletResponse();
+
+    @Test
+    public void shouldSetRequestDeadlineFromHeaderForChainOnly() throws Exception {
+        request.addHeader(RequestDeadlineFilter.REQUEST_TIMEOUT_HEADER, "2000");
+        final AtomicReference<RequestDeadline> deadline = new AtomicReference<>();
+
+        requestDeadlineFilter.doFilter(request, response, (req, res) -> deadline.set(RequestDeadline.current()));
+
+        assertThat(deadline.get().isBounded()).isTrue();
+        assertThat(deadline.get().getRemainingMillis()).isBetween(1000L, 2000L);
+        assertThat(RequestDeadline.current()).isSameAs(RequestDeadline.NONE);
+    }
+
+    @Test
+    public void shouldSetRequestDeadlineFromEndpointDefault() throws Exception {
+        given(propertiesAccessor.getProperty(eq("request.timeout.endpoints"), anyString()))
+                .willReturn("/accounts/*/profile/**=500,/accounts=3000");
+        given(propertiesAccessor.getPropertyAsInt(eq("request.timeout.millis"), anyInt())).willReturn(9000);
+        final AtomicReference<RequestDeadline> deadline = new AtomicReference<>();
+
+        requestDeadlineFilter.doFilter(request, response, (req, res) -> deadline.set(RequestDeadline.current()));
+
+        assertThat(deadline.get().getRemainingMillis()).isBetween(2000L, 3000L);
+    }
+
+    @Test
+    public void shouldNotSetRequestDeadlineWithoutTimeout() throws Exception {
+        final AtomicReference<RequestDeadline> deadline = new AtomicReference<>();
+
+        requestDeadlineFilter.doFilter(request, response, (req, res) -> deadline.set(RequestDeadline.current()));
+
+        assertThat(deadline.get()).isSameAs(RequestDeadline.NONE);
+    }
+
+    @Test
+    public void shouldPassRequestOnUnwrapped() throws Exception {
+        request.addHeader(RequestDeadlineFilter.REQUEST_TIMEOUT_HEADER, "2000");
+
+        requestDeadlineFilter.doFilter(request, response, (req, res) -> {
+            assertThat(req).isSameAs(request);
+            assertThat(res).isSameAs(response);
+        });
+    }
+
+    @Test
+    public void shouldNotSetRequestDeadlineForStreamedRequest() throws Exception {
+        request.setRequestURI("/accounts/bulk");
+        request.addHeader(RequestDeadlineFilter.REQUEST_TIMEOUT_HEADER, "2000");
+        final AtomicReference<RequestDeadline> deadline = new AtomicReference<>();
+
+        requestDeadlineFilter.doFilter(request, response, (req, res) -> deadline.set(RequestDeadline.current()));
+
+        assertThat(deadline.get()).isSameAs(RequestDeadline.NONE);
+    }
+}
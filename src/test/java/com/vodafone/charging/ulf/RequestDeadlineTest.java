@@ -0,0 +1,65 @@
+package com.vodafone.charging.ulf;
+
+import com.vodafone.charging.accountservice.exception.RequestDeadlineExceededException;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class RequestDeadlineTest {
+
+    @After
+    public void clear() {
+        RequestDeadline.clear();
+    }
+
+    @Test
+    public void shouldCapTimeoutsToTimeLeft() {
+        final RequestDeadline deadline = RequestDeadline.start(1000L);
+
+        assertThat(deadline.cap(5000)).isBetween(900, 1000);
+        assertThat(deadline.cap(0)).isBetween(900, 1000);
+        assertThat(deadline.cap(200)).isEqualTo(200);
+        assertThat(RequestDeadline.NONE.cap(5000)).isEqualTo(5000);
+    }
+
+    @Test
+    public void shouldNeverCapTimeoutToNoTimeout() {
+        final RequestDeadline deadline = RequestDeadline.start(0L);
+
+        assertThat(deadline.isExpired()).isTrue();
+        assertThat(deadline.cap(5000)).isEqualTo(1);
+        assertThatThrownBy(() -> deadline.check("calling erif"))
+                .isInstanceOf(RequestDeadlineExceededException.class)
+                .hasMessage("Request deadline passed before calling erif");
+    }
+
+    @Test
+    public void shouldRunBoundSupplierWithDeadlineOnly() {
+        final RequestDeadline deadline = RequestDeadline.start(1000L);
+        RequestDeadline.clear();
+
+        assertThat(deadline.bind(RequestDeadline::current).get()).isSameAs(deadline);
+        assertThat(RequestDeadline.current()).isSameAs(RequestDeadline.NONE);
+    }
+
+    @Test
+    public void shouldCarryDeadlineToAnotherThread() throws Exception {
+        final RequestDeadline deadline = RequestDeadline.start(1000L);
+        final Supplier<RequestDeadline> propagated = UlfContext.propagate(RequestDeadline::current);
+        final RequestDeadline[] carried = new RequestDeadline[2];
+
+        final Thread thread = new Thread(() -> {
+            carried[0] = propagated.get();
+            carried[1] = RequestDeadline.current();
+        });
+        thread.start();
+        thread.join();
+
+        assertThat(carried[0]).isSameAs(deadline);
+        assertThat(carried[1]).isSameAs(RequestDeadline.NONE);
+    }
+}